@@ -1,19 +1,25 @@
 import jason.AslTransferenceModel;
 import jason.architecture.AgArch;
 import jason.architecture.CommMiddleware;
+import jason.architecture.LegacyHexMessageCodec;
+import jason.architecture.PayloadCompression;
+import jason.architecture.RemoteMailbox;
+import jason.architecture.TransferMetrics;
+import jason.architecture.TransferSession;
 import jason.architecture.TransportAgentMessageType;
 import jason.infra.centralised.CentralisedAgArch;
 import jason.infra.centralised.RunCentralisedMAS;
 import jason.mas2j.ClassParameters;
 import jason.runtime.RuntimeServicesInfraTier;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
 public class Communicator extends AgArch {
 
@@ -21,10 +27,81 @@ public class Communicator extends AgArch {
 
     private static final String AGENT_FILE_EXTENSION = ".asl";
 
+    /** Opção do agente (no .mas2j) que define o formato das mensagens enviadas: "binary" (padrão) ou "legacy". */
+    private static final String CODEC_OPTION = "codec";
+
+    /** Opção do agente que define a capacidade da caixa de mensagens recebidas via ContextNet. */
+    private static final String MAILBOX_CAPACITY_OPTION = "mailbox_capacity";
+
+    /** Opção do agente que define a política da caixa cheia: "drop_oldest" (padrão), "block" ou "reject". */
+    private static final String MAILBOX_POLICY_OPTION = "mailbox_policy";
+
+    /** Opção do agente que define o formato dos agentes enviados ("snapshot", o padrão, ou "asl"). */
+    private static final String AGENT_FORMAT_OPTION = "agent_format";
+
+    /** Opção do agente que define se os agentes recebidos também são gravados em arquivos .asl ("true" ou "false"). */
+    private static final String PERSIST_AGENTS_OPTION = "persist_agents";
+
+    /** Opção do agente que define o tempo (ms) sem atividade após o qual uma transferência é abandonada. */
+    private static final String TRANSFER_TIMEOUT_OPTION = "transfer_timeout";
+
+    /** Opção do agente que define se os planos e crenças deste SMA são anunciados ("true" ou "false"). */
+    private static final String TRANSFER_DELTA_OPTION = "transfer_delta";
+
+    /**
+     * Opção do agente que define a compressão dos agentes e mensagens enviados: "none" (padrão), "deflate", "fast"
+     * ou "dictionary".
+     */
+    private static final String COMPRESSION_OPTION = "compression";
+
+    /** Opção do agente que define o tamanho mínimo, em bytes, dos conteúdos comprimidos. */
+    private static final String COMPRESSION_THRESHOLD_OPTION = "compression_threshold";
+
     @Override
     public void connectCN(String gatewayIP, int gatewayPort, String myUUID) {
-        this.commBridge = new CommMiddleware(gatewayIP, gatewayPort, myUUID);
+        this.commBridge = new CommMiddleware(gatewayIP, gatewayPort, myUUID, this.createMailbox());
         this.commBridge.setAgName(this.getAgName());
+        this.commBridge.setAgArch(this);
+        if ("asl".equals(this.getTS().getSettings().getUserParameter(AGENT_FORMAT_OPTION))) {
+            this.commBridge.setSendSnapshots(false);
+        }
+        if ("false".equals(this.getTS().getSettings().getUserParameter(PERSIST_AGENTS_OPTION))) {
+            this.commBridge.setPersistAgents(false);
+        }
+        if ("legacy".equals(this.getTS().getSettings().getUserParameter(CODEC_OPTION))) {
+            this.commBridge.setCodec(new LegacyHexMessageCodec());
+        }
+        if ("false".equals(this.getTS().getSettings().getUserParameter(TRANSFER_DELTA_OPTION))) {
+            this.commBridge.setDeltaTransfers(false);
+        }
+        String compressionOption = this.getTS().getSettings().getUserParameter(COMPRESSION_OPTION);
+        if (compressionOption != null) {
+            int threshold = PayloadCompression.DEFAULT_THRESHOLD;
+            String thresholdOption = this.getTS().getSettings().getUserParameter(COMPRESSION_THRESHOLD_OPTION);
+            if (thresholdOption != null) {
+                threshold = Integer.parseInt(thresholdOption);
+            }
+            this.commBridge.setCompression(new PayloadCompression(
+                    PayloadCompression.Method.valueOf(compressionOption.toUpperCase()), threshold));
+        }
+        String timeoutOption = this.getTS().getSettings().getUserParameter(TRANSFER_TIMEOUT_OPTION);
+        if (timeoutOption != null) {
+            this.commBridge.setSessionTimeout(Long.parseLong(timeoutOption));
+        }
+    }
+
+    private RemoteMailbox createMailbox() {
+        int capacity = RemoteMailbox.DEFAULT_CAPACITY;
+        String capacityOption = this.getTS().getSettings().getUserParameter(MAILBOX_CAPACITY_OPTION);
+        if (capacityOption != null) {
+            capacity = Integer.parseInt(capacityOption);
+        }
+        RemoteMailbox.OverflowPolicy policy = RemoteMailbox.OverflowPolicy.DROP_OLDEST;
+        String policyOption = this.getTS().getSettings().getUserParameter(MAILBOX_POLICY_OPTION);
+        if (policyOption != null) {
+            policy = RemoteMailbox.OverflowPolicy.valueOf(policyOption.toUpperCase());
+        }
+        return new RemoteMailbox(capacity, policy);
     }
 
     @Override
@@ -41,23 +118,37 @@ public class Communicator extends AgArch {
 
     @Override
     public void addMessageToC() {
-        this.getTS().getC().addMsg(this.commBridge.checkMailCN());
-        //this.commBridge.cleanMailBox();
+        this.commBridge.drainMailBox(this.getTS().getC().getMailBox());
+    }
+
+    @Override
+    public boolean canSleep() {
+        return (this.commBridge == null || (!this.commBridge.hasMsg() && !this.commBridge.hasAgentsReceived()
+                && !this.commBridge.hasToKillMyAgents())) && super.canSleep();
     }
 
     @Override
     public void instantiateAgents() {
-        if (this.commBridge.getProtocol().equals(TransportAgentMessageType.PREDATOR.getName())) {
-            this.executePredatorProtocol();
-        } else if (this.commBridge.getProtocol().equals(TransportAgentMessageType.MUTUALISM.getName())) {
-            this.executeMutualismProtocol();
-        } else if (this.commBridge.getProtocol().equals(TransportAgentMessageType.INQUILINISM.getName())) {
-            this.executeInquilinismProtocol();
+        for (TransferSession session : this.commBridge.getSessions(TransferSession.Role.TARGET,
+                TransferSession.State.PAYLOAD)) {
+            if (session.getProtocol().equals(TransportAgentMessageType.PREDATOR.getName())) {
+                this.executePredatorProtocol(session);
+            } else if (session.getProtocol().equals(TransportAgentMessageType.MUTUALISM.getName())) {
+                this.executeMutualismProtocol(session);
+            } else if (session.getProtocol().equals(TransportAgentMessageType.INQUILINISM.getName())) {
+                this.executeInquilinismProtocol(session);
+            }
         }
     }
 
-    private int startAgent(String name, String path, String agArchClasse, int qtdAgentsInstantiated) {
+    private void startAgent(TransferSession session, String name, String path, AslTransferenceModel received,
+                            String agArchClasse) {
+        long start = System.nanoTime();
         try {
+            // Descomprime e restaura os planos e crenças que a origem não enviou por já existirem neste SMA.
+            byte[] content = session.resolveContent(received);
+            this.commBridge.createAslFile(new AslTransferenceModel(received.getName(), content,
+                    received.getAgentArchClass()));
             String agClass = null;
             List<String> agArchClasses = new ArrayList<String>();
             if(agArchClasse != null && !agArchClasse.isEmpty()) {
@@ -66,70 +157,88 @@ public class Communicator extends AgArch {
             ClassParameters bbPars = null;
 
             RuntimeServicesInfraTier rs = this.getTS().getUserAgArch().getRuntimeServices();
-            name = rs.createAgent(name, path, agClass, agArchClasses, bbPars, this.getTS().getSettings());
+            // O agente é criado a partir do conteúdo recebido, sem ler o arquivo .asl.
+            name = rs.createAgent(name, new ByteArrayInputStream(content), path, agClass, agArchClasses, bbPars,
+                    this.getTS().getSettings());
             rs.startAgent(name);
-            qtdAgentsInstantiated++;
-            return qtdAgentsInstantiated;
+            session.getMetrics().record(TransferMetrics.Phase.INSTANTIATION, start, System.nanoTime());
+            session.agentInstantiated();
         } catch (Exception e) {
-            e.printStackTrace();
+            // Conta também os agentes com erro, para que a transferência termine sem esperar expirar.
+            this.getTS().getLogger().log(Level.SEVERE, "Error starting the agent " + name + " received in the "
+                    + "transfer " + session.getId(), e);
+            session.agentFailed();
         }
-        return qtdAgentsInstantiated;
     }
 
-    private void executePredatorProtocol () {
-        int qtdAgentsInstantiated = 0;
-        for (AslTransferenceModel aslTransferenceModel : this.commBridge.getAgentsReceived()) {
-            String name = aslTransferenceModel.getName();
-            String path = getPath(name);
-            String agArchClass = aslTransferenceModel.getAgentArchClass();
-
-            qtdAgentsInstantiated = this.startAgent(name, path, agArchClass, qtdAgentsInstantiated);
+    private void executePredatorProtocol (TransferSession session) {
+        if (this.startReceivedAgents(session)) {
+            // Todos os agentes instanciados, enviando mensagem para deletar da origem
+            this.commBridge.sendCanKill(session);
+            this.killHostAgents(session);
+            // Encerrando a transferência
+            this.commBridge.closeSession(session);
+            System.out.println("Terminou: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss.SSS")));
         }
+    }
 
-        if (qtdAgentsInstantiated == this.commBridge.getAgentsReceived().size()) {
+    private void executeMutualismProtocol(TransferSession session) {
+        if (this.startReceivedAgents(session)) {
             // Todos os agentes instanciados, enviando mensagem para deletar da origem
-            this.commBridge.sendMsgToDeleteAllAgents();
-            this.killAllAgents();
-            // Apagando Variaveis do transporte
-            this.commBridge.cleanAtributesOfTransference();
+            this.commBridge.sendCanKill(session);
+            // Encerrando a transferência
+            this.commBridge.closeSession(session);
             System.out.println("Terminou: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss.SSS")));
         }
     }
 
-    private void executeMutualismProtocol() {
-        int qtdAgentsInstantiated = 0;
-        for (AslTransferenceModel aslTransferenceModel : this.commBridge.getAgentsReceived()) {
-            String name = aslTransferenceModel.getName();
-            String path = getPath(name);
-            String agArchClass = aslTransferenceModel.getAgentArchClass();
-
-            qtdAgentsInstantiated = this.startAgent(name, path, agArchClass, qtdAgentsInstantiated);
-        }
-        if (qtdAgentsInstantiated == this.commBridge.getAgentsReceived().size()) {
+    private void executeInquilinismProtocol (TransferSession session) {
+        if (this.startReceivedAgents(session)) {
             // Todos os agentes instanciados, enviando mensagem para deletar da origem
-            this.commBridge.sendMsgToDeleteAllAgents();
-            // Apagando Variáveis do transporte
-            this.commBridge.cleanAtributesOfTransference();
+            this.commBridge.sendCanKill(session);
+            // Encerrando a transferência
+            this.commBridge.closeSession(session);
             System.out.println("Terminou: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss.SSS")));
         }
     }
 
-    private void executeInquilinismProtocol () {
-        int qtdAgentsInstantiated = 0;
-        for (AslTransferenceModel aslTransferenceModel : this.commBridge.getAgentsReceived()) {
-            String name = aslTransferenceModel.getName();
-            String path = getPath(name);
-            String agArchClass = aslTransferenceModel.getAgentArchClass();
+    /**
+     * Instancia em paralelo os agentes da transferência que já foram recebidos por completo, sem esperar pelos
+     * demais agentes e sem bloquear o ciclo do comunicador, que é acordado a cada agente instanciado.
+     *
+     * @param session Sessão da transferência.
+     * @return true se todos os agentes da transferência já foram recebidos e instanciados; false enquanto faltam
+     * agentes ou se algum deles não pôde ser instanciado (nesse caso a transferência é encerrada sem CAN_KILL).
+     */
+    private boolean startReceivedAgents(final TransferSession session) {
+        AslTransferenceModel aslTransferenceModel = session.pollAgentToStart();
+        while (aslTransferenceModel != null) {
+            final String name = aslTransferenceModel.getName();
+            final String path = getPath(name);
+            final String agArchClass = aslTransferenceModel.getAgentArchClass();
+            final AslTransferenceModel received = aslTransferenceModel;
 
-            qtdAgentsInstantiated = this.startAgent(name, path, agArchClass, qtdAgentsInstantiated);
+            CommMiddleware.getTransferWorkers().execute(new Runnable() {
+                public void run() {
+                    startAgent(session, name, path, received, agArchClass);
+                    wake();
+                }
+            });
+            aslTransferenceModel = session.pollAgentToStart();
         }
-        if (qtdAgentsInstantiated == this.commBridge.getAgentsReceived().size()) {
-            // Todos os agentes instanciados, enviando mensagem para deletar da origem
-            this.commBridge.sendMsgToDeleteAllAgents();
-            // Apagando Variáveis do transporte
-            this.commBridge.cleanAtributesOfTransference();
-            System.out.println("Terminou: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss.SSS")));
+        // Só responde à origem quando todos os agentes da transferência estiverem instanciados.
+        if (!session.isInstantiationComplete()) {
+            return false;
+        }
+        if (session.hasFailedAgents()) {
+            // A origem não recebe CAN_KILL e mantém os seus agentes.
+            this.getTS().getLogger().severe("The transfer " + session.getId() + " failed since some received "
+                    + "agents could not be started, the source keeps its agents");
+            this.commBridge.closeSession(session);
+            return false;
         }
+        System.out.println("[COMMUNICATOR]: Transfer metrics (" + session.getId() + "): " + session.getMetrics());
+        return true;
     }
 
     private String getPath(String agentName) {
@@ -143,27 +252,39 @@ public class Communicator extends AgArch {
         return path;
     }
 
+    /**
+     * Elimina os agentes que este SMA já tinha, mantendo os recebidos na transferência (protocolo PREDATOR) e nas
+     * demais transferências em andamento.
+     */
+    private void killHostAgents(TransferSession session) {
+        List<String> received = new ArrayList<String>(session.getNameAgents());
+        for (TransferSession other : this.commBridge.getSessions(TransferSession.Role.TARGET, null)) {
+            received.addAll(other.getNameAgents());
+        }
+        Map<String, CentralisedAgArch> agentsOfTheSMA = RunCentralisedMAS.getRunner().getAgs();
+        for (CentralisedAgArch centralisedAgArch : agentsOfTheSMA.values()) {
+            if (!received.contains(centralisedAgArch.getAgName())) {
+                this.getTS().getUserAgArch().getRuntimeServices().killAgent(centralisedAgArch.getAgName(),
+                        this.getTS().getUserAgArch().getAgName());
+                File file = new File(centralisedAgArch.getTS().getAg().getASLSrc());
+                this.commBridge.deleteFileAsl(file);
+            }
+        }
+    }
+
     @Override
     public void killAllAgents() {
+        // Elimina os agentes já instanciados pelos destinos das transferências enviadas.
         Map<String, CentralisedAgArch> agentsOfTheSMA = RunCentralisedMAS.getRunner().getAgs();
-        if (this.commBridge.getAgentsReceived() != null && !this.commBridge.getAgentsReceived().isEmpty()
-                && this.commBridge.getAgentsReceived().size() > 0) {
-            for (CentralisedAgArch centralisedAgArch : agentsOfTheSMA.values()) {
-                if (!this.commBridge.getNameAgents().contains(centralisedAgArch.getAgName())) {
-                    this.getTS().getUserAgArch().getRuntimeServices().killAgent(centralisedAgArch.getAgName(),
-                            this.getTS().getUserAgArch().getAgName());
-                    File file = new File(centralisedAgArch.getTS().getAg().getASLSrc());
-                    this.commBridge.deleteFileAsl(file);
-                }
-            }
-        } else {
+        for (TransferSession session : this.commBridge.getSessions(TransferSession.Role.SOURCE,
+                TransferSession.State.CAN_KILL)) {
             for (CentralisedAgArch centralisedAgArch : agentsOfTheSMA.values()) {
-                if (this.commBridge.getNameAgents().contains(centralisedAgArch.getAgName())) {
+                if (session.getNameAgents().contains(centralisedAgArch.getAgName())) {
                     this.getTS().getUserAgArch().getRuntimeServices().killAgent(centralisedAgArch.getAgName(),
                             this.getTS().getUserAgArch().getAgName());
                 }
             }
-            this.commBridge.cleanAtributesOfTransference();
+            this.commBridge.closeSession(session);
         }
     }
 }
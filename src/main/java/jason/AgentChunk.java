@@ -0,0 +1,162 @@
+package jason;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Parte do conteúdo de um agente transferido via ContextNet.
+ *
+ * <p>
+ * O conteúdo de cada agente ({@link AslTransferenceModel}) é dividido em partes de tamanho limitado. Cada parte tem
+ * um número de sequência global na transferência, usado na confirmação de recebimento ({@link AgentChunkAck}), e o
+ * seu índice dentro do agente, usado na montagem do agente pelo destinatário.
+ *
+ * <p>
+ * O conteúdo da parte é um trecho de um array, que pode ser o conteúdo inteiro do agente (no envio) ou a mensagem
+ * recebida inteira (no recebimento), evitando cópias; esse array não deve ser alterado.
+ *
+ * <p>
+ * A parte é transmitida apenas no formato de {@link jason.architecture.TransferCodec}, nunca por serialização Java.
+ */
+public class AgentChunk {
+
+    /** Identificador da transferência. */
+    private String transferId;
+
+    /** Número de sequência da parte na transferência. */
+    private int sequence;
+
+    /** Nome do agente. */
+    private String name;
+
+    /** Arquitetura do agente. */
+    private String agentArchClass;
+
+    /** Índice da parte dentro do agente. */
+    private int index;
+
+    /** Quantidade de partes do agente. */
+    private int count;
+
+    /** Array com o conteúdo da parte. */
+    private byte[] data;
+
+    /** Início do conteúdo da parte em {@link #data}. */
+    private int offset;
+
+    /** Tamanho do conteúdo da parte. */
+    private int length;
+
+    /** CRC32 de {@link #data}. */
+    private long checksum;
+
+    /**
+     * Construtor.
+     *
+     * @param transferId {@link #transferId}
+     * @param sequence {@link #sequence}
+     * @param name {@link #name}
+     * @param agentArchClass {@link #agentArchClass}
+     * @param index {@link #index}
+     * @param count {@link #count}
+     * @param data {@link #data}
+     */
+    public AgentChunk(String transferId, int sequence, String name, String agentArchClass, int index, int count,
+                      byte[] data) {
+        this(transferId, sequence, name, agentArchClass, index, count, data, 0, data.length);
+    }
+
+    /**
+     * Construtor de uma parte cujo conteúdo é um trecho de <i>data</i>, sem cópia.
+     *
+     * @param offset Início do conteúdo da parte em <i>data</i>.
+     * @param length Tamanho do conteúdo da parte.
+     */
+    public AgentChunk(String transferId, int sequence, String name, String agentArchClass, int index, int count,
+                      byte[] data, int offset, int length) {
+        this(transferId, sequence, name, agentArchClass, index, count, data, offset, length,
+                checksum(data, offset, length));
+    }
+
+    /**
+     * Construtor de uma parte recebida, com o checksum enviado pelo remetente.
+     */
+    public AgentChunk(String transferId, int sequence, String name, String agentArchClass, int index, int count,
+                      byte[] data, int offset, int length, long checksum) {
+        this.transferId = transferId;
+        this.sequence = sequence;
+        this.name = name;
+        this.agentArchClass = agentArchClass;
+        this.index = index;
+        this.count = count;
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+        this.checksum = checksum;
+    }
+
+    public String getTransferId() {
+        return transferId;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getAgentArchClass() {
+        return agentArchClass;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /** Retorna o conteúdo da parte (uma cópia, se a parte é um trecho de um array maior). */
+    public byte[] getData() {
+        if (offset == 0 && length == data.length) {
+            return data;
+        }
+        return Arrays.copyOfRange(data, offset, offset + length);
+    }
+
+    /** Array que contém o conteúdo da parte, a partir de {@link #getOffset()}; não deve ser alterado. */
+    public byte[] getBuffer() {
+        return data;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /** Copia o conteúdo da parte para <i>dest</i> a partir da posição <i>position</i>. */
+    public void copyData(byte[] dest, int position) {
+        System.arraycopy(data, offset, dest, position, length);
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /** Verifica se o conteúdo da parte confere com o checksum enviado. */
+    public boolean isValid() {
+        return data != null && index >= 0 && index < count && checksum(data, offset, length) == checksum;
+    }
+
+    private static long checksum(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return crc.getValue();
+    }
+}
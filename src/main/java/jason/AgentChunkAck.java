@@ -0,0 +1,33 @@
+package jason;
+
+/**
+ * Confirmação cumulativa das partes de agentes ({@link AgentChunk}) recebidas: todas as partes com número de
+ * sequência menor que {@link #nextSequence} foram recebidas íntegras pelo destinatário.
+ */
+public class AgentChunkAck {
+
+    /** Identificador da transferência. */
+    private String transferId;
+
+    /** Próximo número de sequência esperado pelo destinatário. */
+    private int nextSequence;
+
+    /**
+     * Construtor.
+     *
+     * @param transferId {@link #transferId}
+     * @param nextSequence {@link #nextSequence}
+     */
+    public AgentChunkAck(String transferId, int nextSequence) {
+        this.transferId = transferId;
+        this.nextSequence = nextSequence;
+    }
+
+    public String getTransferId() {
+        return transferId;
+    }
+
+    public int getNextSequence() {
+        return nextSequence;
+    }
+}
@@ -2,11 +2,16 @@ package jason;
 
 import jason.architecture.AgArch;
 import jason.asSemantics.Agent;
+import jason.asSemantics.AgentSnapshot;
+import jason.asSemantics.ContentIndex;
 import jason.asSyntax.Literal;
 import jason.asSyntax.Plan;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.Set;
 
 /**
  * Gerador de arquivo .asl do jason para um agente em tempo de execução.
@@ -40,24 +45,121 @@ public class AslFileGenerator {
     /** Texto inicial para localizar planos padrão de kqml. */
     private static final String KQML_PREFIX = "@kqml";
 
+    /** Início da linha que substitui um plano que o destino já tem, seguido do hash do plano. */
+    private static final String PLAN_REF_SYMBOL = "//#plan ";
+
+    /** Início da linha que substitui uma crença que o destino já tem, seguida do hash da crença. */
+    private static final String BELIEF_REF_SYMBOL = "//#belief ";
+
     /**
      * Gera o conteúdo de um arquivo asl e encapsula no modelo serializável para ser transferido via contextNet.
      *
      * @return Modelo de transferência de agente.
      */
     public AslTransferenceModel generateAslContent(AgArch agArch) {
+        return generateAslContent(agArch, Collections.<String>emptySet(), Collections.<String>emptySet());
+    }
+
+    /**
+     * Gera o conteúdo de um arquivo asl sem os planos e crenças que o destino já tem, que são substituídos por
+     * linhas com os seus hashes (veja {@link ContentIndex}) e restaurados por
+     * {@link #resolveContent(byte[], ContentIndex)}.
+     *
+     * @param knownPlans Hashes dos planos que o destino já tem.
+     * @param knownBeliefs Hashes das crenças que o destino já tem.
+     * @return Modelo de transferência de agente.
+     */
+    public AslTransferenceModel generateAslContent(AgArch agArch, Set<String> knownPlans, Set<String> knownBeliefs) {
         Agent agent = agArch.getTS().getAg();
 
         StringBuilder content = new StringBuilder();
-        content.append(generateInitialBeliefs(agent) + NEXT_LINE);
+        content.append(generateInitialBeliefs(agent, knownBeliefs) + NEXT_LINE);
         content.append(generateInitialGoals(agent) + NEXT_LINE);
-        content.append(generatePlans(agent) + NEXT_LINE);
+        content.append(generatePlans(agent, knownPlans) + NEXT_LINE);
 
         AslTransferenceModel aslTransferenceModel = new AslTransferenceModel(agArch.getAgName(),
                 content.toString().getBytes(), agArch.getClass().getName());
         return aslTransferenceModel;
     }
 
+    /**
+     * Gera um {@link AgentSnapshot} binário do agente, com crenças, planos, intenções, eventos, ações pendentes e
+     * caixa de mensagens, e encapsula no modelo serializável para ser transferido via contextNet. No destino o agente
+     * continua as suas intenções de onde parou, sem que o código fonte seja interpretado novamente.
+     *
+     * @return Modelo de transferência de agente, ou null se o estado do agente não puder ser serializado.
+     */
+    public AslTransferenceModel generateSnapshotContent(AgArch agArch) {
+        return generateSnapshotContent(agArch, Collections.<String>emptySet(), Collections.<String>emptySet());
+    }
+
+    /**
+     * Gera um {@link AgentSnapshot} binário do agente sem os planos e crenças que o destino já tem, que são
+     * substituídos pelos seus hashes e restaurados por {@link #resolveContent(byte[], ContentIndex)}. A circunstância
+     * do agente não é copiada, então este método deve ser chamado na thread do agente, entre dois ciclos de
+     * raciocínio (veja {@link jason.asSemantics.TransitionSystem#runAtBeginOfNextCycle(Runnable)}).
+     *
+     * @param knownPlans Hashes dos planos que o destino já tem.
+     * @param knownBeliefs Hashes das crenças que o destino já tem.
+     * @return Modelo de transferência de agente, ou null se o estado do agente não puder ser serializado.
+     */
+    public AslTransferenceModel generateSnapshotContent(AgArch agArch, Set<String> knownPlans,
+                                                        Set<String> knownBeliefs) {
+        try {
+            AgentSnapshot snapshot = knownPlans.isEmpty() && knownBeliefs.isEmpty()
+                    ? AgentSnapshot.capture(agArch.getTS().getAg())
+                    : AgentSnapshot.capture(agArch.getTS().getAg(), knownPlans, knownBeliefs);
+            byte[] content = snapshot.toByteArray();
+            return new AslTransferenceModel(agArch.getAgName(), content, agArch.getClass().getName());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Restaura, a partir dos planos e crenças do destino, o conteúdo gerado sem o que o destino já tinha. O
+     * conteúdo completo é retornado sem alterações.
+     *
+     * @param content Conteúdo (snapshot ou código .asl) recebido.
+     * @param index Planos e crenças anunciados pelo destino.
+     * @return Conteúdo completo do agente.
+     * @throws IOException Se o conteúdo se refere a um plano ou crença que não está no índice.
+     */
+    public byte[] resolveContent(byte[] content, ContentIndex index) throws IOException {
+        if (AgentSnapshot.isSnapshot(content)) {
+            AgentSnapshot snapshot = AgentSnapshot.read(new ByteArrayInputStream(content));
+            if (!snapshot.isDelta()) {
+                return content;
+            }
+            snapshot.resolve(index);
+            return snapshot.toByteArray();
+        }
+        String text = new String(content, StandardCharsets.UTF_8);
+        if (!text.contains(PLAN_REF_SYMBOL) && !text.contains(BELIEF_REF_SYMBOL)) {
+            return content;
+        }
+        StringBuilder resolved = new StringBuilder(text.length() * 2);
+        for (String line : text.split(NEXT_LINE, -1)) {
+            if (line.startsWith(PLAN_REF_SYMBOL)) {
+                Plan plan = index.getPlan(line.substring(PLAN_REF_SYMBOL.length()).trim());
+                if (plan == null) {
+                    throw new IOException("Plano desconhecido no conteúdo recebido: " + line);
+                }
+                resolved.append(generatePlan(plan));
+            } else if (line.startsWith(BELIEF_REF_SYMBOL)) {
+                Literal literal = index.getBelief(line.substring(BELIEF_REF_SYMBOL.length()).trim());
+                if (literal == null) {
+                    throw new IOException("Crença desconhecida no conteúdo recebido: " + line);
+                }
+                resolved.append(literal.toString() + END_SYMBOL + NEXT_LINE);
+            } else {
+                resolved.append(line + NEXT_LINE);
+            }
+        }
+        return resolved.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
     /**
      * Cria um novo arquivo .asl no endereço passado, de acordo com o nome e o conteúdo passado no modelo de
      * transferência de agente.
@@ -66,6 +168,10 @@ public class AslFileGenerator {
      * @param aslTransferenceModel Modelo de transferência de agente.
      */
     public void createAslFile(String path, AslTransferenceModel aslTransferenceModel) {
+        if (AgentSnapshot.isSnapshot(aslTransferenceModel.getFileContent())) {
+            // O snapshot não é código AgentSpeak, então não há arquivo .asl a ser gerado.
+            return;
+        }
         path = path.replaceAll("\\\\", "/");
         if (path.charAt(path.length() -1) != '/') {
             path += "/";
@@ -88,9 +194,10 @@ public class AslFileGenerator {
      * Captura as crenças do agente em tempo de execução.
      *
      * @param agent Agente.
+     * @param knownBeliefs Hashes das crenças que são substituídas por referências.
      * @return Declaração em String das crença do agente em tempo de execução.
      */
-    private String generateInitialBeliefs(Agent agent) {
+    private String generateInitialBeliefs(Agent agent, Set<String> knownBeliefs) {
         StringBuilder beliefs = new StringBuilder();
         beliefs.append("/* Initial beliefs and rules */" + NEXT_LINE);
 
@@ -98,7 +205,12 @@ public class AslFileGenerator {
 
         while (beliefsIterator.hasNext()) {
             Literal literal = beliefsIterator.next();
-            beliefs.append(literal.toString() + END_SYMBOL + NEXT_LINE);
+            String hash = knownBeliefs.isEmpty() ? null : ContentIndex.hash(literal);
+            if (hash != null && knownBeliefs.contains(hash)) {
+                beliefs.append(BELIEF_REF_SYMBOL + hash + NEXT_LINE);
+            } else {
+                beliefs.append(literal.toString() + END_SYMBOL + NEXT_LINE);
+            }
         }
 
         return beliefs.toString();
@@ -125,27 +237,48 @@ public class AslFileGenerator {
      * Captura os planos do agente.
      *
      * @param agent Agente.
+     * @param knownPlans Hashes dos planos que são substituídos por referências.
      * @return Texto com os planos do agente.
      */
-    private String generatePlans(Agent agent) {
+    private String generatePlans(Agent agent, Set<String> knownPlans) {
         StringBuilder plains = new StringBuilder();
         plains.append("/* Plans */" + NEXT_LINE);
 
         for (Plan plan : agent.getPL().getPlans()) {
-            String p = plan.toASString();
-            if (!p.startsWith(KQML_PREFIX)) {
-                String[] planName = p.split(INITIAL_PLANS_SYMBOL_REGEX);
-                if (planName.length > 1) {
-                    plains.append(INITIAL_PLANS_SYMBOL + planName[1] + NEXT_LINE);
-                }
-
-                String[] contingencyPlanName = p.split(INITIAL_CONTINGENCY_PLANS_SYMBOL_REGEX);
-                if (contingencyPlanName.length > 1) {
-                    plains.append(INITIAL_CONTINGENCY_PLANS_SYMBOL + contingencyPlanName[1] + NEXT_LINE);
+            String p = generatePlan(plan);
+            if (!p.isEmpty()) {
+                String hash = knownPlans.isEmpty() ? null : ContentIndex.hash(plan);
+                if (hash != null && knownPlans.contains(hash)) {
+                    plains.append(PLAN_REF_SYMBOL + hash + NEXT_LINE);
+                } else {
+                    plains.append(p);
                 }
             }
         }
 
         return plains.toString();
     }
+
+    /**
+     * Gera o texto de um plano, sem o rótulo. Os planos padrão de kqml são ignorados.
+     *
+     * @param plan Plano.
+     * @return Texto do plano (vazio se o plano é ignorado).
+     */
+    private String generatePlan(Plan plan) {
+        StringBuilder plain = new StringBuilder();
+        String p = plan.toASString();
+        if (!p.startsWith(KQML_PREFIX)) {
+            String[] planName = p.split(INITIAL_PLANS_SYMBOL_REGEX);
+            if (planName.length > 1) {
+                plain.append(INITIAL_PLANS_SYMBOL + planName[1] + NEXT_LINE);
+            }
+
+            String[] contingencyPlanName = p.split(INITIAL_CONTINGENCY_PLANS_SYMBOL_REGEX);
+            if (contingencyPlanName.length > 1) {
+                plain.append(INITIAL_CONTINGENCY_PLANS_SYMBOL + contingencyPlanName[1] + NEXT_LINE);
+            }
+        }
+        return plain.toString();
+    }
 }
@@ -26,6 +26,7 @@ import br.pro.turing.javino.Javino;
 import jason.JasonException;
 import jason.asSemantics.ActionExec;
 import jason.asSemantics.Message;
+import jason.asSemantics.PerceptDelta;
 import jason.asSemantics.TransitionSystem;
 import jason.asSyntax.Literal;
 import jason.infra.centralised.CentralisedAgArch;
@@ -228,6 +229,20 @@ public class AgArch implements AgArchInfraTier, Comparable<AgArch> {
         }
     }
 
+    /**
+     * Gets the changes in the agent's perception since the last perception,
+     * for perception sources that know what changed. It returns null if
+     * the changes are not known, the perception is then obtained by
+     * {@link #perceive()}.
+     */
+    public PerceptDelta perceiveDelta() {
+        if (successor == null) {
+            return null;
+        } else {
+            return successor.perceiveDelta();
+        }
+    }
+
     /**
      * Reads the agent's mailbox and adds messages into the agent's circumstance
      */
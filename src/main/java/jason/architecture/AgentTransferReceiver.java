@@ -0,0 +1,130 @@
+package jason.architecture;
+
+import jason.AgentChunk;
+import jason.AgentChunkAck;
+import jason.AslTransferenceModel;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Montagem incremental dos agentes recebidos em partes ({@link AgentChunk}).
+ *
+ * <p>
+ * As partes podem chegar fora de ordem ou repetidas; partes com checksum inválido são descartadas e serão reenviadas
+ * pelo remetente. Cada agente é entregue assim que todas as suas partes chegam, sem esperar pelos demais agentes da
+ * transferência, e apenas uma vez: partes que chegam depois de o agente estar completo são ignoradas.
+ */
+public class AgentTransferReceiver {
+
+    /** Quantidade máxima de partes de uma transferência (limita a memória alocada para os dados do remetente). */
+    public static final int MAX_PARTS = 1 << 16;
+
+    /** Nomes dos agentes esperados na transferência. */
+    private final Set<String> expectedAgents;
+
+    private String transferId;
+
+    /** Números de sequência das partes já recebidas. */
+    private final BitSet received = new BitSet();
+
+    /** Partes recebidas de cada agente ainda incompleto. */
+    private final Map<String, AgentChunk[]> parts = new HashMap<String, AgentChunk[]>();
+
+    /** Quantidade de partes que ainda faltam de cada agente incompleto. */
+    private final Map<String, Integer> missingParts = new HashMap<String, Integer>();
+
+    private final Set<String> completedAgents = new HashSet<String>();
+
+    public AgentTransferReceiver(List<String> expectedAgents) {
+        this.expectedAgents = new HashSet<String>(expectedAgents);
+    }
+
+    /**
+     * Registra uma parte recebida.
+     *
+     * @param chunk Parte recebida.
+     * @return O agente completo, caso esta seja a última parte que faltava dele, ou null.
+     * @throws IOException Caso o identificador, a sequência, o índice ou a quantidade de partes sejam inválidos.
+     */
+    public synchronized AslTransferenceModel receive(AgentChunk chunk) throws IOException {
+        validate(chunk);
+        if (this.transferId == null) {
+            this.transferId = chunk.getTransferId();
+        }
+        if (!this.transferId.equals(chunk.getTransferId()) || !this.expectedAgents.contains(chunk.getName())
+                || this.received.get(chunk.getSequence()) || !chunk.isValid()) {
+            return null;
+        }
+        String name = chunk.getName();
+        if (this.completedAgents.contains(name)) {
+            // Parte nova de um agente já entregue: não inicia uma segunda montagem do mesmo agente.
+            return null;
+        }
+        AgentChunk[] agentParts = this.parts.get(name);
+        if (agentParts == null) {
+            agentParts = new AgentChunk[chunk.getCount()];
+            this.parts.put(name, agentParts);
+            this.missingParts.put(name, chunk.getCount());
+        } else if (agentParts.length != chunk.getCount() || agentParts[chunk.getIndex()] != null) {
+            // Quantidade divergente ou índice já recebido com outra sequência.
+            return null;
+        }
+        this.received.set(chunk.getSequence());
+        agentParts[chunk.getIndex()] = chunk;
+        int missing = this.missingParts.get(name) - 1;
+        if (missing > 0) {
+            this.missingParts.put(name, missing);
+            return null;
+        }
+
+        this.parts.remove(name);
+        this.missingParts.remove(name);
+        this.completedAgents.add(name);
+        return new AslTransferenceModel(name, concat(agentParts), chunk.getAgentArchClass());
+    }
+
+    /** Confirmação cumulativa das partes recebidas até agora. */
+    public synchronized AgentChunkAck getAck() {
+        return new AgentChunkAck(this.transferId, this.received.nextClearBit(0));
+    }
+
+    /** Verifica se todos os agentes esperados já foram recebidos por completo. */
+    public synchronized boolean isComplete() {
+        return this.completedAgents.containsAll(this.expectedAgents);
+    }
+
+    private static void validate(AgentChunk chunk) throws IOException {
+        if (chunk.getTransferId() == null) {
+            throw new IOException("Agent chunk without transfer id");
+        }
+        if (chunk.getSequence() < 0 || chunk.getSequence() >= MAX_PARTS) {
+            throw new IOException("Invalid agent chunk sequence: " + chunk.getSequence());
+        }
+        if (chunk.getCount() <= 0 || chunk.getCount() > MAX_PARTS) {
+            throw new IOException("Invalid agent chunk count: " + chunk.getCount());
+        }
+        if (chunk.getIndex() < 0 || chunk.getIndex() >= chunk.getCount()) {
+            throw new IOException("Invalid agent chunk index: " + chunk.getIndex() + " of " + chunk.getCount());
+        }
+    }
+
+    private static byte[] concat(AgentChunk[] parts) {
+        int size = 0;
+        for (AgentChunk part : parts) {
+            size += part.getLength();
+        }
+        byte[] content = new byte[size];
+        int position = 0;
+        for (AgentChunk part : parts) {
+            part.copyData(content, position);
+            position += part.getLength();
+        }
+        return content;
+    }
+}
@@ -0,0 +1,193 @@
+package jason.architecture;
+
+import jason.AgentChunk;
+import jason.AgentChunkAck;
+import jason.AslTransferenceModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envio dos agentes de uma transferência em partes ({@link AgentChunk}) de tamanho limitado.
+ *
+ * <p>
+ * No máximo {@link #WINDOW_SIZE} partes ficam sem confirmação ao mesmo tempo. Cada confirmação
+ * ({@link AgentChunkAck}) desliza a janela; se nenhuma confirmação nova chegar em {@link #RETRANSMISSION_TIMEOUT_MS},
+ * o envio recomeça a partir da primeira parte não confirmada, retomando a transferência após a perda de pacotes.
+ */
+public class AgentTransferSender {
+
+    /** Tamanho máximo, em bytes, do conteúdo de cada parte. */
+    public static final int CHUNK_SIZE = 8 * 1024;
+
+    /** Quantidade máxima de partes enviadas e ainda não confirmadas. */
+    public static final int WINDOW_SIZE = 16;
+
+    /** Tempo de espera por uma confirmação antes de reenviar as partes não confirmadas. */
+    public static final long RETRANSMISSION_TIMEOUT_MS = 1000;
+
+    /** Quantidade de reenvios seguidos sem progresso antes de abortar a transferência. */
+    public static final int MAX_RETRANSMISSIONS = 10;
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "agent-transfer-timer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private final CommMiddleware middleware;
+
+    private final TransferSession session;
+
+    private final UUID recipient;
+
+    private final String transferId;
+
+    private final List<AgentChunk> chunks;
+
+    /** Primeira parte não confirmada. */
+    private int base = 0;
+
+    /** Próxima parte a ser enviada. */
+    private int next = 0;
+
+    private int retransmissions = 0;
+
+    private boolean finished = false;
+
+    private ScheduledFuture<?> timeout;
+
+    /** Início do envio, em {@link System#nanoTime()}. */
+    private long startTime;
+
+    /**
+     * Construtor.
+     *
+     * @param middleware Middleware usado no envio.
+     * @param session Sessão da transferência; o seu id identifica as partes enviadas.
+     * @param agents Agentes a serem enviados.
+     */
+    public AgentTransferSender(CommMiddleware middleware, TransferSession session, List<AslTransferenceModel> agents) {
+        this.middleware = middleware;
+        this.session = session;
+        this.recipient = session.getPeer();
+        this.transferId = session.getId();
+        this.chunks = split(this.transferId, agents, CHUNK_SIZE);
+    }
+
+    /**
+     * Divide o conteúdo dos agentes em partes de no máximo <i>chunkSize</i> bytes, numeradas em sequência.
+     */
+    public static List<AgentChunk> split(String transferId, List<AslTransferenceModel> agents, int chunkSize) {
+        List<AgentChunk> chunks = new ArrayList<AgentChunk>();
+        for (AslTransferenceModel agent : agents) {
+            byte[] content = agent.getFileContent();
+            int count = Math.max(1, (content.length + chunkSize - 1) / chunkSize);
+            for (int index = 0; index < count; index++) {
+                int from = index * chunkSize;
+                int to = Math.min(content.length, from + chunkSize);
+                chunks.add(new AgentChunk(transferId, chunks.size(), agent.getName(), agent.getAgentArchClass(),
+                        index, count, content, from, to - from));
+            }
+        }
+        return chunks;
+    }
+
+    public String getTransferId() {
+        return this.transferId;
+    }
+
+    /** Inicia o envio das partes. */
+    public synchronized void start() {
+        this.startTime = System.nanoTime();
+        this.sendWindow();
+    }
+
+    /**
+     * Trata a confirmação de recebimento enviada pelo destinatário.
+     *
+     * @param ack Confirmação cumulativa.
+     */
+    public synchronized void acknowledge(AgentChunkAck ack) {
+        if (this.finished || !this.transferId.equals(ack.getTransferId()) || ack.getNextSequence() <= this.base) {
+            return;
+        }
+        this.base = Math.min(ack.getNextSequence(), this.chunks.size());
+        this.next = Math.max(this.next, this.base);
+        this.retransmissions = 0;
+        this.session.touch();
+        if (this.base == this.chunks.size()) {
+            this.finish();
+            this.session.getMetrics().record(TransferMetrics.Phase.TRANSMISSION, this.startTime,
+                    System.nanoTime());
+            System.out.println("[COMMUNICATOR]: " + this.chunks.size() + " chunk(s) of the transfer " + this.transferId
+                    + " acknowledged.");
+        } else {
+            this.sendWindow();
+        }
+    }
+
+    /** Percentual das partes já confirmadas pelo destinatário. */
+    public synchronized int getProgress() {
+        return this.chunks.isEmpty() ? 100 : this.base * 100 / this.chunks.size();
+    }
+
+    public synchronized boolean isFinished() {
+        return this.finished;
+    }
+
+    /** Interrompe a transferência. */
+    public synchronized void cancel() {
+        this.finish();
+    }
+
+    private void sendWindow() {
+        while (this.next < this.chunks.size() && this.next < this.base + WINDOW_SIZE) {
+            this.middleware.sendContent(this.recipient, TransferCodec.encode(this.chunks.get(this.next)));
+            this.next++;
+        }
+        this.scheduleTimeout();
+    }
+
+    private void scheduleTimeout() {
+        if (this.timeout != null) {
+            this.timeout.cancel(false);
+        }
+        this.timeout = timer.schedule(new Runnable() {
+            public void run() {
+                onTimeout();
+            }
+        }, RETRANSMISSION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void onTimeout() {
+        if (this.finished) {
+            return;
+        }
+        if (++this.retransmissions > MAX_RETRANSMISSIONS) {
+            this.finish();
+            System.err.println("[ERRO]: A transferência " + this.transferId + " foi abortada após "
+                    + MAX_RETRANSMISSIONS + " reenvios sem confirmação (" + this.getProgress() + "% confirmado).");
+            return;
+        }
+        // Retoma a partir da primeira parte não confirmada.
+        this.next = this.base;
+        this.sendWindow();
+    }
+
+    private void finish() {
+        this.finished = true;
+        if (this.timeout != null) {
+            this.timeout.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package jason.architecture;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Formato binário das mensagens do comunicador: os bytes <code>0xff 0xfe</code>, a versão do formato e, para cada
+ * campo, o seu tamanho em bytes como varint (7 bits por byte, o bit mais significativo indica continuação) seguido do
+ * texto em UTF-8. Não há limite para o tamanho dos campos.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+
+    /** Preâmbulo das mensagens binárias do comunicador. */
+    private static final byte[] COMMUNICATOR_PREAMBLE = {(byte) 0xff, (byte) 0xfe};
+
+    /** Versão do formato. */
+    private static final byte VERSION = 1;
+
+    private static final int HEADER_SIZE = COMMUNICATOR_PREAMBLE.length + 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public Serializable encode(List<String> fields) {
+        byte[][] values = new byte[fields.size()][];
+        int size = HEADER_SIZE;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = fields.get(i).getBytes(UTF8);
+            size += varintSize(values[i].length) + values[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(COMMUNICATOR_PREAMBLE);
+        buffer.put(VERSION);
+        for (byte[] value : values) {
+            writeVarint(buffer, value.length);
+            buffer.put(value);
+        }
+        return buffer.array();
+    }
+
+    public boolean accepts(Object content) {
+        return content instanceof byte[];
+    }
+
+    public List<String> decode(Object content) {
+        ByteBuffer buffer = ByteBuffer.wrap((byte[]) content);
+        if (buffer.remaining() < HEADER_SIZE || buffer.get() != COMMUNICATOR_PREAMBLE[0]
+                || buffer.get() != COMMUNICATOR_PREAMBLE[1] || buffer.get() != VERSION) {
+            return null;
+        }
+
+        List<String> fields = new ArrayList<String>();
+        while (buffer.hasRemaining()) {
+            int length = readVarint(buffer);
+            if (length < 0 || length > buffer.remaining()) {
+                return null;
+            }
+            fields.add(new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF8));
+            buffer.position(buffer.position() + length);
+        }
+        return fields;
+    }
+
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static void writeVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /** Lê um varint do buffer, retornando -1 caso ele esteja truncado ou não caiba em um int. */
+    static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,7 +1,11 @@
 package jason.architecture;
 
+import jason.AgentChunk;
+import jason.AgentChunkAck;
 import jason.AslFileGenerator;
 import jason.AslTransferenceModel;
+import jason.asSemantics.Agent;
+import jason.asSemantics.ContentIndex;
 import jason.asSyntax.Term;
 import jason.infra.centralised.CentralisedAgArch;
 import jason.infra.centralised.RunCentralisedMAS;
@@ -13,12 +17,30 @@ import lac.cnclib.sddl.message.Message;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CommMiddleware implements NodeConnectionListener {
 
@@ -26,32 +48,121 @@ public class CommMiddleware implements NodeConnectionListener {
 
     private String agName = "";
 
-    private ArrayList<jason.asSemantics.Message> jMsg = new ArrayList<jason.asSemantics.Message>();
+    /** Arquitetura do agente comunicador, acordada sempre que algo chega pela ContextNet. */
+    private AgArch agArch;
 
-    private String answerToSendAboutTransfer;
+    private final RemoteMailbox jMsg;
 
-    private String replySentAboutTransfer;
+    /** Transferências em andamento, enviadas ou recebidas, pelo id da sessão. */
+    private final ConcurrentMap<String, TransferSession> sessions = new ConcurrentHashMap<String, TransferSession>();
 
-    private List<String> nameAgents;
+    /** Tempo sem atividade, em milissegundos, após o qual uma transferência é abandonada. */
+    private long sessionTimeout = TransferSession.DEFAULT_TIMEOUT_MS;
 
-    private List<AslTransferenceModel> agentsReceived;
+    private ScheduledFuture<?> sessionCleanup;
 
-    private String protocol;
+    private String myUUID;
 
-    private UUID senderUUID;
+    /** Codificador usado no envio das mensagens. */
+    private MessageCodec codec = new BinaryMessageCodec();
 
-    private String myUUID;
+    /** Codificadores aceitos no recebimento, para que SMA com formatos distintos continuem se comunicando. */
+    private final List<MessageCodec> receiveCodecs = new ArrayList<MessageCodec>(
+            Arrays.asList(new BinaryMessageCodec(), new LegacyHexMessageCodec()));
 
-    private static final String EMPTY_VALUE = "";
+    /** Indica se os agentes são enviados como snapshot binário (true) ou como código .asl regenerado (false). */
+    private boolean sendSnapshots = true;
 
-    private static final String AGENT_FILE_EXTENSION = ".asl";
+    /** Indica se este SMA anuncia os planos e crenças que já tem, para receber apenas o que falta dos agentes. */
+    private boolean deltaTransfers = true;
+
+    /** Compressão do conteúdo dos agentes e das mensagens enviados por este SMA. */
+    private PayloadCompression compression = new PayloadCompression(PayloadCompression.Method.NONE);
+
+    /** Indica se os agentes recebidos também devem ser gravados em arquivos .asl. */
+    private boolean persistAgents = true;
+
+    /** Grava os arquivos .asl dos agentes recebidos fora da thread do MR-UDP. */
+    private static final ExecutorService fileWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "asl-file-writer");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /** Quantidade de threads usadas para comprimir e instanciar os agentes de uma transferência em paralelo. */
+    public static final int TRANSFER_WORKERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Threads que comprimem o conteúdo dos agentes enviados (e capturam os que não estão executando) e instanciam os
+     * agentes recebidos.
+     */
+    private static final ExecutorService transferWorkers = Executors.newFixedThreadPool(TRANSFER_WORKERS,
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "agent-transfer-worker-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /**
+     * Tempo máximo, em milissegundos, de espera pelo início do próximo ciclo de raciocínio de um agente enviado para
+     * que o seu conteúdo seja gerado.
+     */
+    public static final long SNAPSHOT_TIMEOUT_MS = 10000;
+
+    /** Remove periodicamente as transferências abandonadas. */
+    private static final ScheduledExecutorService sessionTimer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "transfer-session-cleanup");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /** Intervalo, em milissegundos, entre as verificações de transferências abandonadas. */
+    private static final long SESSION_CLEANUP_INTERVAL_MS = 5000;
+
+    /** Prefixo do campo que leva o id da sessão nas mensagens de controle da transferência. */
+    public static final String SESSION_FIELD_PREFIX = "#session=";
+
+    /** Prefixo do campo da resposta CAN_TRANSFER com os hashes dos planos que o destino já tem. */
+    public static final String KNOWN_PLANS_FIELD_PREFIX = "#plans=";
+
+    /** Prefixo do campo do pedido de transferência com o dicionário de compressão dos agentes. */
+    public static final String DICTIONARY_FIELD_PREFIX = "#dict=";
+
+    /** Início dos campos do pedido de transferência que não são nomes de agentes. */
+    private static final String FIELD_PREFIX = "#";
+
+    /** Prefixo do campo da resposta CAN_TRANSFER com os hashes das crenças que o destino já tem. */
+    public static final String KNOWN_BELIEFS_FIELD_PREFIX = "#beliefs=";
+
+    /**
+     * Quantidade máxima de hashes de planos (e de crenças) anunciados em uma transferência. Com hashes de 16
+     * caracteres, cada campo fica com cerca de 4 KB, e a resposta CAN_TRANSFER com o tamanho de uma parte de agente
+     * ({@link AgentTransferSender#CHUNK_SIZE}).
+     */
+    public static final int MAX_ADVERTISED_HASHES = 256;
 
-    private static final String COMMUNICATOR_PREAMBLE = "fffe";
+    private static final String HASH_SEPARATOR = ",";
 
-    private static final String COMMUNICATOR_SIZE_MESSAGE_DEFINITION = "ss";
+    private static final String EMPTY_VALUE = "";
+
+    private static final String AGENT_FILE_EXTENSION = ".asl";
 
     public CommMiddleware(String gatewayIP, int gatewayPort, String myUUID) {
+        this(gatewayIP, gatewayPort, myUUID, new RemoteMailbox());
+    }
+
+    public CommMiddleware(String gatewayIP, int gatewayPort, String myUUID, RemoteMailbox mailbox) {
         this.myUUID = myUUID;
+        this.jMsg = mailbox;
         UUID uuid = UUID.fromString(myUUID);
         InetSocketAddress address = new InetSocketAddress(gatewayIP, gatewayPort);
         try {
@@ -61,6 +172,11 @@ public class CommMiddleware implements NodeConnectionListener {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        this.sessionCleanup = sessionTimer.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                removeExpiredSessions();
+            }
+        }, SESSION_CLEANUP_INTERVAL_MS, SESSION_CLEANUP_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
 
     public String getAgName() {
@@ -71,26 +187,130 @@ public class CommMiddleware implements NodeConnectionListener {
         this.agName = agName;
     }
 
-    public List<AslTransferenceModel> getAgentsReceived() {
-        return this.agentsReceived;
+    public boolean isSendSnapshots() {
+        return this.sendSnapshots;
+    }
+
+    /**
+     * Define o formato dos agentes enviados. O snapshot preserva intenções, eventos e mensagens do agente; o código
+     * .asl regenerado preserva apenas crenças, objetivos iniciais e planos, mas pode ser lido por versões antigas.
+     *
+     * @param sendSnapshots true para enviar snapshots binários.
+     */
+    public void setSendSnapshots(boolean sendSnapshots) {
+        this.sendSnapshots = sendSnapshots;
+    }
+
+    public boolean isDeltaTransfers() {
+        return this.deltaTransfers;
+    }
+
+    /**
+     * Define se, ao aceitar uma transferência, este SMA anuncia os hashes dos planos e crenças dos seus agentes. A
+     * origem então envia somente os planos e crenças que faltam, o que reduz o tamanho da transferência quando os
+     * dois SMA foram criados a partir dos mesmos arquivos .asl.
+     *
+     * @param deltaTransfers true para anunciar os planos e crenças.
+     */
+    public void setDeltaTransfers(boolean deltaTransfers) {
+        this.deltaTransfers = deltaTransfers;
+    }
+
+    public PayloadCompression getCompression() {
+        return this.compression;
+    }
+
+    /**
+     * Define a compressão do conteúdo dos agentes e das mensagens enviados. Conteúdos recebidos são descomprimidos
+     * de acordo com o método indicado neles, independentemente desta configuração.
+     *
+     * @param compression Método e tamanho mínimo dos conteúdos comprimidos.
+     */
+    public void setCompression(PayloadCompression compression) {
+        this.compression = compression;
+    }
+
+    public boolean isPersistAgents() {
+        return this.persistAgents;
+    }
+
+    /**
+     * Define se os agentes recebidos também são gravados em arquivos .asl. Os agentes são criados a partir do
+     * conteúdo recebido em memória, então a gravação é feita em segundo plano e pode ser desligada.
+     *
+     * @param persistAgents true para gravar os arquivos .asl.
+     */
+    public void setPersistAgents(boolean persistAgents) {
+        this.persistAgents = persistAgents;
+    }
+
+    /** Threads compartilhadas pelas etapas paralelas das transferências de agentes. */
+    public static ExecutorService getTransferWorkers() {
+        return transferWorkers;
+    }
+
+    public long getSessionTimeout() {
+        return this.sessionTimeout;
+    }
+
+    /**
+     * Define o tempo sem nenhuma mensagem após o qual uma transferência é considerada abandonada e removida.
+     *
+     * @param sessionTimeout Tempo em milissegundos.
+     */
+    public void setSessionTimeout(long sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    public void setAgArch(AgArch agArch) {
+        this.agArch = agArch;
     }
 
-    public String getProtocol() {
-        return this.protocol;
+    public RemoteMailbox getMailbox() {
+        return this.jMsg;
     }
 
-    public UUID getSenderUUID() {
-        return this.senderUUID;
+    public TransferSession getSession(String id) {
+        return this.sessions.get(id);
     }
 
-    public List<String> getNameAgents() {
-        return this.nameAgents;
+    /**
+     * Retorna as transferências em andamento com o papel e o estado informados.
+     *
+     * @param role Papel deste SMA.
+     * @param state Estado das sessões (null para qualquer estado).
+     */
+    public List<TransferSession> getSessions(TransferSession.Role role, TransferSession.State state) {
+        List<TransferSession> result = new ArrayList<TransferSession>();
+        for (TransferSession session : this.sessions.values()) {
+            if (session.getRole() == role && (state == null || session.getState() == state)) {
+                result.add(session);
+            }
+        }
+        return result;
     }
 
     public String getMyUUID() {
         return this.myUUID;
     }
 
+    public MessageCodec getCodec() {
+        return this.codec;
+    }
+
+    /**
+     * Define o codificador usado no envio das mensagens. Mensagens recebidas continuam sendo aceitas em qualquer um
+     * dos formatos conhecidos.
+     *
+     * @param codec Codificador das mensagens.
+     */
+    public void setCodec(MessageCodec codec) {
+        this.codec = codec;
+        if (!this.receiveCodecs.contains(codec)) {
+            this.receiveCodecs.add(0, codec);
+        }
+    }
+
     public void connected(NodeConnection arg0) {
         ApplicationMessage message = new ApplicationMessage();
         message.setContentObject("Registering");
@@ -108,6 +328,9 @@ public class CommMiddleware implements NodeConnectionListener {
     }
 
     public void disconnect() {
+        if (this.sessionCleanup != null) {
+            this.sessionCleanup.cancel(false);
+        }
         if (this.connection != null) {
             try {
                 this.connection.disconnect();
@@ -128,97 +351,322 @@ public class CommMiddleware implements NodeConnectionListener {
      * Jason.
      */
     public void newMessageReceived(NodeConnection remoteCon, Message message) {
-        if (message.getContentObject() instanceof String) {
-            this.extractMessageFromContextNet(message.getContentObject().toString().toCharArray());
-
-            // Verifica se há algo relacionado à transferência de agentes para responder a quem enviou a solicitação
-            // de transferência de agentes.
-            if (this.answerToSendAboutTransfer != null && !this.answerToSendAboutTransfer.equals(EMPTY_VALUE)
-                    && this.answerToSendAboutTransfer.equals(TransportAgentMessageType.CAN_TRANSFER.getName())) {
-                ApplicationMessage appMessage = new ApplicationMessage();
-                appMessage.setContentObject(prepareToSend(this.answerToSendAboutTransfer));
-                appMessage.setRecipientID(message.getSenderID());
-                try {
-                    this.connection.sendMessage(appMessage);
-                } catch (IOException e) {
-                    e.printStackTrace();
+        Object content = message.getContentObject();
+        if (content instanceof byte[] && PayloadCompression.isCompressed((byte[]) content)) {
+            try {
+                content = PayloadCompression.decompress((byte[]) content, null, null);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        MessageCodec decoder = this.codecFor(content);
+        if (TransferCodec.accepts(content)) {
+            // Partes e confirmações só são aceitas no formato de TransferCodec, nunca como objetos serializados.
+            this.receiveTransferMessage(TransferCodec.decode((byte[]) content), message.getSenderID());
+        } else if (decoder != null) {
+            this.extractMessageFromContextNet(decoder.decode(content), message.getSenderID(), decoder);
+        } else if (content instanceof List) {
+            // Recebi os agentes de uma só vez (remetente sem envio em partes nem sessões).
+            this.receiveAllAgents((List<AslTransferenceModel>) content, message.getSenderID());
+        } else {
+            System.err.println("Error: Getting the object content in the ContextNet communication");
+        }
+        //System.out.println("[ARGO]: A Message has arrived: " + message.getContentObject().toString());
+        this.wakeAgent();
+    }
+
+    /**
+     * Trata uma mensagem decodificada por {@link TransferCodec}: uma parte de agente ou uma confirmação de partes.
+     *
+     * @param content Resultado de {@link TransferCodec#decode(byte[])}; null se a mensagem é malformada.
+     * @param sender Remetente da mensagem.
+     */
+    private void receiveTransferMessage(Object content, UUID sender) {
+        if (content instanceof AgentChunk) {
+            this.receiveAgentChunk((AgentChunk) content, sender);
+        } else if (content instanceof AgentChunkAck) {
+            AgentChunkAck ack = (AgentChunkAck) content;
+            TransferSession session = this.sessions.get(ack.getTransferId());
+            if (session != null && session.getSender() != null) {
+                session.getSender().acknowledge(ack);
+            }
+        } else {
+            System.err.println("[COMMUNICATOR]: Malformed transfer message received from " + sender);
+        }
+    }
+
+    /**
+     * Atende ao pedido de transferência aceito pelo destino: gera o conteúdo dos agentes e inicia o envio em partes.
+     * Chamado pela thread do MR-UDP, retorna sem esperar pelos agentes (veja {@link ContentGeneration}).
+     *
+     * @param session Sessão da transferência (origem).
+     * @param knownPlans Hashes dos planos que o destino já tem.
+     * @param knownBeliefs Hashes das crenças que o destino já tem.
+     */
+    private void startSending(TransferSession session, Set<String> knownPlans, Set<String> knownBeliefs) {
+        List<CentralisedAgArch> agentsToSend = new ArrayList<CentralisedAgArch>();
+        for (CentralisedAgArch centralisedAgArch : RunCentralisedMAS.getRunner().getAgs().values()) {
+            if (session.getNameAgents().contains(centralisedAgArch.getAgName())) {
+                agentsToSend.add(centralisedAgArch);
+            }
+        }
+        new ContentGeneration(session, agentsToSend, knownPlans, knownBeliefs).start();
+    }
+
+    /**
+     * Gera o conteúdo (snapshot ou código .asl) dos agentes de uma transferência sem bloquear a thread que a inicia.
+     *
+     * <p>
+     * Cada agente gera o seu conteúdo na própria thread, no início do seu próximo ciclo de raciocínio, para que as
+     * crenças, os planos e a circunstância não mudem enquanto são lidos; um agente que não está executando é
+     * capturado por {@link #getTransferWorkers()}. O conteúdo gerado é comprimido por essas mesmas threads, e a
+     * última compressão inicia o envio em partes. Nenhuma thread espera por outra: um agente que não inicia um ciclo
+     * em {@link #SNAPSHOT_TIMEOUT_MS} tem a captura cancelada por {@link #sessionTimer} e não é enviado, o que
+     * encerra a transferência.
+     */
+    private final class ContentGeneration {
+
+        private final TransferSession session;
+
+        private final List<CentralisedAgArch> agents;
+
+        private final Set<String> knownPlans;
+
+        private final Set<String> knownBeliefs;
+
+        /** Conteúdo comprimido de cada agente (null se não foi gerado). */
+        private final AslTransferenceModel[] contents;
+
+        /** Agentes cujo conteúdo ainda não foi gerado e comprimido. */
+        private final AtomicInteger pending;
+
+        ContentGeneration(TransferSession session, List<CentralisedAgArch> agents, Set<String> knownPlans,
+                          Set<String> knownBeliefs) {
+            this.session = session;
+            this.agents = agents;
+            this.knownPlans = knownPlans;
+            this.knownBeliefs = knownBeliefs;
+            this.contents = new AslTransferenceModel[agents.size()];
+            this.pending = new AtomicInteger(agents.size());
+        }
+
+        void start() {
+            if (this.agents.isEmpty()) {
+                this.finish();
+                return;
+            }
+            final List<FutureTask<AslTransferenceModel>> captures = new ArrayList<FutureTask<AslTransferenceModel>>();
+            for (int i = 0; i < this.agents.size(); i++) {
+                captures.add(this.capture(i));
+            }
+            for (int i = 0; i < this.agents.size(); i++) {
+                CentralisedAgArch centralisedAgArch = this.agents.get(i);
+                if (centralisedAgArch.isRunning()) {
+                    centralisedAgArch.getTS().runAtBeginOfNextCycle(captures.get(i));
+                } else {
+                    transferWorkers.execute(captures.get(i));
                 }
             }
-            if (this.replySentAboutTransfer != null && !this.replySentAboutTransfer.equals(EMPTY_VALUE)
-                    && this.replySentAboutTransfer.equals(TransportAgentMessageType.CAN_TRANSFER.getName())) {
-                Map<String, CentralisedAgArch> agentsOfTheSMA = RunCentralisedMAS.getRunner().getAgs();
-                ArrayList<AslTransferenceModel> aslTransferenceModelList = new ArrayList<AslTransferenceModel>();
-                int qtdAgents = 0;
-                for (CentralisedAgArch centralisedAgArch : agentsOfTheSMA.values()) {
-                    if (this.nameAgents.contains(centralisedAgArch.getAgName())) {
-                        AslFileGenerator aslFileGenerator = new AslFileGenerator();
-                        AslTransferenceModel aslTransferenceModel = aslFileGenerator.generateAslContent(
-                                centralisedAgArch.getUserAgArch());
-                        aslTransferenceModelList.add(aslTransferenceModel);
-                        qtdAgents++;
+            sessionTimer.schedule(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < captures.size(); i++) {
+                        if (captures.get(i).cancel(false)) {
+                            System.err.println("[COMMUNICATOR]: The agent " + agents.get(i).getAgName() + " did not "
+                                    + "start a reasoning cycle in " + SNAPSHOT_TIMEOUT_MS + " ms, its content was not "
+                                    + "generated");
+                        }
                     }
                 }
+            }, SNAPSHOT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
 
-                // Verificando se a quantidade de agentes está de acordo com o que se deseja enviar.
-                if (qtdAgents == this.nameAgents.size()) {
-                    ApplicationMessage appMessage = new ApplicationMessage();
-                    appMessage.setContentObject(aslTransferenceModelList);
-                    appMessage.setRecipientID(message.getSenderID());
+        /** Captura do agente <i>i</i>, que ao terminar (ou ser cancelada) passa o conteúdo para a compressão. */
+        private FutureTask<AslTransferenceModel> capture(final int i) {
+            final CentralisedAgArch centralisedAgArch = this.agents.get(i);
+            return new FutureTask<AslTransferenceModel>(new Callable<AslTransferenceModel>() {
+                public AslTransferenceModel call() {
+                    long start = System.nanoTime();
+                    AslFileGenerator aslFileGenerator = new AslFileGenerator();
+                    AslTransferenceModel aslTransferenceModel = sendSnapshots
+                            ? aslFileGenerator.generateSnapshotContent(centralisedAgArch.getUserAgArch(),
+                                    knownPlans, knownBeliefs)
+                            : aslFileGenerator.generateAslContent(centralisedAgArch.getUserAgArch(),
+                                    knownPlans, knownBeliefs);
+                    session.getMetrics().record(TransferMetrics.Phase.SNAPSHOT, start, System.nanoTime());
+                    return aslTransferenceModel;
+                }
+            }) {
+                @Override
+                protected void done() {
+                    if (this.isCancelled()) {
+                        agentDone(i, null);
+                        return;
+                    }
                     try {
-                        this.connection.sendMessage(appMessage);
-                    } catch (IOException e) {
+                        compress(i, this.get());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        agentDone(i, null);
+                    } catch (ExecutionException e) {
                         e.printStackTrace();
+                        agentDone(i, null);
                     }
-                } else {
-                    System.err.println("[ERRO]: Não é possível realizar a transferência porque a quantidade de "
-                            + "agentes esperados para envio não foi satisfeita.");
                 }
+            };
+        }
+
+        private void compress(final int i, final AslTransferenceModel aslTransferenceModel) {
+            if (aslTransferenceModel == null) {
+                this.agentDone(i, null);
+                return;
             }
-            if (this.replySentAboutTransfer != null && !this.replySentAboutTransfer.equals(EMPTY_VALUE)
-                    && this.replySentAboutTransfer.equals(TransportAgentMessageType.CAN_KILL.getName())) {
-                //Deletar os arquivos ASL
-                Map<String, CentralisedAgArch> agentsOfTheSMA = RunCentralisedMAS.getRunner().getAgs();
-                for (CentralisedAgArch centralisedAgArch : agentsOfTheSMA.values()) {
-                    if (this.nameAgents.contains(centralisedAgArch.getAgName())) {
-                        String path = centralisedAgArch.getTS().getAg().getASLSrc();
-                        File file = new File(path);
-                        this.deleteFileAsl(file);
-                    }
+            transferWorkers.execute(new Runnable() {
+                public void run() {
+                    agentDone(i, new AslTransferenceModel(aslTransferenceModel.getName(), compression.compress(
+                            aslTransferenceModel.getFileContent(), session.getDictionary(), session.getMetrics()),
+                            aslTransferenceModel.getAgentArchClass()));
                 }
+            });
+        }
+
+        private void agentDone(int i, AslTransferenceModel content) {
+            this.contents[i] = content;
+            if (this.pending.decrementAndGet() == 0) {
+                this.finish();
             }
-        } else if (message.getContentObject() instanceof ArrayList) {
-            // Recebi os agentes
-            AslFileGenerator aslFileGenerator = new AslFileGenerator();
-            ArrayList<AslTransferenceModel> aslTransferenceModelArrayList = (ArrayList<AslTransferenceModel>) message
-                    .getContentObject();
-            int qtdAgentsReceived = 0;
-            for (AslTransferenceModel aslTransferenceModel : aslTransferenceModelArrayList) {
-                if (this.nameAgents.contains(aslTransferenceModel.getName())) {
-                    // Descobrindo o path que os agentes devem ser criados.
-                    String path = EMPTY_VALUE;
-                    for (CentralisedAgArch centralisedAgArch : RunCentralisedMAS.getRunner().getAgs().values()) {
-                        path = centralisedAgArch.getTS().getAg().getASLSrc();
-                        path = path.substring(0, path.length() - (centralisedAgArch.getAgName()
-                                + AGENT_FILE_EXTENSION).length());
-                        break;
-                    }
-                    aslFileGenerator.createAslFile(path, aslTransferenceModel);
-                    qtdAgentsReceived++;
+        }
+
+        /** Inicia o envio dos agentes, se o conteúdo de todos foi gerado. */
+        private void finish() {
+            List<AslTransferenceModel> aslTransferenceModelList = new ArrayList<AslTransferenceModel>();
+            for (AslTransferenceModel content : this.contents) {
+                if (content != null) {
+                    aslTransferenceModelList.add(content);
                 }
             }
-
-            if (qtdAgentsReceived == this.nameAgents.size()) {
-                // Todos agentes recebidos com sucesso.
-                this.answerToSendAboutTransfer = TransportAgentMessageType.CAN_KILL.getName();
-                this.senderUUID = message.getSenderID();
-                this.agentsReceived = aslTransferenceModelArrayList;
+            // Verificando se a quantidade de agentes está de acordo com o que se deseja enviar.
+            if (aslTransferenceModelList.size() == this.session.getNameAgents().size()) {
+                // Os agentes são enviados em partes, que o destinatário confirma à medida que recebe.
+                AgentTransferSender transferSender = new AgentTransferSender(CommMiddleware.this, this.session,
+                        aslTransferenceModelList);
+                this.session.setSender(transferSender);
+                this.session.advance(TransferSession.State.PAYLOAD);
+                transferSender.start();
             } else {
-                System.out.println("Qtd: " + qtdAgentsReceived + "\tQtdNames: " + this.nameAgents.size());
+                System.err.println("[ERRO]: Não é possível realizar a transferência " + this.session.getId()
+                        + " porque a quantidade de agentes esperados para envio não foi satisfeita.");
+                closeSession(this.session);
+            }
+        }
+    }
+
+    /**
+     * Trata uma parte de agente recebida, confirmando o recebimento ao remetente. Cada agente fica disponível para
+     * ser instanciado assim que todas as suas partes chegam.
+     *
+     * @param chunk Parte do agente.
+     * @param sender Remetente da parte.
+     */
+    private void receiveAgentChunk(AgentChunk chunk, UUID sender) {
+        TransferSession session = this.sessions.get(chunk.getTransferId());
+        if (session == null) {
+            // Remetente que não usa o id da sessão nas partes.
+            session = this.findSession(TransferSession.Role.TARGET, sender, TransferSession.State.CAN_TRANSFER,
+                    TransferSession.State.PAYLOAD);
+        }
+        if (session == null || session.getRole() != TransferSession.Role.TARGET) {
+            // Nenhuma transferência foi solicitada.
+            return;
+        }
+        if (session.getState() == TransferSession.State.CAN_TRANSFER) {
+            session.advance(TransferSession.State.PAYLOAD);
+        } else if (session.getState() != TransferSession.State.PAYLOAD) {
+            return;
+        }
+        long receptionStart = session.startReception();
+        AgentTransferReceiver transferReceiver = session.getReceiver();
+        AslTransferenceModel aslTransferenceModel;
+        try {
+            aslTransferenceModel = transferReceiver.receive(chunk);
+        } catch (IOException e) {
+            System.err.println("[COMMUNICATOR]: Malformed agent chunk received from " + sender + ": "
+                    + e.getMessage());
+            return;
+        }
+        this.sendContent(sender, TransferCodec.encode(transferReceiver.getAck()));
+        session.touch();
+        if (aslTransferenceModel != null) {
+            session.getMetrics().record(TransferMetrics.Phase.RECEPTION, receptionStart, System.nanoTime());
+            session.addAgentReceived(aslTransferenceModel, transferReceiver.isComplete());
+        }
+    }
+
+    /**
+     * Trata os agentes recebidos de uma só vez, de um remetente sem envio em partes.
+     *
+     * @param aslTransferenceModelList Agentes recebidos.
+     * @param sender Remetente dos agentes.
+     */
+    private void receiveAllAgents(List<AslTransferenceModel> aslTransferenceModelList, UUID sender) {
+        TransferSession session = this.findSession(TransferSession.Role.TARGET, sender,
+                TransferSession.State.CAN_TRANSFER);
+        if (session == null) {
+            System.err.println("[COMMUNICATOR]: Agents received without a transfer request from " + sender);
+            return;
+        }
+        List<AslTransferenceModel> expected = new ArrayList<AslTransferenceModel>();
+        for (AslTransferenceModel aslTransferenceModel : aslTransferenceModelList) {
+            if (session.getNameAgents().contains(aslTransferenceModel.getName())) {
+                expected.add(aslTransferenceModel);
+            }
+        }
+
+        if (expected.size() == session.getNameAgents().size()) {
+            // Todos agentes recebidos com sucesso.
+            session.advance(TransferSession.State.PAYLOAD);
+            for (int i = 0; i < expected.size(); i++) {
+                session.addAgentReceived(expected.get(i), i == expected.size() - 1);
             }
         } else {
-            System.err.println("Error: Getting the object content in the ContextNet communication");
+            System.out.println("Qtd: " + expected.size() + "\tQtdNames: " + session.getNameAgents().size());
+        }
+    }
+
+    /**
+     * Grava em segundo plano o arquivo .asl de um agente recebido, se os agentes recebidos são persistidos.
+     *
+     * @param aslTransferenceModel Agente recebido, com o conteúdo completo (descomprimido e restaurado).
+     */
+    public void createAslFile(final AslTransferenceModel aslTransferenceModel) {
+        if (!this.persistAgents) {
+            return;
+        }
+        // Descobrindo o path que os agentes devem ser criados.
+        String path = EMPTY_VALUE;
+        for (CentralisedAgArch centralisedAgArch : RunCentralisedMAS.getRunner().getAgs().values()) {
+            path = centralisedAgArch.getTS().getAg().getASLSrc();
+            path = path.substring(0, path.length() - (centralisedAgArch.getAgName()
+                    + AGENT_FILE_EXTENSION).length());
+            break;
+        }
+        final String agentsPath = path;
+        fileWriter.execute(new Runnable() {
+            public void run() {
+                new AslFileGenerator().createAslFile(agentsPath, aslTransferenceModel);
+            }
+        });
+    }
+
+    void sendContent(UUID recipient, Serializable content) {
+        ApplicationMessage appMessage = new ApplicationMessage();
+        appMessage.setContentObject(content);
+        appMessage.setRecipientID(recipient);
+        try {
+            this.connection.sendMessage(appMessage);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        //System.out.println("[ARGO]: A Message has arrived: " + message.getContentObject().toString());
     }
 
     public void unsentMessages(NodeConnection arg0, List<Message> arg1) {
@@ -233,23 +681,46 @@ public class CommMiddleware implements NodeConnectionListener {
      */
 
     public void cleanMailBox() {
-        if (this.jMsg.size() > 0) {
-            this.jMsg.remove(0);
-        }
+        this.jMsg.poll();
     }
 
     public boolean hasMsg() {
         //System.out.println("[ARGO]: Messages = " + this.jMsg.size());
-        return this.jMsg != null && this.jMsg.size() > 0;
+        return !this.jMsg.isEmpty();
     }
 
+    /**
+     * Move todas as mensagens recebidas via ContextNet para a caixa de mensagens passada.
+     *
+     * @param mailBox Caixa de mensagens do agente (normalmente a da {@link jason.asSemantics.Circumstance}).
+     * @return Quantidade de mensagens movidas.
+     */
+    public int drainMailBox(Collection<jason.asSemantics.Message> mailBox) {
+        return this.jMsg.drainTo(mailBox);
+    }
+
+    /**
+     * Verifica se alguma transferência recebida tem trabalho para o comunicador: agentes aguardando para serem
+     * instanciados ou a conclusão da transferência.
+     */
     public boolean hasAgentsReceived() {
-        return this.agentsReceived != null && !this.agentsReceived.isEmpty();
+        for (TransferSession session : this.sessions.values()) {
+            if (session.hasWorkToDo()) {
+                return true;
+            }
+        }
+        return false;
     }
 
+    /** Verifica se algum destino já instanciou os agentes enviados, que podem ser eliminados deste SMA. */
     public boolean hasToKillMyAgents() {
-        return this.replySentAboutTransfer != null && this.replySentAboutTransfer.length() > 0
-                && this.replySentAboutTransfer.equals(TransportAgentMessageType.CAN_KILL.getName());
+        for (TransferSession session : this.sessions.values()) {
+            if (session.getRole() == TransferSession.Role.SOURCE
+                    && session.getState() == TransferSession.State.CAN_KILL) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public void deleteFileAsl(File file) {
@@ -258,40 +729,95 @@ public class CommMiddleware implements NodeConnectionListener {
         }
     }
 
-    public void cleanAtributesOfTransference() {
-        this.protocol = "";
-        this.agentsReceived = new ArrayList<AslTransferenceModel>();
-        this.answerToSendAboutTransfer = "";
-        this.replySentAboutTransfer = "";
-        this.nameAgents = new ArrayList<String>();
-        this.protocol = "";
-        this.senderUUID = null;
+    /**
+     * Encerra a transferência, interrompendo o envio das partes que ainda não foram confirmadas.
+     *
+     * @param session Sessão da transferência.
+     */
+    public void closeSession(TransferSession session) {
+        session.advance(TransferSession.State.DONE);
+        if (session.getSender() != null) {
+            session.getSender().cancel();
+        }
+        this.sessions.remove(session.getId(), session);
+    }
+
+    /** Remove as transferências sem atividade há mais de {@link #getSessionTimeout()} milissegundos. */
+    void removeExpiredSessions() {
+        long now = System.currentTimeMillis();
+        for (TransferSession session : this.sessions.values()) {
+            if (session.isExpired(now, this.sessionTimeout)) {
+                System.err.println("[COMMUNICATOR]: Transfer abandoned after " + this.sessionTimeout + " ms without "
+                        + "activity: " + session);
+                this.closeSession(session);
+            }
+        }
+    }
+
+    /**
+     * Procura a transferência com o outro SMA em um dos estados informados, para mensagens sem o id da sessão.
+     */
+    private TransferSession findSession(TransferSession.Role role, UUID peer, TransferSession.State... states) {
+        List<TransferSession.State> accepted = Arrays.asList(states);
+        for (TransferSession session : this.sessions.values()) {
+            if (session.getRole() == role && session.getPeer().equals(peer)
+                    && accepted.contains(session.getState())) {
+                return session;
+            }
+        }
+        return null;
     }
 
     public jason.asSemantics.Message checkMailCN() {
-        return this.jMsg.get(0);
+        return this.jMsg.peek();
+    }
+
+    private void wakeAgent() {
+        if (this.agArch != null) {
+            this.agArch.wake();
+        }
     }
 
-    public void extractMessageFromContextNet(char[] message) {
-        String preamble = String.valueOf(message, 0, 4);
-        if (preamble.equals(COMMUNICATOR_PREAMBLE)) {
-            String firstParam = EMPTY_VALUE;
-            for (int cont = 6; cont < (this.hex2int(char2int(message[5]), char2int(message[4])) + 6); cont++) {
-                firstParam += message[cont];
+    /** Verifica se as mensagens são enviadas no formato binário, que não limita o tamanho dos campos. */
+    private boolean usesBinaryCodec() {
+        return this.codec instanceof BinaryMessageCodec;
+    }
+
+    private MessageCodec codecFor(Object content) {
+        for (MessageCodec messageCodec : this.receiveCodecs) {
+            if (messageCodec.accepts(content)) {
+                return messageCodec;
             }
+        }
+        return null;
+    }
+
+    public void extractMessageFromContextNet(List<String> fields, UUID sender) {
+        this.extractMessageFromContextNet(fields, sender, this.codec);
+    }
+
+    /**
+     * Interpreta os campos de uma mensagem recebida.
+     *
+     * @param fields Campos da mensagem.
+     * @param sender SMA que enviou a mensagem.
+     * @param decoder Formato em que a mensagem foi recebida, usado para responder a um SMA sem suporte a sessões.
+     */
+    private void extractMessageFromContextNet(List<String> fields, UUID sender, MessageCodec decoder) {
+        if (fields != null && !fields.isEmpty()) {
+            String firstParam = fields.get(0);
 
             // Após coletar o primeira parâmetro, será possível interpretar a mensagem. Os protocolos de
             // transferência de agentes são tratados da mesma maneira. Já os demais terão uma lógica específica.
             if (firstParam.equals(TransportAgentMessageType.PREDATOR.getName()) || firstParam.equals(
                     TransportAgentMessageType.INQUILINISM.getName()) || firstParam.equals(
                     TransportAgentMessageType.MUTUALISM.getName())) {
-                this.protocol = firstParam;
-                treatAgentTransferenceMsg(message);
+                treatAgentTransferenceMsg(fields, sender, decoder);
             } else if (firstParam.equals(TransportAgentMessageType.CAN_TRANSFER.getName()) || firstParam.equals(
                     TransportAgentMessageType.CAN_KILL.getName())) {
-                this.replySentAboutTransfer = firstParam;
+                treatTransferReply(fields, sender);
             } else {
-                treatSendOutMessage(firstParam, message);
+                treatSendOutMessage(fields);
             }
         } else {
             System.err.println("[COMMUNICATOR]: The preamble does not match!");
@@ -299,73 +825,156 @@ public class CommMiddleware implements NodeConnectionListener {
     }
 
     /**
-     * Trata as mensagens em texto de transferência de agentes.
+     * Trata o pedido de transferência de agentes, criando a sessão de destino e aceitando a transferência.
+     *
+     * @param fields Campos da mensagem: o protocolo, o id da sessão (opcional, ausente em SMA sem suporte a
+     *               sessões) e os nomes dos agentes que serão transferidos.
+     * @param sender SMA que pediu a transferência.
+     * @param decoder Formato em que o pedido foi recebido.
+     */
+    private void treatAgentTransferenceMsg(List<String> fields, UUID sender, MessageCodec decoder) {
+        String sessionId = sessionIdOf(fields);
+        boolean sessionAware = sessionId != null;
+        if (!sessionAware) {
+            // Um SMA sem suporte a sessões faz uma transferência por vez.
+            sessionId = sender.toString();
+        }
+        List<String> nameAgents = new ArrayList<String>();
+        String dictionary = null;
+        for (String field : fields.subList(sessionAware ? 2 : 1, fields.size())) {
+            if (field.startsWith(DICTIONARY_FIELD_PREFIX)) {
+                dictionary = field.substring(DICTIONARY_FIELD_PREFIX.length());
+            } else if (!field.startsWith(FIELD_PREFIX)) {
+                nameAgents.add(field);
+            }
+        }
+        TransferSession session = new TransferSession(sessionId, TransferSession.Role.TARGET, sender, fields.get(0),
+                nameAgents, sessionAware);
+        if (dictionary != null) {
+            session.setDictionary(dictionary.getBytes(StandardCharsets.UTF_8));
+        }
+        session.setRequestCodec(decoder);
+        TransferSession previous = this.sessions.putIfAbsent(sessionId, session);
+        if (previous != null) {
+            if (sessionAware || previous.getState() != TransferSession.State.CAN_TRANSFER) {
+                // Pedido repetido.
+                return;
+            }
+            // O SMA sem suporte a sessões pediu de novo antes de enviar os agentes.
+            this.sessions.put(sessionId, session);
+        }
+        if (sessionAware && this.deltaTransfers && this.usesBinaryCodec()) {
+            // Anuncia o que os agentes deste SMA já têm, para que a origem envie somente o que falta. O formato
+            // legado limita os campos a 255 caracteres, então o anúncio só é enviado no formato binário.
+            ContentIndex knownContent = new ContentIndex(MAX_ADVERTISED_HASHES);
+            for (CentralisedAgArch centralisedAgArch : RunCentralisedMAS.getRunner().getAgs().values()) {
+                knownContent.addAgent(centralisedAgArch.getTS().getAg());
+            }
+            session.setKnownContent(knownContent);
+            this.sendControl(session, TransportAgentMessageType.CAN_TRANSFER,
+                    KNOWN_PLANS_FIELD_PREFIX + join(knownContent.getPlanHashes()),
+                    KNOWN_BELIEFS_FIELD_PREFIX + join(knownContent.getBeliefHashes()));
+        } else {
+            this.sendControl(session, TransportAgentMessageType.CAN_TRANSFER);
+        }
+        session.advance(TransferSession.State.CAN_TRANSFER);
+    }
+
+    /**
+     * Trata as respostas do destino a uma transferência pedida por este SMA.
      *
-     * @param message Mensagem que contem as informações necessárias que serão coletadas pelo comunicador.
+     * @param fields Campos da mensagem: a resposta e o id da sessão (opcional).
+     * @param sender SMA de destino.
      */
-    private void treatAgentTransferenceMsg(char[] message) {
-        // O índice da próxima mensagem começa com o fim da mensagem anterior. Até então, foi lido
-        // "[fffe][ss][mensagem]".
-        int currentMsgIndex = COMMUNICATOR_PREAMBLE.length() + COMMUNICATOR_SIZE_MESSAGE_DEFINITION.length()
-                + this.protocol.length();
-        int currentValueIndex = currentMsgIndex + 2;
-        int currentValueSize = this.hex2int(char2int(message[currentMsgIndex + 1]), char2int(message[currentMsgIndex]));
-        int finalPosition = 0;
-        finalPosition = currentValueIndex + currentValueSize;
-        this.nameAgents = new ArrayList<String>();
-        while (finalPosition < message.length) {
-            String name = EMPTY_VALUE;
-            for (int cont = currentValueIndex; cont < (currentValueIndex + currentValueSize); cont++) {
-                name += message[cont];
+    private void treatTransferReply(List<String> fields, UUID sender) {
+        boolean canTransfer = fields.get(0).equals(TransportAgentMessageType.CAN_TRANSFER.getName());
+        String sessionId = sessionIdOf(fields);
+        TransferSession session = sessionId != null ? this.sessions.get(sessionId)
+                : this.findSession(TransferSession.Role.SOURCE, sender,
+                        canTransfer ? TransferSession.State.REQUESTED : TransferSession.State.PAYLOAD);
+        if (session == null || session.getRole() != TransferSession.Role.SOURCE) {
+            return;
+        }
+        if (canTransfer) {
+            if (session.advance(TransferSession.State.CAN_TRANSFER)) {
+                this.startSending(session, hashesOf(fields, KNOWN_PLANS_FIELD_PREFIX),
+                        hashesOf(fields, KNOWN_BELIEFS_FIELD_PREFIX));
+            }
+        } else if (session.advance(TransferSession.State.CAN_KILL)) {
+            System.out.println("[COMMUNICATOR]: Transfer metrics (" + session.getId() + "): "
+                    + session.getMetrics());
+            //Deletar os arquivos ASL
+            for (CentralisedAgArch centralisedAgArch : RunCentralisedMAS.getRunner().getAgs().values()) {
+                if (session.getNameAgents().contains(centralisedAgArch.getAgName())) {
+                    String path = centralisedAgArch.getTS().getAg().getASLSrc();
+                    File file = new File(path);
+                    this.deleteFileAsl(file);
+                }
             }
-            this.nameAgents.add(name);
+        }
+    }
 
-            currentMsgIndex = currentValueIndex + currentValueSize;
-            currentValueIndex = currentMsgIndex + 2;
-            currentValueSize = this.hex2int(char2int(message[currentMsgIndex + 1]), char2int(message[currentMsgIndex]));
-            finalPosition = currentValueIndex + currentValueSize;
+    /** Retorna os hashes do campo da mensagem com o prefixo informado (vazio se não há o campo). */
+    private static Set<String> hashesOf(List<String> fields, String prefix) {
+        for (String field : fields) {
+            if (field.startsWith(prefix)) {
+                String hashes = field.substring(prefix.length());
+                if (hashes.isEmpty()) {
+                    break;
+                }
+                return new HashSet<String>(Arrays.asList(hashes.split(HASH_SEPARATOR)));
+            }
         }
-        String name = EMPTY_VALUE;
-        for (int cont = currentValueIndex; cont < (currentValueIndex + currentValueSize); cont++) {
-            name += message[cont];
+        return Collections.emptySet();
+    }
+
+    private static String join(Collection<String> hashes) {
+        StringBuilder s = new StringBuilder();
+        for (String hash : hashes) {
+            if (s.length() > 0) {
+                s.append(HASH_SEPARATOR);
+            }
+            s.append(hash);
         }
-        this.nameAgents.add(name);
+        return s.toString();
+    }
 
-        this.answerToSendAboutTransfer = TransportAgentMessageType.CAN_TRANSFER.getName();
+    /** Retorna o id da sessão presente nos campos da mensagem (ou null). */
+    private static String sessionIdOf(List<String> fields) {
+        if (fields.size() > 1 && fields.get(1).startsWith(SESSION_FIELD_PREFIX)) {
+            return fields.get(1).substring(SESSION_FIELD_PREFIX.length());
+        }
+        return null;
     }
 
     /**
      * Trata as mensagens de sendOut do agente Communicator.
      *
-     * @param sender Parâmetro que indica o agente que está enviando a mensagem.
-     * @param message Mensagem enviada.
+     * @param fields Campos da mensagem: o agente que está enviando a mensagem, a força ilocucionária e a mensagem.
      */
-    private void treatSendOutMessage(String sender, char[] message) {
-        String force = EMPTY_VALUE;
-        String msg = EMPTY_VALUE;
-        int nextValue = sender.length() + 6;
-        int shift = this.hex2int(char2int(message[nextValue + 1]), char2int(message[nextValue]));
-        for (int cont = nextValue + 2; cont <= (shift + nextValue + 1); cont++) {
-            force += message[cont];
+    private void treatSendOutMessage(List<String> fields) {
+        if (fields.size() < 3) {
+            System.err.println("[COMMUNICATOR]: Incomplete message received: " + fields);
+            return;
         }
-        nextValue = shift + nextValue + 2;
-        shift = this.hex2int(char2int(message[nextValue + 1]), char2int(message[nextValue]));
-        for (int cont = nextValue + 2; cont <= (shift + nextValue + 1); cont++) {
-            msg += message[cont];
-        }
-
         jason.asSemantics.Message jasonMsgs = new jason.asSemantics.Message();
-        jasonMsgs.setIlForce(force);
-        jasonMsgs.setSender(sender);
-        jasonMsgs.setPropCont(msg);
+        jasonMsgs.setIlForce(fields.get(1));
+        jasonMsgs.setSender(fields.get(0));
+        jasonMsgs.setPropCont(fields.get(2));
         jasonMsgs.setReceiver(this.agName);
         //System.out.println("[ARGO]: The message is: " + jasonMsgs.toString());
-        this.jMsg.add(jasonMsgs);
+        if (!this.jMsg.offer(jasonMsgs)) {
+            System.err.println("[COMMUNICATOR]: Mailbox full, message discarded: " + this.jMsg);
+        }
     }
 
     public void sendMsgToContextNet(String sender, String receiver, Term force, Term msg) {
         ApplicationMessage message = new ApplicationMessage();
-        message.setContentObject(this.prepareToSend(sender, force.toString(), msg.toString()));
+        Serializable content = this.prepareToSend(sender, force.toString(), msg.toString());
+        if (content instanceof byte[]) {
+            content = this.compression.compress((byte[]) content, null, null);
+        }
+        message.setContentObject(content);
         message.setRecipientID(UUID.fromString(receiver.substring(1, receiver.length() - 1)));
         try {
             this.connection.sendMessage(message);
@@ -375,128 +984,72 @@ public class CommMiddleware implements NodeConnectionListener {
     }
 
     public void sendAllAgentsToContextNet(String receiver, Term protocol, List<String> nameAgents) {
-        ApplicationMessage message = new ApplicationMessage();
-        this.nameAgents = new ArrayList<String>();
-        this.nameAgents.addAll(nameAgents);
-        message.setContentObject(this.prepareToSend(protocol.toString().toUpperCase().trim(), nameAgents));
-        message.setRecipientID(UUID.fromString(receiver.substring(1, receiver.length() - 1)));
-        try {
-            this.connection.sendMessage(message);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
+        this.requestTransfer(receiver, protocol, nameAgents);
     }
 
     public void sendAgentToContextNet(String receiver, Term protocol, Term agent) {
-        ApplicationMessage message = new ApplicationMessage();
-        this.nameAgents = new ArrayList<String>();
-        this.nameAgents.add(agent.toString());
-        message.setContentObject(this.prepareToSend(protocol.toString().toUpperCase().trim(), agent.toString()));
-        message.setRecipientID(UUID.fromString(receiver.substring(1, receiver.length() - 1)));
-        try {
-            this.connection.sendMessage(message);
-        } catch (IOException e) {
-            e.printStackTrace();
+        this.requestTransfer(receiver, protocol, Arrays.asList(agent.toString()));
+    }
+
+    /**
+     * Pede ao SMA <i>receiver</i> a transferência dos agentes, criando uma nova sessão de origem.
+     */
+    private void requestTransfer(String receiver, Term protocol, List<String> nameAgents) {
+        String protocolName = protocol.toString().toUpperCase().trim();
+        UUID peer = UUID.fromString(receiver.substring(1, receiver.length() - 1));
+        TransferSession session = new TransferSession(UUID.randomUUID().toString(), TransferSession.Role.SOURCE,
+                peer, protocolName, nameAgents, true);
+        this.sessions.put(session.getId(), session);
+
+        List<String> fields = new ArrayList<String>(nameAgents.size() + 3);
+        fields.add(protocolName);
+        fields.add(SESSION_FIELD_PREFIX + session.getId());
+        if (this.compression.usesDictionary() && this.usesBinaryCodec()) {
+            // O dicionário vai no pedido para que o destino o tenha antes de receber qualquer agente. O formato
+            // legado limita os campos a 255 caracteres; sem o dicionário os agentes são comprimidos sem ele.
+            List<Agent> agents = new ArrayList<Agent>();
+            for (CentralisedAgArch centralisedAgArch : RunCentralisedMAS.getRunner().getAgs().values()) {
+                if (nameAgents.contains(centralisedAgArch.getAgName())) {
+                    agents.add(centralisedAgArch.getTS().getAg());
+                }
+            }
+            byte[] dictionary = PayloadCompression.buildDictionary(agents);
+            session.setDictionary(dictionary);
+            fields.add(DICTIONARY_FIELD_PREFIX + new String(dictionary, StandardCharsets.UTF_8));
         }
+        fields.addAll(nameAgents);
+        this.sendContent(peer, this.codec.encode(fields));
     }
 
-    public void sendMsgToDeleteAllAgents() {
-        ApplicationMessage appMessage = new ApplicationMessage();
-        appMessage.setContentObject(this.prepareToSend(this.answerToSendAboutTransfer));
-        appMessage.setRecipientID(this.senderUUID);
-        try {
-            this.connection.sendMessage(appMessage);
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Informa à origem que todos os agentes da transferência foram instanciados e podem ser eliminados de lá.
+     *
+     * @param session Sessão da transferência (destino).
+     */
+    public void sendCanKill(TransferSession session) {
+        if (session.advance(TransferSession.State.CAN_KILL)) {
+            this.sendControl(session, TransportAgentMessageType.CAN_KILL);
+        }
+    }
+
+    /**
+     * Envia uma mensagem de controle ao outro SMA, com o id da sessão quando ele o entende. Um SMA sem suporte a
+     * sessões pode não entender o formato binário, então recebe a resposta no formato do seu pedido.
+     */
+    private void sendControl(TransferSession session, TransportAgentMessageType type, String... extraFields) {
+        if (session.isSessionAware()) {
+            List<String> fields = new ArrayList<String>(extraFields.length + 2);
+            fields.add(type.getName());
+            fields.add(SESSION_FIELD_PREFIX + session.getId());
+            fields.addAll(Arrays.asList(extraFields));
+            this.sendContent(session.getPeer(), this.codec.encode(fields));
+        } else {
+            MessageCodec replyCodec = session.getRequestCodec() != null ? session.getRequestCodec() : this.codec;
+            this.sendContent(session.getPeer(), replyCodec.encode(Arrays.asList(type.getName())));
         }
     }
 
-    private String prepareToSend(String msg) {
-        msg = COMMUNICATOR_PREAMBLE + int2hex(msg.length()) + msg;
-        return msg;
-    }
-
-    private String prepareToSend(String protocol, List<String> nameAgents) {
-        String msg = COMMUNICATOR_PREAMBLE + int2hex(protocol.length()) + protocol;
-        for (String nameAgent : nameAgents) {
-            msg += int2hex(nameAgent.length()) + nameAgent;
-        }
-        return msg;
-    }
-
-    private String prepareToSend(String protocol, String nameAgent) {
-        return COMMUNICATOR_PREAMBLE + int2hex(protocol.length()) + protocol + int2hex(nameAgent.length()) + nameAgent;
-    }
-
-    private String prepareToSend(String sender, String force, String msg) {
-        msg = COMMUNICATOR_PREAMBLE + int2hex(sender.length()) + sender + int2hex(force.length()) + force
-                + int2hex(msg.length()) + msg;
-        return msg;
-    }
-
-    private String int2hex(int v) {
-        String stringOne = Integer.toHexString(v);
-        if (v < 16) {
-            stringOne = "0" + stringOne;
-        }
-        return stringOne;
-    }
-
-    private int char2int(char charValue) {
-        int intValue = 0;
-        switch (charValue) {
-            case '1':
-                intValue = 1;
-                break;
-            case '2':
-                intValue = 2;
-                break;
-            case '3':
-                intValue = 3;
-                break;
-            case '4':
-                intValue = 4;
-                break;
-            case '5':
-                intValue = 5;
-                break;
-            case '6':
-                intValue = 6;
-                break;
-            case '7':
-                intValue = 7;
-                break;
-            case '8':
-                intValue = 8;
-                break;
-            case '9':
-                intValue = 9;
-                break;
-            case 'a':
-                intValue = 10;
-                break;
-            case 'b':
-                intValue = 11;
-                break;
-            case 'c':
-                intValue = 12;
-                break;
-            case 'd':
-                intValue = 13;
-                break;
-            case 'e':
-                intValue = 14;
-                break;
-            case 'f':
-                intValue = 15;
-                break;
-        }
-        return intValue;
-    }
-
-    private int hex2int(int x, int y) {
-        int converted = x + (y * 16);
-        return converted;
+    private Serializable prepareToSend(String... fields) {
+        return this.codec.encode(Arrays.asList(fields));
     }
 }
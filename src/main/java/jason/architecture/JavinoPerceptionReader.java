@@ -0,0 +1,250 @@
+package jason.architecture;
+
+import br.pro.turing.javino.Javino;
+import jason.asSemantics.TransitionSystem;
+import jason.asSyntax.Literal;
+import jason.asSyntax.PerceptParser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Leitura das percepções do mundo real (Javino) em uma thread própria, fora do ciclo de raciocínio.
+ *
+ * <p>
+ * A thread pede as percepções ao dispositivo na porta do agente ({@link AgArch#getPort()}), no máximo uma vez a
+ * cada {@link TransitionSystem#getLimit()} nanossegundos, e publica a lista de literais lida como a última leitura.
+ * O ciclo de raciocínio apenas troca a última leitura por null ({@link #takePercepts()}): a latência da porta serial
+ * e a análise da resposta não atrasam mais o raciocínio, e uma leitura que não foi usada é substituída pela seguinte.
+ * Enquanto as percepções estão bloqueadas ({@link TransitionSystem#blocked}) a thread espera, sem acessar a porta.
+ *
+ * <p>
+ * Entre duas leituras a thread espera pelo menos {@link #MIN_INTERVAL} milissegundos, mesmo sem limite no
+ * ciclo, e {@link #SLEEPING_INTERVAL} milissegundos enquanto o agente dorme (uma mudança nas percepções ainda
+ * acorda o agente). A porta é compartilhada com as ações ({@link jason.stdlib.act}) por um lock justo
+ * ({@link #portLock(Javino)}): uma ação que espera a porta é atendida antes da leitura seguinte.
+ *
+ * <p>
+ * Os literais são analisados por {@link PerceptParser}. Como antes, uma leitura que falha é publicada como uma lista
+ * vazia de percepções.
+ */
+public class JavinoPerceptionReader implements Runnable {
+
+    /** Espera mínima, em milissegundos, depois de uma leitura que falhou. */
+    public static final long FAILURE_DELAY = 100;
+
+    /** Intervalo mínimo, em milissegundos, entre o início de duas leituras. */
+    public static final long MIN_INTERVAL = 20;
+
+    /** Intervalo, em milissegundos, entre duas leituras enquanto o agente dorme. */
+    public static final long SLEEPING_INTERVAL = 500;
+
+    /** Espera máxima, em milissegundos, antes de verificar novamente se as percepções foram desbloqueadas. */
+    private static final long BLOCKED_WAIT = 1000;
+
+    /** Locks das portas, um por dispositivo, compartilhados entre a leitura e as ações. */
+    private static final Map<Javino, ReentrantLock> portLocks = Collections
+            .synchronizedMap(new WeakHashMap<Javino, ReentrantLock>());
+
+    private final TransitionSystem ts;
+
+    /** Última leitura, ainda não usada pelo ciclo de raciocínio. */
+    private final AtomicReference<List<Literal>> percepts = new AtomicReference<List<Literal>>();
+
+    /** Percepções da leitura anterior, para acordar o agente apenas quando elas mudam. */
+    private List<Literal> previous;
+
+    private volatile boolean running = false;
+
+    private Thread thread;
+
+    private long readings;
+    private long failures;
+    private long totalLatency;
+    private long lastLatency;
+    private long maxLatency;
+    private long totalParse;
+    private long lastParse;
+    private long literals;
+
+    public JavinoPerceptionReader(TransitionSystem ts) {
+        this.ts = ts;
+    }
+
+    /** Retorna o lock (justo) que deve ser obtido para usar a porta do dispositivo. */
+    public static ReentrantLock portLock(Javino javino) {
+        synchronized (portLocks) {
+            ReentrantLock lock = portLocks.get(javino);
+            if (lock == null) {
+                lock = new ReentrantLock(true);
+                portLocks.put(javino, lock);
+            }
+            return lock;
+        }
+    }
+
+    public synchronized void start() {
+        if (this.running) {
+            return;
+        }
+        this.running = true;
+        this.thread = new Thread(this, "javino-" + this.ts.getUserAgArch().getAgName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public void stop() {
+        this.running = false;
+        this.wakeUp();
+    }
+
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /** Acorda a thread que espera o intervalo entre as leituras ou o desbloqueio das percepções. */
+    public void wakeUp() {
+        synchronized (this.percepts) {
+            this.percepts.notifyAll();
+        }
+    }
+
+    /** Retorna a última leitura e a remove, ou null se não houve leitura depois da última chamada. */
+    public List<Literal> takePercepts() {
+        return this.percepts.getAndSet(null);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (this.running && this.ts.getUserAgArch().isRunning()) {
+                if (this.ts.blocked) {
+                    this.waitFor(BLOCKED_WAIT);
+                    continue;
+                }
+                long start = System.nanoTime();
+                boolean read = this.read();
+                long elapsed = (System.nanoTime() - start) / 1000000;
+                long delay = Math.max(this.ts.getLimit() / 1000000, MIN_INTERVAL) - elapsed;
+                if (!read) {
+                    delay = Math.max(delay, FAILURE_DELAY);
+                }
+                if (this.ts.isSleeping()) {
+                    delay = Math.max(delay, SLEEPING_INTERVAL);
+                }
+                if (delay > 0) {
+                    this.waitFor(delay);
+                }
+            }
+        } catch (InterruptedException e) {
+            // agente parado
+        } finally {
+            this.running = false;
+        }
+    }
+
+    private void waitFor(long millis) throws InterruptedException {
+        synchronized (this.percepts) {
+            if (this.running) {
+                this.percepts.wait(millis);
+            }
+        }
+    }
+
+    /** Faz uma leitura e a publica, retornando se o dispositivo respondeu. */
+    private boolean read() {
+        AgArch arch = this.ts.getUserAgArch();
+        Javino javino = arch.getArgo();
+        if (javino == null) {
+            return false;
+        }
+        String data = null;
+        long start = System.nanoTime();
+        boolean ok;
+        ReentrantLock lock = portLock(javino); // a mesma porta é usada pelas ações (.act)
+        lock.lock();
+        try {
+            ok = javino.requestData(arch.getPort(), "getPercepts");
+            if (ok) {
+                data = javino.getData();
+            }
+        } finally {
+            lock.unlock();
+        }
+        long received = System.nanoTime();
+        List<Literal> list = ok ? PerceptParser.parsePercepts(data, ';') : new ArrayList<Literal>();
+        long parsed = System.nanoTime();
+        this.record(ok, received - start, parsed - received, list.size());
+
+        if (this.ts.blocked) {
+            return ok; // bloqueado durante a leitura
+        }
+        this.percepts.set(list);
+        if (!list.equals(this.previous)) {
+            arch.wake();
+        }
+        this.previous = list;
+        return ok;
+    }
+
+    private synchronized void record(boolean ok, long latency, long parse, int count) {
+        this.readings++;
+        if (!ok) {
+            this.failures++;
+        }
+        this.lastLatency = latency;
+        this.totalLatency += latency;
+        this.maxLatency = Math.max(this.maxLatency, latency);
+        this.lastParse = parse;
+        this.totalParse += parse;
+        this.literals += count;
+    }
+
+    /** Quantidade de leituras feitas, incluindo as que falharam. */
+    public synchronized long getReadings() {
+        return this.readings;
+    }
+
+    /** Quantidade de leituras em que o dispositivo não respondeu. */
+    public synchronized long getFailures() {
+        return this.failures;
+    }
+
+    /** Tempo médio de uma leitura na porta serial, em milissegundos. */
+    public synchronized double getAverageLatencyMillis() {
+        return this.readings == 0 ? 0 : this.totalLatency / 1e6 / this.readings;
+    }
+
+    /** Tempo da última leitura na porta serial, em milissegundos. */
+    public synchronized double getLastLatencyMillis() {
+        return this.lastLatency / 1e6;
+    }
+
+    /** Maior tempo de uma leitura na porta serial, em milissegundos. */
+    public synchronized double getMaxLatencyMillis() {
+        return this.maxLatency / 1e6;
+    }
+
+    /** Tempo médio da análise dos literais de uma leitura, em milissegundos. */
+    public synchronized double getAverageParseMillis() {
+        return this.readings == 0 ? 0 : this.totalParse / 1e6 / this.readings;
+    }
+
+    /** Tempo da análise dos literais da última leitura, em milissegundos. */
+    public synchronized double getLastParseMillis() {
+        return this.lastParse / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d leituras (%d falhas, %d literais): porta serial %.2f ms em média (última %.2f ms, "
+                + "máx %.2f ms), análise %.3f ms em média (última %.3f ms)", this.readings, this.failures,
+                this.literals, this.getAverageLatencyMillis(), this.getLastLatencyMillis(),
+                this.getMaxLatencyMillis(), this.getAverageParseMillis(), this.getLastParseMillis());
+    }
+}
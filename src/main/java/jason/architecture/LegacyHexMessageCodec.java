@@ -0,0 +1,72 @@
+package jason.architecture;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Formato original das mensagens do comunicador: <code>"fffe"</code> seguido de cada campo precedido pelo seu tamanho
+ * em dois dígitos hexadecimais, ou seja, "[fffe][ss][campo][ss][campo]...". Cada campo é limitado a 255 caracteres.
+ *
+ * <p>
+ * Mantido para comunicação com SMA que ainda utilizam o formato em texto.
+ */
+public class LegacyHexMessageCodec implements MessageCodec {
+
+    /** Preâmbulo das mensagens do comunicador. */
+    public static final String COMMUNICATOR_PREAMBLE = "fffe";
+
+    /** Quantidade de dígitos hexadecimais que definem o tamanho de cada campo. */
+    private static final int SIZE_DIGITS = 2;
+
+    /** Maior tamanho de campo que pode ser representado com {@link #SIZE_DIGITS} dígitos. */
+    private static final int MAX_FIELD_SIZE = 0xff;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    public Serializable encode(List<String> fields) {
+        int size = COMMUNICATOR_PREAMBLE.length();
+        for (String field : fields) {
+            size += SIZE_DIGITS + field.length();
+        }
+        StringBuilder msg = new StringBuilder(size);
+        msg.append(COMMUNICATOR_PREAMBLE);
+        for (String field : fields) {
+            int length = field.length();
+            if (length > MAX_FIELD_SIZE) {
+                throw new IllegalArgumentException("The field '" + field + "' has " + length
+                        + " characters, but the legacy communicator format supports at most " + MAX_FIELD_SIZE + ".");
+            }
+            msg.append(HEX_DIGITS[length >> 4]).append(HEX_DIGITS[length & 0xf]).append(field);
+        }
+        return msg.toString();
+    }
+
+    public boolean accepts(Object content) {
+        return content instanceof String;
+    }
+
+    public List<String> decode(Object content) {
+        String message = content.toString();
+        if (!message.startsWith(COMMUNICATOR_PREAMBLE)) {
+            return null;
+        }
+        List<String> fields = new ArrayList<String>();
+        int index = COMMUNICATOR_PREAMBLE.length();
+        while (index + SIZE_DIGITS <= message.length()) {
+            int high = Character.digit(message.charAt(index), 16);
+            int low = Character.digit(message.charAt(index + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            int begin = index + SIZE_DIGITS;
+            int end = begin + (high << 4 | low);
+            if (end > message.length()) {
+                return null;
+            }
+            fields.add(message.substring(begin, end));
+            index = end;
+        }
+        return fields;
+    }
+}
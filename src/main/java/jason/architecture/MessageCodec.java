@@ -0,0 +1,40 @@
+package jason.architecture;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Codificação das mensagens em texto trocadas pelo {@link CommMiddleware} via ContextNet.
+ *
+ * <p>
+ * Toda mensagem é uma sequência de campos: remetente, força ilocucionária e conteúdo no caso do
+ * <code>.sendOut</code>; protocolo e nomes dos agentes no caso do <code>.moveOut</code>; ou apenas a resposta
+ * ({@link TransportAgentMessageType#CAN_TRANSFER}, {@link TransportAgentMessageType#CAN_KILL}) durante a
+ * transferência.
+ */
+public interface MessageCodec {
+
+    /**
+     * Codifica os campos no conteúdo que será colocado na mensagem da ContextNet.
+     *
+     * @param fields Campos da mensagem, na ordem em que devem ser lidos pelo destinatário.
+     * @return Conteúdo serializável da mensagem.
+     */
+    Serializable encode(List<String> fields);
+
+    /**
+     * Verifica se o conteúdo recebido é do tipo produzido por este codificador.
+     *
+     * @param content Conteúdo da mensagem recebida.
+     * @return true se o conteúdo deve ser decodificado por este codificador.
+     */
+    boolean accepts(Object content);
+
+    /**
+     * Decodifica o conteúdo recebido nos campos da mensagem.
+     *
+     * @param content Conteúdo da mensagem recebida.
+     * @return Campos da mensagem ou null caso o preâmbulo ou o tamanho dos campos não confiram.
+     */
+    List<String> decode(Object content);
+}
@@ -0,0 +1,269 @@
+package jason.architecture;
+
+import jason.asSemantics.Agent;
+import jason.asSyntax.Literal;
+import jason.asSyntax.Plan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressão do conteúdo dos agentes transferidos e das mensagens enviadas via ContextNet.
+ *
+ * <p>
+ * O conteúdo comprimido começa com {@link #MAGIC}, o {@link Method} usado e o tamanho original, para que o
+ * destinatário o reconheça e o descomprima independentemente da configuração dele. Conteúdos menores que o limite
+ * ({@link #getThreshold()}) ou que não diminuem ao serem comprimidos são enviados sem compressão.
+ */
+public class PayloadCompression {
+
+    /** Métodos de compressão. */
+    public enum Method {
+        /** Sem compressão. */
+        NONE,
+        /** Deflate com a compressão padrão. */
+        DEFLATE,
+        /** Deflate com a compressão mais rápida, para enlaces em que a CPU pesa mais que a banda. */
+        FAST,
+        /**
+         * Deflate com um dicionário com os functores mais comuns dos agentes da transferência, enviado uma vez no
+         * pedido de transferência. Nas mensagens, que não têm dicionário, equivale a {@link #DEFLATE}.
+         */
+        DICTIONARY
+    }
+
+    /** Primeiros bytes do conteúdo comprimido (0xAC nunca é o primeiro byte de um texto UTF-8). */
+    public static final byte[] MAGIC = {(byte) 0xAC, 'J', 'Z'};
+
+    /** Tamanho mínimo padrão, em bytes, do conteúdo comprimido. */
+    public static final int DEFAULT_THRESHOLD = 512;
+
+    /**
+     * Tamanho máximo, em bytes, do conteúdo descomprimido. O limite vale para os bytes de fato produzidos: a memória
+     * cresce com o conteúdo descomprimido, e não com o tamanho informado no cabeçalho.
+     */
+    public static final int MAX_PAYLOAD_SIZE = 16 * 1024 * 1024;
+
+    /** Tamanho máximo, em bytes, do dicionário. */
+    public static final int MAX_DICTIONARY_SIZE = 4 * 1024;
+
+    private static final int HEADER_SIZE = MAGIC.length + 1 + 4;
+
+    /** Functores e átomos no texto dos planos e crenças. */
+    private static final Pattern IDENTIFIER = Pattern.compile("[a-z][A-Za-z0-9_]{2,}");
+
+    private final Method method;
+
+    private final int threshold;
+
+    public PayloadCompression(Method method) {
+        this(method, DEFAULT_THRESHOLD);
+    }
+
+    public PayloadCompression(Method method, int threshold) {
+        this.method = method;
+        this.threshold = threshold;
+    }
+
+    public Method getMethod() {
+        return this.method;
+    }
+
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+    /** Indica se um dicionário deve ser gerado e enviado no pedido de transferência. */
+    public boolean usesDictionary() {
+        return this.method == Method.DICTIONARY;
+    }
+
+    /**
+     * Comprime o conteúdo, se ele for maior que o limite e diminuir com a compressão.
+     *
+     * @param content Conteúdo original.
+     * @param dictionary Dicionário da transferência (ou null).
+     * @param metrics Onde registrar o tempo e os tamanhos (ou null).
+     * @return Conteúdo comprimido ou o próprio conteúdo original.
+     */
+    public byte[] compress(byte[] content, byte[] dictionary, TransferMetrics metrics) {
+        if (this.method == Method.NONE || content.length < this.threshold) {
+            return content;
+        }
+        long start = System.nanoTime();
+        Method used = this.method == Method.DICTIONARY && dictionary == null ? Method.DEFLATE : this.method;
+        Deflater deflater = new Deflater(used == Method.FAST ? Deflater.BEST_SPEED : Deflater.DEFAULT_COMPRESSION);
+        try {
+            if (used == Method.DICTIONARY) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_SIZE + content.length / 2);
+            out.write(MAGIC, 0, MAGIC.length);
+            out.write(used.ordinal());
+            out.write(ByteBuffer.allocate(4).putInt(content.length).array(), 0, 4);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            byte[] compressed = out.toByteArray();
+            if (metrics != null) {
+                metrics.record(TransferMetrics.Phase.COMPRESSION, start, System.nanoTime());
+                metrics.recordCompression(content.length, Math.min(compressed.length, content.length));
+            }
+            return compressed.length < content.length ? compressed : content;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Verifica se o conteúdo foi comprimido por {@link #compress(byte[], byte[], TransferMetrics)}. */
+    public static boolean isCompressed(byte[] content) {
+        if (content == null || content.length < HEADER_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (content[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Descomprime o conteúdo. Conteúdo não comprimido é retornado sem alterações.
+     *
+     * @param content Conteúdo recebido.
+     * @param dictionary Dicionário da transferência (ou null).
+     * @param metrics Onde registrar o tempo (ou null).
+     * @return Conteúdo original.
+     * @throws IOException Se o conteúdo está corrompido, tem tamanho original inválido (negativo ou maior que
+     * {@link #MAX_PAYLOAD_SIZE}), descomprime para um tamanho diferente do informado ou depende de um dicionário que
+     * não foi recebido.
+     */
+    public static byte[] decompress(byte[] content, byte[] dictionary, TransferMetrics metrics) throws IOException {
+        if (!isCompressed(content)) {
+            return content;
+        }
+        long start = System.nanoTime();
+        int methodIndex = content[MAGIC.length];
+        if (methodIndex <= 0 || methodIndex >= Method.values().length) {
+            throw new IOException("Método de compressão desconhecido: " + methodIndex);
+        }
+        int size = ByteBuffer.wrap(content, MAGIC.length + 1, 4).getInt();
+        if (size < 0 || size > MAX_PAYLOAD_SIZE) {
+            throw new IOException("Tamanho do conteúdo comprimido inválido: " + size + " bytes.");
+        }
+        // O buffer cresce com os bytes produzidos: um cabeçalho com um tamanho grande não aloca memória por si só.
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(size, Math.max(8192, 4 * content.length)));
+        byte[] buffer = new byte[8192];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(content, HEADER_SIZE, content.length - HEADER_SIZE);
+            boolean dictionarySet = false;
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0) {
+                    if (inflater.needsDictionary() && !dictionarySet) {
+                        if (dictionary == null) {
+                            throw new IOException("O conteúdo foi comprimido com um dicionário que não foi recebido.");
+                        }
+                        inflater.setDictionary(dictionary);
+                        dictionarySet = true;
+                        continue;
+                    }
+                    break; // faltam dados
+                }
+                if (out.size() + n > size) {
+                    throw new IOException("Conteúdo comprimido maior que o tamanho informado: " + size + " bytes.");
+                }
+                out.write(buffer, 0, n);
+            }
+            if (!inflater.finished() || out.size() != size) {
+                throw new IOException("Conteúdo comprimido incompleto: " + out.size() + " de " + size + " bytes.");
+            }
+            if (inflater.getRemaining() > 0) {
+                throw new IOException("Conteúdo comprimido com " + inflater.getRemaining() + " bytes após o fim.");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Conteúdo comprimido corrompido.", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("O dicionário recebido não é o usado na compressão.", e);
+        } finally {
+            inflater.end();
+        }
+        if (metrics != null) {
+            metrics.record(TransferMetrics.Phase.DECOMPRESSION, start, System.nanoTime());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Gera o dicionário de uma transferência com os functores e átomos mais frequentes nos planos e crenças dos
+     * agentes. Os mais frequentes ficam no final, onde o Deflate os referencia com distâncias menores.
+     *
+     * @param agents Agentes da transferência.
+     * @return Dicionário, com no máximo {@link #MAX_DICTIONARY_SIZE} bytes.
+     */
+    public static byte[] buildDictionary(Collection<Agent> agents) {
+        final Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (Agent agent : agents) {
+            try {
+                for (Plan plan : agent.getPL().getPlans()) {
+                    count(counts, plan.toASString());
+                }
+                for (Literal belief : agent.getBB()) {
+                    count(counts, belief.toString());
+                }
+            } catch (ConcurrentModificationException e) {
+                // O agente mudou enquanto era lido; o dicionário é apenas uma sugestão.
+            }
+        }
+        List<String> identifiers = new ArrayList<String>(counts.keySet());
+        Collections.sort(identifiers, new Comparator<String>() {
+            public int compare(String a, String b) {
+                // Ganho estimado de cada identificador: ocorrências vezes tamanho.
+                return Long.compare((long) counts.get(b) * b.length(), (long) counts.get(a) * a.length());
+            }
+        });
+        List<String> selected = new ArrayList<String>();
+        int size = 0;
+        for (String identifier : identifiers) {
+            if (counts.get(identifier) < 2 || size + identifier.length() + 1 > MAX_DICTIONARY_SIZE) {
+                break;
+            }
+            selected.add(identifier);
+            size += identifier.length() + 1;
+        }
+        Collections.reverse(selected);
+        StringBuilder dictionary = new StringBuilder(size);
+        for (String identifier : selected) {
+            dictionary.append(identifier).append(' ');
+        }
+        return dictionary.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void count(Map<String, Integer> counts, String text) {
+        Matcher m = IDENTIFIER.matcher(text);
+        while (m.find()) {
+            Integer c = counts.get(m.group());
+            counts.put(m.group(), c == null ? 1 : c + 1);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package jason.architecture;
+
+import jason.asSemantics.Message;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caixa de mensagens recebidas via ContextNet pelo {@link CommMiddleware}.
+ *
+ * <p>
+ * As mensagens são inseridas pela thread do MR-UDP e consumidas pela thread do agente, por isso a fila é
+ * thread-safe e limitada. Quando a caixa está cheia, a {@link OverflowPolicy} define o que acontece com a nova
+ * mensagem, e os contadores permitem acompanhar quantas mensagens foram perdidas.
+ */
+public class RemoteMailbox {
+
+    /** Política aplicada quando uma mensagem chega e a caixa está cheia. */
+    public enum OverflowPolicy {
+        /** Descarta a mensagem mais antiga para abrir espaço para a nova. */
+        DROP_OLDEST,
+        /** Bloqueia a thread de recebimento até haver espaço (ou até {@link #BLOCK_TIMEOUT_MS}). */
+        BLOCK,
+        /** Rejeita a nova mensagem. */
+        REJECT
+    }
+
+    /** Capacidade padrão da caixa de mensagens. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** Tempo máximo que a thread de recebimento fica bloqueada na política {@link OverflowPolicy#BLOCK}. */
+    public static final long BLOCK_TIMEOUT_MS = 1000;
+
+    private final BlockingQueue<Message> queue;
+
+    private final int capacity;
+
+    private final OverflowPolicy policy;
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public RemoteMailbox() {
+        this(DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+    }
+
+    public RemoteMailbox(int capacity, OverflowPolicy policy) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.queue = new LinkedBlockingQueue<Message>(capacity);
+    }
+
+    /**
+     * Insere uma mensagem na caixa, aplicando a política de estouro quando ela estiver cheia.
+     *
+     * @param message Mensagem recebida.
+     * @return true se a mensagem foi inserida.
+     */
+    public boolean offer(Message message) {
+        this.received.incrementAndGet();
+        if (this.queue.offer(message)) {
+            return true;
+        }
+        switch (this.policy) {
+            case DROP_OLDEST:
+                while (!this.queue.offer(message)) {
+                    if (this.queue.poll() != null) {
+                        this.dropped.incrementAndGet();
+                    }
+                }
+                return true;
+            case BLOCK:
+                try {
+                    if (this.queue.offer(message, BLOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                break;
+            default:
+                break;
+        }
+        this.rejected.incrementAndGet();
+        return false;
+    }
+
+    /** Retorna, sem remover, a mensagem mais antiga da caixa (ou null se estiver vazia). */
+    public Message peek() {
+        return this.queue.peek();
+    }
+
+    /** Remove e retorna a mensagem mais antiga da caixa (ou null se estiver vazia). */
+    public Message poll() {
+        return this.queue.poll();
+    }
+
+    /**
+     * Move todas as mensagens pendentes para a coleção passada (normalmente a caixa de mensagens da
+     * {@link jason.asSemantics.Circumstance}).
+     *
+     * @param target Coleção de destino.
+     * @return Quantidade de mensagens movidas.
+     */
+    public int drainTo(Collection<? super Message> target) {
+        return this.queue.drainTo(target);
+    }
+
+    public boolean isEmpty() {
+        return this.queue.isEmpty();
+    }
+
+    public int size() {
+        return this.queue.size();
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return this.policy;
+    }
+
+    /** Quantidade de mensagens que chegaram à caixa, incluindo as descartadas e rejeitadas. */
+    public long getReceivedCount() {
+        return this.received.get();
+    }
+
+    /** Quantidade de mensagens antigas descartadas pela política {@link OverflowPolicy#DROP_OLDEST}. */
+    public long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    /** Quantidade de mensagens novas que não foram inseridas por falta de espaço. */
+    public long getRejectedCount() {
+        return this.rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteMailbox[size=" + size() + "/" + this.capacity + ", policy=" + this.policy + ", received="
+                + getReceivedCount() + ", dropped=" + getDroppedCount() + ", rejected=" + getRejectedCount() + "]";
+    }
+}
@@ -0,0 +1,188 @@
+package jason.architecture;
+
+import jason.AgentChunk;
+import jason.AgentChunkAck;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Formato binário das mensagens de transferência de agentes ({@link AgentChunk} e {@link AgentChunkAck}), usado no
+ * lugar da serialização Java.
+ *
+ * <p>
+ * A mensagem começa com os bytes <code>0xff 0xfd</code>, a versão do formato e o tipo da mensagem, seguidos dos
+ * campos em uma ordem fixa: inteiros como varint (veja {@link BinaryMessageCodec}), textos como varint do tamanho
+ * em bytes mais um (zero indica null) seguido do texto em UTF-8 e conteúdos como varint do tamanho seguido dos bytes.
+ * Nenhuma classe é instanciada a partir do conteúdo recebido, e o conteúdo de uma parte recebida não é copiado: a
+ * {@link AgentChunk} decodificada aponta para o trecho da própria mensagem.
+ */
+public class TransferCodec {
+
+    /** Preâmbulo das mensagens de transferência. */
+    private static final byte[] TRANSFER_PREAMBLE = {(byte) 0xff, (byte) 0xfd};
+
+    /** Versão do formato. */
+    private static final byte VERSION = 1;
+
+    /** Tipo da mensagem: parte de agente. */
+    private static final byte CHUNK = 1;
+
+    /** Tipo da mensagem: confirmação de partes. */
+    private static final byte ACK = 2;
+
+    private static final int HEADER_SIZE = TRANSFER_PREAMBLE.length + 2;
+
+    /** Tamanho máximo de um inteiro codificado como varint. */
+    private static final int MAX_VARINT_SIZE = 5;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private TransferCodec() {
+    }
+
+    /** Verifica se o conteúdo recebido é uma mensagem de transferência. */
+    public static boolean accepts(Object content) {
+        if (!(content instanceof byte[])) {
+            return false;
+        }
+        byte[] bytes = (byte[]) content;
+        return bytes.length >= HEADER_SIZE && bytes[0] == TRANSFER_PREAMBLE[0] && bytes[1] == TRANSFER_PREAMBLE[1];
+    }
+
+    public static byte[] encode(AgentChunk chunk) {
+        byte[] transferId = bytes(chunk.getTransferId());
+        byte[] name = bytes(chunk.getName());
+        byte[] agentArchClass = bytes(chunk.getAgentArchClass());
+        ByteBuffer buffer = header(CHUNK, stringSize(transferId) + stringSize(name) + stringSize(agentArchClass)
+                + 3 * MAX_VARINT_SIZE + 4 + MAX_VARINT_SIZE + chunk.getLength());
+        putString(buffer, transferId);
+        BinaryMessageCodec.writeVarint(buffer, chunk.getSequence());
+        putString(buffer, name);
+        putString(buffer, agentArchClass);
+        BinaryMessageCodec.writeVarint(buffer, chunk.getIndex());
+        BinaryMessageCodec.writeVarint(buffer, chunk.getCount());
+        buffer.putInt((int) chunk.getChecksum());
+        BinaryMessageCodec.writeVarint(buffer, chunk.getLength());
+        buffer.put(chunk.getBuffer(), chunk.getOffset(), chunk.getLength());
+        return toArray(buffer);
+    }
+
+    public static byte[] encode(AgentChunkAck ack) {
+        byte[] transferId = bytes(ack.getTransferId());
+        ByteBuffer buffer = header(ACK, stringSize(transferId) + MAX_VARINT_SIZE);
+        putString(buffer, transferId);
+        BinaryMessageCodec.writeVarint(buffer, ack.getNextSequence());
+        return toArray(buffer);
+    }
+
+    /**
+     * Decodifica uma mensagem de transferência.
+     *
+     * @param content Mensagem recebida.
+     * @return Uma {@link AgentChunk} ou uma {@link AgentChunkAck}; ou null caso o preâmbulo, a versão, o tipo ou o
+     * tamanho dos campos não confiram.
+     */
+    public static Object decode(byte[] content) {
+        if (!accepts(content) || content[2] != VERSION) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        buffer.position(HEADER_SIZE);
+        try {
+            switch (content[3]) {
+                case CHUNK:
+                    return decodeChunk(buffer);
+                case ACK:
+                    return new AgentChunkAck(getString(buffer), getInt(buffer));
+                default:
+                    return null;
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static AgentChunk decodeChunk(ByteBuffer buffer) {
+        String transferId = getString(buffer);
+        int sequence = getInt(buffer);
+        String name = getString(buffer);
+        String agentArchClass = getString(buffer);
+        int index = getInt(buffer);
+        int count = getInt(buffer);
+        long checksum = buffer.getInt() & 0xffffffffL;
+        int length = getLength(buffer);
+        int offset = buffer.position();
+        return new AgentChunk(transferId, sequence, name, agentArchClass, index, count, buffer.array(), offset, length,
+                checksum);
+    }
+
+    private static ByteBuffer header(byte type, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + size);
+        buffer.put(TRANSFER_PREAMBLE);
+        buffer.put(VERSION);
+        buffer.put(type);
+        return buffer;
+    }
+
+    /** Retorna os bytes escritos, sem copiar quando o tamanho estimado foi exato. */
+    private static byte[] toArray(ByteBuffer buffer) {
+        if (buffer.position() == buffer.capacity()) {
+            return buffer.array();
+        }
+        byte[] content = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, content, 0, content.length);
+        return content;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(UTF8);
+    }
+
+    private static int stringSize(byte[] value) {
+        return MAX_VARINT_SIZE + (value == null ? 0 : value.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            BinaryMessageCodec.writeVarint(buffer, 0);
+        } else {
+            BinaryMessageCodec.writeVarint(buffer, value.length + 1);
+            buffer.put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = getInt(buffer);
+        if (length == 0) {
+            return null;
+        }
+        length--;
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("truncated field");
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static int getInt(ByteBuffer buffer) {
+        int value = BinaryMessageCodec.readVarint(buffer);
+        if (value < 0) {
+            throw new IllegalArgumentException("invalid varint");
+        }
+        return value;
+    }
+
+    /** Lê o tamanho de um conteúdo, verificando se ele cabe no que resta da mensagem. */
+    private static int getLength(ByteBuffer buffer) {
+        int length = getInt(buffer);
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("truncated content");
+        }
+        return length;
+    }
+}
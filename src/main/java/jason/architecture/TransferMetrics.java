@@ -0,0 +1,134 @@
+package jason.architecture;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Tempos das fases de uma transferência de agentes.
+ *
+ * <p>
+ * Cada fase registra o tempo de cada agente (ou parte) processado e o intervalo total entre o primeiro início e o
+ * último término, que é o tempo efetivo da fase quando os agentes são processados em paralelo. Os registros podem
+ * ser feitos por várias threads ao mesmo tempo.
+ */
+public class TransferMetrics {
+
+    /** Fases da transferência. */
+    public enum Phase {
+        /** Geração do conteúdo (snapshot ou .asl) dos agentes enviados. */
+        SNAPSHOT,
+        /** Compressão do conteúdo dos agentes enviados. */
+        COMPRESSION,
+        /** Envio das partes até a confirmação da última delas. */
+        TRANSMISSION,
+        /** Recebimento das partes até a montagem do último agente. */
+        RECEPTION,
+        /** Descompressão do conteúdo dos agentes recebidos. */
+        DECOMPRESSION,
+        /** Criação e início dos agentes recebidos. */
+        INSTANTIATION
+    }
+
+    private final Map<Phase, Times> phases = new EnumMap<Phase, Times>(Phase.class);
+
+    /** Bytes dos conteúdos antes da compressão. */
+    private long originalBytes;
+
+    /** Bytes dos mesmos conteúdos depois da compressão. */
+    private long compressedBytes;
+
+    /** Tempos de uma fase, em nanossegundos. */
+    private static class Times {
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        int count;
+        long total;
+        long max;
+    }
+
+    /**
+     * Registra o processamento de um item (agente ou parte) na fase.
+     *
+     * @param phase Fase.
+     * @param start Início, em {@link System#nanoTime()}.
+     * @param end Término, em {@link System#nanoTime()}.
+     */
+    public synchronized void record(Phase phase, long start, long end) {
+        Times times = this.phases.get(phase);
+        if (times == null) {
+            times = new Times();
+            this.phases.put(phase, times);
+        }
+        long elapsed = end - start;
+        times.first = Math.min(times.first, start);
+        times.last = Math.max(times.last, end);
+        times.count++;
+        times.total += elapsed;
+        times.max = Math.max(times.max, elapsed);
+    }
+
+    /**
+     * Registra os tamanhos de um conteúdo comprimido.
+     *
+     * @param original Tamanho original, em bytes.
+     * @param compressed Tamanho enviado, em bytes.
+     */
+    public synchronized void recordCompression(long original, long compressed) {
+        this.originalBytes += original;
+        this.compressedBytes += compressed;
+    }
+
+    /** Razão entre o tamanho original e o tamanho comprimido dos conteúdos (1 se nada foi comprimido). */
+    public synchronized double getCompressionRatio() {
+        return this.compressedBytes == 0 ? 1 : (double) this.originalBytes / this.compressedBytes;
+    }
+
+    /** Quantidade de itens registrados na fase. */
+    public synchronized int getCount(Phase phase) {
+        Times times = this.phases.get(phase);
+        return times == null ? 0 : times.count;
+    }
+
+    /** Tempo entre o primeiro início e o último término da fase, em milissegundos. */
+    public synchronized double getElapsedMillis(Phase phase) {
+        Times times = this.phases.get(phase);
+        return times == null ? 0 : (times.last - times.first) / 1e6;
+    }
+
+    /** Soma dos tempos dos itens da fase, em milissegundos (maior que o tempo da fase quando há paralelismo). */
+    public synchronized double getTotalMillis(Phase phase) {
+        Times times = this.phases.get(phase);
+        return times == null ? 0 : times.total / 1e6;
+    }
+
+    /** Maior tempo de um item da fase, em milissegundos. */
+    public synchronized double getMaxMillis(Phase phase) {
+        Times times = this.phases.get(phase);
+        return times == null ? 0 : times.max / 1e6;
+    }
+
+    public synchronized void clear() {
+        this.phases.clear();
+        this.originalBytes = 0;
+        this.compressedBytes = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder s = new StringBuilder();
+        for (Map.Entry<Phase, Times> phase : this.phases.entrySet()) {
+            Times times = phase.getValue();
+            if (s.length() > 0) {
+                s.append("; ");
+            }
+            s.append(String.format("%s: %d em %.1f ms (soma %.1f ms, máx %.1f ms)",
+                    phase.getKey().name().toLowerCase(), times.count, (times.last - times.first) / 1e6,
+                    times.total / 1e6, times.max / 1e6));
+        }
+        if (this.compressedBytes > 0) {
+            s.append(String.format("; compressão: %d -> %d bytes (%.2fx)", this.originalBytes, this.compressedBytes,
+                    this.getCompressionRatio()));
+        }
+        return s.toString();
+    }
+}
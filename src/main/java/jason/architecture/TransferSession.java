@@ -0,0 +1,307 @@
+package jason.architecture;
+
+import jason.AslFileGenerator;
+import jason.AslTransferenceModel;
+import jason.asSemantics.ContentIndex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uma transferência de agentes entre dois SMA, identificada por um id de sessão.
+ *
+ * <p>
+ * O SMA que pede a transferência ({@link Role#SOURCE}) cria a sessão e o id, que é repetido em todas as mensagens
+ * da transferência (inclusive como id das partes dos agentes), permitindo que o mesmo SMA participe de várias
+ * transferências ao mesmo tempo. Nos dois lados a sessão segue os estados
+ * {@link State#REQUESTED} &rarr; {@link State#CAN_TRANSFER} &rarr; {@link State#PAYLOAD} &rarr;
+ * {@link State#CAN_KILL} &rarr; {@link State#DONE}; uma mensagem que não corresponde ao estado atual é ignorada.
+ */
+public class TransferSession {
+
+    /** Papel deste SMA na transferência. */
+    public enum Role {
+        /** Este SMA envia os agentes. */
+        SOURCE,
+        /** Este SMA recebe os agentes. */
+        TARGET
+    }
+
+    /** Estados da transferência. */
+    public enum State {
+        /** A transferência foi solicitada. */
+        REQUESTED,
+        /** O destino aceitou a transferência. */
+        CAN_TRANSFER,
+        /** Os agentes estão sendo enviados/recebidos. */
+        PAYLOAD,
+        /** Os agentes foram instanciados no destino e podem ser eliminados da origem. */
+        CAN_KILL,
+        /** A transferência terminou (ou foi abandonada). */
+        DONE
+    }
+
+    /** Tempo padrão sem atividade após o qual uma sessão é considerada abandonada. */
+    public static final long DEFAULT_TIMEOUT_MS = 60000;
+
+    private final String id;
+
+    private final Role role;
+
+    /** O outro SMA da transferência. */
+    private final UUID peer;
+
+    private final String protocol;
+
+    private final List<String> nameAgents;
+
+    /** Indica se as mensagens de controle levam o id da sessão (false para SMA sem suporte a sessões). */
+    private final boolean sessionAware;
+
+    private volatile State state = State.REQUESTED;
+
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    private final TransferMetrics metrics = new TransferMetrics();
+
+    /** Envio em partes dos agentes (origem). */
+    private AgentTransferSender sender;
+
+    /** Montagem dos agentes recebidos em partes (destino). */
+    private final AgentTransferReceiver receiver;
+
+    /** Indica se todos os agentes foram recebidos (destino). */
+    private volatile boolean payloadComplete = false;
+
+    /** Agentes já recebidos por completo (destino). */
+    private final List<AslTransferenceModel> agentsReceived = new CopyOnWriteArrayList<AslTransferenceModel>();
+
+    /** Agentes recebidos que ainda não foram entregues ao comunicador para serem instanciados (destino). */
+    private final Queue<AslTransferenceModel> agentsToStart = new ConcurrentLinkedQueue<AslTransferenceModel>();
+
+    /** Agentes recebidos já instanciados (destino). */
+    private final AtomicInteger agentsInstantiated = new AtomicInteger();
+
+    /** Agentes recebidos que não puderam ser instanciados (destino). */
+    private final AtomicInteger agentsFailed = new AtomicInteger();
+
+    /** Planos e crenças anunciados à origem, usados para restaurar os agentes recebidos (destino). */
+    private ContentIndex knownContent;
+
+    /** Dicionário de compressão da transferência (ou null). */
+    private byte[] dictionary;
+
+    /** Formato em que o pedido foi recebido, usado nas respostas a um SMA sem suporte a sessões (destino). */
+    private MessageCodec requestCodec;
+
+    /** Início, em {@link System#nanoTime()}, do recebimento das partes (destino). */
+    private volatile long receptionStart = 0;
+
+    /**
+     * Construtor.
+     *
+     * @param id Id da sessão.
+     * @param role Papel deste SMA.
+     * @param peer O outro SMA.
+     * @param protocol Protocolo da transferência (PREDATOR, MUTUALISM ou INQUILINISM).
+     * @param nameAgents Nomes dos agentes transferidos.
+     * @param sessionAware Se o outro SMA usa ids de sessão nas mensagens.
+     */
+    public TransferSession(String id, Role role, UUID peer, String protocol, List<String> nameAgents,
+                           boolean sessionAware) {
+        this.id = id;
+        this.role = role;
+        this.peer = peer;
+        this.protocol = protocol;
+        this.nameAgents = Collections.unmodifiableList(new ArrayList<String>(nameAgents));
+        this.sessionAware = sessionAware;
+        this.receiver = role == Role.TARGET ? new AgentTransferReceiver(nameAgents) : null;
+    }
+
+    public String getId() {
+        return this.id;
+    }
+
+    public Role getRole() {
+        return this.role;
+    }
+
+    public UUID getPeer() {
+        return this.peer;
+    }
+
+    public String getProtocol() {
+        return this.protocol;
+    }
+
+    public List<String> getNameAgents() {
+        return this.nameAgents;
+    }
+
+    public boolean isSessionAware() {
+        return this.sessionAware;
+    }
+
+    public State getState() {
+        return this.state;
+    }
+
+    public TransferMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Avança a sessão para o estado <i>next</i>, que deve ser o seguinte ao atual. Qualquer estado pode ir para
+     * {@link State#DONE}.
+     *
+     * @return false se a transição não é válida no estado atual (a mensagem que a provocou deve ser ignorada).
+     */
+    public synchronized boolean advance(State next) {
+        if (next != State.DONE && next.ordinal() != this.state.ordinal() + 1) {
+            return false;
+        }
+        this.state = next;
+        this.touch();
+        return true;
+    }
+
+    /** Registra atividade na sessão, adiando o seu timeout. */
+    public void touch() {
+        this.lastActivity = System.currentTimeMillis();
+    }
+
+    /** Verifica se a sessão está sem atividade há mais de <i>timeout</i> milissegundos. */
+    public boolean isExpired(long now, long timeout) {
+        return this.state != State.DONE && now - this.lastActivity > timeout;
+    }
+
+    public AgentTransferSender getSender() {
+        return this.sender;
+    }
+
+    public void setSender(AgentTransferSender sender) {
+        this.sender = sender;
+    }
+
+    public AgentTransferReceiver getReceiver() {
+        return this.receiver;
+    }
+
+    public ContentIndex getKnownContent() {
+        return this.knownContent;
+    }
+
+    public void setKnownContent(ContentIndex knownContent) {
+        this.knownContent = knownContent;
+    }
+
+    public byte[] getDictionary() {
+        return this.dictionary;
+    }
+
+    public void setDictionary(byte[] dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public MessageCodec getRequestCodec() {
+        return this.requestCodec;
+    }
+
+    public void setRequestCodec(MessageCodec requestCodec) {
+        this.requestCodec = requestCodec;
+    }
+
+    /**
+     * Retorna o conteúdo completo do agente recebido, descomprimindo-o e restaurando os planos e crenças que a
+     * origem não enviou por já existirem neste SMA.
+     *
+     * @param aslTransferenceModel Agente recebido.
+     * @throws IOException Se o conteúdo está corrompido ou se refere a um plano ou crença que não foi anunciado.
+     */
+    public byte[] resolveContent(AslTransferenceModel aslTransferenceModel) throws IOException {
+        byte[] content = PayloadCompression.decompress(aslTransferenceModel.getFileContent(), this.dictionary,
+                this.metrics);
+        if (this.knownContent == null) {
+            return content;
+        }
+        return new AslFileGenerator().resolveContent(content, this.knownContent);
+    }
+
+    /**
+     * Registra um agente recebido por completo, que fica disponível para ser instanciado.
+     *
+     * @param aslTransferenceModel Agente recebido.
+     * @param last Se este é o último agente da transferência.
+     */
+    public void addAgentReceived(AslTransferenceModel aslTransferenceModel, boolean last) {
+        this.agentsReceived.add(aslTransferenceModel);
+        if (last) {
+            // Antes de liberar o agente, para que a transferência não pareça completa com agentes faltando.
+            this.payloadComplete = true;
+        }
+        this.agentsToStart.offer(aslTransferenceModel);
+        this.touch();
+    }
+
+    public List<AslTransferenceModel> getAgentsReceived() {
+        return this.agentsReceived;
+    }
+
+    /** Retorna o próximo agente recebido que ainda não foi entregue para ser instanciado (ou null). */
+    public AslTransferenceModel pollAgentToStart() {
+        return this.agentsToStart.poll();
+    }
+
+    /** Registra um agente instanciado. */
+    public void agentInstantiated() {
+        this.agentsInstantiated.incrementAndGet();
+        this.touch();
+    }
+
+    /** Registra um agente recebido que não pôde ser instanciado. */
+    public void agentFailed() {
+        this.agentsFailed.incrementAndGet();
+        this.touch();
+    }
+
+    /**
+     * Verifica se todos os agentes foram recebidos e a instanciação de cada um terminou, com sucesso ou não (veja
+     * {@link #hasFailedAgents()}).
+     */
+    public boolean isInstantiationComplete() {
+        return this.payloadComplete
+                && this.agentsInstantiated.get() + this.agentsFailed.get() == this.agentsReceived.size();
+    }
+
+    /** Verifica se algum agente recebido não pôde ser instanciado. */
+    public boolean hasFailedAgents() {
+        return this.agentsFailed.get() > 0;
+    }
+
+    /** Verifica se há trabalho para o comunicador do destino: agentes para instanciar ou a conclusão da sessão. */
+    public boolean hasWorkToDo() {
+        return this.role == Role.TARGET && this.state == State.PAYLOAD
+                && (!this.agentsToStart.isEmpty() || this.isInstantiationComplete());
+    }
+
+    /** Marca o início do recebimento das partes (na primeira chamada) e o retorna, em {@link System#nanoTime()}. */
+    long startReception() {
+        if (this.receptionStart == 0) {
+            this.receptionStart = System.nanoTime();
+        }
+        return this.receptionStart;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferSession[" + this.id + ", " + this.role + ", " + this.protocol + ", " + this.state + ", peer="
+                + this.peer + ", agents=" + this.nameAgents + "]";
+    }
+}
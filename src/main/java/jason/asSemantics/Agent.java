@@ -42,6 +42,7 @@ import jason.jeditplugin.Config;
 import jason.mas2j.ClassParameters;
 import jason.profiling.QueryProfiling;
 import jason.runtime.Settings;
+import jason.stdlib.suspend;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -97,6 +98,8 @@ public class Agent {
     // private QueryCache qCache = null;
     private QueryCacheSimple qCache = null;
 
+    private AnswerTables tables = null;
+
     private QueryProfiling qProfiling = null;
 
     protected Logger logger = Logger.getLogger(Agent.class.getName());
@@ -122,6 +125,32 @@ public class Agent {
      * base for the agent.
      */
     public static Agent create(AgArch arch, String agClass, ClassParameters bbPars, String asSrc, Settings stts)
+    throws JasonException {
+        try {
+            Agent ag = create(arch, agClass, bbPars, stts);
+
+            // [Fabian] Até então, os agentes estão vazios. Acho que o codigo fonte será lido agora.
+            ag.load(asSrc); // load the source code of the agent
+            return ag;
+        } catch (Exception e) {
+            throw new JasonException("as2j: error creating the customised Agent class! - ", e);
+        }
+    }
+
+    /**
+     * Setup the default agent configuration as the method above, but the
+     * source code of the agent is read from <i>asIn</i>, so that agents
+     * received from other MAS do not need to be written to a file before
+     * being created. <i>asSrc</i> is used only as the name of the source.
+     */
+    public static Agent create(AgArch arch, String agClass, ClassParameters bbPars, InputStream asIn, String asSrc,
+                               Settings stts) throws JasonException {
+        Agent ag = create(arch, agClass, bbPars, stts);
+        ag.load(asIn, asSrc);
+        return ag;
+    }
+
+    private static Agent create(AgArch arch, String agClass, ClassParameters bbPars, Settings stts)
     throws JasonException {
         try {
             Agent ag = (Agent) Class.forName(agClass).newInstance();
@@ -141,9 +170,6 @@ public class Agent {
             ag.loadXMLObjectives(arch.getAgName());
 
             // ag.loadXMLObjectives(asSrc.replace(".asl", ""));
-
-            // [Fabian] Até então, os agentes estão vazios. Acho que o codigo fonte será lido agora.
-            ag.load(asSrc); // load the source code of the agent
             return ag;
         } catch (Exception e) {
             throw new JasonException("as2j: error creating the customised Agent class! - ", e);
@@ -182,7 +208,19 @@ public class Agent {
             qProfiling = new QueryProfiling(this);
         }
         if (ts.getSettings().hasQueryCache()) {
-            qCache = new QueryCacheSimple(this, qProfiling);
+            String policy = ts.getSettings().getQueryCachePolicy();
+            if (policy == null) {
+                qCache = new QueryCacheSimple(this, qProfiling);
+            } else {
+                qCache = new QueryCacheBounded(this, qProfiling, QueryCacheBounded.Policy.valueOf(policy),
+                        ts.getSettings().getQueryCacheSize(), ts.getSettings().getQueryCacheMemory());
+            }
+        }
+        tables = null;
+        if (ts.getSettings().hasTabling()) {
+            enableTabling();
+        } else {
+            bindCaches();
         }
 
         if (!"false".equals(Config.get().getProperty(Config.START_WEB_MI))) {
@@ -219,6 +257,7 @@ public class Agent {
                     String tagName = fileName.split("-")[1].split("\\.")[0];
                     Objective ob = new Objective(tagName);
                     ob.hashFilter = loadXMLBeliefFilter(fileName);
+                    ob.compile();
                     objectives.put(tagName, ob);
                 }
             }
@@ -330,34 +369,164 @@ public class Agent {
                 }
             }
 
-            if (parsingOk) {
-                if (getPL().hasMetaEventPlans()) {
-                    getTS().addGoalListener(new GoalListenerForMetaEvents(getTS()));
-                }
-
-                addInitialBelsFromProjectInBB();
-                addInitialBelsInBB();
-                addInitialGoalsFromProjectInBB();
-                addInitialGoalsInTS();
-                fixAgInIAandFunctions(this); // used to fix agent reference in
-                // functions used inside
-                // includes
-            }
+            loadComponents(parsingOk, asSrc);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error creating customised Agent class!", e);
+            throw new JasonException("Error creating customised Agent class! - " + e);
+        }
+    }
 
-            // kqml Plans at the end of the ag PS
-            if (JasonException.class.getResource("/asl/kqmlPlans.asl") != null) {
-                setASLSrc("kqmlPlans.asl");
-                parseAS(JasonException.class.getResource("/asl/kqmlPlans.asl"));
+    /**
+     * parse and load the agent code read from <i>asIn</i>, <i>asSrc</i>
+     * is used only as the name of the source (it may be null). If the
+     * content is an {@link AgentSnapshot}, the agent is restored from it
+     * instead.
+     */
+    public void load(InputStream asIn, String asSrc) throws JasonException {
+        try {
+            boolean parsingOk = true;
+            if (asSrc != null) {
+                asSrc = asSrc.replaceAll("\\\\", "/");
                 setASLSrc(asSrc);
-            } else {
-                logger.warning("The kqmlPlans.asl was not found!");
             }
+            if (!asIn.markSupported()) {
+                asIn = new BufferedInputStream(asIn);
+            }
+            if (AgentSnapshot.isSnapshot(asIn)) {
+                restore(AgentSnapshot.read(asIn));
+                logger.fine("Agent '" + asSrc + "' restored from a snapshot!");
+                return;
+            }
+            try {
+                parseAS(asIn);
+                logger.fine("as2j: AgentSpeak program '" + asSrc + "' parsed successfully!");
+            } catch (ParseException e) {
+                logger.log(Level.SEVERE, "as2j: parsing error:" + e.getMessage());
+                parsingOk = false;
+            }
+
+            loadComponents(parsingOk, asSrc);
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error creating customised Agent class!", e);
             throw new JasonException("Error creating customised Agent class! - " + e);
         }
     }
 
+    /**
+     * Restores in this agent the state captured by
+     * {@link AgentSnapshot#capture(Agent)} (usually in another MAS): beliefs
+     * and plans are added to BB and PL and the circumstance of the snapshot
+     * replaces the current one, so the intentions continue from where they
+     * were. The kqml plans come with the snapshot, no source is parsed.
+     */
+    public void restore(AgentSnapshot snapshot) throws JasonException {
+        if (snapshot.isDelta()) {
+            throw new JasonException("The snapshot of the agent has plans or beliefs that were not resolved!");
+        }
+        try {
+            for (Literal b : snapshot.getBeliefs()) {
+                getBB().add(b);
+            }
+            getPL().addAll(snapshot.getPlans());
+            initialGoals.addAll(snapshot.getInitialGoals());
+
+            Circumstance c = snapshot.getCircumstance();
+            restartWaitingSteps(c);
+            new TransitionSystem(this, c, getTS().getSettings(), getTS().getUserAgArch());
+            if (getPL().hasMetaEventPlans()) {
+                getTS().addGoalListener(new GoalListenerForMetaEvents(getTS()));
+            }
+
+            fixAgInIAandFunctions(this);
+            List<Intention> intentions = new ArrayList<Intention>(c.getPendingIntentions().values());
+            Iterator<Intention> i = c.getIntentionsPlusAtomic();
+            while (i.hasNext()) {
+                intentions.add(i.next());
+            }
+            Iterator<Event> e = c.getEventsPlusAtomic();
+            while (e.hasNext()) {
+                Intention ei = e.next().getIntention();
+                if (ei != null) {
+                    intentions.add(ei);
+                }
+            }
+            for (Intention in : intentions) {
+                for (IntendedMeans im : in) {
+                    fixAgInIAandFunctions(this, im.getPlan());
+                    if (im.getCurrentStep() instanceof Literal) { // steps inserted after the plan was selected
+                        fixAgInIAandFunctions(this, (Literal) im.getCurrentStep());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error restoring the agent from a snapshot!", e);
+            throw new JasonException("Error restoring the agent from a snapshot! - " + e);
+        }
+    }
+
+    /**
+     * Steps that were waiting for something of the MAS where the snapshot
+     * was taken (environment actions, .wait, answers of asks, ...) will not
+     * be answered here: their intentions go back to C.I and the step is
+     * executed again. Intentions suspended by .suspend stay suspended.
+     */
+    private void restartWaitingSteps(Circumstance c) {
+        for (int id : new ArrayList<Integer>(c.getPendingActions().keySet())) {
+            ActionExec a = c.removePendingAction(id);
+            boolean executed = false;
+            for (ActionExec fa : c.getFeedbackActions()) {
+                executed = executed || fa == a;
+            }
+            if (executed) {
+                c.addPendingAction(a); // the feedback is already in C.FA (the key is the new id of the intention)
+            } else {
+                c.addIntention(a.getIntention());
+            }
+        }
+        ActionExec selected = c.getAction();
+        if (selected != null && !c.hasIntention(selected.getIntention())) { // selected but not executed yet
+            c.addIntention(selected.getIntention());
+        }
+        c.reset();
+
+        for (String k : new ArrayList<String>(c.getPendingIntentions().keySet())) {
+            Intention i = c.removePendingIntention(k);
+            if (k.startsWith(suspend.SELF_SUSPENDED_INT)) {
+                c.addPendingIntention(suspend.SELF_SUSPENDED_INT + i.getId(), i);
+            } else if (k.startsWith(suspend.SUSPENDED_INT)) {
+                c.addPendingIntention(suspend.SUSPENDED_INT + i.getId(), i);
+            } else {
+                c.addIntention(i);
+            }
+        }
+    }
+
+    /** adds initial beliefs/goals and the kqml plans after the agent source was parsed */
+    private void loadComponents(boolean parsingOk, String asSrc) throws Exception {
+        if (parsingOk) {
+            if (getPL().hasMetaEventPlans()) {
+                getTS().addGoalListener(new GoalListenerForMetaEvents(getTS()));
+            }
+
+            addInitialBelsFromProjectInBB();
+            addInitialBelsInBB();
+            addInitialGoalsFromProjectInBB();
+            addInitialGoalsInTS();
+            fixAgInIAandFunctions(this); // used to fix agent reference in
+            // functions used inside
+            // includes
+        }
+
+        // kqml Plans at the end of the ag PS
+        if (JasonException.class.getResource("/asl/kqmlPlans.asl") != null) {
+            setASLSrc("kqmlPlans.asl");
+            parseAS(JasonException.class.getResource("/asl/kqmlPlans.asl"));
+            setASLSrc(asSrc);
+        } else {
+            logger.warning("The kqmlPlans.asl was not found!");
+        }
+    }
+
     /**
      * @deprecated Prefer the initAg method with only the source code of the
      * agent as parameter.
@@ -401,6 +570,10 @@ public class Agent {
             scheduler.shutdownNow();
         }
 
+        if (ts != null) {
+            ts.stopRealWorldPerception();
+        }
+
         for (InternalAction ia : internalActions.values()) {
             try {
                 ia.destroy();
@@ -454,15 +627,19 @@ public class Agent {
         // find all internal actions and functions and change the pointer for
         // agent
         for (Plan p : a.getPL()) {
-            // search context
-            if (p.getContext() instanceof Literal) {
-                fixAgInIAandFunctions(a, (Literal) p.getContext());
-            }
+            fixAgInIAandFunctions(a, p);
+        }
+    }
 
-            // search body
-            if (p.getBody() instanceof Literal) {
-                fixAgInIAandFunctions(a, (Literal) p.getBody());
-            }
+    private void fixAgInIAandFunctions(Agent a, Plan p) throws Exception {
+        // search context
+        if (p.getContext() instanceof Literal) {
+            fixAgInIAandFunctions(a, (Literal) p.getContext());
+        }
+
+        // search body
+        if (p.getBody() instanceof Literal) {
+            fixAgInIAandFunctions(a, (Literal) p.getBody());
         }
     }
 
@@ -696,6 +873,9 @@ public class Agent {
             // does not do BRF for rules (and so do not produce events +bel for
             // rules)
             if (b.isRule()) {
+                if (tables == null && b.hasAnnot(AnswerTables.TTabled)) {
+                    enableTabling();
+                }
                 getBB().add(b);
             } else {
                 addBel(b);
@@ -866,6 +1046,7 @@ public class Agent {
 
     public void setBB(BeliefBase bb) {
         this.bb = bb;
+        bindCaches();
     }
 
     public BeliefBase getBB() {
@@ -880,57 +1061,6 @@ public class Agent {
         return pl;
     }
 
-    private static boolean compare(String filter, String literal, Operator operator) {
-        if (literal == null) {
-            return false;
-        }
-        switch (operator) {
-            case E:
-                return (literal.matches(filter));
-            case B:
-                return Double.parseDouble(literal) > Double.parseDouble(filter);
-            case BE:
-                return Double.parseDouble(literal) >= Double.parseDouble(filter);
-            case S:
-                return Double.parseDouble(literal) < Double.parseDouble(filter);
-            case SE:
-                return Double.parseDouble(literal) <= Double.parseDouble(filter);
-            default:
-                return false;
-        }
-    }
-
-    private static String[] getParameters(String literal) {
-        String a = literal.split("\\(")[1];
-        if (a.startsWith(")")) {
-            return new String[0];
-        } else {
-            String parameters = a.split("\\)")[0];
-            return parameters.split("\\,");
-        }
-    }
-
-    private static boolean remove(Literal literal) {
-        Filter filter = currentObjective.hashFilter.get(literal.toString().split("\\(")[0]);
-        if (filter == null) {
-            return false;
-        }
-        for (Parameter param : filter.getParameters()) {
-            if (!compare(param.getValue(), getParameters(literal.toString()).length > param.getIndex() ?
-                                           getParameters(literal.toString())[param.getIndex()] : null,
-                    param.getOperator())) {
-                return false;
-            }
-        }
-        for (Annotation anot : filter.getAnotations()) {
-            if (!compare(anot.getValue(), literal.getAnnots(anot.getPredicate()).size() != 0 ? literal.getAnnots(
-                    anot.getPredicate()).toString().split("\\(")[1].split("\\)")[0] : null, anot.getOperator())) {
-                return false;
-            }
-        }
-        return true;
-    }
-
     private static void filter(List<Literal> percept) {
         if (currentObjective == null) {
             // System.out.println("not filtering");
@@ -939,7 +1069,7 @@ public class Agent {
         Iterator<Literal> it = percept.iterator();
         while (it.hasNext()) {
             // System.out.println("filtering");
-            if (remove(it.next())) {
+            if (currentObjective.filters(it.next())) {
                 it.remove();
             }
         }
@@ -980,81 +1110,59 @@ public class Agent {
         filter(percepts);
         //timer.endFilter();			//*** ativa o log ***
 
+        // index of the percepts by structure (functor, terms and negation, but not annots),
+        // so that each percept in BB is checked in constant time
+        Map<PerceptKey, Integer> perceived = new HashMap<PerceptKey, Integer>(percepts.size() * 2);
+        int index = 0;
+        for (Literal t : percepts) {
+            PerceptKey k = new PerceptKey(t);
+            if (!perceived.containsKey(k)) { // the first of equal percepts, as the previous (nested loops) version
+                perceived.put(k, index);
+            }
+            index++;
+        }
+        boolean[] alreadyInBB = new boolean[percepts.size()];
+
         Iterator<Literal> perceptsInBB = getBB().getPercepts();
         while (perceptsInBB.hasNext()) {
             Literal l = perceptsInBB.next();
 
             // could not use percepts.contains(l), since equalsAsTerm must be
             // used (to ignore annotations)
-            boolean wasPerceived = false;
-            Iterator<Literal> ip = percepts.iterator();
-            while (ip.hasNext()) {
-                Literal t = ip.next();
-
-                // if perception t is already in BB
-                if (l.equalsAsStructure(t) && l.negated() == t.negated()) {
-                    wasPerceived = true;
-                    // remove in percepts, since it already is in BB
-                    // [can not be always removed, since annots in this percepts
-                    // should be added in BB
-                    // Jason team for AC, for example, use annots in
-                    // perceptions]
-                    if (!l.hasAnnot()) {
-                        ip.remove();
-                    }
-                    break;
+            Integer t = perceived.get(new PerceptKey(l));
+            if (t != null) {
+                // perception t is already in BB
+                // skip it in percepts, since it already is in BB
+                // [can not be always skipped, since annots in this percepts
+                // should be added in BB
+                // Jason team for AC, for example, use annots in
+                // perceptions]
+                if (!l.hasAnnot()) {
+                    alreadyInBB[t] = true;
                 }
-            }
-            if (!wasPerceived) {
+            } else {
                 dels++;
                 // new version (it is sure that l is in BB, only clone l when
                 // the event is relevant)
                 perceptsInBB.remove(); // remove l as perception from BB
-
-                Trigger te = new Trigger(TEOperator.del, TEType.belief, l);
-                if (ts.getC().hasListener() || pl.hasCandidatePlan(te)) {
-                    l = l.copy();
-                    l.clearAnnots();
-                    l.addAnnot(BeliefBase.TPercept);
-                    te.setLiteral(l);
-                    ts.getC().addEvent(new Event(te, Intention.EmptyInt));
-                }
-
-                /*
-                 * // old version // can not delete l, but l[source(percept)] l
-                 * = (Literal)l.clone(); l.clearAnnots();
-                 * l.addAnnot(BeliefBase.TPercept); if (bb.remove(l)) {
-                 * ts.updateEvents(new Event(new Trigger(TEOperator.del,
-                 * TEType.belief, l), Intention.EmptyInt)); }
-                 */
+                generatePerceptDeletion(l);
             }
         }
-        // test
-        int step = 0;
-        //
+
         // BUF only adds a belief when appropriate
         // checking all percepts for new beliefs
+        index = 0;
         for (Literal lp : percepts) {
-            try {
-                // test
-                //if (lp.getFunctor().toString().startsWith("step")) {
-                //	step = Integer.parseInt(lp.getTerm(0).toString());
-                //}
-                //
-                lp = lp.copy().forceFullLiteralImpl();
-                lp.addAnnot(BeliefBase.TPercept);
-                if (getBB().add(lp)) {
-                    adds++;
-                    Trigger te = new Trigger(TEOperator.add, TEType.belief, lp);
-                    ts.updateEvents(new Event(te, Intention.EmptyInt));
-                }
-            } catch (Exception e) {
-                logger.log(Level.SEVERE, "Error adding percetion " + lp, e);
+            if (!alreadyInBB[index++] && addPercept(lp)) {
+                adds++;
             }
         }
 
         if (qCache != null) {
-            qCache.reset();
+            qCache.newCycle();
+        }
+        if (tables != null) {
+            tables.newCycle();
         }
         if (qProfiling != null) {
             qProfiling.newUpdateCycle(getTS().getUserAgArch().getCycleNumber(), adds + dels,
@@ -1076,10 +1184,144 @@ public class Agent {
 		*/
     }
 
+    /**
+     * Belief Update Function for perception sources that know what changed
+     * since the last perception (see {@link AgArch#perceiveDelta()}): only
+     * the added and removed percepts are updated in the belief base.
+     */
+    public void buf(PerceptDelta delta) {
+        if (delta == null) {
+            return;
+        }
+        int adds = 0;
+        int dels = 0;
+        long startTime = qProfiling == null ? 0 : System.nanoTime();
+
+        List<Literal> added = new ArrayList<Literal>(delta.getAdded());
+        filter(added);
+        for (Literal l : delta.getRemoved()) {
+            Literal lp = l.copy().forceFullLiteralImpl();
+            lp.clearAnnots();
+            lp.addAnnot(BeliefBase.TPercept);
+            if (getBB().remove(lp)) {
+                dels++;
+                generatePerceptDeletion(lp);
+            }
+        }
+        for (Literal lp : added) {
+            if (addPercept(lp)) {
+                adds++;
+            }
+        }
+
+        if (qCache != null) {
+            qCache.newCycle();
+        }
+        if (tables != null) {
+            tables.newCycle();
+        }
+        if (qProfiling != null) {
+            qProfiling.newUpdateCycle(getTS().getUserAgArch().getCycleNumber(), adds + dels,
+                    System.nanoTime() - startTime);
+        }
+    }
+
+    /** adds a percept in the BB (with source(percept)) and generates its event, returns whether it was added */
+    private boolean addPercept(Literal lp) {
+        try {
+            lp = lp.copy().forceFullLiteralImpl();
+            lp.addAnnot(BeliefBase.TPercept);
+            if (getBB().add(lp)) {
+                Trigger te = new Trigger(TEOperator.add, TEType.belief, lp);
+                ts.updateEvents(new Event(te, Intention.EmptyInt));
+                return true;
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error adding percetion " + lp, e);
+        }
+        return false;
+    }
+
+    /** generates the event for a percept removed from the BB, if some plan or listener may handle it */
+    private void generatePerceptDeletion(Literal l) {
+        Trigger te = new Trigger(TEOperator.del, TEType.belief, l);
+        if (ts.getC().hasListener() || pl.hasCandidatePlan(te)) {
+            l = l.copy();
+            l.clearAnnots();
+            l.addAnnot(BeliefBase.TPercept);
+            te.setLiteral(l);
+            ts.getC().addEvent(new Event(te, Intention.EmptyInt));
+        }
+    }
+
+    /** a percept compared by structure: functor, terms and negation, but not annotations */
+    private static final class PerceptKey {
+        private final Literal l;
+
+        PerceptKey(Literal l) {
+            this.l = l;
+        }
+
+        @Override
+        public int hashCode() {
+            return l.hashCode(); // annots are not considered by the hash code of literals
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PerceptKey)) {
+                return false;
+            }
+            Literal t = ((PerceptKey) o).l;
+            return l.negated() == t.negated() && l.equalsAsStructure(t);
+        }
+    }
+
     public QueryCacheSimple getQueryCache() {
         return qCache;
     }
 
+    /**
+     * returns the answer tables of the tabled predicates (see AnswerTables),
+     * null if the agent has no tabled rule and the option tabling=all is not set
+     */
+    public AnswerTables getAnswerTables() {
+        return tables;
+    }
+
+    /**
+     * creates the answer tables, if they do not exist yet: called when a rule
+     * annotated with tabled is added or if the option tabling=all is set,
+     * so that agents without tabling do not pay for the tables
+     */
+    public AnswerTables enableTabling() {
+        if (tables == null) {
+            tables = new AnswerTables(this);
+            tables.setTableAll(ts != null && ts.getSettings().hasTabling());
+            bindCaches();
+        }
+        return tables;
+    }
+
+    /**
+     * asks the BB to inform the query cache and the answer tables of the
+     * predicates that change, so that only the answers that depend on them
+     * are removed; for other BBs, they are cleared at each update of the beliefs
+     */
+    private void bindCaches() {
+        boolean tracked = bb instanceof DefaultBeliefBase;
+        if (tracked) {
+            ((DefaultBeliefBase) bb).setQueryCache(qCache);
+            ((DefaultBeliefBase) bb).setAnswerTables(this, tables);
+        }
+        if (qCache != null) {
+            qCache.setTracked(tracked);
+        }
+        if (tables != null) {
+            tables.setTracked(tracked);
+        }
+    }
+
     public QueryProfiling getQueryProfiling() {
         return qProfiling;
     }
@@ -0,0 +1,380 @@
+package jason.asSemantics;
+
+import jason.asSyntax.Literal;
+import jason.asSyntax.Plan;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A binary snapshot of the state of an agent: its beliefs, plans, initial
+ * goals and the whole circumstance (events, intentions with their intended
+ * means and unifiers, pending actions, intentions and events, feedback
+ * actions and mailbox).
+ *
+ * <p>It is used to move a running agent to another MAS: the agent restored
+ * by {@link Agent#restore(AgentSnapshot)} continues its intentions from the
+ * point where they were captured, and no source code is parsed.
+ *
+ * <p>The encoded form starts with {@link #MAGIC} and a version byte,
+ * so that it can be told apart from AgentSpeak source code.
+ *
+ * <p>A delta snapshot (see {@link #capture(Agent, Set, Set)}) does not carry
+ * the plans and beliefs the target MAS already has, only their hashes, and
+ * must be resolved by {@link #resolve(ContentIndex)} before being restored.
+ *
+ * <p>Since snapshots come from other MASs, {@link #read(InputStream)} only
+ * instantiates the classes in the allow-list (the Jason terms, plans,
+ * circumstance and arithmetic functions, and the collections and numbers
+ * they use); packages of user classes that may be in the state of an agent
+ * (e.g. in object terms) are added by {@link #allowPackage(String)}.
+ */
+public class AgentSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** first bytes of an encoded snapshot (0xAC is never the first byte of an UTF-8 text) */
+    public static final byte[] MAGIC = {(byte) 0xAC, 'J', 'A', 'S'};
+
+    public static final byte VERSION = 1;
+
+    /** classes that can be read from a snapshot */
+    private static final Set<String> allowedClasses = new HashSet<String>(Arrays.asList(
+            // state of the agent
+            "jason.asSemantics.ActionExec",
+            "jason.asSemantics.AgentSnapshot",
+            "jason.asSemantics.Circumstance",
+            "jason.asSemantics.Event",
+            "jason.asSemantics.IntendedMeans",
+            "jason.asSemantics.Intention",
+            "jason.asSemantics.Message",
+            "jason.asSemantics.Option",
+            "jason.asSemantics.Unifier",
+            // terms and plans
+            "jason.asSyntax.ArithExpr",
+            "jason.asSyntax.ArithExpr$ArithmeticOp",
+            "jason.asSyntax.ArithFunctionTerm",
+            "jason.asSyntax.Atom",
+            "jason.asSyntax.BinaryStructure",
+            "jason.asSyntax.CyclicTerm",
+            "jason.asSyntax.DefaultTerm",
+            "jason.asSyntax.InternalActionLiteral",
+            "jason.asSyntax.ListTermImpl",
+            "jason.asSyntax.Literal",
+            "jason.asSyntax.Literal$FalseLiteral",
+            "jason.asSyntax.Literal$TrueLiteral",
+            "jason.asSyntax.LiteralImpl",
+            "jason.asSyntax.LogExpr",
+            "jason.asSyntax.LogExpr$LogicalOp",
+            "jason.asSyntax.NumberTermImpl",
+            "jason.asSyntax.ObjectTermImpl",
+            "jason.asSyntax.Plan",
+            "jason.asSyntax.PlanBody$BodyType",
+            "jason.asSyntax.PlanBodyImpl",
+            "jason.asSyntax.Pred",
+            "jason.asSyntax.Pred$1", // ground sources, see Pred.createSource
+            "jason.asSyntax.RelExpr",
+            "jason.asSyntax.RelExpr$RelationalOp",
+            "jason.asSyntax.Rule",
+            "jason.asSyntax.SourceInfo",
+            "jason.asSyntax.StringTermImpl",
+            "jason.asSyntax.Structure",
+            "jason.asSyntax.Trigger",
+            "jason.asSyntax.Trigger$TEOperator",
+            "jason.asSyntax.Trigger$TEType",
+            "jason.asSyntax.UnnamedVar",
+            "jason.asSyntax.VarTerm",
+            // arithmetic functions
+            "jason.asSemantics.DefaultArithFunction",
+            "jason.functions.Abs",
+            "jason.functions.Average",
+            "jason.functions.Count",
+            "jason.functions.Length",
+            "jason.functions.Max",
+            "jason.functions.Min",
+            "jason.functions.Random",
+            "jason.functions.Round",
+            "jason.functions.RuleToFunction",
+            "jason.functions.Sqrt",
+            "jason.functions.StdDev",
+            "jason.functions.Sum",
+            "jason.functions.ceil",
+            "jason.functions.e",
+            "jason.functions.floor",
+            "jason.functions.log",
+            "jason.functions.pi",
+            "jason.functions.time",
+            // collections of the circumstance, intentions and unifiers
+            "java.util.ArrayDeque",
+            "java.util.ArrayList",
+            "java.util.HashMap",
+            "java.util.concurrent.ConcurrentHashMap",
+            "java.util.concurrent.ConcurrentHashMap$Segment",
+            "java.util.concurrent.ConcurrentLinkedQueue",
+            "java.util.concurrent.locks.AbstractOwnableSynchronizer",
+            "java.util.concurrent.locks.AbstractQueuedSynchronizer",
+            "java.util.concurrent.locks.ReentrantLock",
+            "java.util.concurrent.locks.ReentrantLock$NonfairSync",
+            "java.util.concurrent.locks.ReentrantLock$Sync",
+            // numbers (in number terms and object terms) and enums
+            "java.lang.Boolean",
+            "java.lang.Double",
+            "java.lang.Enum",
+            "java.lang.Integer",
+            "java.lang.Long",
+            "java.lang.Number"));
+
+    /** prefixes of the user classes that can be read from a snapshot */
+    private static final List<String> allowedPackages = new CopyOnWriteArrayList<String>();
+
+    private final List<Literal> beliefs;
+
+    private final List<Plan> plans;
+
+    private final List<Literal> initialGoals;
+
+    private final Circumstance circumstance;
+
+    /** for each plan, its hash if the plan was not shipped (null if the snapshot is complete) */
+    private List<String> planRefs;
+
+    /** for each belief, its hash if the belief was not shipped (null if the snapshot is complete) */
+    private List<String> beliefRefs;
+
+    private AgentSnapshot(List<Literal> beliefs, List<Plan> plans, List<Literal> initialGoals, Circumstance c) {
+        this.beliefs = beliefs;
+        this.plans = plans;
+        this.initialGoals = initialGoals;
+        this.circumstance = c;
+    }
+
+    /**
+     * Captures the current state of the agent. The circumstance is not copied,
+     * so the snapshot should be encoded before the agent runs again.
+     */
+    public static AgentSnapshot capture(Agent ag) {
+        List<Literal> beliefs = new ArrayList<Literal>(ag.getBB().size());
+        for (Literal b : ag.getBB()) {
+            beliefs.add(b);
+        }
+        return new AgentSnapshot(beliefs, new ArrayList<Plan>(ag.getPL().getPlans()),
+                new ArrayList<Literal>(ag.getInitialGoals()), ag.getTS().getC());
+    }
+
+    /**
+     * Captures the current state of the agent leaving out the plans and
+     * beliefs whose hash (as computed by {@link ContentIndex}) is known by
+     * the target MAS. The order of plans and beliefs is kept.
+     */
+    public static AgentSnapshot capture(Agent ag, Set<String> knownPlans, Set<String> knownBeliefs) {
+        AgentSnapshot s = capture(ag);
+        s.planRefs = new ArrayList<String>(s.plans.size());
+        for (int i = 0; i < s.plans.size(); i++) {
+            String hash = ContentIndex.hash(s.plans.get(i));
+            if (knownPlans.contains(hash)) {
+                s.plans.set(i, null);
+                s.planRefs.add(hash);
+            } else {
+                s.planRefs.add(null);
+            }
+        }
+        s.beliefRefs = new ArrayList<String>(s.beliefs.size());
+        for (int i = 0; i < s.beliefs.size(); i++) {
+            String hash = ContentIndex.hash(s.beliefs.get(i));
+            if (knownBeliefs.contains(hash)) {
+                s.beliefs.set(i, null);
+                s.beliefRefs.add(hash);
+            } else {
+                s.beliefRefs.add(null);
+            }
+        }
+        return s;
+    }
+
+    /** returns true if some plan or belief was left out and must be resolved */
+    public boolean isDelta() {
+        return planRefs != null || beliefRefs != null;
+    }
+
+    /**
+     * Replaces the plans and beliefs left out by {@link #capture(Agent, Set, Set)}
+     * by the copies found in the index.
+     *
+     * @throws IOException if some hash is not in the index
+     */
+    public void resolve(ContentIndex index) throws IOException {
+        if (planRefs != null) {
+            for (int i = 0; i < planRefs.size(); i++) {
+                String hash = planRefs.get(i);
+                if (hash != null) {
+                    Plan p = index.getPlan(hash);
+                    if (p == null) {
+                        throw new IOException("the agent snapshot refers to an unknown plan " + hash);
+                    }
+                    plans.set(i, p);
+                }
+            }
+            planRefs = null;
+        }
+        if (beliefRefs != null) {
+            for (int i = 0; i < beliefRefs.size(); i++) {
+                String hash = beliefRefs.get(i);
+                if (hash != null) {
+                    Literal b = index.getBelief(hash);
+                    if (b == null) {
+                        throw new IOException("the agent snapshot refers to an unknown belief " + hash);
+                    }
+                    beliefs.set(i, b);
+                }
+            }
+            beliefRefs = null;
+        }
+    }
+
+    public List<Literal> getBeliefs() {
+        return beliefs;
+    }
+
+    public List<Plan> getPlans() {
+        return plans;
+    }
+
+    public List<Literal> getInitialGoals() {
+        return initialGoals;
+    }
+
+    public Circumstance getCircumstance() {
+        return circumstance;
+    }
+
+    /** writes the encoded snapshot (magic, version and the serialized state) */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+        ObjectOutputStream oout = new ObjectOutputStream(out);
+        oout.writeObject(this);
+        oout.flush();
+    }
+
+    public byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+        return out.toByteArray();
+    }
+
+    /** returns true if the content is an encoded snapshot */
+    public static boolean isSnapshot(byte[] content) {
+        return content != null && content.length > MAGIC.length
+                && Arrays.equals(MAGIC, Arrays.copyOf(content, MAGIC.length));
+    }
+
+    /**
+     * Returns true if the next bytes of the stream are an encoded snapshot,
+     * the stream is not consumed (it must support mark/reset).
+     */
+    public static boolean isSnapshot(InputStream in) throws IOException {
+        byte[] header = new byte[MAGIC.length];
+        in.mark(header.length);
+        try {
+            int read = 0;
+            while (read < header.length) {
+                int n = in.read(header, read, header.length - read);
+                if (n < 0) {
+                    return false;
+                }
+                read += n;
+            }
+            return Arrays.equals(MAGIC, header);
+        } finally {
+            in.reset();
+        }
+    }
+
+    /** allows the classes whose name starts with the prefix to be read from snapshots */
+    public static void allowPackage(String prefix) {
+        if (!allowedPackages.contains(prefix)) {
+            allowedPackages.add(prefix);
+        }
+    }
+
+    static boolean isAllowed(String className) {
+        if (allowedClasses.contains(className)) {
+            return true;
+        }
+        if (className.startsWith("java.lang.reflect.") || className.startsWith("java.lang.invoke.")) {
+            return false;
+        }
+        for (String prefix : allowedPackages) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** reads a snapshot written by {@link #writeTo(OutputStream)} */
+    public static AgentSnapshot read(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in);
+        }
+        if (!isSnapshot(in)) {
+            throw new IOException("the content is not an agent snapshot");
+        }
+        DataInputStream din = new DataInputStream(in);
+        din.skipBytes(MAGIC.length);
+        byte version = din.readByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported agent snapshot version " + version);
+        }
+        try {
+            return (AgentSnapshot) new AllowListInputStream(in).readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("the agent snapshot refers to an unknown class: " + e.getMessage(), e);
+        }
+    }
+
+    /** an object stream that refuses classes out of the allow-list */
+    private static class AllowListInputStream extends ObjectInputStream {
+
+        AllowListInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            int dims = 0;
+            while (name.charAt(dims) == '[') {
+                dims++;
+            }
+            if (dims > 0) {
+                // arrays: primitive ones are allowed, otherwise the component class is checked
+                name = name.charAt(dims) == 'L' ? name.substring(dims + 1, name.length() - 1) : null;
+            }
+            if (name != null && !isAllowed(name)) {
+                throw new InvalidClassException(desc.getName(), "class not allowed in an agent snapshot");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+            throw new InvalidClassException("proxy classes are not allowed in an agent snapshot");
+        }
+    }
+}
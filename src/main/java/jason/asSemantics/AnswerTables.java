@@ -0,0 +1,390 @@
+package jason.asSemantics;
+
+import jason.asSyntax.Atom;
+import jason.asSyntax.ListTerm;
+import jason.asSyntax.Literal;
+import jason.asSyntax.PredicateIndicator;
+import jason.asSyntax.Structure;
+import jason.asSyntax.Term;
+import jason.asSyntax.VarTerm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Answer tables of the tabled predicates of an agent.
+ *
+ * <p>A predicate is tabled if one of its rules has the annotation
+ * <code>tabled</code>, as in
+ * <pre>
+ * path(X,Y)[tabled] :- edge(X,Y).
+ * path(X,Y)[tabled] :- edge(X,Z) &amp; path(Z,Y).
+ * </pre>
+ * or, if the option <code>tabling=all</code> is set for the agent, if it has
+ * rules. The answers of each call of a tabled predicate are computed once
+ * and stored in a table for the call (calls that are equal but for the
+ * names of their variables share the table), so that the subgoals are not
+ * derived again and recursive rules terminate on cyclic data (as graphs
+ * with loops).
+ *
+ * <p>The answers are computed by iteration until a fixed point: while a
+ * call is being evaluated, recursive calls of it (or of calls that depend on
+ * it) use the answers found so far, and the evaluation is repeated until no
+ * new answer is found. The answers of a tabled query are therefore given
+ * only after all of them are found.
+ *
+ * <p>As for the query cache ({@link QueryCacheSimple}), the tables are
+ * removed when the beliefs of the predicates they depend on change (as
+ * informed by DefaultBeliefBase), and at each update cycle if their rules
+ * use internal actions like .random or if the belief base does not inform
+ * its changes.
+ */
+public class AnswerTables {
+
+    /** the annotation of tabled rules */
+    public static final Term TTabled = new Atom("tabled");
+
+    private Agent ag;
+
+    /** whether all predicates defined by rules are tabled */
+    private boolean tableAll = false;
+
+    /** whether the BB informs its changes */
+    private boolean tracked = false;
+
+    /** the tables of the calls (the key is the call with variables renamed by {@link #variant}) */
+    private Map<Literal, Table> tables = new HashMap<Literal, Table>();
+
+    /** whether each predicate is tabled (cleared when rules change) */
+    private Map<PredicateIndicator, Boolean> tabled = new HashMap<PredicateIndicator, Boolean>();
+
+    /** the tables that depend on each predicate */
+    private Map<PredicateIndicator, Set<Literal>> dependents = new HashMap<PredicateIndicator, Set<Literal>>();
+
+    /** the tables removed at each update cycle */
+    private Set<Literal> volatileTables = new HashSet<Literal>();
+
+    /** dependencies of the predicates, computed from the rules in the BB (cleared when rules change) */
+    private Map<PredicateIndicator, PredicateDependencies> dependencies =
+            new HashMap<PredicateIndicator, PredicateDependencies>();
+
+    /** the tables being evaluated, the last is the current one */
+    private List<Table> stack = new ArrayList<Table>();
+
+    /** the call that is being evaluated by its table (and so is not answered by the table) */
+    private Literal evaluating = null;
+
+    /** number of answers added in all tables, used to detect the fixed point */
+    private long nbAnswers = 0;
+
+    public AnswerTables(Agent ag) {
+        this.ag = ag;
+    }
+
+    /** sets whether all predicates defined by rules are tabled (and not only those annotated with tabled) */
+    public void setTableAll(boolean b) {
+        tableAll = b;
+        reset();
+    }
+
+    /** sets whether the BB calls beliefChanged for all its changes */
+    public void setTracked(boolean tracked) {
+        this.tracked = tracked;
+    }
+
+    /** removes all tables */
+    public void reset() {
+        if (!stack.isEmpty()) {
+            return; // a query is being evaluated (the BB does not change while rules are evaluated)
+        }
+        tables.clear();
+        tabled.clear();
+        dependents.clear();
+        volatileTables.clear();
+        dependencies.clear();
+    }
+
+    /** called at each update of the beliefs by perception */
+    public void newCycle() {
+        if (!tracked) {
+            reset();
+        } else if (!volatileTables.isEmpty()) {
+            for (Literal k : volatileTables.toArray(new Literal[volatileTables.size()])) {
+                remove(k);
+            }
+        }
+    }
+
+    /** called by the BB when the belief <i>l</i> is added, removed or has its annotations changed */
+    public void beliefChanged(Literal l) {
+        if (l.isRule()) {
+            tabled.clear();
+            dependencies.clear();
+        }
+        invalidate(l.getPredicateIndicator());
+    }
+
+    /** called by the BB when all beliefs of <i>pi</i> are removed (by abolish), rules included */
+    public void predicateChanged(PredicateIndicator pi) {
+        tabled.clear();
+        dependencies.clear();
+        invalidate(pi);
+    }
+
+    private void invalidate(PredicateIndicator pi) {
+        Set<Literal> ks = dependents.remove(pi);
+        if (ks != null) {
+            for (Literal k : ks) {
+                remove(k);
+            }
+        }
+    }
+
+    private void remove(Literal k) {
+        Table t = tables.get(k);
+        if (t != null && t.state != Table.EVALUATING) {
+            tables.remove(k);
+        }
+        volatileTables.remove(k);
+    }
+
+    /** returns the number of tables */
+    public int size() {
+        return tables.size();
+    }
+
+    /** returns whether the answers of <i>l</i> are given by a table */
+    public boolean isTabled(Literal l) {
+        PredicateIndicator pi = l.getPredicateIndicator();
+        Boolean b = tabled.get(pi);
+        if (b == null) {
+            b = Boolean.FALSE;
+            Iterator<Literal> i = ag.getBB().getCandidateBeliefs(pi);
+            while (i != null && i.hasNext()) {
+                Literal r = i.next();
+                if (r.isRule() && (tableAll || r.hasAnnot(TTabled))) {
+                    b = Boolean.TRUE;
+                    break;
+                }
+            }
+            tabled.put(pi, b);
+        }
+        return b;
+    }
+
+    /**
+     * returns whether <i>l</i> is the call being evaluated by its table, in
+     * that case its rules and beliefs are used to answer it (and not the
+     * table), this method must be called once at the start of the evaluation
+     */
+    public boolean isEvaluating(Literal l) {
+        if (evaluating == l) {
+            evaluating = null;
+            return true;
+        }
+        return false;
+    }
+
+    /** returns whether some table is being evaluated (its answers may be incomplete) */
+    public boolean isEvaluating() {
+        return !stack.isEmpty();
+    }
+
+    /** returns the answers for the tabled literal <i>l</i> */
+    public Iterator<Unifier> consult(final Literal l, final Unifier un) {
+        final Literal call = (Literal) l.capply(un);
+        final Literal key = variant(call);
+        Table t = tables.get(key);
+        if (t == null || t.state == Table.EVALUATING && stack.isEmpty()) {
+            t = new Table(key, call);
+            tables.put(key, t);
+            evaluate(t);
+            addDependencies(key, call.getPredicateIndicator());
+        } else if (t.state == Table.EVALUATING) {
+            // a recursive call: uses the answers found so far, the table will be evaluated again
+            Table top = stack.get(stack.size() - 1);
+            top.minDep = Math.min(top.minDep, t.dfn);
+        } else if (t.state == Table.INCOMPLETE) {
+            // evaluated while its leader is being evaluated: evaluates it again with the new answers
+            evaluate(t);
+        }
+
+        final List<Literal> answers = t.answers;
+        return new Iterator<Unifier>() {
+            int i = 0; // new answers may be added while iterating (for recursive calls)
+            Unifier current = null;
+
+            public boolean hasNext() {
+                while (current == null && i < answers.size()) {
+                    Unifier u = un.clone();
+                    if (u.unifiesNoUndo(l, answers.get(i++))) {
+                        current = u;
+                    }
+                }
+                return current != null;
+            }
+
+            public Unifier next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Unifier u = current;
+                current = null;
+                return u;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * evaluates the rules and beliefs for the call of the table, until a fixed
+     * point if the call depends on itself
+     */
+    private void evaluate(Table t) {
+        t.state = Table.EVALUATING;
+        t.dfn = stack.size();
+        stack.add(t);
+        boolean finished = false;
+        try {
+            long before;
+            do {
+                before = nbAnswers;
+                t.minDep = Integer.MAX_VALUE;
+                evaluating = t.call;
+                Iterator<Unifier> i = t.call.logicalConsequence(ag, new Unifier());
+                evaluating = null;
+                while (i.hasNext()) {
+                    t.addAnswer((Literal) t.call.capply(i.next()));
+                }
+            } while (t.minDep == t.dfn && nbAnswers != before);
+            finished = true;
+        } finally {
+            evaluating = null;
+            stack.remove(stack.size() - 1);
+            if (!finished) { // the answers may be incomplete
+                tables.remove(t.key);
+                for (Table m : t.scc) {
+                    tables.remove(m.key);
+                }
+            }
+        }
+
+        if (t.minDep < t.dfn) {
+            // depends on a table being evaluated, it is completed with its leader
+            t.state = Table.INCOMPLETE;
+            Table parent = stack.get(stack.size() - 1);
+            parent.minDep = Math.min(parent.minDep, t.minDep);
+            parent.scc.add(t);
+            parent.scc.addAll(t.scc);
+        } else {
+            t.state = Table.COMPLETE;
+            for (Table m : t.scc) {
+                m.state = Table.COMPLETE;
+            }
+        }
+        t.scc.clear();
+    }
+
+    private void addDependencies(Literal key, PredicateIndicator pi) {
+        PredicateDependencies d = dependencies.get(pi);
+        if (d == null) {
+            d = PredicateDependencies.compute(ag.getBB(), pi);
+            dependencies.put(pi, d);
+        }
+        for (PredicateIndicator dpi : d.predicates) {
+            Set<Literal> ks = dependents.get(dpi);
+            if (ks == null) {
+                ks = new HashSet<Literal>();
+                dependents.put(dpi, ks);
+            } else if (ks.size() > tables.size()) {
+                ks.retainAll(tables.keySet()); // forget tables already removed
+            }
+            ks.add(key);
+        }
+        if (d.isVolatile) {
+            volatileTables.add(key);
+        }
+    }
+
+    /** returns a copy of <i>l</i> whose variables are named by their order (so variants are equal) */
+    static Literal variant(Literal l) {
+        Literal v = l.copy();
+        rename(v, new HashMap<Term, VarTerm>());
+        return v;
+    }
+
+    private static Term rename(Term t, Map<Term, VarTerm> vars) {
+        if (t.isVar()) {
+            VarTerm v = vars.get(t);
+            if (v == null) {
+                v = new VarTerm("T" + vars.size());
+                vars.put(t, v);
+            }
+            return v;
+        }
+        if (t.isList()) {
+            ListTerm l = (ListTerm) t;
+            while (!l.isEmpty()) {
+                l.setTerm(rename(l.getTerm(), vars));
+                if (l.isTail()) {
+                    l.setNext(rename(l.getTail(), vars));
+                    break;
+                }
+                l = l.getNext();
+            }
+        } else if (t instanceof Structure) {
+            Structure s = (Structure) t;
+            for (int i = 0; i < s.getArity(); i++) {
+                s.setTerm(i, rename(s.getTerm(i), vars));
+            }
+            if (s instanceof Literal && ((Literal) s).hasAnnot()) {
+                rename(((Literal) s).getAnnots(), vars);
+            }
+            s.resetHashCodeCache();
+        }
+        return t;
+    }
+
+    /** the answers of a call */
+    private final class Table {
+        static final int EVALUATING = 0;
+        static final int INCOMPLETE = 1; // evaluated, but depends on a table still being evaluated
+        static final int COMPLETE = 2;
+
+        final Literal key;
+        final Literal call;
+        final List<Literal> answers = new ArrayList<Literal>();
+        final Set<Literal> answerKeys = new HashSet<Literal>();
+        int state = EVALUATING;
+
+        /** position in the stack of tables being evaluated */
+        int dfn;
+
+        /** the lowest position of a table being evaluated used by this one */
+        int minDep;
+
+        /** the incomplete tables that are completed with this one */
+        final List<Table> scc = new ArrayList<Table>();
+
+        Table(Literal key, Literal call) {
+            this.key = key;
+            this.call = call;
+        }
+
+        void addAnswer(Literal a) {
+            if (answerKeys.add(variant(a))) {
+                answers.add(a);
+                nbAnswers++;
+            }
+        }
+    }
+}
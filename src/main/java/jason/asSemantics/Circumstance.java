@@ -31,6 +31,8 @@ import jason.infra.centralised.CentralisedAgArch;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -77,9 +79,9 @@ public class Circumstance implements Serializable {
     private Map<String, Event> PE;
             // pending events, events suspended by .suspend
 
-    private List<CircumstanceListener> listeners = new CopyOnWriteArrayList<CircumstanceListener>();
+    private transient List<CircumstanceListener> listeners = new CopyOnWriteArrayList<CircumstanceListener>();
 
-    private TransitionSystem ts = null;
+    private transient TransitionSystem ts = null;
 
     public Circumstance() {
         create();
@@ -90,6 +92,12 @@ public class Circumstance implements Serializable {
         this.ts = ts;
     }
 
+    /** listeners belong to the agent that created them, a deserialized C starts without listeners */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        listeners = new CopyOnWriteArrayList<CircumstanceListener>();
+    }
+
     /** creates new collections for E, I, MB, PA, PI, and FA */
     public void create() {
         // use LinkedList since we use a lot of remove(0) in selectEvent
@@ -153,7 +153,6 @@ public abstract class ConcurrentInternalAction implements InternalAction {
                 }
             }
         });
-        ts.getUserAgArch().wake();
     }
 
     public void destroy() throws Exception {
@@ -0,0 +1,133 @@
+package jason.asSemantics;
+
+import jason.asSyntax.Literal;
+import jason.asSyntax.Plan;
+import jason.asSyntax.Pred;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index, by content hash, of the plans and beliefs of some agents.
+ *
+ * <p>It is used to move agents between MASs deployed from the same sources:
+ * the target MAS advertises the hashes it already has and the source MAS
+ * ships only the plans and beliefs that are missing there (see
+ * {@link AgentSnapshot#capture(Agent, Set, Set)}), which are then resolved
+ * against this index by {@link AgentSnapshot#resolve(ContentIndex)}.
+ *
+ * <p>The hash of a plan does not consider labels generated by the plan
+ * library (l__N), since they differ from one MAS to another.
+ */
+public class ContentIndex {
+
+    private final Map<String, Plan> plans = new LinkedHashMap<String, Plan>();
+
+    private final Map<String, Literal> beliefs = new LinkedHashMap<String, Literal>();
+
+    /** maximum number of plans and of beliefs in the index */
+    private final int maxEntries;
+
+    public ContentIndex() {
+        this(Integer.MAX_VALUE);
+    }
+
+    public ContentIndex(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Adds the plans and beliefs of the agent to the index. The agent may be
+     * running: if its BB or PL changes meanwhile, what was already indexed is
+     * kept.
+     */
+    public void addAgent(Agent ag) {
+        try {
+            for (Plan p : ag.getPL().getPlans()) {
+                if (plans.size() >= maxEntries) {
+                    break;
+                }
+                add(plans, hash(p), p);
+            }
+            for (Literal b : ag.getBB()) {
+                if (beliefs.size() >= maxEntries) {
+                    break;
+                }
+                add(beliefs, hash(b), b);
+            }
+        } catch (ConcurrentModificationException e) {
+            // the agent changed while it was being indexed
+        }
+    }
+
+    private static <T> void add(Map<String, T> map, String hash, T value) {
+        if (!map.containsKey(hash)) {
+            map.put(hash, value);
+        }
+    }
+
+    public Set<String> getPlanHashes() {
+        return Collections.unmodifiableSet(plans.keySet());
+    }
+
+    public Set<String> getBeliefHashes() {
+        return Collections.unmodifiableSet(beliefs.keySet());
+    }
+
+    /** returns a copy of the plan with the hash (or null) */
+    public Plan getPlan(String hash) {
+        Plan p = plans.get(hash);
+        return p == null ? null : (Plan) p.clone();
+    }
+
+    /** returns a copy of the belief with the hash (or null) */
+    public Literal getBelief(String hash) {
+        Literal b = beliefs.get(hash);
+        return b == null ? null : b.copy();
+    }
+
+    /** the hash of a plan: its user label (if any), trigger, context and body */
+    public static String hash(Plan p) {
+        StringBuilder s = new StringBuilder();
+        Pred label = p.getLabel();
+        if (label != null && !label.getFunctor().startsWith("l__")) {
+            s.append('@').append(label.getFunctor()).append(' ');
+        }
+        s.append(p.getTrigger());
+        if (p.getContext() != null) {
+            s.append(" : ").append(p.getContext());
+        }
+        if (!p.getBody().isEmptyBody()) {
+            s.append(" <- ").append(p.getBody());
+        }
+        return digest(s.toString());
+    }
+
+    /** the hash of a belief, annotations included */
+    public static String hash(Literal b) {
+        return digest(b.toString());
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** the first 64 bits of the SHA-1 of the text, in hexadecimal */
+    private static String digest(String s) {
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+            char[] r = new char[16];
+            for (int i = 0; i < 8; i++) {
+                r[2 * i] = HEX[(d[i] >> 4) & 0xF];
+                r[2 * i + 1] = HEX[d[i] & 0xF];
+            }
+            return new String(r);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-1 is available in every JRE
+        }
+    }
+}
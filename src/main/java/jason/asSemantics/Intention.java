@@ -27,6 +27,8 @@ import jason.asSyntax.*;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayDeque;
 import java.util.Deque;
@@ -69,6 +71,12 @@ public class Intention implements Serializable, Comparable<Intention>, Iterable<
         return id;
     }
 
+    /** a deserialized intention (e.g. from an agent snapshot) gets a new id, unique in this JVM */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        id = idCount.incrementAndGet();
+    }
+
     public void push(IntendedMeans im) {
         intendedMeans.push(im);
         if (im.isAtomic()) {
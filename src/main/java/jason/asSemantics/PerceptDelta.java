@@ -0,0 +1,67 @@
+package jason.asSemantics;
+
+import jason.asSyntax.Literal;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The changes in the perception of an agent since its last perception:
+ * the percepts added and the percepts removed.
+ *
+ * <p>It is used by perception sources that know what changed (see
+ * {@link jason.architecture.AgArch#perceiveDelta()}), so that the belief
+ * update function does not need to compare the whole perception with the
+ * percepts in the belief base (see {@link Agent#buf(PerceptDelta)}).
+ */
+public class PerceptDelta {
+
+    private final Set<Literal> added;
+
+    private final Set<Literal> removed;
+
+    public PerceptDelta() {
+        this.added = new LinkedHashSet<Literal>();
+        this.removed = new LinkedHashSet<Literal>();
+    }
+
+    public PerceptDelta(Collection<Literal> added, Collection<Literal> removed) {
+        this.added = new LinkedHashSet<Literal>(added);
+        this.removed = new LinkedHashSet<Literal>(removed);
+    }
+
+    /** records a new percept, undoing a removal of the same percept in this delta */
+    public PerceptDelta add(Literal l) {
+        if (!removed.remove(l)) {
+            added.add(l);
+        }
+        return this;
+    }
+
+    /** records a percept that is not perceived anymore, undoing an addition of the same percept in this delta */
+    public PerceptDelta remove(Literal l) {
+        if (!added.remove(l)) {
+            removed.add(l);
+        }
+        return this;
+    }
+
+    public Collection<Literal> getAdded() {
+        return Collections.unmodifiableSet(added);
+    }
+
+    public Collection<Literal> getRemoved() {
+        return Collections.unmodifiableSet(removed);
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "+" + added + " -" + removed;
+    }
+}
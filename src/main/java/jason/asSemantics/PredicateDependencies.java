@@ -0,0 +1,135 @@
+package jason.asSemantics;
+
+import jason.asSyntax.ArithExpr;
+import jason.asSyntax.ArithFunctionTerm;
+import jason.asSyntax.InternalActionLiteral;
+import jason.asSyntax.ListTerm;
+import jason.asSyntax.Literal;
+import jason.asSyntax.LogExpr;
+import jason.asSyntax.LogicalFormula;
+import jason.asSyntax.PredicateIndicator;
+import jason.asSyntax.RelExpr;
+import jason.asSyntax.Rule;
+import jason.asSyntax.Term;
+import jason.bb.BeliefBase;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * The predicates used, directly or by other rules, by the rules of some
+ * predicate, as computed from the rules in the belief base. It is used to
+ * know which stored answers (of the query cache and of the tabled
+ * predicates) become outdated when the beliefs of a predicate change.
+ */
+final class PredicateDependencies {
+
+    /** internal actions whose results only depend on their arguments (and the BB, for findall, setof and count) */
+    private static final Set<String> pureInternalActions = new HashSet<String>(Arrays.asList(".atom", ".concat",
+            ".count", ".delete", ".difference", ".empty", ".findall", ".ground", ".intersection", ".length", ".list",
+            ".literal", ".max", ".member", ".min", ".nth", ".number", ".prefix", ".range", ".reverse", ".setof",
+            ".sort", ".string", ".structure", ".sublist", ".substring", ".suffix", ".term2string", ".union"));
+
+    /** functions whose results only depend on their arguments (and the BB, for .count) */
+    private static final Set<String> pureFunctions = new HashSet<String>(Arrays.asList("math.abs",
+            "math.average", ".count", ".length", "math.max", "math.min", "math.round", "math.sqrt", "math.std_dev",
+            "math.sum", "math.ceil", "math.e", "math.floor", "math.log", "math.pi"));
+
+    /** the predicate itself and all predicates used by its rules */
+    final Set<PredicateIndicator> predicates = new HashSet<PredicateIndicator>();
+
+    /**
+     * whether the rules use internal actions or functions that may give other
+     * answers without changes in the BB (as .random or .time) or variables as
+     * formulas
+     */
+    boolean isVolatile = false;
+
+    private PredicateDependencies() {
+    }
+
+    /** computes the dependencies of <i>pi</i> from the rules in <i>bb</i> */
+    static PredicateDependencies compute(BeliefBase bb, PredicateIndicator pi) {
+        PredicateDependencies d = new PredicateDependencies();
+        Deque<PredicateIndicator> todo = new ArrayDeque<PredicateIndicator>();
+        d.predicates.add(pi);
+        todo.add(pi);
+        while (!todo.isEmpty()) {
+            Iterator<Literal> i = bb.getCandidateBeliefs(todo.poll());
+            while (i != null && i.hasNext()) {
+                Literal b = i.next();
+                if (b.isRule()) {
+                    d.addFormula(((Rule) b).getBody(), todo);
+                }
+            }
+        }
+        return d;
+    }
+
+    private void addFormula(LogicalFormula f, Deque<PredicateIndicator> todo) {
+        if (f.isVar()) {
+            isVolatile = true; // unknown formula
+        } else if (f instanceof LogExpr) {
+            for (Term t : ((LogExpr) f).getTerms()) {
+                addFormula((LogicalFormula) t, todo);
+            }
+        } else if (f instanceof RelExpr) {
+            addTerms((RelExpr) f, todo);
+        } else if (f instanceof InternalActionLiteral) {
+            InternalActionLiteral ia = (InternalActionLiteral) f;
+            if (!pureInternalActions.contains(ia.getFunctor()) || hasVarQuery(ia)) {
+                isVolatile = true;
+            }
+            addTerms(ia, todo);
+        } else if (f instanceof Literal) {
+            addPredicate((Literal) f, todo);
+            addTerms((Literal) f, todo);
+        } else {
+            isVolatile = true;
+        }
+    }
+
+    /** the terms of l may be queries (as in .findall or .count) */
+    private void addTerms(Literal l, Deque<PredicateIndicator> todo) {
+        for (int i = 0; i < l.getArity(); i++) {
+            addTerm(l.getTerm(i), todo);
+        }
+    }
+
+    private void addTerm(Term t, Deque<PredicateIndicator> todo) {
+        if (t.isVar() || !(t instanceof Literal)) {
+            return;
+        }
+        if (t.isList()) {
+            for (Term e : (ListTerm) t) {
+                addTerm(e, todo);
+            }
+            return;
+        }
+        Literal l = (Literal) t;
+        if (t instanceof ArithFunctionTerm && !(t instanceof ArithExpr)
+                && (!pureFunctions.contains(l.getFunctor()) || hasVarQuery(l))) {
+            isVolatile = true;
+        }
+        addPredicate(l, todo);
+        addTerms(l, todo);
+    }
+
+    /** whether the query argument of .findall, .setof or .count is a variable (an unknown query) */
+    private static boolean hasVarQuery(Literal l) {
+        String f = l.getFunctor();
+        int q = f.equals(".findall") || f.equals(".setof") ? 1 : f.equals(".count") ? 0 : -1;
+        return q >= 0 && q < l.getArity() && l.getTerm(q).isVar();
+    }
+
+    private void addPredicate(Literal l, Deque<PredicateIndicator> todo) {
+        PredicateIndicator pi = l.getPredicateIndicator();
+        if (predicates.add(pi)) {
+            todo.add(pi);
+        }
+    }
+}
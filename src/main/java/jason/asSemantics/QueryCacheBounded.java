@@ -0,0 +1,375 @@
+package jason.asSemantics;
+
+import jason.asSyntax.ListTerm;
+import jason.asSyntax.Literal;
+import jason.asSyntax.StringTerm;
+import jason.asSyntax.Structure;
+import jason.asSyntax.Term;
+import jason.asSyntax.VarTerm;
+import jason.profiling.QueryProfiling;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A query cache ({@link QueryCacheSimple}) with bounds on the number of
+ * entries and on their estimated memory. When a new entry does not fit, the
+ * entries chosen by the eviction policy are removed:
+ * <ul>
+ * <li>lru: the least recently used entries;</li>
+ * <li>lfu: the least frequently used entries (the oldest among those
+ * with the same number of uses);</li>
+ * <li>tinylfu: the least recently used entries, but the new entry is only
+ * stored if its query was asked more times than the query of the entry
+ * that would be removed (the frequencies of all queries, including those
+ * not in the cache, are approximated by a count-min sketch that is halved
+ * periodically).</li>
+ * </ul>
+ *
+ * It is used with the agent option qcache=lru, qcache=lfu or qcache=tinylfu
+ * (the bounds are set by the options qcache_size and qcache_memory).
+ */
+public class QueryCacheBounded extends QueryCacheSimple {
+
+    public enum Policy {
+        lru, lfu, tinylfu
+    }
+
+    // estimated sizes (in bytes) used to compute the memory of the entries
+    static final int TERM_BYTES = 40;
+    static final int ENTRY_BYTES = 120; // entry in the cache, the LRU/LFU structures and the list of answers
+    static final int UNIFIER_BYTES = 80;
+    static final int BINDING_BYTES = 40;
+
+    private final int maxEntries;
+    private final long maxMemory;
+    private final Policy policy;
+    private final Eviction eviction;
+
+    /** estimated size of each entry */
+    private final Map<Literal, Long> sizes = new HashMap<Literal, Long>();
+    private long memory = 0;
+    private long rejected = 0;
+
+    /** size of the entry being added (computed by admit) */
+    private long addingSize = 0;
+
+    public QueryCacheBounded(Agent ag, QueryProfiling p, Policy policy, int maxEntries, long maxMemory) {
+        super(ag, p);
+        this.policy = policy;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxMemory = maxMemory;
+        switch (policy) {
+            case lfu:
+                eviction = new LfuEviction();
+                break;
+            case tinylfu:
+                eviction = new TinyLfuEviction(this.maxEntries);
+                break;
+            default:
+                eviction = new LruEviction();
+        }
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /** returns the estimated memory used by the entries (in bytes) */
+    @Override
+    public long getMemory() {
+        return memory;
+    }
+
+    /** returns the number of answers not stored since they are too big or not admitted by tinylfu */
+    public long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    protected void accessed(Literal q, boolean hit) {
+        eviction.accessed(q, hit);
+    }
+
+    @Override
+    protected boolean admit(Literal q, List<Unifier> r) {
+        long size = estimateSize(q, r);
+        if (size > maxMemory) {
+            rejected++;
+            return false;
+        }
+        Long old = sizes.remove(q); // the answers of q are replaced
+        if (old != null) {
+            memory -= old;
+            eviction.removed(q);
+        }
+        boolean first = true;
+        while (sizes.size() >= maxEntries || memory + size > maxMemory) {
+            Literal victim = eviction.victim();
+            if (first && !eviction.admit(q, victim)) {
+                rejected++;
+                if (old != null) {
+                    remove(q); // the old answers are not accounted anymore
+                }
+                return false;
+            }
+            first = false;
+            remove(victim);
+        }
+        addingSize = size;
+        return true;
+    }
+
+    @Override
+    protected void added(Literal q, List<Unifier> r) {
+        sizes.put(q, addingSize);
+        memory += addingSize;
+        eviction.added(q);
+    }
+
+    @Override
+    protected void removed(Literal q) {
+        Long size = sizes.remove(q);
+        if (size != null) {
+            memory -= size;
+            eviction.removed(q);
+        }
+    }
+
+    @Override
+    protected void cleared() {
+        sizes.clear();
+        memory = 0;
+        eviction.cleared();
+    }
+
+    /** returns a rough estimate of the memory used by the entry of <i>q</i> with answers <i>r</i> (in bytes) */
+    static long estimateSize(Literal q, List<Unifier> r) {
+        long s = ENTRY_BYTES + termSize(q);
+        for (Unifier u : r) {
+            s += UNIFIER_BYTES;
+            for (VarTerm v : u) {
+                s += BINDING_BYTES + termSize(v) + termSize(u.get(v));
+            }
+        }
+        return s;
+    }
+
+    private static long termSize(Term t) {
+        if (t == null) {
+            return 0;
+        }
+        long s = TERM_BYTES;
+        if (t.isList()) {
+            for (Term e : (ListTerm) t) {
+                s += TERM_BYTES + termSize(e);
+            }
+        } else if (t instanceof Structure) {
+            Structure st = (Structure) t;
+            for (int i = 0; i < st.getArity(); i++) {
+                s += termSize(st.getTerm(i));
+            }
+            if (st.hasAnnot()) {
+                s += termSize(st.getAnnots());
+            }
+        } else if (t.isString()) {
+            s += 2L * ((StringTerm) t).getString().length();
+        }
+        return s;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("query cache (" + policy + "): " + size() + " entries");
+        out.append(", " + memory + " bytes, hit ratio " + getHitRatio() + ", " + getEvictions() + " evictions");
+        return out.toString();
+    }
+
+    /** the order in which the entries are removed */
+    abstract static class Eviction {
+        void accessed(Literal q, boolean hit) {
+        }
+
+        abstract void added(Literal q);
+
+        abstract void removed(Literal q);
+
+        /** the entry to remove (the cache is not empty) */
+        abstract Literal victim();
+
+        /** whether the entry of <i>candidate</i> is stored in place of <i>victim</i> */
+        boolean admit(Literal candidate, Literal victim) {
+            return true;
+        }
+
+        abstract void cleared();
+    }
+
+    static class LruEviction extends Eviction {
+        private final LinkedHashMap<Literal, Boolean> order = new LinkedHashMap<Literal, Boolean>(16, 0.75f, true);
+
+        @Override
+        void accessed(Literal q, boolean hit) {
+            if (hit) {
+                order.get(q); // moves q to the end
+            }
+        }
+
+        @Override
+        void added(Literal q) {
+            order.put(q, Boolean.TRUE);
+        }
+
+        @Override
+        void removed(Literal q) {
+            order.remove(q);
+        }
+
+        @Override
+        Literal victim() {
+            return order.keySet().iterator().next();
+        }
+
+        @Override
+        void cleared() {
+            order.clear();
+        }
+    }
+
+    static class LfuEviction extends Eviction {
+        private final Map<Literal, Integer> uses = new HashMap<Literal, Integer>();
+
+        /** the entries by number of uses, in the order they got that number */
+        private final TreeMap<Integer, LinkedHashSet<Literal>> byUses = new TreeMap<Integer, LinkedHashSet<Literal>>();
+
+        @Override
+        void accessed(Literal q, boolean hit) {
+            Integer n = hit ? uses.get(q) : null;
+            if (n != null) {
+                remove(q, n);
+                add(q, n + 1);
+            }
+        }
+
+        @Override
+        void added(Literal q) {
+            add(q, 1);
+        }
+
+        @Override
+        void removed(Literal q) {
+            Integer n = uses.get(q);
+            if (n != null) {
+                remove(q, n);
+            }
+        }
+
+        private void add(Literal q, int n) {
+            uses.put(q, n);
+            LinkedHashSet<Literal> s = byUses.get(n);
+            if (s == null) {
+                s = new LinkedHashSet<Literal>();
+                byUses.put(n, s);
+            }
+            s.add(q);
+        }
+
+        private void remove(Literal q, int n) {
+            uses.remove(q);
+            LinkedHashSet<Literal> s = byUses.get(n);
+            s.remove(q);
+            if (s.isEmpty()) {
+                byUses.remove(n);
+            }
+        }
+
+        @Override
+        Literal victim() {
+            return byUses.firstEntry().getValue().iterator().next();
+        }
+
+        @Override
+        void cleared() {
+            uses.clear();
+            byUses.clear();
+        }
+    }
+
+    static class TinyLfuEviction extends LruEviction {
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        /** maximum number of counters in each row of the sketch (4 MB a row) */
+        static final int MAX_WIDTH = 1 << 20;
+
+        private final int[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int increments = 0;
+
+        TinyLfuEviction(int maxEntries) {
+            int width = width(maxEntries);
+            counters = new int[SEEDS.length][width];
+            mask = width - 1;
+            sampleSize = 10 * width;
+        }
+
+        /** four counters for each entry, rounded up to a power of two, in [16, MAX_WIDTH] */
+        static int width(int maxEntries) {
+            long w = Math.min(Math.max(16L, maxEntries * 4L), MAX_WIDTH);
+            return Integer.highestOneBit((int) w - 1) << 1;
+        }
+
+        @Override
+        void accessed(Literal q, boolean hit) {
+            super.accessed(q, hit);
+            int h = q.hashCode();
+            for (int i = 0; i < SEEDS.length; i++) {
+                counters[i][index(h, i)]++;
+            }
+            if (++increments >= sampleSize) {
+                age();
+            }
+        }
+
+        @Override
+        boolean admit(Literal candidate, Literal victim) {
+            return frequency(candidate) > frequency(victim);
+        }
+
+        int frequency(Literal q) {
+            int h = q.hashCode();
+            int f = Integer.MAX_VALUE;
+            for (int i = 0; i < SEEDS.length; i++) {
+                f = Math.min(f, counters[i][index(h, i)]);
+            }
+            return f;
+        }
+
+        private int index(int h, int i) {
+            h *= SEEDS[i];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        /** halves the counters, so that old accesses count less */
+        private void age() {
+            for (int[] row : counters) {
+                for (int j = 0; j < row.length; j++) {
+                    row[j] >>>= 1;
+                }
+            }
+            increments /= 2;
+        }
+    }
+}
@@ -1,46 +1,235 @@
 package jason.asSemantics;
 
 import jason.asSyntax.Literal;
+import jason.asSyntax.PredicateIndicator;
 import jason.profiling.QueryProfiling;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
+/**
+ * Cache of the answers of queries evaluated by rules.
+ *
+ * <p>Each entry is tagged with the predicates it depends on: the predicate
+ * of the query and, transitively, the predicates used in the bodies of its
+ * rules. When the belief base informs that the beliefs of a predicate changed
+ * ({@link #beliefChanged(Literal)}, see DefaultBeliefBase), only the entries
+ * that depend on it are removed. Entries whose rules use internal actions or
+ * functions that may give other answers without changes in the BB (as
+ * .random or .time) or variables as formulas are removed at each update
+ * cycle ({@link #newCycle()}), as all entries are if the belief base does not
+ * inform its changes.
+ */
 public class QueryCacheSimple {
 
+    private Agent ag;
+
     private QueryProfiling prof;
 
     private Map<Literal, List<Unifier>> cache = null;
 
+    /** the cached queries that depend on each predicate */
+    private Map<PredicateIndicator, Set<Literal>> dependents = new HashMap<PredicateIndicator, Set<Literal>>();
+
+    /** the cached queries removed at each update cycle */
+    private Set<Literal> volatileQueries = new HashSet<Literal>();
+
+    /** dependencies of the predicates, computed from the rules in the BB (cleared when rules change) */
+    private Map<PredicateIndicator, PredicateDependencies> dependencies =
+            new HashMap<PredicateIndicator, PredicateDependencies>();
+
+    /** whether the BB informs its changes */
+    private boolean tracked = false;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
     protected Logger logger = null;
 
     public QueryCacheSimple(Agent ag, QueryProfiling p) {
+        this.ag = ag;
         this.prof = p;
         logger = Logger.getLogger(QueryCacheSimple.class.getName() + "-" + ag.getTS().getUserAgArch().getAgName());
         cache = new HashMap<Literal, List<Unifier>>();
     }
 
+    /** sets whether the BB calls beliefChanged for all its changes */
+    public void setTracked(boolean tracked) {
+        this.tracked = tracked;
+    }
+
+    public boolean isTracked() {
+        return tracked;
+    }
+
     public void reset() {
+        evict(cache.size());
         cache.clear();
+        dependents.clear();
+        volatileQueries.clear();
+        dependencies.clear();
+        cleared();
+    }
+
+    /**
+     * called at each update of the beliefs by perception: removes the
+     * entries that may be outdated without changes in the BB, or all
+     * entries if the BB does not inform its changes
+     */
+    public void newCycle() {
+        if (!tracked) {
+            reset();
+        } else if (!volatileQueries.isEmpty()) {
+            for (Literal q : volatileQueries.toArray(new Literal[volatileQueries.size()])) {
+                remove(q);
+            }
+        }
+    }
+
+    /** called by the BB when the belief <i>l</i> is added, removed or has its annotations changed */
+    public void beliefChanged(Literal l) {
+        if (l.isRule()) {
+            dependencies.clear();
+        }
+        invalidate(l.getPredicateIndicator());
+    }
+
+    /** called by the BB when all beliefs of <i>pi</i> are removed (by abolish), rules included */
+    public void predicateChanged(PredicateIndicator pi) {
+        dependencies.clear();
+        invalidate(pi);
+    }
+
+    /** removes the entries that depend on <i>pi</i> */
+    private void invalidate(PredicateIndicator pi) {
+        Set<Literal> qs = dependents.remove(pi);
+        if (qs != null) {
+            for (Literal q : qs) {
+                remove(q);
+            }
+        }
+    }
+
+    /** removes the entry of the query <i>q</i> */
+    protected void remove(Literal q) {
+        if (cache.remove(q) != null) {
+            evict(1);
+            removed(q);
+        }
+        volatileQueries.remove(q);
+        // q is removed from the sets of dependents when they become empty or are removed
+    }
+
+    private void evict(int n) {
+        evictions += n;
+        if (prof != null) {
+            prof.incEvictions(n);
+        }
     }
 
     public Iterator<Unifier> getCache(final Literal f) {
         List<Unifier> l = cache.get(f);
         if (l == null) {
+            misses++;
+            if (prof != null) {
+                prof.incMisses();
+            }
+            accessed(f, false);
             return null;
         }
+        hits++;
         if (prof != null) {
             prof.incHits();
         }
+        accessed(f, true);
         return l.iterator();
     }
 
     public void queryFinished(Literal f, List<Unifier> r) {
         //System.out.println("finished "+f+" with "+r);
+        if (!admit(f, r)) {
+            return;
+        }
         cache.put(f, r);
+        PredicateDependencies d = getDependencies(f.getPredicateIndicator());
+        for (PredicateIndicator pi : d.predicates) {
+            Set<Literal> qs = dependents.get(pi);
+            if (qs == null) {
+                qs = new HashSet<Literal>();
+                dependents.put(pi, qs);
+            } else if (qs.size() > cache.size()) {
+                qs.retainAll(cache.keySet()); // forget queries already removed
+            }
+            qs.add(f);
+        }
+        if (d.isVolatile) {
+            volatileQueries.add(f);
+        }
+        added(f, r);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /** hits / (hits + misses) */
+    public float getHitRatio() {
+        long n = hits + misses;
+        return n == 0 ? 0 : (float) hits / n;
+    }
+
+    /** returns the estimated memory used by the entries (in bytes), or -1 if it is not estimated */
+    public long getMemory() {
+        return -1;
+    }
+
+    // methods called when the entries are used, subclasses can override them to bound the cache
+
+    /** called when the cache is asked for the answers of <i>q</i> (<i>hit</i> is whether it has them) */
+    protected void accessed(Literal q, boolean hit) {
+    }
+
+    /** called when the answers of the query <i>q</i> are finished, returns whether they are stored */
+    protected boolean admit(Literal q, List<Unifier> r) {
+        return true;
+    }
+
+    /** called after the answers of <i>q</i> are stored */
+    protected void added(Literal q, List<Unifier> r) {
+    }
+
+    /** called after the entry of <i>q</i> is removed */
+    protected void removed(Literal q) {
     }
 
+    /** called after all entries are removed */
+    protected void cleared() {
+    }
+
+    private PredicateDependencies getDependencies(PredicateIndicator pi) {
+        PredicateDependencies d = dependencies.get(pi);
+        if (d == null) {
+            d = PredicateDependencies.compute(ag.getBB(), pi);
+            dependencies.put(pi, d);
+        }
+        return d;
+    }
 }
@@ -27,6 +27,7 @@ import jason.JasonException;
 import jason.NoValueException;
 import jason.RevisionFailedException;
 import jason.architecture.AgArch;
+import jason.architecture.JavinoPerceptionReader;
 import jason.asSyntax.*;
 import jason.asSyntax.PlanBody.BodyType;
 import jason.asSyntax.Trigger.TEOperator;
@@ -49,7 +50,7 @@ public class TransitionSystem {
 
     private static final Atom aNOCODE = new Atom("no_code");
 
-    public Boolean blocked = true;
+    public volatile Boolean blocked = true;
 
     public Timer eventTimer = new Timer();
 
@@ -63,7 +64,7 @@ public class TransitionSystem {
     /**********************************************************************/
     // Circumstance pc1, pc2, pc3, pc4;
 
-    long lastPerceived = 0;
+    private volatile JavinoPerceptionReader perceptionReader = null;
 
     // *************** pantoja **************************
     private long bTime, eTime;
@@ -89,7 +90,7 @@ public class TransitionSystem {
 
     private int nrcslbr = Settings.ODefaultNRC; // number of reasoning cycles
 
-    private boolean sleepingEvt = false;
+    private volatile boolean sleepingEvt = false;
 
     private List<GoalListener> goalListeners = null;
 
@@ -1425,6 +1426,18 @@ public class TransitionSystem {
                     }
                     ap.add(opt);
                 } else {
+                    switch (opt.getPlan().getCompiledContext().check(opt.getUnifier(), ag.getBB())) {
+                        case FALSE:
+                            continue;
+                        case TRUE: // the context is only comparisons, all of them true
+                            if (ap == null) {
+                                ap = new LinkedList<Option>();
+                            }
+                            ap.add(opt);
+                            continue;
+                        default:
+                            break;
+                    }
                     boolean allUnifs = opt.getPlan().isAllUnifs();
                     Iterator<Unifier> r = context.logicalConsequence(ag, opt.getUnifier());
                     if (r != null) {
@@ -1652,11 +1665,15 @@ public class TransitionSystem {
                         }
                     }
                 });
-                getUserAgArch().wake();
             }
         }, deadline, TimeUnit.MILLISECONDS);
     }
 
+    /** whether the agent is sleeping (it had nothing to do in the last cycles) */
+    public boolean isSleeping() {
+        return sleepingEvt;
+    }
+
     public boolean canSleep() {
         return (C.isAtomicIntentionSuspended() && !conf.C.hasMsg()) || (!conf.C.hasEvent() && !conf.C.hasIntention()
                 && !conf.C.hasFeedbackAction() && !conf.C.hasMsg() &&
@@ -1666,48 +1683,52 @@ public class TransitionSystem {
 
     /**
      * Schedule a task to be executed in the begin of the next reasoning cycle.
-     * It is used mostly to change the C only by the TS thread (e.g. by .wait)
+     * It is used mostly to change the C only by the TS thread (e.g. by .wait).
+     * The agent is woken, so that a sleeping agent runs the task at once.
      */
     public void runAtBeginOfNextCycle(Runnable r) {
         taskForBeginOfCycle.offer(r);
+        if (agArch != null) {
+            agArch.wake();
+        }
     }
 
+    /**
+     * Returns the percepts read from the real world (Javino) since the last
+     * call, or null if there is no new reading (or perception is blocked).
+     * The device is read by a {@link JavinoPerceptionReader} thread, started
+     * at the first call, so that the serial port latency does not delay the
+     * reasoning cycle.
+     */
     public List<Literal> realWorldPerceptions() {
-        long perceiving = System.nanoTime();
-
-        // System.out.println(perceiving + ";" + lastPerceived + "; " +
-        // (perceiving - lastPerceived ));
-        if (((perceiving - lastPerceived) < this.limit) || this.blocked) {
-            // System.out.println("I'm in! " + this.blocked);
+        if (this.blocked || this.agArch.getArgo() == null) {
             return null;
         }
-        lastPerceived = perceiving;
-
-        int cont;
-        List<Literal> jPercept = new ArrayList<Literal>();
-        // Boolean hasMsg =
-        // this.jBridge.requestData("","getPercepts");//this.jBridge.listenArduino("");
-        // if (hasMsg) {
-        if (this.agArch.getArgo().requestData(this.agArch.getPort(), "getPercepts")) {
-            String rwPercepts = this.agArch.getArgo().getData();
-            String perception[] = rwPercepts.split(";");
-            //if (rwPercepts != null) {
-            // System.out.println("[javino] msg: ok");
-            // ********* log middleware Pantoja
-            // this.logStatus = "ok";
-            //}
-            // System.out.println("[javino] msg: " + rwPercepts);
-            for (cont = 0; cont <= perception.length - 1; cont++) {
-                jPercept.add(Literal.parseLiteral(perception[cont]));
-                // System.out.println("[javino] array: " + perception[cont]);
-            }
-            // System.out.println("[javino]: " +jPercept.toString());
-            // percepts.add(jPercept);
-        } //else {
-        // ********* log middleware Pantoja
-        // this.logStatus = "error";
-        //}
-        return jPercept;
+        if (perceptionReader == null || !perceptionReader.isRunning()) {
+            perceptionReader = new JavinoPerceptionReader(this);
+            perceptionReader.start();
+        }
+        return perceptionReader.takePercepts();
+    }
+
+    /** blocks or opens the perception of the real world (see the internal action .percepts) */
+    public void setPerceptionBlocked(boolean blocked) {
+        this.blocked = blocked;
+        if (perceptionReader != null) {
+            perceptionReader.wakeUp();
+        }
+    }
+
+    /** the reader of real world percepts, null if it was not started */
+    public JavinoPerceptionReader getPerceptionReader() {
+        return perceptionReader;
+    }
+
+    /** stops the reader of real world percepts (called when the agent stops) */
+    public void stopRealWorldPerception() {
+        if (perceptionReader != null) {
+            perceptionReader.stop();
+        }
     }
 
     public boolean reasoningCycle() {
@@ -1753,8 +1774,8 @@ public class TransitionSystem {
                 if (this.agArch.getCommBridge() != null) {
                     //System.out.println("[ARGO][" + this.agArch.getAgName() + "]: Entering the first IF!");
                     if (this.agArch.getCommBridge().hasMsg()) {
+                        // moves all the pending remote messages to C.MB
                         this.agArch.addMessageToC();
-                        this.agArch.getCommBridge().cleanMailBox();
                         //System.out.println("Nome Argo: "+ this.agArch.getNameArgo());
                     }
 
@@ -1799,6 +1820,9 @@ public class TransitionSystem {
                 if (!sleepingEvt && ag.pl.getCandidatePlans(PlanLibrary.TE_JAG_AWAKING) != null) {
                     C.addExternalEv(PlanLibrary.TE_JAG_AWAKING);
                 }
+                if (!sleepingEvt && perceptionReader != null) {
+                    perceptionReader.wakeUp(); // back to the reading interval of an awake agent
+                }
             }
 
             step = State.StartRC;
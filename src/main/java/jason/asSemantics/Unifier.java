@@ -27,18 +27,74 @@ import jason.asSyntax.*;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class Unifier implements Cloneable, Iterable<VarTerm> {
+public class Unifier implements Cloneable, Iterable<VarTerm>, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private static Logger logger = Logger.getLogger(Unifier.class.getName());
 
     protected Map<VarTerm, Term> function = new HashMap<VarTerm, Term>();
 
+    /** how {@link #unifies(Term, Term)} undoes the mapping of a failed unification */
+    public enum UndoMode {
+        /** copies the mapping before the unification and restores the copy if it fails */
+        copy,
+        /**
+         * records the previous value of every var changed by the unification
+         * (the trail) and restores them if it fails, no copy is done
+         */
+        trail
+    }
+
+    /**
+     * the system property that sets the undo mode of all unifiers when the
+     * JVM starts, as in <code>java -Djason.unifier=trail ...</code> (the
+     * default is copy)
+     */
+    public static final String UNDO_MODE_PROPERTY = "jason.unifier";
+
+    private static volatile UndoMode undoMode = initialUndoMode();
+
+    private static UndoMode initialUndoMode() {
+        String mode = System.getProperty(UNDO_MODE_PROPERTY);
+        if (mode != null) {
+            try {
+                return UndoMode.valueOf(mode.trim());
+            } catch (IllegalArgumentException e) {
+                logger.warning("Unknown value for " + UNDO_MODE_PROPERTY + ": " + mode + ", it should be copy or trail");
+            }
+        }
+        return UndoMode.copy;
+    }
+
+    /**
+     * sets the undo mode of all unifiers of the JVM, and thus of all agents
+     * (unifiers are created everywhere, so the mode is not an option of each
+     * agent). The initial mode is given by the system property
+     * {@link #UNDO_MODE_PROPERTY}.
+     */
+    public static void setUndoMode(UndoMode mode) {
+        undoMode = mode;
+    }
+
+    public static UndoMode getUndoMode() {
+        return undoMode;
+    }
+
+    // the trail: vars changed inside unifies and their previous values (null for vars not mapped before)
+    private transient VarTerm[] trailVars;
+    private transient Term[] trailValues;
+    private transient int trailSize = 0;
+    private transient int trailDepth = 0; // number of nested unifies recording the trail
+
     /**
      * gets the value for a Var, if it is unified with another var, gets this
      * other's value
@@ -48,7 +104,46 @@ public class Unifier implements Cloneable, Iterable<VarTerm> {
     }
 
     public Term remove(VarTerm v) {
-        return function.remove(v);
+        Term old = function.remove(v);
+        if (trailDepth > 0 && old != null) {
+            addToTrail(v, old);
+        }
+        return old;
+    }
+
+    /** maps v to vl, recording the previous value in the trail when in a unifies */
+    private void put(VarTerm v, Term vl) {
+        Term old = function.put(v, vl);
+        if (trailDepth > 0) {
+            addToTrail(v, old);
+        }
+    }
+
+    private void addToTrail(VarTerm v, Term old) {
+        if (trailVars == null) {
+            trailVars = new VarTerm[8];
+            trailValues = new Term[8];
+        } else if (trailSize == trailVars.length) {
+            trailVars = Arrays.copyOf(trailVars, trailSize * 2);
+            trailValues = Arrays.copyOf(trailValues, trailSize * 2);
+        }
+        trailVars[trailSize] = v;
+        trailValues[trailSize] = old;
+        trailSize++;
+    }
+
+    /** restores the values of the vars changed after the trail had <i>mark</i> entries */
+    private void undoTrail(int mark) {
+        while (trailSize > mark) {
+            trailSize--;
+            if (trailValues[trailSize] == null) {
+                function.remove(trailVars[trailSize]);
+            } else {
+                function.put(trailVars[trailSize], trailValues[trailSize]);
+            }
+            trailVars[trailSize] = null;
+            trailValues[trailSize] = null;
+        }
     }
 
     public Iterator<VarTerm> iterator() {
@@ -108,6 +203,25 @@ public class Unifier implements Cloneable, Iterable<VarTerm> {
      */
     @SuppressWarnings({"rawtypes", "unchecked"})
     public boolean unifies(Term t1, Term t2) {
+        if (undoMode == UndoMode.trail) {
+            int mark = trailSize;
+            trailDepth++;
+            try {
+                if (unifiesNoUndo(t1, t2)) {
+                    return true;
+                }
+                undoTrail(mark);
+                return false;
+            } finally {
+                trailDepth--;
+                if (trailDepth == 0 && trailSize > 0) {
+                    // the unification is finished, the trail is not needed anymore
+                    Arrays.fill(trailVars, 0, trailSize, null);
+                    Arrays.fill(trailValues, 0, trailSize, null);
+                    trailSize = 0;
+                }
+            }
+        }
         Map cfunction = cloneFunction();
         if (unifiesNoUndo(t1, t2)) {
             return true;
@@ -158,17 +272,17 @@ public class Unifier implements Cloneable, Iterable<VarTerm> {
             try {
                 return unifiesNoUndo(new LiteralImpl((Literal) t1g), new LiteralImpl((Literal) t2g));
             } finally {
-                function.put(v1, t1g);
-                function.put(v2, t1g);
+                put(v1, t1g);
+                put(v2, t1g);
             }
 
         } else {
             if (t1g.isCyclicTerm() && get(t1g.getCyclicVar()) == null) // reintroduce cycles in the unifier
             {
-                function.put(t1g.getCyclicVar(), t1g);
+                put(t1g.getCyclicVar(), t1g);
             }
             if (t2g.isCyclicTerm() && get(t2g.getCyclicVar()) == null) {
-                function.put(t2g.getCyclicVar(), t2g);
+                put(t2g.getCyclicVar(), t2g);
             }
         }
 
@@ -274,7 +388,7 @@ public class Unifier implements Cloneable, Iterable<VarTerm> {
         }
 
         // different functor
-        if (!t1s.getFunctor().equals(t2s.getFunctor())) {
+        if (t1s instanceof Atom ? !((Atom) t1s).sameFunctor(t2s) : !t1s.getFunctor().equals(t2s.getFunctor())) {
             return false;
         }
 
@@ -307,7 +421,7 @@ public class Unifier implements Cloneable, Iterable<VarTerm> {
             vl = function.get(v);
         }
         if (first != v) {
-            function.put(first, v); // optimise map
+            put(first, v); // optimise map
         }
         return v;
     }
@@ -320,9 +434,9 @@ public class Unifier implements Cloneable, Iterable<VarTerm> {
 
         final int comp = vt1.compareTo(vt2);
         if (comp < 0) {
-            function.put((VarTerm) vt1.clone(), vt2.clone());
+            put((VarTerm) vt1.clone(), vt2.clone());
         } else if (comp > 0) {
-            function.put((VarTerm) vt2.clone(), vt1.clone());
+            put((VarTerm) vt2.clone(), vt1.clone());
         } // if they are the same (comp == 0), do not bind
         return true;
     }
@@ -347,7 +461,7 @@ public class Unifier implements Cloneable, Iterable<VarTerm> {
             vl = new CyclicTerm((Literal) vl, (VarTerm) vt.clone());
         }
 
-        function.put((VarTerm) vt.clone(), vl);
+        put((VarTerm) vt.clone(), vl);
         return true;
     }
 
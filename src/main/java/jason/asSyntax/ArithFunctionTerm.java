@@ -27,7 +27,7 @@ public class ArithFunctionTerm extends Structure implements NumberTerm {
 
     private ArithFunction function = null;
 
-    private Agent agent = null; // the agent where this function was used
+    private transient Agent agent = null; // the agent where this function was used
 
     public ArithFunctionTerm(ArithFunction function) {
         super(function.getName(), 2);
@@ -26,6 +26,8 @@ package jason.asSyntax;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,15 +42,44 @@ public class Atom extends Literal {
 
     private final String functor; // immutable field
 
+    /**
+     * whether functor is the instance kept in the table of functors, so
+     * that two interned functors are equal only if they are the same object
+     * (not serialized: a deserialized functor is not the interned instance)
+     */
+    private transient boolean internedFunctor = false;
+
+    /** the table of functors, shared by all agents (in a class of its own since Literal creates atoms in <clinit>) */
+    private static final class Functors {
+        static final ConcurrentMap<String, String> table = new ConcurrentHashMap<String, String>();
+    }
+
+    /**
+     * maximum number of functors in the table, functors created after that
+     * (e.g. from strings produced by the agents) are not interned
+     */
+    public static final int MAX_INTERNED_FUNCTORS = 1 << 17;
+
     public Atom(String functor) {
         if (functor == null) {
             logger.log(Level.WARNING, "An atom functor should not be null!", new Exception());
+            this.functor = null;
+        } else if (this instanceof VarTerm) { // var names (mostly unnamed vars) are not interned
+            this.functor = functor;
+        } else {
+            String f = internFunctor(functor);
+            this.internedFunctor = f != null;
+            this.functor = f != null ? f : functor;
         }
-        this.functor = functor;
     }
 
     public Atom(Literal l) {
-        this.functor = l.getFunctor();
+        if (l instanceof Atom) {
+            this.functor = ((Atom) l).functor;
+            this.internedFunctor = ((Atom) l).internedFunctor;
+        } else {
+            this.functor = l.getFunctor();
+        }
         predicateIndicatorCache = l.predicateIndicatorCache;
         hashCodeCache = l.hashCodeCache;
         srcInfo = l.srcInfo;
@@ -58,6 +89,41 @@ public class Atom extends Literal {
         return functor;
     }
 
+    /**
+     * returns the instance of the functor kept in the table of functors,
+     * or null if the table is full
+     */
+    static String internFunctor(String f) {
+        String i = Functors.table.get(f);
+        if (i == null) {
+            if (Functors.table.size() >= MAX_INTERNED_FUNCTORS) {
+                return null;
+            }
+            i = Functors.table.putIfAbsent(f, f);
+            if (i == null) {
+                i = f;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * returns whether the literal has the same functor of this atom; when
+     * both functors are interned only their references are compared
+     */
+    public boolean sameFunctor(Literal l) {
+        if (l instanceof Atom) {
+            Atom a = (Atom) l;
+            if (functor == a.functor) {
+                return true;
+            }
+            if (internedFunctor && a.internedFunctor) {
+                return false;
+            }
+        }
+        return functor.equals(l.getFunctor());
+    }
+
     public Term clone() {
         return this; // since this object is immutable
     }
@@ -79,7 +145,7 @@ public class Atom extends Literal {
             Atom a = (Atom) o;
             //System.out.println(getFunctor() +" ==== " + a.getFunctor() + " is "+ (a.isAtom())); // && getFunctor()
             // .equals(a.getFunctor())));
-            return a.isAtom() && getFunctor().equals(a.getFunctor());
+            return a.isAtom() && sameFunctor(a);
         }
         return false;
     }
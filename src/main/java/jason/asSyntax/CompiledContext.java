@@ -0,0 +1,379 @@
+package jason.asSyntax;
+
+import jason.asSemantics.Unifier;
+import jason.asSyntax.ArithExpr.ArithmeticOp;
+import jason.asSyntax.LogExpr.LogicalOp;
+import jason.asSyntax.RelExpr.RelationalOp;
+import jason.bb.BeliefBase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The context of a plan compiled, once, into numeric guards that can be
+ * checked before the context is evaluated by
+ * {@link LogicalFormula#logicalConsequence}.
+ *
+ * <p>The guards are the numeric comparisons (&gt;, &gt;=, &lt;, &lt;=, ==,
+ * \==) of the conjunction in the context whose operands are numbers,
+ * variables and arithmetic expressions of them (constant sub-expressions
+ * are folded at compilation). They are checked against the unifier of the
+ * option, without cloning it or creating terms, cheaper guards first. When
+ * some guard whose variables are bound is false, the context is false: the
+ * conjunction has no solution. A guard is only used if no internal action
+ * (or variable used as formula) comes before it in the conjunction. A guard
+ * that comes after queries of beliefs only makes the context false if the
+ * predicates of these queries have no rules in the belief base, since the
+ * body of a rule may have internal actions. So skipping the evaluation of
+ * the context has no side effect.
+ *
+ * <p>When every conjunct of the context is a guard and all of them are
+ * true, the context is true and the unifier is the same as the unifier of
+ * the option (comparisons do not bind variables).
+ *
+ * @see Plan#getCompiledContext()
+ */
+public class CompiledContext {
+
+    /** result of {@link #check(Unifier, BeliefBase)} */
+    public enum Result {
+        /** the context is a logical consequence, with the same unifier */
+        TRUE,
+        /** the context is not a logical consequence */
+        FALSE,
+        /** the context has to be evaluated */
+        UNKNOWN
+    }
+
+    private static final Guard[] NO_GUARDS = new Guard[0];
+
+    private static final PredicateIndicator[] NO_QUERIES = new PredicateIndicator[0];
+
+    private final LogicalFormula context;
+
+    private final Guard[] guards;
+
+    /** whether the context is only the conjunction of the guards */
+    private final boolean onlyGuards;
+
+    /** the queries of beliefs (or rules) that come before the guards, in the order of the context */
+    private final PredicateIndicator[] queries;
+
+    private CompiledContext(LogicalFormula context, Guard[] guards, boolean onlyGuards,
+            PredicateIndicator[] queries) {
+        this.context = context;
+        this.guards = guards;
+        this.onlyGuards = onlyGuards;
+        this.queries = queries;
+    }
+
+    /** compiles a plan context (null is the context "true") */
+    public static CompiledContext compile(LogicalFormula context) {
+        if (context == null) {
+            return new CompiledContext(null, NO_GUARDS, true, NO_QUERIES);
+        }
+        List<LogicalFormula> conjuncts = new ArrayList<LogicalFormula>();
+        addConjuncts(context, conjuncts);
+
+        List<Guard> guards = new ArrayList<Guard>();
+        List<PredicateIndicator> queries = new ArrayList<PredicateIndicator>();
+        boolean onlyGuards = true;
+        boolean afterIA = false;
+        for (LogicalFormula f : conjuncts) {
+            Guard g = afterIA ? null : Guard.compile(f);
+            if (g == null) {
+                onlyGuards = false;
+                afterIA = afterIA || hasInternalAction((Term) f);
+                addQueries((Term) f, queries);
+            } else {
+                g.queriesBefore = queries.size();
+                guards.add(g);
+            }
+        }
+        Guard[] ag = guards.toArray(NO_GUARDS);
+        Arrays.sort(ag, new Comparator<Guard>() { // stable: keeps the order of the context among guards of same cost
+            public int compare(Guard g1, Guard g2) {
+                return g1.cost - g2.cost;
+            }
+        });
+        int usedQueries = 0;
+        for (Guard g : ag) {
+            usedQueries = Math.max(usedQueries, g.queriesBefore);
+        }
+        return new CompiledContext(context, ag, onlyGuards,
+                queries.subList(0, usedQueries).toArray(NO_QUERIES));
+    }
+
+    private static void addConjuncts(LogicalFormula f, List<LogicalFormula> conjuncts) {
+        if (f instanceof LogExpr && ((LogExpr) f).getOp() == LogicalOp.and) {
+            addConjuncts(((LogExpr) f).getLHS(), conjuncts);
+            addConjuncts(((LogExpr) f).getRHS(), conjuncts);
+        } else {
+            conjuncts.add(f);
+        }
+    }
+
+    private static boolean hasInternalAction(Term t) {
+        if (t.isInternalAction() || t.isVar()) {
+            return true;
+        }
+        if (t instanceof LogExpr) {
+            LogExpr e = (LogExpr) t;
+            return hasInternalAction((Term) e.getLHS()) || (!e.isUnary() && hasInternalAction((Term) e.getRHS()));
+        }
+        return false;
+    }
+
+    /** adds the predicates of the queries of beliefs in the formula t */
+    private static void addQueries(Term t, List<PredicateIndicator> queries) {
+        if (t instanceof LogExpr) {
+            LogExpr e = (LogExpr) t;
+            addQueries((Term) e.getLHS(), queries);
+            if (!e.isUnary()) {
+                addQueries((Term) e.getRHS(), queries);
+            }
+        } else if (t.isLiteral() && !t.isInternalAction() && !(t instanceof RelExpr) && !t.isVar()) {
+            queries.add(((Literal) t).getPredicateIndicator());
+        }
+    }
+
+    /** returns whether the first n queries are answered only by beliefs (and not by rules) */
+    private boolean noRules(int n, BeliefBase bb) {
+        for (int i = 0; i < n; i++) {
+            Iterator<Literal> il = bb.getCandidateBeliefs(queries[i]);
+            while (il != null && il.hasNext()) {
+                if (il.next().isRule()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** the context that was compiled */
+    public LogicalFormula getContext() {
+        return context;
+    }
+
+    /** the number of comparisons checked before the evaluation of the context */
+    public int getGuardsCount() {
+        return guards.length;
+    }
+
+    /**
+     * checks the guards of the context for the unifier of an option, the
+     * guards after queries of beliefs are only used if these queries are not
+     * answered by rules of <i>bb</i> (if bb is null they are not used)
+     */
+    public Result check(Unifier u, BeliefBase bb) {
+        boolean allKnown = true;
+        int safeQueries = -1; // number of queries known to have no rules (computed at the first false guard)
+        for (Guard g : guards) {
+            switch (g.check(u)) {
+                case FALSE:
+                    if (g.queriesBefore == 0) {
+                        return Result.FALSE;
+                    }
+                    if (bb != null && safeQueries < 0) {
+                        safeQueries = noRules(queries.length, bb) ? queries.length : 0;
+                    }
+                    if (g.queriesBefore <= safeQueries) {
+                        return Result.FALSE;
+                    }
+                    allKnown = false; // the queries before the guard have to be evaluated
+                    break;
+                case UNKNOWN:
+                    allKnown = false;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return onlyGuards && allKnown ? Result.TRUE : Result.UNKNOWN;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(guards) + (onlyGuards ? "" : " & " + context);
+    }
+
+    /** a numeric comparison */
+    private static final class Guard {
+        private final RelationalOp op;
+        private final Operand left, right;
+        private final int cost;
+
+        /** number of queries of beliefs before the guard in the context */
+        private int queriesBefore = 0;
+
+        private Guard(RelationalOp op, Operand left, Operand right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+            this.cost = left.cost() + right.cost();
+        }
+
+        static Guard compile(LogicalFormula f) {
+            if (!(f instanceof RelExpr)) {
+                return null;
+            }
+            RelExpr e = (RelExpr) f;
+            switch (e.getOp()) {
+                case gt: case gte: case lt: case lte: case eq: case dif:
+                    Operand l = Operand.compile(e.getTerm(0));
+                    Operand r = Operand.compile(e.getTerm(1));
+                    return l == null || r == null ? null : new Guard(e.getOp(), l, r);
+                default:
+                    return null;
+            }
+        }
+
+        /** the same as RelExpr for two numbers, UNKNOWN if some operand has no numeric value */
+        Result check(Unifier u) {
+            double x, y;
+            try {
+                x = left.value(u);
+                y = right.value(u);
+            } catch (ArithmeticException e) {
+                return Result.UNKNOWN; // div by 0, RelExpr reports it
+            }
+            if (Double.isNaN(x) || Double.isNaN(y)) {
+                return Result.UNKNOWN; // unbound var, not a number, or NaN (RelExpr compares NaN as equal)
+            }
+            boolean r;
+            switch (op) {
+                case gt:  r = x > y; break;
+                case gte: r = x >= y; break;
+                case lt:  r = x < y; break;
+                case lte: r = x <= y; break;
+                case eq:  r = x == y; break;
+                default:  r = x != y; break;
+            }
+            return r ? Result.TRUE : Result.FALSE;
+        }
+
+        @Override
+        public String toString() {
+            return left + op.toString() + right;
+        }
+    }
+
+    /** an operand of a guard: a number, a var or an arithmetic expression */
+    private abstract static class Operand {
+
+        /** the value of the operand, NaN if it has no numeric value */
+        abstract double value(Unifier u);
+
+        abstract int cost();
+
+        static Operand compile(Term t) {
+            if (t instanceof NumberTermImpl) {
+                return new Constant(((NumberTermImpl) t).solve());
+            }
+            if (t instanceof VarTerm) {
+                VarTerm v = (VarTerm) t;
+                return v.negated() || v.hasAnnot() ? null : new Var(v);
+            }
+            if (t.getClass() == ArithExpr.class) {
+                ArithExpr e = (ArithExpr) t;
+                Operand l = compile(e.getTerm(0));
+                Operand r = e.isUnary() ? null : compile(e.getTerm(1));
+                if (l == null || (r == null && !e.isUnary()) || e.getOp() == ArithmeticOp.none) {
+                    return null;
+                }
+                Operand o = new Expr(e.getOp(), l, r);
+                if (l instanceof Constant && (r == null || r instanceof Constant)) {
+                    try {
+                        return new Constant(o.value(null)); // constant folding
+                    } catch (ArithmeticException ex) {
+                        return null; // e.g. 1 div 0, left to RelExpr
+                    }
+                }
+                return o;
+            }
+            return null;
+        }
+    }
+
+    private static final class Constant extends Operand {
+        private final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        double value(Unifier u) {
+            return value;
+        }
+
+        int cost() {
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return new NumberTermImpl(value).toString();
+        }
+    }
+
+    private static final class Var extends Operand {
+        private final VarTerm var;
+
+        Var(VarTerm var) {
+            this.var = var;
+        }
+
+        double value(Unifier u) {
+            Term t = u.get(var);
+            if (t instanceof NumberTermImpl) {
+                return ((NumberTermImpl) t).solve();
+            }
+            return Double.NaN;
+        }
+
+        int cost() {
+            return 1;
+        }
+
+        @Override
+        public String toString() {
+            return var.toString();
+        }
+    }
+
+    private static final class Expr extends Operand {
+        private final ArithmeticOp op;
+        private final Operand left, right;
+
+        Expr(ArithmeticOp op, Operand left, Operand right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        /** the same as ArithExpr.capply */
+        double value(Unifier u) {
+            double l = left.value(u);
+            if (right == null) {
+                return op == ArithmeticOp.minus ? -l : l;
+            }
+            double r = right.value(u);
+            if (Double.isNaN(l) || Double.isNaN(r)) {
+                return Double.NaN; // div would take NaN as 0
+            }
+            return op.eval(l, r);
+        }
+
+        int cost() {
+            return 2 + left.cost() + (right == null ? 0 : right.cost());
+        }
+
+        @Override
+        public String toString() {
+            return right == null ? "(" + op + left + ")" : "(" + left + op + right + ")";
+        }
+    }
+}
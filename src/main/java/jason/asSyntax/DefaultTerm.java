@@ -46,7 +46,7 @@ public abstract class DefaultTerm implements Term, Serializable {
 
     private static Logger logger = Logger.getLogger(Term.class.getName());
 
-    protected Integer hashCodeCache = null;
+    protected transient Integer hashCodeCache = null;
 
     protected SourceInfo srcInfo = null;
 
@@ -44,7 +44,7 @@ public class InternalActionLiteral extends Structure implements LogicalFormula {
 
     private static Logger logger = Logger.getLogger(InternalActionLiteral.class.getName());
 
-    private InternalAction ia = null;
+    private transient InternalAction ia = null;
             // reference to the object that implements the internal action, stored here to speed up the process of
     // looking for the IA class inside the agent
 
@@ -26,6 +26,7 @@ package jason.asSyntax;
 import jason.JasonException;
 import jason.architecture.AgArch;
 import jason.asSemantics.Agent;
+import jason.asSemantics.AnswerTables;
 import jason.asSemantics.QueryCacheSimple;
 import jason.asSemantics.Unifier;
 import jason.asSyntax.parser.as2j;
@@ -75,7 +76,7 @@ public abstract class Literal extends DefaultTerm implements LogicalFormula {
 
     public static final Literal LFalse = new FalseLiteral();
 
-    protected PredicateIndicator predicateIndicatorCache = null;
+    protected transient PredicateIndicator predicateIndicatorCache = null;
             // to not compute it all the time (it is used many many times)
 
     /** creates a new literal by parsing a string -- ASSyntax.parseLiteral or createLiteral are preferred. */
@@ -396,7 +397,18 @@ public abstract class Literal extends DefaultTerm implements LogicalFormula {
         final QueryCacheSimple qCache;
         final long startTime;
         if (ag != null) {
-            qCache = ag.getQueryCache();
+            AnswerTables tables = ag.getAnswerTables();
+            if (tables == null) {
+                qCache = ag.getQueryCache();
+            } else if (tables.isTabled(this)) {
+                if (!tables.isEvaluating(this)) {
+                    return tables.consult(this, un);
+                }
+                qCache = null; // the answers of tabled literals are kept by the tables
+            } else {
+                // the answers may be incomplete while a table is evaluated
+                qCache = tables.isEvaluating() ? null : ag.getQueryCache();
+            }
             qProfiling = ag.getQueryProfiling();
             if (qProfiling != null) {
                 qProfiling.queryStared(this);
@@ -698,6 +710,11 @@ public abstract class Literal extends DefaultTerm implements LogicalFormula {
             super("true");
         }
 
+        /** keeps LTrue unique when a term is deserialized */
+        private Object readResolve() {
+            return LTrue;
+        }
+
         @Override
         public Iterator<Unifier> logicalConsequence(final Agent ag, final Unifier un) {
             return LogExpr.createUnifIterator(un);
@@ -711,6 +728,11 @@ public abstract class Literal extends DefaultTerm implements LogicalFormula {
             super("false");
         }
 
+        /** keeps LFalse unique when a term is deserialized */
+        private Object readResolve() {
+            return LFalse;
+        }
+
         @Override
         public Iterator<Unifier> logicalConsequence(final Agent ag, final Unifier un) {
             return LogExpr.EMPTY_UNIF_LIST.iterator();
@@ -154,12 +154,19 @@ public class LiteralImpl extends Pred {
     @Override
     public PredicateIndicator getPredicateIndicator() {
         if (predicateIndicatorCache == null) {
-            predicateIndicatorCache = new PredicateIndicator(((type == LPos) ? getFunctor() : "~" + getFunctor()),
+            predicateIndicatorCache = new PredicateIndicator((type == LPos) ? getFunctor() : negatedFunctor(),
                     getArity());
         }
         return predicateIndicatorCache;
     }
 
+    /** "~" + functor, interned since it is used in the predicate indicator of every negated literal */
+    private String negatedFunctor() {
+        String nf = "~" + getFunctor();
+        String i = internFunctor(nf);
+        return i == null ? nf : i;
+    }
+
     public String toString() {
         if (type == LPos) {
             return super.toString();
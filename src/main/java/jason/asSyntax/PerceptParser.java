@@ -0,0 +1,261 @@
+package jason.asSyntax;
+
+import jason.asSyntax.ArithExpr.ArithmeticOp;
+import jason.asSyntax.directives.FunctionRegister;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A parser for the literals of percepts read from devices (as the replies
+ * of Javino), faster than the JavaCC parser used by
+ * {@link Literal#parseLiteral(String)} since it does not create a token
+ * manager and a parser for each literal.
+ *
+ * <p>It only parses ground literals made of atoms, structures, numbers
+ * (possibly negative), strings without escapes, lists and annotations, as
+ * <code>~temperature(sensor_1, -2.5, "C")[quality(0.8)]</code>, and builds
+ * the same terms as the JavaCC parser. Anything else (variables,
+ * expressions, keywords, internal actions, arithmetic functions, comments,
+ * ...) is parsed by {@link Literal#parseLiteral(String)}.
+ */
+public final class PerceptParser {
+
+    private final String s;
+    private int pos;
+
+    private PerceptParser(String s) {
+        this.s = s;
+    }
+
+    /** parses a literal, null if it is not a valid literal (the error is logged by Literal.parseLiteral) */
+    public static Literal parseLiteral(String sLiteral) {
+        try {
+            PerceptParser p = new PerceptParser(sLiteral);
+            Literal l = p.literal(true);
+            p.skipSpaces();
+            if (p.pos == sLiteral.length()) {
+                return l;
+            }
+        } catch (Unsupported e) {
+            // not a simple percept
+        }
+        return Literal.parseLiteral(sLiteral);
+    }
+
+    /**
+     * parses the literals of <i>percepts</i> separated by <i>separator</i>
+     * (blank literals are ignored, as literals that can not be parsed)
+     */
+    public static List<Literal> parsePercepts(String percepts, char separator) {
+        List<Literal> r = new ArrayList<Literal>();
+        if (percepts == null) {
+            return r;
+        }
+        int start = 0;
+        while (start <= percepts.length()) {
+            int end = percepts.indexOf(separator, start);
+            if (end < 0) {
+                end = percepts.length();
+            }
+            String p = percepts.substring(start, end);
+            if (p.trim().length() > 0) {
+                Literal l = parseLiteral(p);
+                if (l != null) {
+                    r.add(l);
+                }
+            }
+            start = end + 1;
+        }
+        return r;
+    }
+
+    /** thrown when the text is not a simple percept, to use the JavaCC parser */
+    @SuppressWarnings("serial")
+    private static final class Unsupported extends Exception {
+        static final Unsupported INSTANCE = new Unsupported();
+
+        private Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** [~] functor [ ( terms ) ] [ annots ] */
+    private Literal literal(boolean top) throws Unsupported {
+        skipSpaces();
+        boolean pos = Literal.LPos;
+        if (peek() == '~') {
+            pos = Literal.LNeg;
+            this.pos++;
+            skipSpaces();
+        }
+        String functor = identifier();
+        LiteralImpl l = new LiteralImpl(pos, functor);
+        if (peek() == '(') {
+            this.pos++;
+            l.setTerms(terms(')'));
+        }
+        skipSpaces();
+        if (peek() == '[') {
+            this.pos++;
+            for (Term a : terms(']')) {
+                l.addAnnot(a); // sorted, as in Pred.setAnnots
+            }
+        }
+        if (top) {
+            return l;
+        }
+        if (FunctionRegister.getFunction(functor, l.getArity()) != null) {
+            throw Unsupported.INSTANCE; // ArithFunctionTerm
+        }
+        return l.isAtom() ? new Atom(l) : l;
+    }
+
+    /** term { , term } close, or only close for an empty list */
+    private List<Term> terms(char close) throws Unsupported {
+        List<Term> terms = new ArrayList<Term>();
+        skipSpaces();
+        if (close == ']' && peek() == ']') {
+            pos++;
+            return terms;
+        }
+        while (true) {
+            terms.add(term());
+            skipSpaces();
+            char c = peek();
+            pos++;
+            if (c == close) {
+                return terms;
+            }
+            if (c != ',') {
+                throw Unsupported.INSTANCE;
+            }
+        }
+    }
+
+    private Term term() throws Unsupported {
+        skipSpaces();
+        char c = peek();
+        if (c == '-') {
+            pos++;
+            skipSpaces();
+            return new ArithExpr(ArithmeticOp.minus, number());
+        }
+        if (c == '.' || (c >= '0' && c <= '9')) {
+            return number();
+        }
+        if (c == '"') {
+            return string();
+        }
+        if (c == '[') {
+            pos++;
+            ListTermImpl lt = new ListTermImpl();
+            ListTerm last = lt;
+            for (Term t : terms(']')) {
+                last = last.append(t);
+            }
+            return lt;
+        }
+        return literal(false);
+    }
+
+    /** the NUMBER token of the JavaCC parser */
+    private NumberTerm number() throws Unsupported {
+        int start = pos;
+        int intDigits = digits();
+        int fracDigits = 0;
+        if (peek() == '.') {
+            pos++;
+            fracDigits = digits();
+            if (fracDigits == 0) {
+                throw Unsupported.INSTANCE;
+            }
+        } else if (intDigits == 0) {
+            throw Unsupported.INSTANCE;
+        }
+        char c = peek();
+        if (c == 'e' || c == 'E') {
+            pos++;
+            c = peek();
+            if (c == '+' || c == '-') {
+                pos++;
+            }
+            if (digits() == 0) {
+                throw Unsupported.INSTANCE;
+            }
+        }
+        if (isIdentifierChar(peek())) {
+            throw Unsupported.INSTANCE;
+        }
+        return new NumberTermImpl(Double.parseDouble(s.substring(start, pos)));
+    }
+
+    private int digits() {
+        int n = 0;
+        while (pos < s.length() && s.charAt(pos) >= '0' && s.charAt(pos) <= '9') {
+            pos++;
+            n++;
+        }
+        return n;
+    }
+
+    /** a STRING token without escapes */
+    private StringTerm string() throws Unsupported {
+        int end = pos + 1;
+        while (end < s.length()) {
+            char c = s.charAt(end);
+            if (c == '"') {
+                StringTermImpl st = new StringTermImpl(s.substring(pos + 1, end));
+                pos = end + 1;
+                return st;
+            }
+            if (c == '\\' || c == '\n' || c == '\r') {
+                break;
+            }
+            end++;
+        }
+        throw Unsupported.INSTANCE;
+    }
+
+    /** an ATOM token starting with a lower case ASCII letter, not a keyword nor with dots */
+    private String identifier() throws Unsupported {
+        int start = pos;
+        char c = peek();
+        if (c < 'a' || c > 'z') {
+            throw Unsupported.INSTANCE;
+        }
+        while (isIdentifierChar(peek())) {
+            pos++;
+        }
+        if (peek() == '.' || peek() > 127) {
+            throw Unsupported.INSTANCE;
+        }
+        String id = s.substring(start, pos);
+        switch (id) {
+            case "true": case "false": case "not": case "div": case "mod":
+            case "begin": case "end": case "if": case "else": case "for": case "while":
+                throw Unsupported.INSTANCE;
+            default:
+                return id;
+        }
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private void skipSpaces() {
+        while (pos < s.length()) {
+            char c = s.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    /** the current char, 0 at the end */
+    private char peek() {
+        return pos < s.length() ? s.charAt(pos) : 0;
+    }
+}
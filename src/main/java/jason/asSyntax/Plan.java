@@ -55,6 +55,8 @@ public class Plan extends Structure implements Cloneable, Serializable {
 
     private LogicalFormula context;
 
+    private transient CompiledContext compiledContext; // compiled from context, see getCompiledContext
+
     private PlanBody body;
 
     private boolean isAtomic = false;
@@ -153,6 +155,20 @@ public class Plan extends Structure implements Cloneable, Serializable {
         if (Literal.LTrue.equals(le)) {
             context = null;
         }
+        compiledContext = CompiledContext.compile(context);
+    }
+
+    /**
+     * returns the context of the plan compiled into numeric guards that
+     * are checked before the context is evaluated
+     */
+    public CompiledContext getCompiledContext() {
+        CompiledContext cc = compiledContext;
+        if (cc == null || cc.getContext() != context) { // the context was changed by setTerm, clone, ...
+            cc = CompiledContext.compile(context);
+            compiledContext = cc;
+        }
+        return cc;
     }
 
     public void setAsPlanTerm(boolean b) {
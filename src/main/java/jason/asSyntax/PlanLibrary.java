@@ -33,6 +33,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -51,6 +52,17 @@ public class PlanLibrary implements Iterable<Plan> {
     /** list of plans that have var as TE */
     private List<Plan> varPlans = new ArrayList<Plan>();
 
+    /**
+     * a MAP from TE to an index of its relevant plans by the first argument
+     * of the TE, built when the TE has many plans and discarded when a plan
+     * for the TE is added or removed
+     */
+    private Map<PredicateIndicator, FirstArgIndex> argIndex =
+            new ConcurrentHashMap<PredicateIndicator, FirstArgIndex>();
+
+    /** minimum number of plans for a TE to have its plans indexed by the first argument */
+    public static final int FIRST_ARG_INDEX_MIN_PLANS = 8;
+
     /** A map from labels to plans */
     private Map<String, Plan> planLabels = new HashMap<String, Plan>();
 
@@ -175,6 +187,7 @@ public class PlanLibrary implements Iterable<Plan> {
 
         Trigger pte = p.getTrigger();
         if (pte.getLiteral().isVar()) {
+            argIndex.clear();
             if (before) {
                 varPlans.add(0, p);
             } else {
@@ -208,6 +221,7 @@ public class PlanLibrary implements Iterable<Plan> {
             } else {
                 codesList.add(p);
             }
+            argIndex.remove(pte.getPredicateIndicator());
         }
 
         if (pte.getOperator() == TEOperator.goalState) {
@@ -273,6 +287,7 @@ public class PlanLibrary implements Iterable<Plan> {
         plans.clear();
         varPlans.clear();
         relPlans.clear();
+        argIndex.clear();
     }
 
     /**
@@ -303,6 +318,7 @@ public class PlanLibrary implements Iterable<Plan> {
 
         if (p.getTrigger().getLiteral().isVar()) {
             varPlans.remove(p);
+            argIndex.clear();
             // remove p from all entries and
             // clean empty entries
             Iterator<PredicateIndicator> ipi = relPlans.keySet().iterator();
@@ -317,6 +333,7 @@ public class PlanLibrary implements Iterable<Plan> {
         } else {
             List<Plan> codesList = relPlans.get(p.getTrigger().getPredicateIndicator());
             codesList.remove(p);
+            argIndex.remove(p.getTrigger().getPredicateIndicator());
             if (codesList.isEmpty()) {
                 // no more plans for this TE
                 relPlans.remove(p.getTrigger().getPredicateIndicator());
@@ -339,8 +356,26 @@ public class PlanLibrary implements Iterable<Plan> {
         return getCandidatePlans(te);
     }
 
+    /**
+     * returns the plans whose TE may unify with <i>te</i>, in the order of
+     * the plan library. When the TE has many plans, only the plans whose first
+     * argument of the TE may unify with the first argument of <i>te</i> are
+     * returned (see {@link #FIRST_ARG_INDEX_MIN_PLANS}).
+     */
     public List<Plan> getCandidatePlans(Trigger te) {
-        List<Plan> l = relPlans.get(te.getPredicateIndicator());
+        PredicateIndicator pi = te.getPredicateIndicator();
+        List<Plan> l = relPlans.get(pi);
+        if (l != null && l.size() >= FIRST_ARG_INDEX_MIN_PLANS && te.getLiteral().getArity() > 0) {
+            Object key = FirstArgIndex.keyOf(te.getLiteral().getTerm(0));
+            if (key != null) {
+                FirstArgIndex index = argIndex.get(pi);
+                if (index == null) {
+                    index = new FirstArgIndex(l);
+                    argIndex.put(pi, index);
+                }
+                return index.get(key);
+            }
+        }
         if ((l == null || l.isEmpty()) && !varPlans.isEmpty() && te != TE_JAG_SLEEPING
                 && te != TE_JAG_AWAKING) {  // no rel plan, try varPlan
             for (Plan p : varPlans) {
@@ -355,6 +390,70 @@ public class PlanLibrary implements Iterable<Plan> {
         return l; // if no rel plan, have to return null instead of empty list
     }
 
+    /**
+     * Index of the relevant plans of a TE by the functor (or value) of the
+     * first argument of their TE. Plans whose first argument cannot be
+     * indexed (variables, lists, expressions, ...) and plans with a var as
+     * TE are in every entry, and each entry keeps the order of the plans.
+     */
+    private static class FirstArgIndex {
+        /** plans that may be relevant for any first argument */
+        private final List<Plan> anyArg = new ArrayList<Plan>();
+
+        private final Map<Object, List<Plan>> byArg = new HashMap<Object, List<Plan>>();
+
+        FirstArgIndex(List<Plan> plans) {
+            for (Plan p : plans) {
+                Literal l = p.getTrigger().getLiteral();
+                Object key = l.isVar() || l.getArity() == 0 ? null : keyOf(l.getTerm(0));
+                if (key == null) {
+                    anyArg.add(p);
+                    for (List<Plan> lp : byArg.values()) {
+                        lp.add(p);
+                    }
+                } else {
+                    List<Plan> lp = byArg.get(key);
+                    if (lp == null) {
+                        lp = new ArrayList<Plan>(anyArg);
+                        byArg.put(key, lp);
+                    }
+                    lp.add(p);
+                }
+            }
+        }
+
+        List<Plan> get(Object key) {
+            List<Plan> lp = byArg.get(key);
+            return lp == null ? anyArg : lp;
+        }
+
+        /**
+         * returns the key of a term in the index: the functor/arity of
+         * literals, the value of numbers and strings; or null if the term
+         * may unify with terms of other keys
+         */
+        static Object keyOf(Term t) {
+            if (t.isVar() || t.isArithExpr() || t.isList() || t.isPlanBody()) {
+                return null;
+            }
+            if (t.isNumeric()) {
+                try {
+                    return ((NumberTerm) t).solve();
+                } catch (Exception e) {
+                    return null;
+                }
+            }
+            if (t.isString()) {
+                return "\"" + ((StringTerm) t).getString();
+            }
+            if (t.isLiteral()) {
+                Literal l = (Literal) t;
+                return (l.negated() ? "~" : "") + l.getFunctor() + "/" + l.getArity();
+            }
+            return null;
+        }
+    }
+
     public static final Trigger TE_JAG_SLEEPING = new Trigger(TEOperator.add, TEType.achieve, new Atom("jag_sleeping"));
 
     public static final Trigger TE_JAG_AWAKING = new Trigger(TEOperator.add, TEType.achieve, new Atom("jag_awaking"));
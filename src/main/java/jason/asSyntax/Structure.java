@@ -53,7 +53,6 @@ public class Structure extends Atom {
     //protected Boolean isGround = true; // it seems to not improve the performance
 
     public Structure(String functor) {
-        //this.functor = (functor == null ? null : functor.intern()); // it does not improve performance in test i did!
         super(functor);
         this.terms = new ArrayList<Term>(5);
     }
@@ -138,7 +137,7 @@ public class Structure extends Atom {
                 return false;
             }
 
-            if (!getFunctor().equals(tAsStruct.getFunctor())) {
+            if (!sameFunctor(tAsStruct)) {
                 return false;
             }
 
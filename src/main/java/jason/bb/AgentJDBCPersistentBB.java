@@ -1,10 +1,10 @@
 package jason.bb;
 
-import jason.asSyntax.Literal;
 import jason.asSyntax.PredicateIndicator;
 import jason.asSyntax.Structure;
 
 import java.sql.SQLException;
+import java.util.BitSet;
 
 /**
  * Implementation of BB that stores some beliefs in a relational data base.
@@ -49,18 +49,18 @@ public class AgentJDBCPersistentBB extends JDBCPersistentBB {
     }
 
     @Override
-    protected String getWhere(Literal l) throws SQLException {
-        String q = super.getWhere(l);
-        if (isCreatedByJason(l.getPredicateIndicator())) {
-            q += " and " + getAgWhere();
+    protected String getWhereTemplate(PredicateIndicator pi, BitSet ground) throws SQLException {
+        String q = super.getWhereTemplate(pi, ground);
+        if (isCreatedByJason(pi)) {
+            q += (q.length() == 0 ? " where " : " and ") + getAgWhere();
         }
         return q;
     }
 
     @Override
-    protected String getInsert(Literal l) throws Exception {
-        StringBuilder q = new StringBuilder(super.getInsert(l));
-        if (isCreatedByJason(l.getPredicateIndicator())) {
+    protected String getInsertTemplate(PredicateIndicator pi) throws SQLException {
+        StringBuilder q = new StringBuilder(super.getInsertTemplate(pi));
+        if (isCreatedByJason(pi)) {
             q.insert(q.length() - 1, ", '" + agentName + "'");
         }
         return q.toString();
@@ -24,9 +24,19 @@
 package jason.bb;
 
 import jason.asSemantics.Agent;
+import jason.asSemantics.AnswerTables;
+import jason.asSemantics.QueryCacheSimple;
 import jason.asSemantics.Unifier;
+import jason.asSyntax.Atom;
 import jason.asSyntax.Literal;
+import jason.asSyntax.LiteralImpl;
+import jason.asSyntax.NumberTermImpl;
+import jason.asSyntax.Pred;
 import jason.asSyntax.PredicateIndicator;
+import jason.asSyntax.StringTermImpl;
+import jason.asSyntax.Structure;
+import jason.asSyntax.Term;
+import jason.asSyntax.VarTerm;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -53,6 +63,15 @@ public class DefaultBeliefBase implements BeliefBase {
     /** set of beliefs with percept annot, used to improve performance of buf */
     protected Set<Literal> percepts = new HashSet<Literal>();
 
+    /** the query cache of the agent, informed of the beliefs that change */
+    private QueryCacheSimple qCache = null;
+
+    /** the answer tables of the agent, also informed of the beliefs that change */
+    private AnswerTables tables = null;
+
+    /** the agent asked to create the answer tables when a tabled rule is added */
+    private Agent tablingAg = null;
+
     public void init(Agent ag, String[] args) {
         if (ag != null) {
             logger = Logger.getLogger(
@@ -63,6 +82,30 @@ public class DefaultBeliefBase implements BeliefBase {
     public void stop() {
     }
 
+    /** sets the query cache informed of the changes in this BB (see QueryCacheSimple) */
+    public void setQueryCache(QueryCacheSimple qCache) {
+        this.qCache = qCache;
+    }
+
+    /**
+     * sets the answer tables informed of the changes in this BB (see
+     * AnswerTables); while they are null, the agent creates them when a
+     * tabled rule is added
+     */
+    public void setAnswerTables(Agent ag, AnswerTables tables) {
+        this.tablingAg = ag;
+        this.tables = tables;
+    }
+
+    private void changed(Literal l) {
+        if (qCache != null) {
+            qCache.beliefChanged(l);
+        }
+        if (tables != null) {
+            tables.beliefChanged(l);
+        }
+    }
+
     public int size() {
         return size;
     }
@@ -71,6 +114,12 @@ public class DefaultBeliefBase implements BeliefBase {
         size = 0;
         percepts.clear();
         belsMap.clear();
+        if (qCache != null) {
+            qCache.reset();
+        }
+        if (tables != null) {
+            tables.reset();
+        }
     }
 
     public Iterator<Literal> getPercepts() {
@@ -97,6 +146,7 @@ public class DefaultBeliefBase implements BeliefBase {
 
                 // remove the percept annot
                 current.delAnnot(BeliefBase.TPercept);
+                changed(current);
 
                 // and also remove from the BB
                 removeFromEntry(current);
@@ -132,6 +182,7 @@ public class DefaultBeliefBase implements BeliefBase {
                 if (l.hasAnnot(TPercept)) {
                     percepts.add(bl);
                 }
+                changed(bl);
                 return true;
             }
         } else {
@@ -149,6 +200,10 @@ public class DefaultBeliefBase implements BeliefBase {
                 percepts.add(l);
             }
             size++;
+            if (tables == null && tablingAg != null && l.isRule() && l.hasAnnot(AnswerTables.TTabled)) {
+                tablingAg.enableTabling();
+            }
+            changed(l);
             return true;
         }
         return false;
@@ -164,6 +219,9 @@ public class DefaultBeliefBase implements BeliefBase {
                 }
                 boolean result = bl.delAnnots(
                         l.getAnnots()); // note that l annots can be empty, in this case, nothing is deleted!
+                if (result) {
+                    changed(bl);
+                }
                 return removeFromEntry(bl) || result;
             }
         } else {
@@ -185,6 +243,7 @@ public class DefaultBeliefBase implements BeliefBase {
                 belsMap.remove(key);
             }
             size--;
+            changed(l);
             return true;
         }
     }
@@ -194,28 +253,43 @@ public class DefaultBeliefBase implements BeliefBase {
         if (ibe.hasNext()) {
             return new Iterator<Literal>() {
 
-                Iterator<Literal> il = ibe.next().list.iterator();
+                BelEntry entry = ibe.next();
+
+                Iterator<Literal> il = entry.iterator();
+
+                BelEntry lEntry;
 
                 Literal l;
 
                 public boolean hasNext() {
+                    while (!il.hasNext() && ibe.hasNext()) {
+                        entry = ibe.next();
+                        il = entry.iterator();
+                    }
                     return il.hasNext();
                 }
 
                 public Literal next() {
+                    hasNext();
                     l = il.next();
-                    if (!il.hasNext() && ibe.hasNext()) {
-                        il = ibe.next().list.iterator();
-                    }
+                    lEntry = entry;
                     return l;
                 }
 
                 public void remove() {
-                    il.remove();
+                    if (l == null) {
+                        throw new IllegalStateException();
+                    }
+                    lEntry.remove(l);
+                    if (lEntry.isEmpty()) {
+                        belsMap.remove(l.getPredicateIndicator());
+                    }
                     if (l.hasAnnot(TPercept)) {
                         percepts.remove(l);
                     }
                     size--;
+                    changed(l);
+                    l = null;
                 }
             };
         } else {
@@ -232,6 +306,12 @@ public class DefaultBeliefBase implements BeliefBase {
         BelEntry entry = belsMap.remove(pi);
         if (entry != null) {
             size -= entry.size();
+            if (qCache != null) {
+                qCache.predicateChanged(pi);
+            }
+            if (tables != null) {
+                tables.predicateChanged(pi);
+            }
 
             // remove also in percepts list!
             Iterator<Literal> i = percepts.iterator();
@@ -261,7 +341,7 @@ public class DefaultBeliefBase implements BeliefBase {
     public Iterator<Literal> getCandidateBeliefs(PredicateIndicator pi) {
         BelEntry entry = belsMap.get(pi);
         if (entry != null) {
-            return Collections.unmodifiableList(entry.list).iterator();
+            return entry.iterator();
         } else {
             return null;
         }
@@ -274,7 +354,7 @@ public class DefaultBeliefBase implements BeliefBase {
         } else {
             BelEntry entry = belsMap.get(l.getPredicateIndicator());
             if (entry != null) {
-                return Collections.unmodifiableList(entry.list).iterator();
+                return entry.candidates(l, u);
             } else {
                 return null;
             }
@@ -316,27 +396,100 @@ public class DefaultBeliefBase implements BeliefBase {
         return ebels;
     }
 
-    /** each predicate indicator has one BelEntry assigned to it */
-    final class BelEntry {
+    /**
+     * the key of a term in the indexes of the arguments of the beliefs: the
+     * functor of atoms (with or without annotations), the value of numbers
+     * and strings, null for other terms (variables, structures, lists,
+     * expressions, ...). Two terms with different (not null) keys do not
+     * unify.
+     */
+    static Object indexKey(Term t) {
+        Class<?> c = t.getClass();
+        if (c == NumberTermImpl.class) {
+            double d = ((NumberTermImpl) t).solve();
+            return d == 0 ? 0.0 : d; // -0.0 equals 0.0 for the unifier
+        }
+        if (c == StringTermImpl.class) {
+            return t; // a string term is not equal to the String of an atom
+        }
+        if (c == Atom.class || c == Structure.class || c == Pred.class || c == LiteralImpl.class) {
+            Literal l = (Literal) t;
+            if (l.getArity() == 0 && !l.negated()) {
+                return l.getFunctor();
+            }
+        }
+        return null;
+    }
 
-        final private List<Literal> list = new LinkedList<Literal>(); // maintains the order of the beliefs
+    /**
+     * each predicate indicator has one BelEntry assigned to it.
+     *
+     * <p>The beliefs are kept in a doubly linked list, in the order of the
+     * BB, and in a hash map (to find a belief and remove it in constant
+     * time). When the entry has at least {@link #MIN_INDEXED_ENTRY} beliefs
+     * and is queried with a constant in some argument, an index of that
+     * argument is built (see {@link ArgIndex}), so that queries like
+     * <code>pos(robot7, X, Y)</code> only consider the beliefs whose first
+     * argument can unify with <code>robot7</code>.
+     */
+    final class BelEntry {
 
-        final private Map<LiteralWrapper, Literal> map = new HashMap<LiteralWrapper, Literal>();
+        final private Map<LiteralWrapper, BelNode> map = new HashMap<LiteralWrapper, BelNode>();
         // to find content faster
 
+        private BelNode first = null, last = null; // maintains the order of the beliefs
+
+        /** sequence numbers of the first and last beliefs, used to merge the lists of the indexes in order */
+        private long firstSeq = 0, lastSeq = 0;
+
+        /** indexes of the arguments, created when needed */
+        private ArgIndex[] indexes = null;
+
         public void add(Literal l, boolean addInEnd) {
-            map.put(new LiteralWrapper(l), l);
-            if (addInEnd) {
-                list.add(l);
+            BelNode n = new BelNode(l, addInEnd ? ++lastSeq : --firstSeq);
+            map.put(new LiteralWrapper(l), n);
+            if (first == null) {
+                first = last = n;
+            } else if (addInEnd) {
+                n.prev = last;
+                last.next = n;
+                last = n;
             } else {
-                list.add(0, l);
+                n.next = first;
+                first.prev = n;
+                first = n;
+            }
+            if (indexes != null) {
+                for (ArgIndex idx : indexes) {
+                    if (idx != null) {
+                        idx.add(n, addInEnd);
+                    }
+                }
             }
         }
 
         public void remove(Literal l) {
-            Literal linmap = map.remove(new LiteralWrapper(l));
-            if (linmap != null) {
-                list.remove(linmap);
+            BelNode n = map.remove(new LiteralWrapper(l));
+            if (n != null) {
+                // the next of n is kept for the iterators that are in n
+                if (n.prev == null) {
+                    first = n.next;
+                } else {
+                    n.prev.next = n.next;
+                }
+                if (n.next == null) {
+                    last = n.prev;
+                } else {
+                    n.next.prev = n.prev;
+                }
+                n.removed = true;
+                if (indexes != null) {
+                    for (ArgIndex idx : indexes) {
+                        if (idx != null) {
+                            idx.remove(n);
+                        }
+                    }
+                }
             }
         }
 
@@ -345,25 +498,81 @@ public class DefaultBeliefBase implements BeliefBase {
         }
 
         public boolean isEmpty() {
-            return list.isEmpty();
+            return map.isEmpty();
         }
 
         public Literal contains(Literal l) {
-            return map.get(new LiteralWrapper(l));
+            BelNode n = map.get(new LiteralWrapper(l));
+            return n == null ? null : n.literal;
+        }
+
+        /** iterator for all beliefs of the entry, in order (it does not support remove) */
+        public Iterator<Literal> iterator() {
+            return new BelIterator(first, -1);
+        }
+
+        /**
+         * the beliefs that may unify with <i>l</i>: those of the most
+         * selective index of an argument of <i>l</i> that is a constant,
+         * or all beliefs
+         */
+        Iterator<Literal> candidates(Literal l, Unifier u) {
+            if (map.size() < MIN_INDEXED_ENTRY) {
+                return iterator();
+            }
+            int arity = l.getArity();
+            ArgIndex best = null;
+            Object bestKey = null;
+            int bestSize = map.size();
+            for (int i = 0; i < arity; i++) {
+                Term t = l.getTerm(i);
+                if (t.isVar() && u != null) {
+                    t = u.get((VarTerm) t);
+                }
+                Object key = t == null ? null : indexKey(t);
+                if (key != null) {
+                    ArgIndex idx = getIndex(i, arity);
+                    int s = idx.size(key);
+                    if (s < bestSize) {
+                        best = idx;
+                        bestKey = key;
+                        bestSize = s;
+                    }
+                }
+            }
+            if (best == null) {
+                return iterator();
+            }
+            return best.iterator(bestKey);
+        }
+
+        private ArgIndex getIndex(int arg, int arity) {
+            if (indexes == null) {
+                indexes = new ArgIndex[arity];
+            }
+            ArgIndex idx = indexes[arg];
+            if (idx == null) {
+                idx = new ArgIndex(arg, arity);
+                for (BelNode n = first; n != null; n = n.next) {
+                    idx.add(n, true);
+                }
+                indexes[arg] = idx;
+            }
+            return idx;
         }
 
         protected Object clone() {
             BelEntry be = new BelEntry();
-            for (Literal l : list) {
-                be.add(l.copy(), false);
+            for (BelNode n = first; n != null; n = n.next) {
+                be.add(n.literal.copy(), false);
             }
             return be;
         }
 
         public String toString() {
             StringBuilder s = new StringBuilder();
-            for (Literal l : list) {
-                s.append(l + ":" + l.hashCode() + ",");
+            for (BelNode n = first; n != null; n = n.next) {
+                s.append(n.literal + ":" + n.literal.hashCode() + ",");
             }
             return s.toString();
         }
@@ -390,4 +599,185 @@ public class DefaultBeliefBase implements BeliefBase {
             }
         }
     }
+
+    /** minimum number of beliefs of an entry to index its arguments */
+    static final int MIN_INDEXED_ENTRY = 16;
+
+    /**
+     * a belief of an entry, linked to the next and previous beliefs of the
+     * entry and, for each indexed argument, of its list in the index
+     */
+    static final class BelNode {
+        final Literal literal;
+        final long seq;
+        BelNode prev, next;
+        BelNode[] prevInArg, nextInArg;
+        boolean removed = false;
+
+        BelNode(Literal literal, long seq) {
+            this.literal = literal;
+            this.seq = seq;
+        }
+
+        BelNode next(int arg) {
+            return arg < 0 ? next : nextInArg[arg];
+        }
+    }
+
+    /** a list of beliefs of an entry, linked by the nodes of some argument */
+    static final class BelList {
+        BelNode first, last;
+        int size = 0;
+    }
+
+    /**
+     * the index of one argument of the beliefs of an entry: the beliefs are
+     * in lists by the key of the argument ({@link #indexKey(Term)}), in the
+     * order of the BB; beliefs with an argument without key (as a variable
+     * in the head of a rule) are in the list of others, that is a candidate
+     * for all queries.
+     */
+    static final class ArgIndex {
+        private final int arg;
+        private final int arity;
+        private final Map<Object, BelList> lists = new HashMap<Object, BelList>();
+        private final BelList others = new BelList();
+
+        ArgIndex(int arg, int arity) {
+            this.arg = arg;
+            this.arity = arity;
+        }
+
+        void add(BelNode n, boolean addInEnd) {
+            if (n.nextInArg == null) {
+                n.prevInArg = new BelNode[arity];
+                n.nextInArg = new BelNode[arity];
+            }
+            Object key = indexKey(n.literal.getTerm(arg));
+            BelList list = others;
+            if (key != null) {
+                list = lists.get(key);
+                if (list == null) {
+                    list = new BelList();
+                    lists.put(key, list);
+                }
+            }
+            if (list.first == null) {
+                list.first = list.last = n;
+            } else if (addInEnd) {
+                n.prevInArg[arg] = list.last;
+                list.last.nextInArg[arg] = n;
+                list.last = n;
+            } else {
+                n.nextInArg[arg] = list.first;
+                list.first.prevInArg[arg] = n;
+                list.first = n;
+            }
+            list.size++;
+        }
+
+        void remove(BelNode n) {
+            Object key = indexKey(n.literal.getTerm(arg));
+            BelList list = key == null ? others : lists.get(key);
+            BelNode prev = n.prevInArg[arg];
+            BelNode next = n.nextInArg[arg];
+            if (prev == null) {
+                list.first = next;
+            } else {
+                prev.nextInArg[arg] = next;
+            }
+            if (next == null) {
+                list.last = prev;
+            } else {
+                next.prevInArg[arg] = prev;
+            }
+            list.size--;
+            if (list.size == 0 && key != null) {
+                lists.remove(key);
+            }
+        }
+
+        /** number of beliefs that may unify with an argument with <i>key</i> */
+        int size(Object key) {
+            BelList list = lists.get(key);
+            return others.size + (list == null ? 0 : list.size);
+        }
+
+        Iterator<Literal> iterator(Object key) {
+            BelList list = lists.get(key);
+            if (others.size == 0) {
+                return new BelIterator(list == null ? null : list.first, arg);
+            } else if (list == null) {
+                return new BelIterator(others.first, arg);
+            } else {
+                return new MergeIterator(new BelIterator(list.first, arg), new BelIterator(others.first, arg));
+            }
+        }
+    }
+
+    /**
+     * iterates the nodes linked by the list of the entry (arg = -1) or of an
+     * index; beliefs removed during the iteration are skipped
+     */
+    static final class BelIterator implements Iterator<Literal> {
+        private final int arg;
+        private BelNode n;
+
+        BelIterator(BelNode first, int arg) {
+            this.arg = arg;
+            this.n = first;
+        }
+
+        public boolean hasNext() {
+            while (n != null && n.removed) {
+                n = n.next(arg);
+            }
+            return n != null;
+        }
+
+        /** the node that next returns, null if none */
+        BelNode peek() {
+            return hasNext() ? n : null;
+        }
+
+        public Literal next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Literal l = n.literal;
+            n = n.next(arg);
+            return l;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /** merges two iterators of nodes in the order of the BB */
+    static final class MergeIterator implements Iterator<Literal> {
+        private final BelIterator a, b;
+
+        MergeIterator(BelIterator a, BelIterator b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        public boolean hasNext() {
+            return a.hasNext() || b.hasNext();
+        }
+
+        public Literal next() {
+            BelNode na = a.peek();
+            BelNode nb = b.peek();
+            if (na != null && (nb == null || na.seq < nb.seq)) {
+                return a.next();
+            }
+            return b.next();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
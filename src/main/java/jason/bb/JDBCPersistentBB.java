@@ -1,5 +1,6 @@
 package jason.bb;
 
+import jason.NoValueException;
 import jason.asSemantics.Agent;
 import jason.asSemantics.Unifier;
 import jason.asSyntax.*;
@@ -60,6 +61,17 @@ import static jason.asSyntax.ASSyntax.createNumber;
  * If no table name is provided, the predicate name is used for the table name.
  * <br/>
  *
+ * <p>The SQL commands are prepared once for each table. The changes (add and
+ * remove) are not written at once: they are queued and written in one
+ * transaction at the begin of the next reasoning cycle, when the queue has
+ * {@link #setMaxPendingWrites(int) maxPendingWrites} commands, before the
+ * queries that need the DB and when the BB stops. Errors in these writes are
+ * therefore only logged. The beliefs of the tables created by Jason that were
+ * added, removed or found by <code>contains</code> are kept in a cache (of at
+ * most {@link #setMaxCachedBeliefs(int) maxCachedBeliefs} beliefs by table),
+ * so that <code>contains</code> does not query the DB for them. The tables
+ * should thus be changed only by this BB while the agent runs.
+ *
  * @author Jomi
  */
 public class JDBCPersistentBB extends ChainBBAdapter {
@@ -93,8 +105,23 @@ public class JDBCPersistentBB extends ChainBBAdapter {
     // map of bels in DB
     protected Map<PredicateIndicator, ResultSetMetaData> belsDB = new HashMap<PredicateIndicator, ResultSetMetaData>();
 
+    /** the prepared statements and cached beliefs of each table */
+    private Map<String, Table> tables = new HashMap<String, Table>();
+
+    /** the changes not written in the DB yet */
+    private List<PendingWrite> pending = new ArrayList<PendingWrite>();
+
+    private int maxPendingWrites = 1000;
+
+    private int maxCachedBeliefs = 10000;
+
+    private Agent ag;
+
+    private boolean flushScheduled = false;
+
     @Override
     public void init(Agent ag, String[] args) {
+        this.ag = ag;
         try {
             agentName = ag.getTS().getUserAgArch().getAgName();
         } catch (Exception _) {
@@ -107,6 +134,7 @@ public class JDBCPersistentBB extends ChainBBAdapter {
             url = String.format(args[1], agentName);
             logger.fine("Connecting: url= " + url + ", user=" + args[2] + ", password=" + args[3]);
             conn = DriverManager.getConnection(url, args[2], args[3]);
+            conn.setAutoCommit(false); // the changes are committed by flush
 
             // load tables mapped to DB
             ListTerm lt = ListTermImpl.parseList(args[4]);
@@ -155,7 +183,13 @@ public class JDBCPersistentBB extends ChainBBAdapter {
             return;
         }
 
+        flush();
         try {
+            conn.commit();
+            for (Table t : tables.values()) {
+                t.close();
+            }
+            tables.clear();
             if (url.startsWith("jdbc:hsqldb")) {
                 conn.createStatement().execute("SHUTDOWN");
             }
@@ -170,6 +204,129 @@ public class JDBCPersistentBB extends ChainBBAdapter {
         logger.warning("clear is still not implemented for JDBC BB!");
     }
 
+    /** sets the number of queued changes that makes them be written at once (default is 1000) */
+    public void setMaxPendingWrites(int n) {
+        maxPendingWrites = Math.max(1, n);
+    }
+
+    /** sets the maximum number of beliefs kept in the cache of each table (default is 10000, 0 disables the cache) */
+    public void setMaxCachedBeliefs(int n) {
+        maxCachedBeliefs = n;
+        for (Table t : tables.values()) {
+            t.clearCache();
+        }
+    }
+
+    /** returns the number of changes not written in the DB yet */
+    public int getPendingWrites() {
+        return pending.size();
+    }
+
+    /**
+     * writes the queued changes in the DB, in one transaction; if the
+     * transaction fails, the changes are written one by one, so that only
+     * the changes that fail are discarded
+     */
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            PreparedStatement batch = null;
+            for (PendingWrite w : pending) {
+                if (w.stmt != batch) {
+                    if (batch != null) {
+                        batch.executeBatch();
+                    }
+                    batch = w.stmt;
+                }
+                bind(w.stmt, w.values);
+                w.stmt.addBatch();
+            }
+            batch.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            logger.log(Level.WARNING,
+                    "SQL Error writing " + pending.size() + " changes at once, writing them one by one", e);
+            rollback();
+            for (PendingWrite w : pending) {
+                try {
+                    w.stmt.clearBatch();
+                } catch (SQLException e1) {
+                    logger.log(Level.WARNING, "SQL Error clearing the batch", e1);
+                }
+            }
+            flushOneByOne();
+        } finally {
+            pending.clear();
+        }
+    }
+
+    /** writes each pending change in its own transaction, discarding those that fail */
+    private void flushOneByOne() {
+        boolean failed = false;
+        for (PendingWrite w : pending) {
+            try {
+                bind(w.stmt, w.values);
+                w.stmt.executeUpdate();
+                conn.commit();
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "SQL Error writing " + Arrays.toString(w.values) + ", it is discarded", e);
+                rollback();
+                failed = true;
+            }
+        }
+        if (failed) {
+            // the cached beliefs may be not in the DB
+            for (Table t : tables.values()) {
+                t.clearCache();
+            }
+        }
+    }
+
+    private void rollback() {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "SQL Error in rollback", e);
+        }
+    }
+
+    /** queues a change in the DB */
+    private void write(PreparedStatement stmt, Object[] values) {
+        pending.add(new PendingWrite(stmt, values));
+        if (pending.size() >= maxPendingWrites) {
+            flush();
+        } else if (!flushScheduled && ag != null && ag.getTS() != null) {
+            flushScheduled = true;
+            ag.getTS().runAtBeginOfNextCycle(new Runnable() {
+                public void run() {
+                    flushScheduled = false;
+                    flush();
+                }
+            });
+        }
+    }
+
+    /**
+     * updates the cache of table t after a change of the belief stored with
+     * the where values <i>where</i> (if not null), also under the where values
+     * of <i>l</i> (as used by contains), since the terms read from the DB may
+     * be translated to other values
+     */
+    private void cached(Table t, Literal l, Object[] where, Literal belief) throws SQLException {
+        if (t.cache == null) {
+            return;
+        }
+        if (where != null) {
+            t.cached(where, belief);
+        }
+        BitSet ground = getGroundTerms(l);
+        if (ground.cardinality() == l.getArity()) {
+            t.cached(getWhereValues(l, ground), belief);
+        }
+    }
+
     /** returns true if the literal is stored in a DB */
     protected boolean isDB(Literal l) {
         return belsDB.get(l.getPredicateIndicator()) != null;
@@ -192,28 +349,38 @@ public class JDBCPersistentBB extends ChainBBAdapter {
             return nextBB.contains(l);
         }
 
-        Statement stmt = null;
         try {
-            // create a literal from query
-            stmt = conn.createStatement();
-            String q = getSelect(l);
-            if (logger.isLoggable(Level.FINE)) {
-                logger.fine("query for contains " + l + ":" + q);
+            PredicateIndicator pi = l.getPredicateIndicator();
+            Table t = getTable(pi);
+            BitSet ground = getGroundTerms(l);
+            Object[] values = getWhereValues(l, ground);
+            List<Object> key = null;
+            if (t.cache != null && ground.cardinality() == l.getArity()) {
+                key = Arrays.asList(values);
+                if (t.cache.containsKey(key)) {
+                    Literal c = t.cache.get(key);
+                    return c == null ? null : c.copy();
+                }
+            }
+
+            flush();
+            PreparedStatement stmt = t.getSelect(ground);
+            bind(stmt, values);
+            ResultSet rs = stmt.executeQuery();
+            Literal r = null;
+            try {
+                if (rs.next()) {
+                    r = resultSetToLiteral(rs, pi);
+                }
+            } finally {
+                rs.close();
             }
-            ResultSet rs = stmt.executeQuery(q);
-            if (rs.next()) {
-                return resultSetToLiteral(rs, l.getPredicateIndicator());
+            if (key != null) {
+                t.cached(values, r);
             }
+            return r;
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "SQL Error", e);
-            //} catch (ParseException e) {
-            //    logger.log(Level.SEVERE, "Parser Error", e);
-        } finally {
-            try {
-                stmt.close();
-            } catch (Exception e) {
-                logger.log(Level.WARNING, "SQL Error closing connection", e);
-            }
         }
         return null;
     }
@@ -233,8 +400,8 @@ public class JDBCPersistentBB extends ChainBBAdapter {
         }
 
         Literal bl = contains(l);
-        Statement stmt = null;
         try {
+            Table t = getTable(l.getPredicateIndicator());
             if (bl != null) {
                 if (isCreatedByJason(l.getPredicateIndicator())) {
                     // add only annots
@@ -252,23 +419,18 @@ public class JDBCPersistentBB extends ChainBBAdapter {
                         }
 
                         // store bl annots
-                        stmt = conn.createStatement();
-                        String q = "update " + getTableName(bl) + " set " + COL_ANNOT + " = '" + bl.getAnnots() + "' "
-                                + getWhere(l);
-                        if (logger.isLoggable(Level.FINE)) {
-                            logger.fine("query for update " + q);
-                        }
-                        stmt.executeUpdate(q);
+                        Object[] where = getWhereValues(bl, getGroundTerms(bl));
+                        Object[] values = new Object[where.length + 1];
+                        values[0] = bl.getAnnots().toString();
+                        System.arraycopy(where, 0, values, 1, where.length);
+                        write(t.getUpdate(), values);
+                        cached(t, l, where, bl);
                         return true;
                     }
                 }
             } else {
-                // create insert command
-                stmt = conn.createStatement();
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine("query for insert " + getInsert(l));
-                }
-                stmt.executeUpdate(getInsert(l));
+                write(t.getInsert(), getInsertValues(l));
+                cached(t, l, null, l);
                 // add it in the percepts list
                 if (l.hasAnnot(TPercept)) {
                     getDBBPercepts().add(l);
@@ -277,14 +439,6 @@ public class JDBCPersistentBB extends ChainBBAdapter {
             }
         } catch (Exception e) {
             logger.log(Level.SEVERE, "SQL Error", e);
-        } finally {
-            try {
-                if (stmt != null) {
-                    stmt.close();
-                }
-            } catch (Exception e) {
-                logger.log(Level.WARNING, "SQL Error closing connection", e);
-            }
         }
         return false;
     }
@@ -297,33 +451,30 @@ public class JDBCPersistentBB extends ChainBBAdapter {
 
         Literal bl = contains(l);
         if (bl != null) {
-            Statement stmt = null;
             try {
                 if (l.hasSubsetAnnot(bl)) {
                     if (l.hasAnnot(TPercept)) {
                         getDBBPercepts().remove(bl);
                     }
                     boolean result = bl.delAnnots(l.getAnnots()) || !bl.hasAnnot();
-                    stmt = conn.createStatement();
+                    Table t = getTable(bl.getPredicateIndicator());
+                    Object[] where = getWhereValues(bl, getGroundTerms(bl));
                     if (bl.hasAnnot() && isCreatedByJason(l.getPredicateIndicator())) {
                         // store new bl annots
-                        stmt.executeUpdate(
-                                "update " + getTableName(bl) + " set " + COL_ANNOT + " = '" + bl.getAnnots() + "' "
-                                        + getWhere(l));
+                        Object[] values = new Object[where.length + 1];
+                        values[0] = bl.getAnnots().toString();
+                        System.arraycopy(where, 0, values, 1, where.length);
+                        write(t.getUpdate(), values);
+                        cached(t, l, where, bl);
                     } else {
                         // remove from DB
-                        stmt.executeUpdate("delete from " + getTableName(bl) + getWhere(bl));
+                        write(t.getDelete(), where);
+                        cached(t, l, where, null);
                     }
                     return result;
                 }
             } catch (SQLException e) {
                 logger.log(Level.SEVERE, "SQL Error", e);
-            } finally {
-                try {
-                    stmt.close();
-                } catch (Exception e) {
-                    logger.log(Level.WARNING, "SQL Error closing connection", e);
-                }
             }
         }
         return false;
@@ -344,10 +495,13 @@ public class JDBCPersistentBB extends ChainBBAdapter {
             return nextBB.abolish(pi);
         }
 
+        flush();
         Statement stmt = null;
         try {
             stmt = conn.createStatement();
             stmt.executeUpdate(getDeleteAll(pi));
+            conn.commit();
+            getTable(pi).clearCache();
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "SQL Error", e);
         } finally {
@@ -371,55 +525,28 @@ public class JDBCPersistentBB extends ChainBBAdapter {
             // all bels are relevant
             return iterator();
         } else {
-            // get all rows of l's table
-            String q = null;
+            // get the rows of l's table that match its ground terms
             try {
-                q = getSelect(l);
+                flush();
+                BitSet ground = getGroundTerms(l);
+                PreparedStatement stmt = getTable(pi).getSelect(ground);
+                bind(stmt, getWhereValues(l, ground));
                 if (logger.isLoggable(Level.FINE)) {
-                    logger.fine("getRelevant query for " + l + ": " + q);
+                    logger.fine("getRelevant query for " + l + ": " + getTable(pi).getSelectSQL(ground));
                 }
-                final ResultSet rs = conn.createStatement().executeQuery(q);
-                return new Iterator<Literal>() {
-                    boolean hasNext = true;
-
-                    boolean firstcall = true;
-
-                    public boolean hasNext() {
-                        if (firstcall) {
-                            try {
-                                hasNext = rs.next();
-                            } catch (SQLException e) {
-                                logger.log(Level.SEVERE, "SQL Error", e);
-                            }
-                            firstcall = false;
-                        }
-                        return hasNext;
-                    }
-
-                    public Literal next() {
-                        try {
-                            if (firstcall) {
-                                hasNext = rs.next();
-                                firstcall = false;
-                            }
-                            Literal l = resultSetToLiteral(rs, pi);
-                            hasNext = rs.next();
-                            if (!hasNext) {
-                                rs.close();
-                            }
-                            return l;
-                        } catch (Exception e) {
-                            logger.log(Level.SEVERE, "Error", e);
-                        }
-                        return null;
-                    }
-
-                    public void remove() {
-                        logger.warning("remove in jdbc get relevant is not implemented!");
+                // the rows are read at once since the statement may be used again while iterating
+                List<Literal> r = new ArrayList<Literal>();
+                ResultSet rs = stmt.executeQuery();
+                try {
+                    while (rs.next()) {
+                        r.add(resultSetToLiteral(rs, pi));
                     }
-                };
+                } finally {
+                    rs.close();
+                }
+                return r.iterator();
             } catch (SQLException e) {
-                logger.log(Level.SEVERE, "SQL Error in getRelevant for " + l + " with query " + q, e);
+                logger.log(Level.SEVERE, "SQL Error in getRelevant for " + l, e);
             }
         }
         return null;
@@ -427,6 +554,7 @@ public class JDBCPersistentBB extends ChainBBAdapter {
 
     @Override
     public int size() {
+        flush();
         int count = 0;
         Statement stmt = null;
         try {
@@ -461,6 +589,7 @@ public class JDBCPersistentBB extends ChainBBAdapter {
             all.add(is.next());
         }
 
+        flush();
         Statement stmt = null;
         try {
             stmt = conn.createStatement();
@@ -572,94 +701,154 @@ public class JDBCPersistentBB extends ChainBBAdapter {
         return ct.toString();
     }
 
-    /** returns the SQL command for a select that retrieves the literal l from the DB */
-    protected String getSelect(Literal l) throws SQLException {
-        return "select * from " + getTableName(l) + getWhere(l);
-    }
-
     /** returns the SQL command the selects all literals of type pi */
     protected String getSelectAll(PredicateIndicator pi) throws SQLException {
         return "select * from " + getTableName(pi);
     }
 
-    /** returns the where clausule for a select for literal l */
-    protected String getWhere(Literal l) throws SQLException {
-        ResultSetMetaData meta = belsDB.get(l.getPredicateIndicator());
-        StringBuilder q = new StringBuilder(" where ");
-        String and = "";
-        // for all ground terms of l
+    /** returns a SQL command to delete all entries for a predicate */
+    protected String getDeleteAll(PredicateIndicator pi) throws SQLException {
+        return "delete from " + getTableName(pi);
+    }
+
+    /** returns a SQL command to count the number of instances of a predicate */
+    protected String getCountQuery(PredicateIndicator pi) throws SQLException {
+        return "select count(*) from " + getTableName(pi);
+    }
+
+    /** returns the table (with its prepared statements) of the predicate pi */
+    protected Table getTable(PredicateIndicator pi) throws SQLException {
+        String name = getTableName(pi);
+        Table t = tables.get(name);
+        if (t == null) {
+            t = new Table(pi);
+            tables.put(name, t);
+        }
+        return t;
+    }
+
+    /** returns the positions of the ground terms of l */
+    protected BitSet getGroundTerms(Literal l) {
+        BitSet ground = new BitSet(l.getArity());
         for (int i = 0; i < l.getArity(); i++) {
-            Term t = l.getTerm(i);
-            if (t.isGround()) {
-                q.append(and);
-                String ts;
-                if (t.isString()) {
-                    ts = "'" + ((StringTerm) t).getString() + "'";
-                } else if (t.isNumeric()) {
-                    ts = t.toString();
-                } else {
-                    ts = "'" + t.toString() + "'";
-                }
-                q.append(meta.getColumnName(i + 1) + " = " + ts);
-                and = " and ";
+            if (l.getTerm(i).isGround()) {
+                ground.set(i);
             }
         }
-        if (isCreatedByJason(l.getPredicateIndicator())) {
-            q.append(and + COL_NEG + " = " + l.negated());
-        }
-        //System.out.println(q.toString());
-        if (and.length() > 0) // add nothing in the clausule 
-        {
-            return q.toString();
-        } else {
+        return ground;
+    }
+
+    /** returns the where clause, with parameters for the values of the ground terms, for literals of type pi */
+    protected String getWhereTemplate(PredicateIndicator pi, BitSet ground) throws SQLException {
+        if (ground.isEmpty()) {
             return "";
         }
+        ResultSetMetaData meta = belsDB.get(pi);
+        StringBuilder q = new StringBuilder(" where ");
+        String and = "";
+        for (int i = ground.nextSetBit(0); i >= 0; i = ground.nextSetBit(i + 1)) {
+            q.append(and + meta.getColumnName(i + 1) + " = ?");
+            and = " and ";
+        }
+        if (isCreatedByJason(pi)) {
+            q.append(and + COL_NEG + " = ?");
+        }
+        return q.toString();
     }
 
-    /** returns the SQL command to insert l into the DB */
-    protected String getInsert(Literal l) throws Exception {
-        StringBuilder q = new StringBuilder("insert into ");
-        ResultSetMetaData meta = belsDB.get(l.getPredicateIndicator());
-        q.append(meta.getTableName(1));
-        q.append(" values(");
-
-        // values
-        for (int i = 0; i < l.getArity(); i++) {
-            Term t = l.getTerm(i);
-            if (t.isString()) {
-                q.append("'" + ((StringTerm) t).getString() + "'");
-            } else {
-                Timestamp timestamp = structure2timestamp(t);
-                if (timestamp != null) {
-                    q.append("TIMESTAMP '" + structure2timestamp(t) + "'");
-                } else {
-                    q.append("'" + t.toString() + "'");
-                }
-            }
-            if (i < meta.getColumnCount() - 1) {
-                q.append(",");
-            }
+    /** returns the values of the parameters of the where clause for l (see getWhereTemplate) */
+    protected Object[] getWhereValues(Literal l, BitSet ground) throws SQLException {
+        if (ground.isEmpty()) {
+            return new Object[0];
         }
-        if (isCreatedByJason(l.getPredicateIndicator())) {
-            q.append(l.negated() + ",");
-            if (l.hasAnnot()) {
-                q.append("\'" + l.getAnnots() + "\'");
-            } else {
-                q.append("\'[]\'");
-            }
+        PredicateIndicator pi = l.getPredicateIndicator();
+        ResultSetMetaData meta = belsDB.get(pi);
+        boolean isJasonTable = isCreatedByJason(pi);
+        Object[] values = new Object[ground.cardinality() + (isJasonTable ? 1 : 0)];
+        int v = 0;
+        for (int i = ground.nextSetBit(0); i >= 0; i = ground.nextSetBit(i + 1)) {
+            values[v++] = toSQLValue(l.getTerm(i), meta.getColumnType(i + 1));
+        }
+        if (isJasonTable) {
+            values[v] = l.negated();
+        }
+        return values;
+    }
+
+    /** returns the SQL command, with parameters for the values, to insert literals of type pi into the DB */
+    protected String getInsertTemplate(PredicateIndicator pi) throws SQLException {
+        StringBuilder q = new StringBuilder("insert into " + getTableName(pi) + " values(");
+        int cols = pi.getArity() + (isCreatedByJason(pi) ? 2 : 0);
+        for (int i = 0; i < cols; i++) {
+            q.append(i == 0 ? "?" : ",?");
         }
         q.append(")");
         return q.toString();
     }
 
-    /** returns a SQL command to delete all entries for a predicate */
-    protected String getDeleteAll(PredicateIndicator pi) throws SQLException {
-        return "delete from " + getTableName(pi);
+    /** returns the values of the parameters of the insert command for l (see getInsertTemplate) */
+    protected Object[] getInsertValues(Literal l) throws SQLException {
+        PredicateIndicator pi = l.getPredicateIndicator();
+        ResultSetMetaData meta = belsDB.get(pi);
+        boolean isJasonTable = isCreatedByJason(pi);
+        Object[] values = new Object[l.getArity() + (isJasonTable ? 2 : 0)];
+        for (int i = 0; i < l.getArity(); i++) {
+            values[i] = toSQLValue(l.getTerm(i), meta.getColumnType(i + 1));
+        }
+        if (isJasonTable) {
+            values[l.getArity()] = l.negated();
+            values[l.getArity() + 1] = l.hasAnnot() ? l.getAnnots().toString() : "[]";
+        }
+        return values;
     }
 
-    /** returns a SQL command to count the number of instances of a predicate */
-    protected String getCountQuery(PredicateIndicator pi) throws SQLException {
-        return "select count(*) from " + getTableName(pi);
+    /** translates a term into the value stored in a column of the given SQL type */
+    protected Object toSQLValue(Term t, int columnType) {
+        try {
+            Timestamp timestamp = structure2timestamp(t);
+            if (timestamp != null) {
+                return timestamp;
+            }
+        } catch (Exception e) {
+            // not a timestamp
+        }
+        if (t.isNumeric()) {
+            switch (columnType) {
+                case Types.INTEGER:
+                case Types.SMALLINT:
+                case Types.TINYINT:
+                case Types.BIGINT:
+                case Types.FLOAT:
+                case Types.DECIMAL:
+                case Types.DOUBLE:
+                case Types.NUMERIC:
+                case Types.REAL:
+                    try {
+                        return ((NumberTerm) t).solve();
+                    } catch (NoValueException e) {
+                        break;
+                    }
+                default:
+                    break;
+            }
+        }
+        return t.isString() ? ((StringTerm) t).getString() : t.toString();
+    }
+
+    /** sets the parameters of a prepared statement */
+    protected void bind(PreparedStatement stmt, Object[] values) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            Object v = values[i];
+            if (v instanceof Double) {
+                stmt.setDouble(i + 1, (Double) v);
+            } else if (v instanceof Boolean) {
+                stmt.setBoolean(i + 1, (Boolean) v);
+            } else if (v instanceof Timestamp) {
+                stmt.setTimestamp(i + 1, (Timestamp) v);
+            } else {
+                stmt.setString(i + 1, (String) v);
+            }
+        }
     }
 
     /** just create some data to test */
@@ -714,4 +903,112 @@ public class JDBCPersistentBB extends ChainBBAdapter {
         return null;
     }
 
+    /** the prepared statements and the cached beliefs of a table */
+    protected class Table {
+        private final PredicateIndicator pi;
+        private PreparedStatement insert;
+        private PreparedStatement update;
+        private PreparedStatement delete;
+        private final Map<BitSet, PreparedStatement> selects = new HashMap<BitSet, PreparedStatement>();
+
+        /**
+         * the beliefs (or null if it is not in the DB) by the values of their
+         * where clause, only for tables created by Jason
+         */
+        Map<List<Object>, Literal> cache;
+
+        Table(PredicateIndicator pi) throws SQLException {
+            this.pi = pi;
+            clearCache();
+        }
+
+        PreparedStatement getInsert() throws SQLException {
+            if (insert == null) {
+                insert = conn.prepareStatement(getInsertTemplate(pi));
+            }
+            return insert;
+        }
+
+        /** the update of the annots, the first parameter is the annots */
+        PreparedStatement getUpdate() throws SQLException {
+            if (update == null) {
+                update = conn.prepareStatement("update " + getTableName(pi) + " set " + COL_ANNOT + " = ?"
+                        + getWhereTemplate(pi, allTerms()));
+            }
+            return update;
+        }
+
+        PreparedStatement getDelete() throws SQLException {
+            if (delete == null) {
+                delete = conn.prepareStatement("delete from " + getTableName(pi) + getWhereTemplate(pi, allTerms()));
+            }
+            return delete;
+        }
+
+        PreparedStatement getSelect(BitSet ground) throws SQLException {
+            PreparedStatement stmt = selects.get(ground);
+            if (stmt == null) {
+                stmt = conn.prepareStatement(getSelectSQL(ground));
+                selects.put(ground, stmt);
+            }
+            return stmt;
+        }
+
+        String getSelectSQL(BitSet ground) throws SQLException {
+            return "select * from " + getTableName(pi) + getWhereTemplate(pi, ground);
+        }
+
+        private BitSet allTerms() {
+            BitSet all = new BitSet(pi.getArity());
+            all.set(0, pi.getArity());
+            return all;
+        }
+
+        /** updates the cache after a change in the DB */
+        void cached(Object[] where, Literal l) {
+            if (cache != null) {
+                cache.put(Arrays.asList(where), l == null ? null : l.copy());
+            }
+        }
+
+        void clearCache() {
+            cache = null;
+            try {
+                if (maxCachedBeliefs > 0 && isCreatedByJason(pi)) {
+                    cache = new LinkedHashMap<List<Object>, Literal>(16, 0.75f, true) {
+                        private static final long serialVersionUID = 1L;
+
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<List<Object>, Literal> eldest) {
+                            return size() > maxCachedBeliefs;
+                        }
+                    };
+                }
+            } catch (SQLException e) {
+                logger.log(Level.WARNING, "SQL Error reading the columns of " + pi, e);
+            }
+        }
+
+        void close() throws SQLException {
+            for (PreparedStatement stmt : selects.values()) {
+                stmt.close();
+            }
+            for (PreparedStatement stmt : new PreparedStatement[] {insert, update, delete}) {
+                if (stmt != null) {
+                    stmt.close();
+                }
+            }
+        }
+    }
+
+    /** a change not written in the DB yet */
+    private static final class PendingWrite {
+        final PreparedStatement stmt;
+        final Object[] values;
+
+        PendingWrite(PreparedStatement stmt, Object[] values) {
+            this.stmt = stmt;
+            this.values = values;
+        }
+    }
 }
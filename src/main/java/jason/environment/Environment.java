@@ -23,6 +23,7 @@
 
 package jason.environment;
 
+import jason.asSemantics.PerceptDelta;
 import jason.asSemantics.Unifier;
 import jason.asSyntax.Literal;
 import jason.asSyntax.Structure;
@@ -173,6 +174,19 @@ public class Environment {
         return p;
     }
 
+    /**
+     * Returns the changes in the perception of an agent since the last
+     * call, for environments that keep track of them. The default
+     * implementation returns null: the perception of the agent is then
+     * obtained by {@link #getPercepts(String)}.
+     * <p>
+     * This method is to be called by TS and should not be called
+     * by other objects.
+     */
+    public PerceptDelta getPerceptsDelta(String agName) {
+        return null;
+    }
+
     /**
      * Returns a copy of the perception for an agent.
      * <p>
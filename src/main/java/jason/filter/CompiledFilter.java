@@ -0,0 +1,188 @@
+package jason.filter;
+
+import jason.asSyntax.Literal;
+import jason.asSyntax.NumberTerm;
+import jason.asSyntax.Term;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A {@link Filter} compiled to be tested directly on the terms of a percept:
+ * the values of its parameters and annotations are parsed once (patterns
+ * and numbers), instead of for every percept, and the arguments are taken
+ * from the literal without converting it to string.
+ *
+ * <p>The semantics is the same of the filter: a percept is removed when all
+ * its conditions hold. A parameter is the argument at its index, an
+ * annotation is the first argument of the first annotation of the percept
+ * with its name. The "E" operator matches the string of the term with the
+ * regular expression of the value; the other operators compare the number
+ * of the term (or the number written in its string) with the value. A
+ * condition does not hold when the term does not exist or is not a number
+ * (for numeric operators).
+ */
+public class CompiledFilter {
+
+    private static Logger logger = Logger.getLogger(CompiledFilter.class.getName());
+
+    private final Filter filter;
+
+    private final int[] paramIndexes;
+
+    private final Condition[] paramConditions;
+
+    private final String[] annotNames;
+
+    private final Condition[] annotConditions;
+
+    public CompiledFilter(Filter filter) {
+        this.filter = filter;
+        paramIndexes = new int[filter.getParameters().size()];
+        paramConditions = new Condition[paramIndexes.length];
+        int i = 0;
+        for (Parameter p : filter.getParameters()) {
+            paramIndexes[i] = p.getIndex();
+            paramConditions[i] = Condition.compile(p.getValue(), p.getOperator());
+            i++;
+        }
+        annotNames = new String[filter.getAnotations().size()];
+        annotConditions = new Condition[annotNames.length];
+        i = 0;
+        for (Annotation a : filter.getAnotations()) {
+            annotNames[i] = a.getPredicate();
+            annotConditions[i] = Condition.compile(a.getValue(), a.getOperator());
+            i++;
+        }
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /** returns true if the percept satisfies all the conditions of the filter (and so has to be removed) */
+    public boolean matches(Literal percept) {
+        for (int i = 0; i < paramIndexes.length; i++) {
+            int index = paramIndexes[i];
+            if (index < 0 || index >= percept.getArity()
+                    || !paramConditions[i].holds(percept.getTerm(index))) {
+                return false;
+            }
+        }
+        for (int i = 0; i < annotNames.length; i++) {
+            if (!annotConditions[i].holds(annotValue(percept, annotNames[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** the first argument of the first annotation named <i>name</i>, null if there is none */
+    private static Term annotValue(Literal percept, String name) {
+        if (!percept.hasAnnot()) {
+            return null;
+        }
+        for (Term t : percept.getAnnots()) {
+            if (t.isLiteral()) {
+                Literal a = (Literal) t;
+                if (a.getFunctor().equals(name)) {
+                    return a.getArity() > 0 ? a.getTerm(0) : null;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return filter.getPredicate();
+    }
+
+    /** a test on the term of a parameter or annotation */
+    private abstract static class Condition {
+
+        static final Condition NEVER = new Condition() {
+            boolean holds(Term t) {
+                return false;
+            }
+        };
+
+        abstract boolean holds(Term t);
+
+        static Condition compile(String value, Operator op) {
+            if (value == null) {
+                return NEVER;
+            }
+            if (op == null || op == Operator.E) {
+                try {
+                    return new Matches(Pattern.compile(value));
+                } catch (PatternSyntaxException e) {
+                    logger.log(Level.WARNING, "Invalid filter pattern " + value + ": " + e.getMessage());
+                    return NEVER;
+                }
+            }
+            try {
+                return new Compares(op, Double.parseDouble(value));
+            } catch (NumberFormatException e) {
+                logger.log(Level.WARNING, "Invalid filter number " + value + ": " + e.getMessage());
+                return NEVER;
+            }
+        }
+    }
+
+    private static final class Matches extends Condition {
+        private final Pattern pattern;
+
+        Matches(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        boolean holds(Term t) {
+            return t != null && pattern.matcher(t.toString()).matches();
+        }
+    }
+
+    private static final class Compares extends Condition {
+        private final Operator op;
+        private final double value;
+
+        Compares(Operator op, double value) {
+            this.op = op;
+            this.value = value;
+        }
+
+        boolean holds(Term t) {
+            if (t == null) {
+                return false;
+            }
+            double x;
+            if (t.isNumeric()) {
+                try {
+                    x = ((NumberTerm) t).solve();
+                } catch (Exception e) {
+                    return false;
+                }
+            } else {
+                try {
+                    x = Double.parseDouble(t.toString());
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            switch (op) {
+                case B:
+                    return x > value;
+                case BE:
+                    return x >= value;
+                case S:
+                    return x < value;
+                case SE:
+                    return x <= value;
+                default:
+                    return false;
+            }
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package jason.filter;
 
+import jason.asSyntax.Literal;
+
 import java.util.HashMap;
+import java.util.Map;
 
 public class Objective {
 
@@ -8,6 +11,10 @@ public class Objective {
 
     public HashMap<String, Filter> hashFilter;
 
+    /** the compiled filters of hashFilter by functor, for positive and negated (~) percepts */
+    private Map<String, CompiledFilter> positive;
+    private Map<String, CompiledFilter> negated;
+
     public String getTag() {
         return tag;
     }
@@ -20,4 +27,29 @@ public class Objective {
         this.tag = tag;
         hashFilter = new HashMap<String, Filter>();
     }
+
+    /** compiles the filters of hashFilter, it has to be called again if hashFilter is changed */
+    public void compile() {
+        Map<String, CompiledFilter> pos = new HashMap<String, CompiledFilter>();
+        Map<String, CompiledFilter> neg = new HashMap<String, CompiledFilter>();
+        for (Map.Entry<String, Filter> e : hashFilter.entrySet()) {
+            String predicate = e.getKey();
+            if (predicate.startsWith("~")) {
+                neg.put(predicate.substring(1), new CompiledFilter(e.getValue()));
+            } else {
+                pos.put(predicate, new CompiledFilter(e.getValue()));
+            }
+        }
+        negated = neg;
+        positive = pos;
+    }
+
+    /** returns true if the percept is removed by the filter of its predicate */
+    public boolean filters(Literal percept) {
+        if (positive == null) {
+            compile();
+        }
+        CompiledFilter f = (percept.negated() ? negated : positive).get(percept.getFunctor());
+        return f != null && f.matches(percept);
+    }
 }
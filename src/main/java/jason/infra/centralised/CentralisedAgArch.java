@@ -33,11 +33,14 @@ import jason.mas2j.ClassParameters;
 import jason.runtime.RuntimeServicesInfraTier;
 import jason.runtime.Settings;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -96,23 +99,45 @@ public class CentralisedAgArch extends AgArch implements Runnable {
 
             // [Fabian] Criando agentes.
             Agent.create(this, agClass, bbPars, asSrc, stts);
-            insertAgArch(this);
-
-            createCustomArchs(agArchClasses);
+            initArchs(agArchClasses, stts);
+        } catch (Exception e) {
+            running = false;
+            throw new JasonException("as2j: error creating the agent.asl class! - " + e.getMessage(), e);
+        }
+    }
 
-            // mind inspector arch
-            if (stts.getUserParameter("mindinspector") != null) {
-                insertAgArch(new MindInspectorAgArch());
-                getFirstAgArch().init();
-            }
+    /**
+     * Creates the user agent architecture as the method above, but the
+     * AgentSpeak code is read from <i>asIn</i> (named <i>asSrc</i>)
+     * instead of from a file.
+     */
+    public void createArchs(List<String> agArchClasses, String agClass, ClassParameters bbPars, InputStream asIn,
+                            String asSrc, Settings stts, RunCentralisedMAS masRunner) throws JasonException {
+        try {
+            this.masRunner = masRunner;
 
-            setLogger();
+            Agent.create(this, agClass, bbPars, asIn, asSrc, stts);
+            initArchs(agArchClasses, stts);
         } catch (Exception e) {
             running = false;
             throw new JasonException("as2j: error creating the agent.asl class! - " + e.getMessage(), e);
         }
     }
 
+    private void initArchs(List<String> agArchClasses, Settings stts) throws Exception {
+        insertAgArch(this);
+
+        createCustomArchs(agArchClasses);
+
+        // mind inspector arch
+        if (stts.getUserParameter("mindinspector") != null) {
+            insertAgArch(new MindInspectorAgArch());
+            getFirstAgArch().init();
+        }
+
+        setLogger();
+    }
+
     /** init the agent architecture based on another agent */
     public void createArchs(List<String> agArchClasses, Agent ag, RunCentralisedMAS masRunner) throws JasonException {
         try {
@@ -134,8 +159,11 @@ public class CentralisedAgArch extends AgArch implements Runnable {
         if (myThread != null) {
             myThread.interrupt();
         }
-        synchronized (syncStopRun) {
+        syncStopRun.lock(); // waits for the end of the last reasoning cycle
+        try {
             masRunner.delAg(agName);
+        } finally {
+            syncStopRun.unlock();
         }
         getTS().getAg().stopAg();
         getUserAgArch().stop(); // stops all archs
@@ -180,7 +208,8 @@ public class CentralisedAgArch extends AgArch implements Runnable {
         return infraControl;
     }
 
-    private Object syncStopRun = new Object();
+    /** held while the agent runs its reasoning cycles, stopAg removes the agent after the last one */
+    protected final ReentrantLock syncStopRun = new ReentrantLock();
 
     private Thread myThread = null;
 
@@ -194,7 +223,8 @@ public class CentralisedAgArch extends AgArch implements Runnable {
     }
 
     public void run() {
-        synchronized (syncStopRun) {
+        syncStopRun.lock(); // a lock, not a monitor: subclasses may run on virtual threads
+        try {
             TransitionSystem ts = getTS();
             while (running) {
                 if (ts.getSettings().isSync()) {
@@ -216,30 +246,35 @@ public class CentralisedAgArch extends AgArch implements Runnable {
                     ts.reasoningCycle();
                 }
             }
+        } finally {
+            syncStopRun.unlock();
         }
         logger.fine("I finished!");
     }
 
-    private Object sleepSync = new Object();
+    /**
+     * maximum time of a sleep: producers of events (messages, changes in the
+     * environment, actions executed, scheduled tasks, ...) wake the agent,
+     * this bound only matters for changes that do not (as percepts added by
+     * an environment that does not call informAgsEnvironmentChanged)
+     */
+    private static final long MAX_SLEEP = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final WakeSignal wakeSignal = new WakeSignal();
 
     public void sleep() {
         try {
             if (!getTS().getSettings().isSync()) {
                 logger.fine("Entering in sleep mode....");
-                synchronized (sleepSync) {
-                    sleepSync.wait(500); // wait for messages
-                }
+                wakeSignal.await(MAX_SLEEP); // wait for messages
             }
-        } catch (InterruptedException e) {
         } catch (Exception e) {
             logger.log(Level.WARNING, "Error in sleep.", e);
         }
     }
 
     public void wake() {
-        synchronized (sleepSync) {
-            sleepSync.notifyAll(); // notify sleep method
-        }
+        wakeSignal.signal(); // notify sleep method, or the next sleep if the agent is not sleeping
     }
 
     // Default perception assumes Complete and Accurate sensing.
@@ -254,6 +289,13 @@ public class CentralisedAgArch extends AgArch implements Runnable {
         return percepts;
     }
 
+    public PerceptDelta perceiveDelta() {
+        if (infraEnv == null) {
+            return null;
+        }
+        return infraEnv.getUserEnvironment().getPerceptsDelta(getAgName());
+    }
+
     // this is used by the .send internal action in stdlib
     public void sendMsg(Message m) throws ReceiverNotFoundException {
         // actually send the message
@@ -0,0 +1,34 @@
+package jason.infra.centralised;
+
+/**
+ * An agent architecture for the Centralised infrastructure that runs on a
+ * virtual thread (the "virtual" execution mode,
+ * <code>Centralised(virtual)</code>).
+ *
+ * <p>The agent sleeps and is woken as in {@link CentralisedAgArch}, whose
+ * sleep parks the thread instead of waiting on a monitor, so that the
+ * carrier thread is released while the agent sleeps. As in the other
+ * architectures, the reasoning cycles run holding the lock that stopAg
+ * waits for, so the agent is removed only after its last cycle; that lock
+ * is a ReentrantLock and not a monitor, since a virtual thread that parks
+ * inside a synchronized block pins its carrier (up to JDK 23).
+ */
+public class CentralisedAgArchForVirtualThread extends CentralisedAgArch {
+
+    @Override
+    public void run() {
+        syncStopRun.lock();
+        try {
+            while (isRunning()) {
+                if (getTS().getSettings().isSync()) {
+                    super.run(); // debug mode
+                    return;
+                }
+                incCycleNumber();
+                getTS().reasoningCycle();
+            }
+        } finally {
+            syncStopRun.unlock();
+        }
+    }
+}
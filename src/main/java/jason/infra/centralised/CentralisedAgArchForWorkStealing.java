@@ -0,0 +1,137 @@
+package jason.infra.centralised;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * An agent architecture for the Centralised infrastructure whose reasoning
+ * cycles are run by a {@link WorkStealingScheduler} instead of by a thread
+ * of its own.
+ *
+ * <p>The agent is either idle (sleeping, in no queue) or scheduled (in some
+ * queue of the scheduler or running). When a reasoning cycle puts the agent
+ * to sleep, it becomes idle at the end of its turn; a {@link #wake()} (new
+ * message, change in the environment, ...) schedules an idle agent or, if it
+ * is scheduled, makes it run another turn instead of becoming idle. The
+ * state is changed by compare-and-set, without locks.
+ *
+ * <p>The priority of the agent (the "priority" option of the agent in the
+ * project, 1 by default) multiplies the number of cycles of its turns.
+ *
+ * <p>Other pools of threads reuse this state machine by overriding
+ * {@link #dispatch()} and {@link #cyclesPerTurn()}, as the "pool" execution
+ * mode of {@link RunCentralisedMAS}.
+ */
+public class CentralisedAgArchForWorkStealing extends CentralisedAgArch {
+
+    private static final int IDLE = 0;
+    private static final int SCHEDULED = 1;
+    /** scheduled and woken after the turn started */
+    private static final int WOKEN = 2;
+
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+
+    private WorkStealingScheduler scheduler;
+
+    private volatile int priority = 1;
+
+    /** whether the first turn was scheduled, wakes before it are ignored */
+    private volatile boolean started = false;
+
+    public void setScheduler(WorkStealingScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public WorkStealingScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /** sets the priority of the agent (at least 1), the number of cycles of its turns is multiplied by it */
+    public void setPriority(int priority) {
+        this.priority = Math.max(1, priority);
+    }
+
+    /** sets the priority from the "priority" option of the agent, if any */
+    public void setPriorityFromSettings() {
+        String p = getTS().getSettings().getUserParameter("priority");
+        if (p != null) {
+            try {
+                setPriority(Integer.parseInt(p.trim()));
+            } catch (NumberFormatException e) {
+                logger.warning("Invalid priority '" + p + "' for agent " + getAgName());
+            }
+        }
+    }
+
+    /** schedules the first turn of the agent */
+    public void start() {
+        started = true;
+        wake();
+    }
+
+    @Override
+    public void sleep() {
+        // the agent becomes idle at the end of the turn, the worker thread is not blocked
+    }
+
+    @Override
+    public void wake() {
+        if (!started || !isRunning()) {
+            return; // the first turn is scheduled by start()
+        }
+        while (true) {
+            int s = state.get();
+            if (s == IDLE) {
+                if (state.compareAndSet(IDLE, SCHEDULED)) {
+                    dispatch();
+                    return;
+                }
+            } else if (s == WOKEN || state.compareAndSet(SCHEDULED, WOKEN)) {
+                return;
+            }
+        }
+    }
+
+    /** puts the agent in a queue of the scheduler to run its next turn */
+    protected void dispatch() {
+        scheduler.dispatch(this);
+    }
+
+    /** the maximum number of reasoning cycles of a turn */
+    protected int cyclesPerTurn() {
+        return scheduler.getCyclesPerDispatch() * priority;
+    }
+
+    @Override
+    public void run() {
+        boolean active = true;
+        try {
+            int cycles = cyclesPerTurn();
+            for (int i = 0; i < cycles && active; i++) {
+                if (!isRunning()) {
+                    return;
+                }
+                incCycleNumber();
+                active = getTS().reasoningCycle();
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Error in the reasoning cycle of " + getAgName(), e);
+            active = false;
+        }
+        if (!isRunning()) {
+            return;
+        }
+        if (active) {
+            state.set(SCHEDULED); // a wake during the turn is already served by the next turn
+            dispatch();
+        } else if (!state.compareAndSet(SCHEDULED, IDLE)) {
+            // woken during the turn: runs again to handle the event
+            state.set(SCHEDULED);
+            dispatch();
+        }
+    }
+}
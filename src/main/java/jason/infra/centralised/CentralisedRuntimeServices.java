@@ -8,6 +8,8 @@ import jason.mas2j.ClassParameters;
 import jason.runtime.RuntimeServicesInfraTier;
 import jason.runtime.Settings;
 
+import java.io.InputStream;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
@@ -20,12 +22,15 @@ public class CentralisedRuntimeServices implements RuntimeServicesInfraTier {
 
     protected RunCentralisedMAS masRunner;
 
+    /** names of the agents that are being created */
+    private final Set<String> namesInCreation = new HashSet<String>();
+
     public CentralisedRuntimeServices(RunCentralisedMAS masRunner) {
         this.masRunner = masRunner;
     }
 
     protected CentralisedAgArch newAgInstance() {
-        return new CentralisedAgArch();
+        return masRunner.newAgArch();
     }
 
     public String createAgent(String agName, String agSource, String agClass, List<String> archClasses,
@@ -44,31 +49,76 @@ public class CentralisedRuntimeServices implements RuntimeServicesInfraTier {
             stts = new Settings();
         }
 
+        agName = getUniqueAgName(agName);
+        try {
+            CentralisedAgArch agArch = newAgInstance();
+            agArch.setAgName(agName);
+            agArch.createArchs(ap.getAgArchClasses(), ap.agClass.getClassName(), ap.getBBClass(), agSource, stts,
+                    masRunner);
+            addAg(agArch);
+        } finally {
+            releaseAgName(agName);
+        }
+        return agName;
+    }
+
+    public String createAgent(String agName, InputStream agSource, String agSourceName, String agClass,
+                              List<String> archClasses, ClassParameters bbPars, Settings stts) throws Exception {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Creating centralised agent.asl " + agName + " from stream " + agSourceName + " (agClass="
+                    + agClass + ", archClass=" + archClasses + ", settings=" + stts);
+        }
+
+        AgentParameters ap = new AgentParameters();
+        ap.setAgClass(agClass);
+        ap.addArchClass(archClasses);
+        ap.setBB(bbPars);
+
+        if (stts == null) {
+            stts = new Settings();
+        }
+
+        agName = getUniqueAgName(agName);
+        try {
+            CentralisedAgArch agArch = newAgInstance();
+            agArch.setAgName(agName);
+            agArch.createArchs(ap.getAgArchClasses(), ap.agClass.getClassName(), ap.getBBClass(), agSource,
+                    agSourceName, stts, masRunner);
+            addAg(agArch);
+        } finally {
+            releaseAgName(agName);
+        }
+        return agName;
+    }
+
+    /**
+     * returns a name not used by other agent and reserves it until
+     * releaseAgName, so that agents created in parallel get different names
+     */
+    private synchronized String getUniqueAgName(String agName) {
         String nb = "";
         int n = 1;
-        while (masRunner.getAg(agName + nb) != null) {
+        while (masRunner.getAg(agName + nb) != null || namesInCreation.contains(agName + nb)) {
             nb = "_" + (n++);
         }
-        agName = agName + nb;
+        namesInCreation.add(agName + nb);
+        return agName + nb;
+    }
 
-        CentralisedAgArch agArch = newAgInstance();
-        agArch.setAgName(agName);
-        agArch.createArchs(ap.getAgArchClasses(), ap.agClass.getClassName(), ap.getBBClass(), agSource, stts,
-                masRunner);
+    private synchronized void releaseAgName(String agName) {
+        namesInCreation.remove(agName);
+    }
+
+    private void addAg(CentralisedAgArch agArch) {
         agArch.setEnvInfraTier(masRunner.getEnvironmentInfraTier());
         agArch.setControlInfraTier(masRunner.getControllerInfraTier());
         masRunner.addAg(agArch);
 
-        logger.fine("Agent " + agName + " created!");
-        return agName;
+        logger.fine("Agent " + agArch.getAgName() + " created!");
     }
 
     public void startAgent(String agName) {
-        // create the agent thread
-        CentralisedAgArch agArch = masRunner.getAg(agName);
-        Thread agThread = new Thread(agArch);
-        agArch.setThread(agThread);
-        agThread.start();
+        masRunner.startAg(masRunner.getAg(agName));
     }
 
     public AgArch clone(Agent source, List<String> archClasses, String agName) throws JasonException {
@@ -47,10 +47,7 @@ import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -383,7 +380,11 @@ public class RunCentralisedMAS {
     }
 
     public void createAgs() throws JasonException {
-        boolean isPool = project.getInfrastructure().hasParameter("pool");
+        boolean isPool = isVirtualThreads() || isWorkStealing() || project.getInfrastructure().hasParameter("pool");
+        if (project.getInfrastructure().hasParameter("virtual") && !isVirtualThreads()) {
+            logger.warning("Virtual threads are not supported by this JDK, the agents will run in a work-stealing "
+                    + "pool of threads.");
+        }
         if (isPool) {
             logger.info("Creating agents....");
         }
@@ -406,12 +407,7 @@ public class RunCentralisedMAS {
                         // numberedAg += String.format("%0"+String.valueOf(ap.qty).length()+"d", cAg + 1);
                     }
                     logger.fine("Creating agent.asl " + numberedAg + " (" + (cAg + 1) + "/" + ap.qty + ")");
-                    CentralisedAgArch agArch;
-                    if (isPool) {
-                        agArch = new CentralisedAgArchForPool();
-                    } else {
-                        agArch = new CentralisedAgArch();
-                    }
+                    CentralisedAgArch agArch = newAgArch();
                     agArch.setAgName(numberedAg);
                     agArch.setEnvInfraTier(env);
                     if (isPool && cAg > 0) {
@@ -466,33 +462,95 @@ public class RunCentralisedMAS {
 
     protected void startAgs() {
         // run the agents
-        if (project.getInfrastructure().hasParameter("pool")) {
+        if (isWorkStealing()) {
+            createWorkStealingScheduler();
+        } else if (project.getInfrastructure().hasParameter("pool")) {
             createThreadPool();
         } else {
             createAgsThreads();
         }
     }
 
-    /** creates one thread per agent */
+    /**
+     * whether the agents run in virtual threads: Centralised(virtual) in a
+     * JDK that supports them
+     */
+    public boolean isVirtualThreads() {
+        return project.getInfrastructure().hasParameter("virtual") && VirtualThreads.isSupported();
+    }
+
+    /**
+     * whether the agents run in a work-stealing pool: Centralised(workstealing),
+     * or Centralised(virtual) in a JDK without virtual threads
+     */
+    public boolean isWorkStealing() {
+        return project.getInfrastructure().hasParameter("workstealing")
+                || (project.getInfrastructure().hasParameter("virtual") && !VirtualThreads.isSupported());
+    }
+
+    /** creates one thread per agent (a virtual thread in the virtual mode) */
     private void createAgsThreads() {
+        if (isVirtualThreads()) {
+            logger.info("Running " + ags.size() + " agents in virtual threads.");
+        }
         for (CentralisedAgArch ag : ags.values()) {
             ag.setControlInfraTier(control);
 
             // create the agent thread
-            Thread agThread = new Thread(ag);
+            Thread agThread = newAgThread(ag);
+            ag.setThread(agThread);
+            agThread.start();
+        }
+    }
+
+    /** creates the infrastructure architecture of an agent for the execution mode of the MAS */
+    CentralisedAgArch newAgArch() {
+        if (isVirtualThreads()) {
+            return new CentralisedAgArchForVirtualThread();
+        } else if (isWorkStealing()) {
+            return new CentralisedAgArchForWorkStealing();
+        } else if (project.getInfrastructure().hasParameter("pool")) {
+            return new CentralisedAgArchForPool();
+        }
+        return new CentralisedAgArch();
+    }
+
+    /**
+     * starts an agent created at runtime (see CentralisedRuntimeServices): in
+     * the scheduler or pool of the execution mode, or in a thread of its own
+     * (agents of a pool created before the MAS starts are started with the pool)
+     */
+    void startAg(CentralisedAgArch ag) {
+        if (ag instanceof CentralisedAgArchForPool) {
+            if (executor != null) {
+                ((CentralisedAgArchForPool) ag).start();
+            }
+        } else if (ag instanceof CentralisedAgArchForWorkStealing) {
+            if (workStealingScheduler != null) {
+                CentralisedAgArchForWorkStealing wsAg = (CentralisedAgArchForWorkStealing) ag;
+                wsAg.setScheduler(workStealingScheduler);
+                wsAg.setPriorityFromSettings();
+                wsAg.start();
+            }
+        } else {
+            Thread agThread = newAgThread(ag);
             ag.setThread(agThread);
             agThread.start();
         }
     }
 
-    private Set<CentralisedAgArch> sleepingAgs;
+    /** creates the (not started) thread of an agent */
+    Thread newAgThread(CentralisedAgArch ag) {
+        if (isVirtualThreads()) {
+            return VirtualThreads.newThread(ag);
+        }
+        return new Thread(ag);
+    }
 
     private ExecutorService executor;
 
     /** creates a pool of threads shared by all agents */
     private void createThreadPool() {
-        sleepingAgs = Collections.synchronizedSet(new HashSet<CentralisedAgArch>());
-
         int maxthreads = 10;
         try {
             if (project.getInfrastructure().hasParameters()) {
@@ -514,7 +572,11 @@ public class RunCentralisedMAS {
 
         // initially, add all agents in the tasks
         for (CentralisedAgArch ag : ags.values()) {
-            executor.execute(ag);
+            if (ag instanceof CentralisedAgArchForPool) {
+                ((CentralisedAgArchForPool) ag).start();
+            } else {
+                executor.execute(ag);
+            }
         }
 
         /*new Thread("monitor") {
@@ -533,77 +595,46 @@ public class RunCentralisedMAS {
                 }
             }            
         }.start();*/
-        
-        /*
-        new Thread("wakeup") {
-            public void run() {
-                while (runner != null) {
-                    try {
-                        sleep(1000);
-                        for (CentralisedAgArch ar: sleepingAgs) {
-                            if (!ar.getTS().canSleep())
-                                ar.wake();
-                        }
-                    } catch (Exception e) { 
-                        System.out.println("**");
-                    }
-                }
-            }            
-        }.start();*/
     }
 
-    /** an agent architecture for the infra based on thread pool */
-    private final class CentralisedAgArchForPool extends CentralisedAgArch {
+    private WorkStealingScheduler workStealingScheduler;
 
-        private volatile boolean runWakeAfterTS = false;
+    /** runs the agents in a work-stealing pool of threads (see WorkStealingScheduler) */
+    private void createWorkStealingScheduler() {
+        try {
+            workStealingScheduler = WorkStealingScheduler.create(project.getInfrastructure().getParametersArray());
+        } catch (Exception e) {
+            logger.warning("Error getting the parameters of the work-stealing scheduler, using the defaults.");
+            workStealingScheduler = WorkStealingScheduler.create(new String[0]);
+        }
+        logger.info("Running " + ags.size() + " agents in a " + workStealingScheduler + ".");
 
-        @Override
-        public void sleep() {
-            //if (sleepingAgs.contains(this))
-            //    System.out.println("*** ops already slepping "+this);
-            sleepingAgs.add(this);
+        for (CentralisedAgArch ag : ags.values()) {
+            ag.setControlInfraTier(control);
+            CentralisedAgArchForWorkStealing wsAg = (CentralisedAgArchForWorkStealing) ag;
+            wsAg.setScheduler(workStealingScheduler);
+            wsAg.setPriorityFromSettings();
+        }
+        for (CentralisedAgArch ag : ags.values()) {
+            ((CentralisedAgArchForWorkStealing) ag).start();
         }
+    }
+
+    /**
+     * an agent architecture for the infra based on thread pool: the agent
+     * is scheduled in the pool when it is woken, as in the work-stealing
+     * mode, and runs one reasoning cycle in each turn
+     */
+    private final class CentralisedAgArchForPool extends CentralisedAgArchForWorkStealing {
 
         @Override
-        public void wake() {
-            if (sleepingAgs.remove(this)) {
-                /*try {
-                    ThreadPoolExecutor tp = (ThreadPoolExecutor)executor;
-                    if (tp.getQueue().contains(this)) {
-                        System.out.println("ops... ading ag that is already in the pool "+this);
-                    }
-                } catch (Exception e) { }*/
-                executor.execute(this);
-            } else {
-                runWakeAfterTS = true;
-            }
+        protected void dispatch() {
+            executor.execute(this);
         }
-        
-        /*@Override
-        public void receiveMsg(final Message m) {
-            executor.execute(new Runnable() {                
-                public void run() {
-                    CentralisedAgArchForPool.super.receiveMsg(m);
-                }
-            });
-        }*/
 
         @Override
-        public void run() {
-            if (isRunning()) {
-                runWakeAfterTS = false;
-                if (getTS().reasoningCycle()) { // the agent run a cycle (did not enter in sleep)
-                    /*try {
-                        ThreadPoolExecutor tp = (ThreadPoolExecutor)executor;
-                        if (tp.getQueue().contains(this)) {
-                            System.out.println("*** ops... ading ag that is already in the pool "+this);
-                        }
-                    } catch (Exception e) { }*/
-                    executor.execute(this);
-                } else if (runWakeAfterTS) {
-                    wake();
-                }
-            }
+        protected int cyclesPerTurn() {
+            return 1;
         }
     }
 
@@ -612,6 +643,12 @@ public class RunCentralisedMAS {
         for (CentralisedAgArch ag : ags.values()) {
             ag.stopAg();
         }
+        if (workStealingScheduler != null) {
+            workStealingScheduler.shutdown();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
     }
 
     /** change the current running MAS to debug mode */
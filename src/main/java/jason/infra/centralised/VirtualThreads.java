@@ -0,0 +1,54 @@
+package jason.infra.centralised;
+
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates virtual threads (JDK 21 or later) by reflection, since Jason is
+ * compiled for older JDKs.
+ */
+final class VirtualThreads {
+
+    private static Logger logger = Logger.getLogger(VirtualThreads.class.getName());
+
+    /** Thread.ofVirtual(), null if virtual threads are not supported */
+    private static final Method ofVirtual;
+
+    /** Thread.Builder.unstarted(Runnable) */
+    private static final Method unstarted;
+
+    static {
+        Method of = null;
+        Method un = null;
+        try {
+            of = Thread.class.getMethod("ofVirtual");
+            un = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+            of.invoke(null); // fails if virtual threads are a preview feature not enabled
+        } catch (Throwable e) {
+            of = null;
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Virtual threads are not supported: " + e);
+            }
+        }
+        ofVirtual = of;
+        unstarted = un;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /** whether the JDK supports virtual threads */
+    static boolean isSupported() {
+        return ofVirtual != null;
+    }
+
+    /** creates a (not started) virtual thread that runs <i>r</i> */
+    static Thread newThread(Runnable r) {
+        try {
+            return (Thread) unstarted.invoke(ofVirtual.invoke(null), r);
+        } catch (Exception e) {
+            throw new IllegalStateException("Virtual threads are not supported", e);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package jason.infra.centralised;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The signal that wakes a sleeping agent of the Centralised infrastructure.
+ *
+ * <p>A {@link #signal()} is kept until it is consumed by an {@link #await(long)},
+ * so a signal sent while the agent is still running its reasoning cycle
+ * (before it starts to sleep) is not lost: the next await returns at once.
+ * The waiting thread is parked ({@link LockSupport}) and not blocked on a
+ * monitor, so virtual threads do not pin their carrier while sleeping.
+ */
+final class WakeSignal {
+
+    private final AtomicBoolean signalled = new AtomicBoolean(false);
+
+    private volatile Thread waiter = null;
+
+    /** wakes the thread waiting in await, or the next one that calls await */
+    void signal() {
+        signalled.set(true);
+        Thread t = waiter;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * waits until a signal is received (consuming it), the timeout elapses
+     * or the thread is interrupted (the interruption is cleared), returns
+     * whether the signal was received
+     */
+    boolean await(long timeoutNanos) {
+        if (signalled.getAndSet(false)) {
+            return true;
+        }
+        waiter = Thread.currentThread();
+        try {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (!signalled.getAndSet(false)) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0 || Thread.interrupted()) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, left);
+            }
+            return true;
+        } finally {
+            waiter = null;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package jason.infra.centralised;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the agents of the "workstealing" execution mode of the Centralised
+ * infrastructure, <code>Centralised(workstealing[, threads[, cycles]])</code>,
+ * in a {@link ForkJoinPool}.
+ *
+ * <p>Each worker thread of the pool has its own queue of agents: an agent
+ * that is still active after its turn is rescheduled in the queue of the
+ * thread that ran it (so it tends to keep running on the same core), and
+ * idle threads steal agents from the other queues. There is no queue shared
+ * by all agents nor any set of sleeping agents (see
+ * {@link CentralisedAgArchForWorkStealing}).
+ *
+ * <p>In each turn an agent runs up to <i>cycles</i> reasoning cycles
+ * multiplied by its priority.
+ */
+public class WorkStealingScheduler {
+
+    /** default number of reasoning cycles an agent runs in each turn */
+    public static final int DEFAULT_CYCLES_PER_DISPATCH = 5;
+
+    private final ForkJoinPool pool;
+
+    private final int cyclesPerDispatch;
+
+    public WorkStealingScheduler(int threads, int cyclesPerDispatch) {
+        if (threads < 1) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        this.pool = new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        this.cyclesPerDispatch = Math.max(1, cyclesPerDispatch);
+    }
+
+    /**
+     * creates a scheduler from the parameters of the infrastructure, as in
+     * <code>Centralised(workstealing, 8, 5)</code>: the number of threads
+     * (default: number of processors) and the number of cycles per turn
+     */
+    public static WorkStealingScheduler create(String[] infraParameters) {
+        int threads = 0;
+        int cycles = DEFAULT_CYCLES_PER_DISPATCH;
+        if (infraParameters.length > 1) {
+            threads = Integer.parseInt(infraParameters[1].trim());
+        }
+        if (infraParameters.length > 2) {
+            cycles = Integer.parseInt(infraParameters[2].trim());
+        }
+        return new WorkStealingScheduler(threads, cycles);
+    }
+
+    public int getCyclesPerDispatch() {
+        return cyclesPerDispatch;
+    }
+
+    public int getThreads() {
+        return pool.getParallelism();
+    }
+
+    /** schedules a turn of the agent */
+    void dispatch(CentralisedAgArchForWorkStealing ag) {
+        if (ForkJoinTask.getPool() == pool) {
+            ForkJoinTask.adapt(ag).fork(); // in the queue of the current worker
+        } else {
+            pool.execute(ag);
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+        try {
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "work-stealing scheduler with " + pool.getParallelism() + " thread(s), " + cyclesPerDispatch
+                + " cycle(s) per turn";
+    }
+}
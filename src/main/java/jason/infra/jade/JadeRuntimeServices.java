@@ -15,6 +15,7 @@ import jason.runtime.RuntimeServicesInfraTier;
 import jason.runtime.Settings;
 
 import java.io.File;
+import java.io.InputStream;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -61,6 +62,11 @@ public class JadeRuntimeServices implements RuntimeServicesInfraTier {
         return null;
     }
 
+    public String createAgent(String agName, InputStream agSource, String agSourceName, String agClass,
+                              List<String> archClasses, ClassParameters bbPars, Settings stts) throws Exception {
+        throw new JasonException("creating agents from a stream for JADE is not implemented!");
+    }
+
     public void startAgent(String agName) {
         // nothing to do, the jade create new agent is enough
     }
@@ -17,6 +17,10 @@ public class QueryProfiling {
 
     private int nbCacheHits = 0;
 
+    private int nbCacheMisses = 0;
+
+    private int nbCacheEvictions = 0;
+
     private int nbQueries = 0;
 
     private int nbUniqueQueries = 0;
@@ -46,6 +50,15 @@ public class QueryProfiling {
         nbCacheHits++;
     }
 
+    public void incMisses() {
+        nbCacheMisses++;
+    }
+
+    /** n entries were removed from the query cache (since the beliefs they depend on changed) */
+    public void incEvictions(int n) {
+        nbCacheEvictions += n;
+    }
+
     public void queryStared(Literal l) {
         uniqueQueries.add(l.toString());
         nbQueries++;
@@ -119,6 +132,20 @@ public class QueryProfiling {
         return nbCacheHits;
     }
 
+    public int getNbMisses() {
+        return nbCacheMisses;
+    }
+
+    public int getNbEvictions() {
+        return nbCacheEvictions;
+    }
+
+    /** hits / (hits + misses) of the query cache */
+    public float getHitRatio() {
+        int n = nbCacheHits + nbCacheMisses;
+        return n == 0 ? 0 : (float) nbCacheHits / n;
+    }
+
     public float getP() {
         return p;
     }
@@ -156,6 +183,11 @@ public class QueryProfiling {
         logger.info("Number of updates by cycle        (U) : " + u);
         logger.info("Update cost                    (Cupd) : " + cupd + " ns");
         logger.info("Query cache reused by cycle    (hits) : " + (float) nbCacheHits / nbUpdateCycles);
+        logger.info("Query cache hit ratio                 : " + getHitRatio());
+        logger.info("Query cache evictions by cycle        : " + (float) nbCacheEvictions / nbUpdateCycles);
+        if (ag.getQueryCache() != null && ag.getQueryCache().getMemory() >= 0) {
+            logger.info("Query cache memory (estimated)        : " + ag.getQueryCache().getMemory() + " bytes");
+        }
 
         nbStops++;
         if (nbStops == nbAgs) {
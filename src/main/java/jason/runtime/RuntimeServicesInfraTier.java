@@ -5,6 +5,7 @@ import jason.architecture.AgArch;
 import jason.asSemantics.Agent;
 import jason.mas2j.ClassParameters;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.Set;
 
@@ -30,6 +31,18 @@ public interface RuntimeServicesInfraTier {
     public String createAgent(String agName, String agSource, String agClass, List<String> archClasses,
                               ClassParameters bbPars, Settings stts) throws Exception;
 
+    /**
+     * Creates a new agent as the method above, but the AgentSpeak code
+     * is read from the <i>agSource</i> stream instead of being loaded
+     * from a file. <i>agSourceName</i> is only used as the name of the
+     * agent source (see Agent.getASLSrc()) and the file does not need
+     * to exist.
+     * <p>
+     * Returns the name of the agent
+     */
+    public String createAgent(String agName, InputStream agSource, String agSourceName, String agClass,
+                              List<String> archClasses, ClassParameters bbPars, Settings stts) throws Exception;
+
     /** start (e.g. create thread) the agent */
     public void startAgent(String agName);
 
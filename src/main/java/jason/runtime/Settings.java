@@ -23,6 +23,8 @@
 
 package jason.runtime;
 
+import jason.asSemantics.Unifier;
+
 import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
@@ -48,6 +50,10 @@ public class Settings {
 
     public static final boolean ODefaultSync = false;
 
+    public static final int ODefaultQCacheSize = 10000;
+
+    public static final long ODefaultQCacheMemory = 8 * 1024 * 1024;
+
     private static Logger logger = Logger.getLogger(Settings.class.getName());
 
     private byte events = ODiscard;
@@ -62,8 +68,16 @@ public class Settings {
 
     private boolean qCache = false; // whether to use query cache
 
+    private String qCachePolicy = null; // eviction policy of a bounded query cache (null for an unbounded cache)
+
+    private int qCacheSize = ODefaultQCacheSize;
+
+    private long qCacheMemory = ODefaultQCacheMemory;
+
     private boolean qProfiling = false; // whether has query profiling
 
+    private boolean tabling = false; // whether all rules are tabled (otherwise only those annotated with tabled)
+
     private boolean troON = true;  // tail recursion optimisation is on by default
 
     private Map<String, Object> userParameters = new HashMap<String, Object>();
@@ -126,9 +140,19 @@ public class Settings {
             } else if (key.equals("tro")) {
                 setTRO("true".equals((String) options.get("tro")));
             } else if (key.equals("qcache")) {
-                setQueryCache("cycle".equals((String) options.get("qcache")));
+                setQueryCache((String) options.get("qcache"));
+            } else if (key.equals("qcache_size")) {
+                setQueryCacheSize((String) options.get("qcache_size"));
+            } else if (key.equals("qcache_memory")) {
+                setQueryCacheMemory((String) options.get("qcache_memory"));
+            } else if (key.equals("tabling")) {
+                setTabling("all".equals((String) options.get("tabling")));
             } else if (key.equals("qprofiling")) {
                 setQueryProfiling("yes".equals((String) options.get("qprofiling")));
+            } else if (key.equals("unifier")) {
+                logger.warning("The option unifier is ignored: it applies to all agents of the JVM, so it is set by "
+                        + "the system property " + Unifier.UNDO_MODE_PROPERTY + " (e.g. -D"
+                        + Unifier.UNDO_MODE_PROPERTY + "=trail)");
             } else {
                 //userParameters.put(key, options.get(key));
             }
@@ -237,6 +261,67 @@ public class Settings {
         qCache = b;
     }
 
+    /**
+     * sets the query cache from the value of the option qcache: "cycle" for an
+     * unbounded cache, "lru", "lfu" or "tinylfu" for a cache bounded by
+     * qcache_size entries and qcache_memory bytes (see QueryCacheBounded)
+     */
+    public void setQueryCache(String opt) {
+        qCachePolicy = null;
+        if ("lru".equals(opt) || "lfu".equals(opt) || "tinylfu".equals(opt)) {
+            qCachePolicy = opt;
+            qCache = true;
+        } else {
+            qCache = "cycle".equals(opt);
+        }
+    }
+
+    /** returns the eviction policy of the query cache, or null if it is not bounded */
+    public String getQueryCachePolicy() {
+        return qCachePolicy;
+    }
+
+    public int getQueryCacheSize() {
+        return qCacheSize;
+    }
+
+    public void setQueryCacheSize(String opt) {
+        try {
+            setQueryCacheSize(Integer.parseInt(opt));
+        } catch (NumberFormatException e) {
+            logger.warning("Invalid value for option qcache_size: " + opt);
+        }
+    }
+
+    public void setQueryCacheSize(int n) {
+        qCacheSize = n;
+    }
+
+    public long getQueryCacheMemory() {
+        return qCacheMemory;
+    }
+
+    public void setQueryCacheMemory(String opt) {
+        try {
+            setQueryCacheMemory(Long.parseLong(opt));
+        } catch (NumberFormatException e) {
+            logger.warning("Invalid value for option qcache_memory: " + opt);
+        }
+    }
+
+    public void setQueryCacheMemory(long bytes) {
+        qCacheMemory = bytes;
+    }
+
+    /** whether the answers of all predicates defined by rules are tabled (see AnswerTables) */
+    public boolean hasTabling() {
+        return tabling;
+    }
+
+    public void setTabling(boolean b) {
+        tabling = b;
+    }
+
     public boolean hasQueryProfiling() {
         return qProfiling;
     }
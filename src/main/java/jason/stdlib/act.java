@@ -3,11 +3,15 @@
 //If you want only to use '.move' command type 'package jason.stdlib'. By Pantoja.
 package jason.stdlib;
 
+import br.pro.turing.javino.Javino;
+import jason.architecture.JavinoPerceptionReader;
 import jason.asSemantics.DefaultInternalAction;
 import jason.asSemantics.TransitionSystem;
 import jason.asSemantics.Unifier;
 import jason.asSyntax.Term;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 public class act extends DefaultInternalAction {
 
     private static final long serialVersionUID = -4841692752581197132L;
@@ -19,10 +23,13 @@ public class act extends DefaultInternalAction {
     public Object execute(TransitionSystem ts, Unifier un, Term[] args) throws Exception {
 
         Term action = args[0];
-        if (ts.getUserAgArch().getArgo().sendCommand(ts.getUserAgArch().getPort(), action.toString())) {
-            return true;
-        } else {
-            return false;
+        Javino javino = ts.getUserAgArch().getArgo();
+        ReentrantLock lock = JavinoPerceptionReader.portLock(javino); // the port is also read by the reader thread
+        lock.lock();
+        try {
+            return javino.sendCommand(ts.getUserAgArch().getPort(), action.toString());
+        } finally {
+            lock.unlock();
         }
     }
 }
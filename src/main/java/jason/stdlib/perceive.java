@@ -24,6 +24,7 @@
 package jason.stdlib;
 
 import jason.asSemantics.DefaultInternalAction;
+import jason.asSemantics.PerceptDelta;
 import jason.asSemantics.TransitionSystem;
 import jason.asSemantics.Unifier;
 import jason.asSyntax.Term;
@@ -57,7 +58,12 @@ public class perceive extends DefaultInternalAction {
     @Override
     public Object execute(TransitionSystem ts, Unifier un, Term[] args) throws Exception {
         checkArguments(args);
-        ts.getAg().buf(ts.getUserAgArch().perceive());
+        PerceptDelta delta = ts.getUserAgArch().perceiveDelta();
+        if (delta != null) {
+            ts.getAg().buf(delta);
+        } else {
+            ts.getAg().buf(ts.getUserAgArch().perceive());
+        }
         return true;
     }
 }
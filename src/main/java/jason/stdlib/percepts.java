@@ -36,10 +36,10 @@ public class percepts extends DefaultInternalAction {
     public Object execute(TransitionSystem ts, Unifier un, Term[] args) throws Exception {
 
         if (args[0].toString().equals("block")) {
-            ts.blocked = true;
+            ts.setPerceptionBlocked(true);
             return true;
         } else if (args[0].toString().equals("open")) {
-            ts.blocked = false;
+            ts.setPerceptionBlocked(false);
             return true;
         } else {
             return false;
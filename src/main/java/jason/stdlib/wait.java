@@ -221,7 +221,6 @@ public class wait extends DefaultInternalAction {
                     }
                 }
             });
-            ts.getUserAgArch().wake();
         }
 
         public void eventAdded(Event e) {
@@ -11,6 +11,7 @@ import jason.asSyntax.Literal;
 import jason.asSyntax.LogExpr;
 import jason.asSyntax.LogicalFormula;
 import jason.asSyntax.NumberTerm;
+import jason.asSyntax.PerceptParser;
 import jason.asSyntax.Plan;
 import jason.asSyntax.PlanBody;
 import jason.asSyntax.PlanBody.BodyType;
@@ -382,4 +383,21 @@ public class ASParserTest extends TestCase {
         t = ASSyntax.parseFormula("(X>1) & (X<3) | (Y>5) & (X<7)");
         assertEquals("(((X > 1) & (X < 3)) | ((Y > 5) & (X < 7)))", t.toString());
     }
+
+    public void testPerceptParser() {
+        String[] percepts = { "p", "p(1)", "~p(a,b)", "temperature(sensor_1, -2.5, \"C\")[quality(0.8)]",
+                "p(1.5e3, .5, 3E-2)", "p([1,a,[b]], [])", "p(q(r(s)))[c(1),b,a]", "p(~q, q[x])", " p ( 1 ) [ x ] ",
+                "p(X)", "p(1+2)", "p(true)", "p(\"a\\nb\")", "p(math.abs(1))", "p(1) q" };
+        for (String s : percepts) {
+            Literal l = PerceptParser.parseLiteral(s);
+            Literal j = Literal.parseLiteral(s);
+            assertEquals(s, j, l);
+            assertEquals(s, j.toString(), l.toString());
+            assertEquals(s, j.getClass(), l.getClass());
+            for (int i = 0; i < j.getArity(); i++) {
+                assertEquals(s, j.getTerm(i).getClass(), l.getTerm(i).getClass());
+            }
+        }
+        assertEquals("[a(1), b(\"x\"), c]", PerceptParser.parsePercepts("a(1);b(\"x\");; c;", ';').toString());
+    }
 }
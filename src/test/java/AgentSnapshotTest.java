@@ -0,0 +1,171 @@
+import jason.architecture.AgArch;
+import jason.asSemantics.ActionExec;
+import jason.asSemantics.Agent;
+import jason.asSemantics.AgentSnapshot;
+import jason.asSemantics.Circumstance;
+import jason.asSemantics.ContentIndex;
+import jason.asSemantics.Intention;
+import jason.asSemantics.TransitionSystem;
+import jason.asSemantics.Unifier;
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Literal;
+import jason.asSyntax.ObjectTermImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.util.LinkedList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/** JUnit test case for the agent snapshot used to move agents */
+public class AgentSnapshotTest extends TestCase {
+
+    private static final String SOURCE =
+              "b(1). \n"
+            + "!g. \n"
+            + "+!g <- +c(2); go(north); +d(X = 2 * 3). \n";
+
+    /** an architecture where all actions succeed */
+    private static class ActingArch extends AgArch {
+        @Override
+        public void act(ActionExec action, List<ActionExec> feedback) {
+            action.setResult(true);
+            feedback.add(action);
+        }
+    }
+
+    private Agent createAgent(AgArch arch) throws Exception {
+        Agent ag = new Agent();
+        new TransitionSystem(ag, null, null, arch);
+        ag.initAg();
+        return ag;
+    }
+
+    public void testResumeMidPlan() throws Exception {
+        Agent ag = createAgent(new AgArch());
+        ag.parseAS(new StringReader(SOURCE));
+        ag.addInitialBelsInBB();
+        ag.addInitialGoalsInTS();
+
+        // runs until the action go(north) is waiting for the environment
+        for (int i = 0; i < 10 && !ag.getTS().getC().hasPendingAction(); i++) {
+            ag.getTS().reasoningCycle();
+        }
+        assertTrue(ag.getTS().getC().hasPendingAction());
+        assertTrue(ag.believes(Literal.parseLiteral("c(2)"), new Unifier()));
+
+        byte[] content = AgentSnapshot.capture(ag).toByteArray();
+        assertTrue(AgentSnapshot.isSnapshot(content));
+
+        Agent copy = createAgent(new ActingArch());
+        copy.load(new ByteArrayInputStream(content), "copy.asl");
+        Circumstance c = copy.getTS().getC();
+        assertEquals(ag.getBB().size(), copy.getBB().size());
+        assertEquals(ag.getPL().size(), copy.getPL().size());
+
+        // the action is executed again in the new MAS
+        assertFalse(c.hasPendingAction());
+        assertEquals(1, c.getIntentions().size());
+        Intention i = c.getIntentions().peek();
+        assertEquals("go(north)", i.peek().getCurrentStep().getBodyTerm().toString());
+        assertTrue(ag.getTS().getC().getPendingActions().values().iterator().next().getIntention().getId()
+                != i.getId());
+
+        // and the plan continues from there
+        Literal d = Literal.parseLiteral("d(X)");
+        for (int k = 0; k < 10 && !copy.believes(d, new Unifier()); k++) {
+            copy.getTS().reasoningCycle();
+        }
+        assertTrue(copy.believes(d, new Unifier()));
+        assertFalse(ag.believes(d, new Unifier()));
+    }
+
+    public void testDeltaSnapshot() throws Exception {
+        Agent ag = createAgent(new AgArch());
+        ag.parseAS(new StringReader(SOURCE + "+!h <- .print(h). \n"));
+        ag.addInitialBelsInBB();
+        ag.addInitialGoalsInTS();
+
+        // the target MAS has an agent from the same source, without the plan for h
+        Agent target = createAgent(new AgArch());
+        target.load(new ByteArrayInputStream(SOURCE.getBytes()), "target.asl");
+        ContentIndex index = new ContentIndex();
+        index.addAgent(target);
+
+        AgentSnapshot full = AgentSnapshot.capture(ag);
+        int fullSize = full.toByteArray().length;
+        AgentSnapshot delta = AgentSnapshot.capture(ag, index.getPlanHashes(), index.getBeliefHashes());
+        byte[] content = delta.toByteArray();
+        assertTrue(content.length < fullSize);
+
+        AgentSnapshot received = AgentSnapshot.read(new ByteArrayInputStream(content));
+        assertTrue(received.isDelta());
+        int shipped = 0;
+        for (Object p : received.getPlans()) {
+            if (p != null) {
+                shipped++;
+            }
+        }
+        assertEquals(1, shipped);
+        received.resolve(index);
+        assertFalse(received.isDelta());
+
+        Agent copy = createAgent(new AgArch());
+        copy.restore(received);
+        assertEquals(ag.getPL().size(), copy.getPL().size());
+        assertEquals(ag.getPL().getPlans().toString().replaceAll("@l__\\d+", ""),
+                copy.getPL().getPlans().toString().replaceAll("@l__\\d+", ""));
+        assertTrue(copy.believes(Literal.parseLiteral("b(1)"), new Unifier()));
+    }
+
+    /** a user class in an object term */
+    public static class Payload implements java.io.Serializable {
+        private static final long serialVersionUID = 1L;
+    }
+
+    public void testAllowList() throws Exception {
+        Agent ag = createAgent(new AgArch());
+        ag.parseAS(new StringReader(SOURCE));
+        ag.addInitialBelsInBB();
+        ag.getBB().add(ASSyntax.createLiteral("o", new ObjectTermImpl(new Payload())));
+        byte[] content = AgentSnapshot.capture(ag).toByteArray();
+
+        // classes out of the allow-list are refused, even in java.util
+        assertRefused(content);
+        assertRefused(encode(new LinkedList<Object>()));
+
+        // unless their package is allowed
+        AgentSnapshot.allowPackage("AgentSnapshotTest$");
+        AgentSnapshot received = AgentSnapshot.read(new ByteArrayInputStream(content));
+        assertEquals(ag.getBB().size(), received.getBeliefs().size());
+    }
+
+    private static byte[] encode(Object o) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(AgentSnapshot.MAGIC);
+        out.write(AgentSnapshot.VERSION);
+        ObjectOutputStream oout = new ObjectOutputStream(out);
+        oout.writeObject(o);
+        oout.flush();
+        return out.toByteArray();
+    }
+
+    private static void assertRefused(byte[] content) {
+        try {
+            AgentSnapshot.read(new ByteArrayInputStream(content));
+            fail("class out of the allow-list read");
+        } catch (IOException e) {
+        }
+    }
+
+    public void testSourceIsStillParsed() throws Exception {
+        Agent ag = createAgent(new AgArch());
+        ag.load(new ByteArrayInputStream(SOURCE.getBytes()), "ag.asl");
+        assertTrue(ag.getPL().size() > 0);
+        assertEquals(1, ag.getInitialGoals().size());
+    }
+}
@@ -0,0 +1,158 @@
+import jason.AgentChunk;
+import jason.AslTransferenceModel;
+import jason.architecture.AgentTransferReceiver;
+import jason.architecture.AgentTransferSender;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/** JUnit test case for the assembly of agents received in chunks */
+public class AgentTransferReceiverTest extends TestCase {
+
+    private static final String ARCH = "jason.architecture.AgArch";
+
+    private List<AslTransferenceModel> agents;
+    private List<AgentChunk> chunks;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        agents = Arrays.asList(
+                new AslTransferenceModel("bob", bytes("+!start <- .print(hello); !start."), ARCH),
+                new AslTransferenceModel("alice", bytes("b(1)."), ARCH));
+        chunks = AgentTransferSender.split("t1", agents, 10);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static AgentTransferReceiver receiver() {
+        return new AgentTransferReceiver(Arrays.asList("bob", "alice"));
+    }
+
+    public void testSplit() {
+        assertEquals(5, chunks.size()); // 4 of bob, 1 of alice
+        for (int i = 0; i < chunks.size(); i++) {
+            assertEquals(i, chunks.get(i).getSequence());
+            assertTrue(chunks.get(i).isValid());
+        }
+        assertEquals(4, chunks.get(0).getCount());
+        assertEquals(3, chunks.get(3).getIndex());
+        assertEquals("alice", chunks.get(4).getName());
+    }
+
+    public void testReassembly() throws IOException {
+        AgentTransferReceiver r = receiver();
+        List<AslTransferenceModel> received = receiveAll(r, chunks);
+        assertEquals(2, received.size());
+        assertAgent(agents.get(0), received.get(0));
+        assertAgent(agents.get(1), received.get(1));
+        assertTrue(r.isComplete());
+        assertEquals(5, r.getAck().getNextSequence());
+        assertEquals("t1", r.getAck().getTransferId());
+    }
+
+    public void testOutOfOrder() throws IOException {
+        List<AgentChunk> reversed = new ArrayList<AgentChunk>(chunks);
+        Collections.reverse(reversed);
+        AgentTransferReceiver r = receiver();
+
+        // alice is complete with her single chunk, bob only with the last chunk received
+        assertNotNull(r.receive(reversed.get(0)));
+        assertEquals(0, r.getAck().getNextSequence());
+        for (int i = 1; i < reversed.size() - 1; i++) {
+            assertNull(r.receive(reversed.get(i)));
+        }
+        assertFalse(r.isComplete());
+        AslTransferenceModel bob = r.receive(reversed.get(reversed.size() - 1));
+        assertAgent(agents.get(0), bob);
+        assertTrue(r.isComplete());
+        assertEquals(5, r.getAck().getNextSequence());
+    }
+
+    public void testDuplicates() throws IOException {
+        AgentTransferReceiver r = receiver();
+        List<AgentChunk> twice = new ArrayList<AgentChunk>();
+        for (AgentChunk c : chunks) {
+            twice.add(c);
+            twice.add(c);
+        }
+        // retransmissions of the whole transfer after it is complete
+        twice.addAll(chunks);
+        List<AslTransferenceModel> received = receiveAll(r, twice);
+        assertEquals(2, received.size());
+        assertAgent(agents.get(0), received.get(0));
+        assertAgent(agents.get(1), received.get(1));
+    }
+
+    public void testCompletedAgentNotReassembled() throws IOException {
+        AgentTransferReceiver r = receiver();
+        receiveAll(r, chunks);
+
+        // a chunk of alice with an unused sequence does not start another assembly of alice
+        AgentChunk again = new AgentChunk("t1", 10, "alice", ARCH, 0, 1, bytes("b(2)."));
+        assertNull(r.receive(again));
+        assertEquals(5, r.getAck().getNextSequence());
+    }
+
+    public void testIgnored() throws IOException {
+        AgentTransferReceiver r = receiver();
+
+        // corrupted chunk: not acknowledged, so the sender retransmits it
+        AgentChunk c = chunks.get(4);
+        AgentChunk corrupted = new AgentChunk("t1", 4, "alice", ARCH, 0, 1, bytes("b(9)."), 0, 5, c.getChecksum());
+        assertNull(r.receive(corrupted));
+        assertNotNull(r.receive(c));
+
+        // other transfer and agents that were not requested
+        assertNull(r.receive(new AgentChunk("t2", 0, "bob", ARCH, 0, 1, bytes("x"))));
+        assertNull(r.receive(new AgentChunk("t1", 5, "eve", ARCH, 0, 1, bytes("x"))));
+
+        // count different from the first chunk of the agent
+        assertNull(r.receive(chunks.get(0)));
+        assertNull(r.receive(new AgentChunk("t1", 6, "bob", ARCH, 1, 2, bytes("x"))));
+        assertFalse(r.isComplete());
+    }
+
+    public void testMalformed() {
+        assertMalformed(new AgentChunk(null, 0, "bob", ARCH, 0, 1, bytes("x")));
+        assertMalformed(new AgentChunk("t1", -1, "bob", ARCH, 0, 1, bytes("x")));
+        assertMalformed(new AgentChunk("t1", AgentTransferReceiver.MAX_PARTS, "bob", ARCH, 0, 1, bytes("x")));
+        assertMalformed(new AgentChunk("t1", 0, "bob", ARCH, 0, 0, bytes("x")));
+        assertMalformed(new AgentChunk("t1", 0, "bob", ARCH, 0, AgentTransferReceiver.MAX_PARTS + 1, bytes("x")));
+        assertMalformed(new AgentChunk("t1", 0, "bob", ARCH, 2, 2, bytes("x")));
+        assertMalformed(new AgentChunk("t1", 0, "bob", ARCH, -1, 2, bytes("x")));
+    }
+
+    private static List<AslTransferenceModel> receiveAll(AgentTransferReceiver r, List<AgentChunk> chunks)
+            throws IOException {
+        List<AslTransferenceModel> received = new ArrayList<AslTransferenceModel>();
+        for (AgentChunk c : chunks) {
+            AslTransferenceModel m = r.receive(c);
+            if (m != null) {
+                received.add(m);
+            }
+        }
+        return received;
+    }
+
+    private static void assertAgent(AslTransferenceModel expected, AslTransferenceModel actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getAgentArchClass(), actual.getAgentArchClass());
+        assertTrue(Arrays.equals(expected.getFileContent(), actual.getFileContent()));
+    }
+
+    private static void assertMalformed(AgentChunk c) {
+        try {
+            receiver().receive(c);
+            fail("malformed chunk accepted");
+        } catch (IOException e) {
+        }
+    }
+}
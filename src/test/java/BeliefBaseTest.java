@@ -1,6 +1,9 @@
 import jason.RevisionFailedException;
 import jason.asSemantics.Agent;
 import jason.asSemantics.Intention;
+import jason.asSemantics.QueryCacheAdv;
+import jason.asSemantics.QueryCacheBounded;
+import jason.asSemantics.QueryCacheSimple;
 import jason.asSemantics.Unifier;
 import jason.asSyntax.ASSyntax;
 import jason.asSyntax.Atom;
@@ -18,7 +21,10 @@ import jason.asSyntax.parser.ParseException;
 import jason.bb.BeliefBase;
 import jason.bb.DefaultBeliefBase;
 import jason.bb.JDBCPersistentBB;
+import jason.runtime.Settings;
+import jason.util.Pair;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -540,7 +546,49 @@ public class BeliefBaseTest extends TestCase {
         //    System.out.println(ir.next());
         //}
         assertEquals(iteratorSize(bb.getCandidateBeliefs(Literal.parseLiteral("book_author(_,_)"),null)),5);
-        
+
+        // test write-behind: changes are written when the DB is read
+        JDBCPersistentBB jbb = (JDBCPersistentBB)bb;
+        assertTrue(bb.add(Literal.parseLiteral("test(b,c)")));
+        assertEquals(jbb.getPendingWrites(),1);
+        assertNotNull(bb.contains(Literal.parseLiteral("test(b,c)")));
+        assertEquals(iteratorSize(bb.getCandidateBeliefs(Literal.parseLiteral("test(_,c)"),null)),1);
+        assertEquals(jbb.getPendingWrites(),0);
+
+        bb.stop();
+    }
+
+    public void testJDBCBBFailedWrite() {
+        JDBCPersistentBB bb = new JDBCPersistentBB();
+        bb.init(null, new String[] {
+                "org.hsqldb.jdbcDriver",
+                "jdbc:hsqldb:mem:failedwrite",
+                "sa",
+                "",
+                "[num(1,numtable,columns(n(integer)))]"
+                });
+        bb.abolish(new PredicateIndicator("num",1));
+        bb.setMaxPendingWrites(10);
+
+        // num(3) is cached as absent, so adding it does not read (and flush) the DB
+        assertNull(bb.contains(Literal.parseLiteral("num(3)")));
+        assertTrue(bb.add(Literal.parseLiteral("num(1)")));
+        assertTrue(bb.add(Literal.parseLiteral("num(x)")));
+        assertTrue(bb.add(Literal.parseLiteral("num(3)")));
+        assertEquals(bb.getPendingWrites(),2);
+
+        // the value x does not fit in the integer column: only its change is discarded
+        bb.flush();
+        assertEquals(bb.getPendingWrites(),0);
+        assertNotNull(bb.contains(Literal.parseLiteral("num(1)")));
+        assertNotNull(bb.contains(Literal.parseLiteral("num(3)")));
+        assertEquals(iteratorSize(bb.getCandidateBeliefs(Literal.parseLiteral("num(_)"),null)),2);
+
+        // the next changes are written in one batch again
+        assertTrue(bb.add(Literal.parseLiteral("num(4)")));
+        bb.flush();
+        assertEquals(iteratorSize(bb.getCandidateBeliefs(Literal.parseLiteral("num(_)"),null)),3);
+
         bb.stop();
     }
     
@@ -627,6 +675,52 @@ public class BeliefBaseTest extends TestCase {
         BeliefBase c = (BeliefBase)ag.getBB().clone();
         assertEquals(ag.getBB().size(), c.size());
     }
+
+    public void testArgIndex() throws ParseException {
+        Agent ag = new Agent();
+        ag.initAg();
+        BeliefBase bb = ag.getBB();
+        for (int i = 0; i < 50; i++) {
+            bb.add(1, ASSyntax.parseLiteral("pos(robot" + (i % 10) + ", " + i + ", \"r" + i + "\")"));
+        }
+        bb.add(1, ASSyntax.parseLiteral("pos(robot3[x], 100, a)"));
+        bb.add(1, ASSyntax.parseRule("pos(R, 200, b) :- R = robot3."));
+        bb.add(ASSyntax.parseLiteral("pos(robot3, 0, first)"));
+
+        // candidates are in the order of the BB, including beliefs with a variable in the argument
+        Iterator<Literal> i = bb.getCandidateBeliefs(ASSyntax.parseLiteral("pos(robot3, X, Y)"), null);
+        StringBuilder s = new StringBuilder();
+        while (i.hasNext()) {
+            s.append(i.next().getTerm(1) + " ");
+        }
+        assertEquals("0 3 13 23 33 43 100 200 ", s.toString());
+
+        // arguments bound by the unifier, numbers and strings
+        Unifier u = new Unifier();
+        u.unifies(new VarTerm("N"), ASSyntax.createNumber(13));
+        assertEquals(1, iteratorSize(bb.getCandidateBeliefs(ASSyntax.parseLiteral("pos(R, N, S)"), u)));
+        assertEquals(1, iteratorSize(bb.getCandidateBeliefs(ASSyntax.parseLiteral("pos(R, S, \"r7\")"), null)));
+        assertEquals(6, iteratorSize(bb.getCandidateBeliefs(ASSyntax.parseLiteral("pos(robot9, S, T)"), null)));
+        assertEquals(0, iteratorSize(bb.getCandidateBeliefs(ASSyntax.parseLiteral("pos(robot9, 999, T)"), null)));
+
+        // indexes are updated by add and remove
+        bb.remove(ASSyntax.parseLiteral("pos(robot3, 13, \"r13\")"));
+        bb.add(1, ASSyntax.parseLiteral("pos(robot3, 300, last)"));
+        Iterator<Unifier> iun = ASSyntax.parseLiteral("pos(robot3, X, _)").logicalConsequence(ag, new Unifier());
+        s = new StringBuilder();
+        while (iun.hasNext()) {
+            s.append(iun.next().get("X") + " ");
+        }
+        assertEquals("0 3 23 33 43 100 200 300 ", s.toString());
+        assertFalse(ASSyntax.parseLiteral("pos(robot3, 13, _)").logicalConsequence(ag, new Unifier()).hasNext());
+
+        // removal while iterating
+        i = bb.getCandidateBeliefs(ASSyntax.parseLiteral("pos(robot3, X, Y)"), null);
+        i.next();
+        bb.remove(ASSyntax.parseLiteral("pos(robot3, 3, \"r3\")"));
+        assertEquals("23", i.next().getTerm(1).toString());
+        assertEquals(52, bb.size());
+    }
     
     private int iteratorSize(@SuppressWarnings("rawtypes") Iterator i) {
         int c = 0;
@@ -750,6 +844,172 @@ public class BeliefBaseTest extends TestCase {
         //System.out.println(ag.getQueryCache());
     }
     
+    public void testQueryCacheInvalidation() throws ParseException {
+        Agent ag = new Agent();
+        ag.initAg();
+        ag.getTS().getSettings().setQueryCache(true);
+        ag.initAg();
+        BeliefBase bb = ag.getBB();
+        QueryCacheSimple qc = ag.getQueryCache();
+        assertTrue(qc.isTracked());
+
+        bb.add(1, Literal.parseLiteral("c(x)"));
+        bb.add(1, Literal.parseLiteral("a(10)"));
+        bb.add(1, Literal.parseLiteral("a(20)"));
+        bb.add(1, Literal.parseLiteral("z(1)"));
+        bb.add(1, ASSyntax.parseRule("q(V) :- a(V) & V < 30."));
+        bb.add(1, ASSyntax.parseRule("p(A,V) :- c(A) & q(V)."));
+        bb.add(1, ASSyntax.parseRule("r(X) :- .random(X)."));
+
+        Literal p = ASSyntax.parseLiteral("p(x,B)");
+        assertEquals(2, iteratorSize(p.logicalConsequence(ag, new Unifier())));
+        assertEquals(1, iteratorSize(ASSyntax.parseLiteral("r(X)").logicalConsequence(ag, new Unifier())));
+        assertNotNull(qc.getCache(p));
+
+        // changes in predicates that p does not depend on keep the entry
+        bb.add(Literal.parseLiteral("z(2)"));
+        ag.buf(new ArrayList<Literal>());
+        assertNotNull(qc.getCache(p));
+        // the answer of r (.random) is removed in each update cycle
+        assertNull(qc.getCache(ASSyntax.parseLiteral("r(X)")));
+
+        // a(V) is used by q, used by p
+        bb.add(1, Literal.parseLiteral("a(5)"));
+        assertNull(qc.getCache(p));
+        assertEquals(3, iteratorSize(p.logicalConsequence(ag, new Unifier())));
+        assertNotNull(qc.getCache(p));
+
+        bb.abolish(new PredicateIndicator("c", 1));
+        assertNull(qc.getCache(p));
+        assertEquals(0, iteratorSize(p.logicalConsequence(ag, new Unifier())));
+        assertTrue(qc.getEvictions() >= 3);
+    }
+
+    public void testQueryCacheBounded() throws ParseException {
+        Settings set = new Settings("[qcache=lru, qcache_size=4]");
+        assertTrue(set.hasQueryCache());
+        assertEquals("lru", set.getQueryCachePolicy());
+        assertEquals(4, set.getQueryCacheSize());
+
+        Agent ag = new Agent();
+        ag.initAg();
+        ag.getTS().getSettings().setOptions(set.getUserParameters());
+        ag.initAg();
+        assertTrue(ag.getQueryCache() instanceof QueryCacheBounded);
+        QueryCacheBounded qc = (QueryCacheBounded) ag.getQueryCache();
+        QueryCacheAdv adv = new QueryCacheAdv(ag, null);
+        Agent noCache = new Agent();
+        noCache.initAg();
+
+        for (Agent a : new Agent[] { ag, noCache }) {
+            for (int i = 0; i < 10; i++) {
+                a.getBB().add(1, Literal.parseLiteral("a(" + i + ")"));
+                a.getBB().add(1, Literal.parseLiteral("b(" + i + "," + (i * i) + ")"));
+            }
+            a.getBB().add(1, ASSyntax.parseRule("p(X,Y) :- a(X) & b(X,Y) & Y > 10."));
+        }
+
+        // the answers are the same as without cache, and as those kept by QueryCacheAdv
+        for (int k = 0; k < 3; k++) {
+            for (int i = 0; i < 10; i++) {
+                Literal q = ASSyntax.parseLiteral("p(" + i + ",Y)");
+                List<Unifier> r = new ArrayList<Unifier>();
+                Iterator<Unifier> iu = q.logicalConsequence(ag, new Unifier());
+                while (iu.hasNext()) {
+                    r.add(iu.next());
+                }
+                assertEquals(toList(q.logicalConsequence(noCache, new Unifier())).toString(), r.toString());
+                if (k == 0) {
+                    for (Unifier u : r) {
+                        adv.addAnswer(q, u);
+                    }
+                    adv.queryFinished(q);
+                }
+                Iterator<Unifier> inCache = qc.getCache(q);
+                if (inCache != null) {
+                    // QueryCacheAdv keeps no entry for queries without answers
+                    Pair<Literal, Iterator<Unifier>> inAdv = adv.getCache(q);
+                    List<Unifier> expected = inAdv == null ? new ArrayList<Unifier>() : toList(inAdv.getSecond());
+                    assertEquals(expected.toString(), toList(inCache).toString());
+                }
+                assertTrue(qc.size() <= 4);
+            }
+        }
+        assertEquals(4, qc.size());
+        assertTrue(qc.getEvictions() > 0);
+        assertTrue(qc.getMemory() > 0);
+        assertTrue(qc.getHitRatio() > 0);
+
+        // lru: the least recently used is removed
+        List<Unifier> ans = new ArrayList<Unifier>();
+        qc = new QueryCacheBounded(ag, null, QueryCacheBounded.Policy.lru, 3, 1 << 20);
+        fill(qc, "q(a)", "q(b)", "q(c)");
+        assertNotNull(qc.getCache(Literal.parseLiteral("q(a)")));
+        qc.queryFinished(Literal.parseLiteral("q(d)"), ans);
+        assertNull(qc.getCache(Literal.parseLiteral("q(b)")));
+        assertNotNull(qc.getCache(Literal.parseLiteral("q(a)")));
+        assertEquals(1, qc.getEvictions());
+
+        // lfu: the least frequently used is removed
+        qc = new QueryCacheBounded(ag, null, QueryCacheBounded.Policy.lfu, 3, 1 << 20);
+        fill(qc, "q(a)", "q(b)", "q(c)");
+        qc.getCache(Literal.parseLiteral("q(b)"));
+        qc.getCache(Literal.parseLiteral("q(c)"));
+        qc.getCache(Literal.parseLiteral("q(c)"));
+        qc.getCache(Literal.parseLiteral("q(a)"));
+        qc.queryFinished(Literal.parseLiteral("q(d)"), ans);
+        assertNull(qc.getCache(Literal.parseLiteral("q(b)")));
+        assertEquals(3, qc.size());
+
+        // tinylfu: a query asked once does not replace an entry used more often
+        qc = new QueryCacheBounded(ag, null, QueryCacheBounded.Policy.tinylfu, 2, 1 << 20);
+        fill(qc, "q(a)", "q(b)");
+        for (int i = 0; i < 3; i++) {
+            qc.getCache(Literal.parseLiteral("q(a)"));
+            qc.getCache(Literal.parseLiteral("q(b)"));
+        }
+        assertNull(qc.getCache(Literal.parseLiteral("q(d)")));
+        qc.queryFinished(Literal.parseLiteral("q(d)"), ans);
+        assertEquals(1, qc.getRejected());
+        for (int i = 0; i < 5; i++) {
+            qc.getCache(Literal.parseLiteral("q(d)"));
+        }
+        qc.queryFinished(Literal.parseLiteral("q(d)"), ans);
+        assertNotNull(qc.getCache(Literal.parseLiteral("q(d)")));
+        assertEquals(2, qc.size());
+
+        // tinylfu with a large bound: the sketch has a maximum size
+        qc = new QueryCacheBounded(ag, null, QueryCacheBounded.Policy.tinylfu, 1 << 28, 1 << 20);
+        fill(qc, "q(a)", "q(b)");
+        assertEquals(2, qc.size());
+        qc = new QueryCacheBounded(ag, null, QueryCacheBounded.Policy.tinylfu, Integer.MAX_VALUE, 1 << 20);
+        fill(qc, "q(a)", "q(b)");
+        assertEquals(2, qc.size());
+
+        // memory bound
+        qc = new QueryCacheBounded(ag, null, QueryCacheBounded.Policy.lru, 100, 1000);
+        fill(qc, "q(a)", "q(b)", "q(c)", "q(d)", "q(e)", "q(f)", "q(g)", "q(h)");
+        assertTrue(qc.getMemory() <= 1000);
+        assertTrue(qc.size() < 8);
+        assertNotNull(qc.getCache(Literal.parseLiteral("q(h)")));
+    }
+
+    private void fill(QueryCacheBounded qc, String... queries) {
+        for (String q : queries) {
+            Literal l = Literal.parseLiteral(q);
+            qc.getCache(l);
+            qc.queryFinished(l, new ArrayList<Unifier>());
+        }
+    }
+
+    private List<Unifier> toList(Iterator<Unifier> i) {
+        List<Unifier> l = new ArrayList<Unifier>();
+        while (i.hasNext()) {
+            l.add(i.next());
+        }
+        return l;
+    }
+
     public void testQueryCacheBW() throws ParseException {
         Agent ag = new Agent();
         ag.initAg();
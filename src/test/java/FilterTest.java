@@ -0,0 +1,41 @@
+import jason.asSyntax.ASSyntax;
+import jason.filter.Annotation;
+import jason.filter.Filter;
+import jason.filter.Objective;
+import jason.filter.Operator;
+import jason.filter.Parameter;
+import junit.framework.TestCase;
+
+/** JUnit test case for the perception filters */
+public class FilterTest extends TestCase {
+
+    public void testFilters() throws Exception {
+        Filter temp = new Filter();
+        temp.setPredicate("temperature");
+        temp.addParameter(new Parameter(0, "sensor_[0-9]+", Operator.E));
+        temp.addParameter(new Parameter(1, "30", Operator.S));
+        temp.addAnotation(new Annotation("quality", "0.5", Operator.SE));
+        Filter door = new Filter();
+        door.setPredicate("~open");
+        door.addParameter(new Parameter(0, "\"front.*\"", Operator.E));
+
+        Objective ob = new Objective("comfort");
+        ob.hashFilter.put(temp.getPredicate(), temp);
+        ob.hashFilter.put(door.getPredicate(), door);
+        ob.compile();
+
+        assertTrue(ob.filters(ASSyntax.parseLiteral("temperature(sensor_1, 21.5)[quality(0.2)]")));
+        assertTrue(ob.filters(ASSyntax.parseLiteral("temperature(sensor_1, 21.5)[a,quality(0.5),quality(1)]")));
+        assertFalse(ob.filters(ASSyntax.parseLiteral("temperature(sensor_1, 35)[quality(0.2)]")));
+        assertFalse(ob.filters(ASSyntax.parseLiteral("temperature(sensor_1, 21.5)[quality(0.8)]")));
+        assertFalse(ob.filters(ASSyntax.parseLiteral("temperature(sensor_1, 21.5)")));
+        assertFalse(ob.filters(ASSyntax.parseLiteral("temperature(room, 21.5)[quality(0.2)]")));
+        assertFalse(ob.filters(ASSyntax.parseLiteral("temperature(sensor_1, high)[quality(0.2)]")));
+        assertFalse(ob.filters(ASSyntax.parseLiteral("temperature(sensor_1)[quality(0.2)]")));
+        assertFalse(ob.filters(ASSyntax.parseLiteral("~temperature(sensor_1, 21.5)[quality(0.2)]")));
+
+        assertTrue(ob.filters(ASSyntax.parseLiteral("~open(\"front door\")")));
+        assertFalse(ob.filters(ASSyntax.parseLiteral("open(\"front door\")")));
+        assertFalse(ob.filters(ASSyntax.parseLiteral("~open(\"back door\")")));
+    }
+}
@@ -0,0 +1,85 @@
+import jason.architecture.BinaryMessageCodec;
+import jason.architecture.LegacyHexMessageCodec;
+import jason.architecture.MessageCodec;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/** JUnit test case for the codecs of the messages exchanged via ContextNet */
+public class MessageCodecTest extends TestCase {
+
+    private static final List<String> FIELDS = Arrays.asList("bob", "tell", "vl(10)[source(alice)]", "", "ação");
+
+    private static String repeat(char c, int n) {
+        char[] s = new char[n];
+        Arrays.fill(s, c);
+        return new String(s);
+    }
+
+    public void testBinaryRoundTrip() {
+        MessageCodec codec = new BinaryMessageCodec();
+        assertRoundTrip(codec, FIELDS);
+        assertRoundTrip(codec, Collections.<String>emptyList());
+
+        // fields larger than the legacy limit, with sizes of several varint bytes
+        assertRoundTrip(codec, Arrays.asList(repeat('a', 127), repeat('b', 128), repeat('c', 70000)));
+    }
+
+    public void testBinaryMalformed() {
+        MessageCodec codec = new BinaryMessageCodec();
+        byte[] encoded = (byte[]) codec.encode(Arrays.asList("bob", "tell", "vl(10)"));
+        assertFalse(codec.accepts("fffe03bob"));
+
+        // truncated in the header or in the middle of a field
+        assertNull(codec.decode(Arrays.copyOf(encoded, 2)));
+        assertNull(codec.decode(Arrays.copyOf(encoded, encoded.length - 1)));
+        assertNull(codec.decode(Arrays.copyOf(encoded, 5)));
+
+        // other preamble or version
+        byte[] preamble = encoded.clone();
+        preamble[1] = (byte) 0xfd;
+        assertNull(codec.decode(preamble));
+        byte[] version = encoded.clone();
+        version[2] = 9;
+        assertNull(codec.decode(version));
+
+        // size larger than the message and a varint that does not end
+        byte[] size = encoded.clone();
+        size[3] = 100;
+        assertNull(codec.decode(size));
+        assertNull(codec.decode(new byte[] {(byte) 0xff, (byte) 0xfe, 1, (byte) 0xff, (byte) 0xff, (byte) 0xff}));
+        assertNull(codec.decode(new byte[] {(byte) 0xff, (byte) 0xfe, 1, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+            (byte) 0xff, (byte) 0xff, 1}));
+    }
+
+    public void testLegacyRoundTrip() {
+        MessageCodec codec = new LegacyHexMessageCodec();
+        assertRoundTrip(codec, FIELDS);
+        assertRoundTrip(codec, Arrays.asList(repeat('a', 255)));
+        assertEquals("fffe03bob04tell", codec.encode(Arrays.asList("bob", "tell")));
+        try {
+            codec.encode(Arrays.asList(repeat('a', 256)));
+            fail("field larger than the legacy format");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testLegacyMalformed() {
+        MessageCodec codec = new LegacyHexMessageCodec();
+        assertFalse(codec.accepts(new byte[] {(byte) 0xff, (byte) 0xfe, 1}));
+        assertNull(codec.decode("abcd03bob"));
+        assertNull(codec.decode("fffe03bo"));
+        assertNull(codec.decode("fffe0zbob"));
+        assertNull(codec.decode("fffe03bob10tell"));
+    }
+
+    private static void assertRoundTrip(MessageCodec codec, List<String> fields) {
+        Serializable encoded = codec.encode(fields);
+        assertTrue(codec.accepts(encoded));
+        assertEquals(fields, codec.decode(encoded));
+    }
+}
@@ -0,0 +1,128 @@
+import jason.architecture.PayloadCompression;
+import jason.architecture.PayloadCompression.Method;
+import jason.asSemantics.Agent;
+import jason.asSyntax.Literal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+/** JUnit test case for the compression of transferred agents and messages */
+public class PayloadCompressionTest extends TestCase {
+
+    private static byte[] content(int beliefs) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < beliefs; i++) {
+            s.append("temperature(sensor").append(i % 7).append(",").append(i).append(")[source(percept)].\n");
+        }
+        return s.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void testRoundTrip() throws IOException {
+        byte[] original = content(200);
+        for (Method m : new Method[] {Method.DEFLATE, Method.FAST}) {
+            byte[] compressed = new PayloadCompression(m).compress(original, null, null);
+            assertTrue(PayloadCompression.isCompressed(compressed));
+            assertTrue(compressed.length < original.length);
+            assertTrue(Arrays.equals(original, PayloadCompression.decompress(compressed, null, null)));
+        }
+    }
+
+    public void testNotCompressed() throws IOException {
+        byte[] small = content(2);
+        assertSame(small, new PayloadCompression(Method.DEFLATE).compress(small, null, null));
+        byte[] original = content(200);
+        assertSame(original, new PayloadCompression(Method.NONE).compress(original, null, null));
+        // content that is not compressed is returned as is
+        assertSame(original, PayloadCompression.decompress(original, null, null));
+    }
+
+    public void testDictionary() throws Exception {
+        Agent ag = new Agent();
+        ag.initAg();
+        for (int i = 0; i < 20; i++) {
+            ag.getBB().add(Literal.parseLiteral("temperature(sensor" + i + "," + i + ")"));
+        }
+        byte[] dictionary = PayloadCompression.buildDictionary(Collections.singletonList(ag));
+        assertTrue(dictionary.length > 0);
+        assertTrue(dictionary.length <= PayloadCompression.MAX_DICTIONARY_SIZE);
+        assertTrue(new String(dictionary, StandardCharsets.UTF_8).contains("temperature"));
+
+        byte[] original = content(200);
+        byte[] compressed = new PayloadCompression(Method.DICTIONARY).compress(original, dictionary, null);
+        assertTrue(Arrays.equals(original, PayloadCompression.decompress(compressed, dictionary, null)));
+
+        try {
+            PayloadCompression.decompress(compressed, null, null);
+            fail("the dictionary was not received");
+        } catch (IOException e) {
+        }
+        try {
+            PayloadCompression.decompress(compressed, "another dictionary".getBytes(StandardCharsets.UTF_8), null);
+            fail("wrong dictionary");
+        } catch (IOException e) {
+        }
+
+        // without dictionary, the DICTIONARY method is DEFLATE
+        compressed = new PayloadCompression(Method.DICTIONARY).compress(original, null, null);
+        assertTrue(Arrays.equals(original, PayloadCompression.decompress(compressed, null, null)));
+    }
+
+    public void testCorrupt() throws IOException {
+        byte[] compressed = new PayloadCompression(Method.DEFLATE).compress(content(200), null, null);
+
+        // truncated
+        assertInvalid(Arrays.copyOf(compressed, compressed.length - 10));
+        assertInvalid(Arrays.copyOf(compressed, 8));
+
+        // garbage after the header
+        byte[] garbage = compressed.clone();
+        for (int i = 8; i < garbage.length; i++) {
+            garbage[i] = (byte) (i * 31);
+        }
+        assertInvalid(garbage);
+
+        // unknown method
+        byte[] method = compressed.clone();
+        method[PayloadCompression.MAGIC.length] = 100;
+        assertInvalid(method);
+
+        // bytes after the end of the stream
+        assertInvalid(Arrays.copyOf(compressed, compressed.length + 3));
+    }
+
+    public void testSize() throws IOException {
+        byte[] original = content(200);
+        byte[] compressed = new PayloadCompression(Method.DEFLATE).compress(original, null, null);
+
+        // sizes out of the limits are rejected before inflating
+        assertInvalid(withSize(compressed, -1));
+        assertInvalid(withSize(compressed, PayloadCompression.MAX_PAYLOAD_SIZE + 1));
+
+        // the content must inflate to the size in the header
+        assertInvalid(withSize(compressed, original.length - 1));
+        assertInvalid(withSize(compressed, original.length + 1));
+
+        // a large size in the header with a small content is rejected (and does not allocate the size)
+        byte[] small = new PayloadCompression(Method.DEFLATE, 0).compress(content(5), null, null);
+        assertInvalid(withSize(small, PayloadCompression.MAX_PAYLOAD_SIZE));
+    }
+
+    private static byte[] withSize(byte[] compressed, int size) {
+        byte[] c = compressed.clone();
+        ByteBuffer.wrap(c, PayloadCompression.MAGIC.length + 1, 4).putInt(size);
+        return c;
+    }
+
+    private static void assertInvalid(byte[] content) {
+        try {
+            PayloadCompression.decompress(content, null, null);
+            fail("invalid content decompressed");
+        } catch (IOException e) {
+        }
+    }
+}
@@ -1,7 +1,10 @@
 import jason.JasonException;
 import jason.asSemantics.Unifier;
 import jason.asSyntax.ASSyntax;
+import jason.asSyntax.CompiledContext;
+import jason.asSyntax.Literal;
 import jason.asSyntax.LiteralImpl;
+import jason.asSyntax.LogExpr;
 import jason.asSyntax.Plan;
 import jason.asSyntax.PlanBody;
 import jason.asSyntax.PlanBodyImpl;
@@ -10,7 +13,10 @@ import jason.asSyntax.Term;
 import jason.asSyntax.VarTerm;
 import jason.asSyntax.PlanBody.BodyType;
 import jason.asSyntax.parser.ParseException;
+import jason.bb.BeliefBase;
+import jason.bb.DefaultBeliefBase;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -54,6 +60,88 @@ public class PlanTest extends TestCase {
         assertNull(pls);    
     }
     
+    public void testFirstArgIndex() throws JasonException, ParseException {
+        PlanLibrary pl = new PlanLibrary();
+        pl.add(Plan.parse("@a +p(a) <- .print(a)."));
+        pl.add(Plan.parse("@x1 +p(X) <- .print(a)."));
+        pl.add(Plan.parse("@b +p(b(1)) <- .print(a)."));
+        pl.add(Plan.parse("@n1 +p(1) <- .print(a)."));
+        pl.add(Plan.parse("@s +p(\"a\") <- .print(a)."));
+        pl.add(Plan.parse("@l +p([a]) <- .print(a)."));
+        pl.add(Plan.parse("@a2 +p(a,b) <- .print(a)."));
+        pl.add(Plan.parse("@n2 +p(1.0) <- .print(a)."));
+        pl.add(Plan.parse("@b2 +p(b(2)) <- .print(a)."));
+        pl.add(Plan.parse("@x2 +X <- .print(a)."));
+
+        assertEquals("[a, x1, l, x2]", labels(pl.getCandidatePlans(ASSyntax.parseTrigger("+p(a)"))));
+        assertEquals("[x1, b, l, b2, x2]", labels(pl.getCandidatePlans(ASSyntax.parseTrigger("+p(b(3))"))));
+        assertEquals("[x1, n1, l, n2, x2]", labels(pl.getCandidatePlans(ASSyntax.parseTrigger("+p(1)"))));
+        assertEquals("[x1, s, l, x2]", labels(pl.getCandidatePlans(ASSyntax.parseTrigger("+p(\"a\")"))));
+        assertEquals("[x1, l, x2]", labels(pl.getCandidatePlans(ASSyntax.parseTrigger("+p(c)"))));
+        assertEquals(9, pl.getCandidatePlans(ASSyntax.parseTrigger("+p(Y)")).size());
+        assertEquals("[a2, x2]", labels(pl.getCandidatePlans(ASSyntax.parseTrigger("+p(a,c)"))));
+
+        // the index is kept consistent when plans are added and removed
+        pl.add(Plan.parse("@a3 +p(a) <- .print(b)."), true);
+        assertEquals("[a3, a, x1, l, x2]", labels(pl.getCandidatePlans(ASSyntax.parseTrigger("+p(a)"))));
+        pl.remove("x1");
+        assertEquals("[a3, a, l, x2]", labels(pl.getCandidatePlans(ASSyntax.parseTrigger("+p(a)"))));
+        pl.remove("x2");
+        assertEquals("[b, l, b2]", labels(pl.getCandidatePlans(ASSyntax.parseTrigger("+p(b(3))"))));
+
+        PlanLibrary clone = pl.clone();
+        assertEquals("[a3, a, l]", labels(clone.getCandidatePlans(ASSyntax.parseTrigger("+p(a)"))));
+    }
+
+    public void testCompiledContext() throws ParseException {
+        Unifier u = new Unifier();
+        u.unifies(new VarTerm("X"), ASSyntax.createNumber(5));
+        u.unifies(new VarTerm("S"), ASSyntax.createString("a"));
+        BeliefBase bb = new DefaultBeliefBase();
+        bb.add(Literal.parseLiteral("b(1)"));
+
+        CompiledContext cc = Plan.parse("+p(X) : X > 2*2 & X < 10 & X \\== 7 <- .print(a).").getCompiledContext();
+        assertEquals(3, cc.getGuardsCount());
+        assertEquals(CompiledContext.Result.TRUE, cc.check(u, bb));
+        assertEquals(CompiledContext.Result.UNKNOWN, cc.check(new Unifier(), bb));
+
+        // b(Y) must be evaluated, but the context is false for X = 5
+        cc = Plan.parse("+p(X) : b(Y) & Y > X & X >= 6 <- .print(a).").getCompiledContext();
+        assertEquals(2, cc.getGuardsCount());
+        assertEquals(CompiledContext.Result.FALSE, cc.check(u, bb));
+        u.unifies(new VarTerm("Y"), ASSyntax.createNumber(1));
+        assertEquals(CompiledContext.Result.FALSE, cc.check(u, bb));
+
+        // unless b(Y) is answered by a rule, whose body may have internal actions
+        assertEquals(CompiledContext.Result.UNKNOWN, cc.check(u, null));
+        bb.add(ASSyntax.parseRule("b(Y) :- .print(Y) & Y = 2."));
+        assertEquals(CompiledContext.Result.UNKNOWN, cc.check(u, bb));
+
+        // not numbers
+        cc = Plan.parse("+p(X) : S > 1 & X div 0 > 1 <- .print(a).").getCompiledContext();
+        assertEquals(CompiledContext.Result.UNKNOWN, cc.check(u, bb));
+
+        // comparisons after internal actions are not checked before them
+        cc = Plan.parse("+p(X) : .print(a) & X > 10 <- .print(a).").getCompiledContext();
+        assertEquals(0, cc.getGuardsCount());
+        assertEquals(CompiledContext.Result.UNKNOWN, cc.check(u, bb));
+
+        // the compiled context follows changes in the context
+        Plan p = Plan.parse("+p(X) : X > 10 <- .print(a).");
+        assertEquals(CompiledContext.Result.FALSE, p.getCompiledContext().check(u, bb));
+        p = (Plan) p.clone();
+        p.setTerm(2, LogExpr.parseExpr("X < 10"));
+        assertEquals(CompiledContext.Result.TRUE, p.getCompiledContext().check(u, bb));
+    }
+
+    private static String labels(List<Plan> plans) {
+        List<String> labels = new ArrayList<String>();
+        for (Plan p : plans) {
+            labels.add(p.getLabel().getFunctor());
+        }
+        return labels.toString();
+    }
+
     public void testParser1() {
         Plan p = Plan.parse("+te : a & b <- a1; a2; .print(a); !g1; !!g2; ?test1; 10 > 3; +b1; -b2; -+b3.");
         p = (Plan)p.clone();
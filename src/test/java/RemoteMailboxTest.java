@@ -0,0 +1,83 @@
+import jason.architecture.RemoteMailbox;
+import jason.architecture.RemoteMailbox.OverflowPolicy;
+import jason.asSemantics.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/** JUnit test case for the mailbox of the messages received via ContextNet */
+public class RemoteMailboxTest extends TestCase {
+
+    private static Message msg(int i) {
+        return new Message("tell", "bob", "alice", "vl(" + i + ")");
+    }
+
+    private static RemoteMailbox full(OverflowPolicy policy) {
+        RemoteMailbox mb = new RemoteMailbox(3, policy);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(mb.offer(msg(i)));
+        }
+        assertEquals(3, mb.size());
+        return mb;
+    }
+
+    public void testDropOldest() {
+        RemoteMailbox mb = full(OverflowPolicy.DROP_OLDEST);
+        assertTrue(mb.offer(msg(3)));
+        assertTrue(mb.offer(msg(4)));
+        assertEquals(3, mb.size());
+        assertEquals("vl(2)", mb.peek().getPropCont());
+        assertEquals(5, mb.getReceivedCount());
+        assertEquals(2, mb.getDroppedCount());
+        assertEquals(0, mb.getRejectedCount());
+    }
+
+    public void testReject() {
+        RemoteMailbox mb = full(OverflowPolicy.REJECT);
+        assertFalse(mb.offer(msg(3)));
+        assertEquals(3, mb.size());
+        assertEquals("vl(0)", mb.poll().getPropCont());
+        assertTrue(mb.offer(msg(4)));
+        assertEquals(5, mb.getReceivedCount());
+        assertEquals(0, mb.getDroppedCount());
+        assertEquals(1, mb.getRejectedCount());
+    }
+
+    public void testBlock() throws Exception {
+        final RemoteMailbox mb = full(OverflowPolicy.BLOCK);
+
+        // the agent consumes a message while the receiving thread is blocked
+        Thread consumer = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                }
+                mb.poll();
+            }
+        };
+        consumer.start();
+        assertTrue(mb.offer(msg(3)));
+        consumer.join();
+        assertEquals(3, mb.size());
+
+        // nobody consumes: the message is rejected after the timeout
+        long start = System.currentTimeMillis();
+        assertFalse(mb.offer(msg(4)));
+        assertTrue(System.currentTimeMillis() - start >= RemoteMailbox.BLOCK_TIMEOUT_MS - 50);
+        assertEquals(1, mb.getRejectedCount());
+        assertEquals(0, mb.getDroppedCount());
+    }
+
+    public void testDrain() {
+        RemoteMailbox mb = full(OverflowPolicy.DROP_OLDEST);
+        List<Message> target = new ArrayList<Message>();
+        assertEquals(3, mb.drainTo(target));
+        assertTrue(mb.isEmpty());
+        assertNull(mb.poll());
+        assertEquals("vl(0)", target.get(0).getPropCont());
+        assertEquals("vl(2)", target.get(2).getPropCont());
+    }
+}
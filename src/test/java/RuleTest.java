@@ -134,6 +134,54 @@ public class RuleTest extends TestCase {
         assertEquals((int)Double.parseDouble(u.get("M").toString()),1);
     }    
     
+    public void testTabling() throws ParseException {
+        Agent ag = new Agent();
+        ag.initAg();
+
+        // a graph with a cycle
+        ag.getBB().add(1, Literal.parseLiteral("edge(a,b)"));
+        ag.getBB().add(1, Literal.parseLiteral("edge(b,c)"));
+        ag.getBB().add(1, Literal.parseLiteral("edge(c,a)"));
+        ag.getBB().add(1, Literal.parseLiteral("edge(c,d)"));
+        assertNull(ag.getAnswerTables()); // created only when a tabled rule is added
+
+        // left recursion (it loops without tabling)
+        ag.getBB().add(1, ASSyntax.parseRule("path(X,Y)[tabled] :- path(X,Z) & edge(Z,Y)."));
+        ag.getBB().add(1, ASSyntax.parseRule("path(X,Y)[tabled] :- edge(X,Y)."));
+        assertTrue(ag.getAnswerTables().isTabled(Literal.parseLiteral("path(a,Y)")));
+        assertFalse(ag.getAnswerTables().isTabled(Literal.parseLiteral("edge(a,Y)")));
+
+        assertEquals(4, iteratorSize(Literal.parseLiteral("path(a,Y)").logicalConsequence(ag, new Unifier())));
+        assertEquals(12, iteratorSize(Literal.parseLiteral("path(X,Y)").logicalConsequence(ag, new Unifier())));
+        assertEquals(1, iteratorSize(Literal.parseLiteral("path(a,a)").logicalConsequence(ag, new Unifier())));
+        assertEquals(0, iteratorSize(Literal.parseLiteral("path(d,Y)").logicalConsequence(ag, new Unifier())));
+
+        // mutual recursion
+        ag.getBB().add(1, ASSyntax.parseRule("reach(X,Y)[tabled] :- edge(X,Y)."));
+        ag.getBB().add(1, ASSyntax.parseRule("reach(X,Y)[tabled] :- edge(X,Z) & reach2(Z,Y)."));
+        ag.getBB().add(1, ASSyntax.parseRule("reach2(X,Y)[tabled] :- reach(X,Y)."));
+        assertEquals(4, iteratorSize(Literal.parseLiteral("reach(b,Y)").logicalConsequence(ag, new Unifier())));
+        assertEquals(4, iteratorSize(Literal.parseLiteral("reach2(c,Y)").logicalConsequence(ag, new Unifier())));
+
+        // the tables are removed when the predicates they depend on change
+        ag.getBB().add(1, Literal.parseLiteral("edge(d,e)"));
+        assertEquals(5, iteratorSize(Literal.parseLiteral("path(a,Y)").logicalConsequence(ag, new Unifier())));
+        assertEquals(5, iteratorSize(Literal.parseLiteral("reach(b,Y)").logicalConsequence(ag, new Unifier())));
+        assertEquals(16, iteratorSize(Literal.parseLiteral("path(X,Y)").logicalConsequence(ag, new Unifier())));
+
+        // all rules are tabled with the option tabling=all
+        Agent ag2 = new Agent();
+        ag2.initAg();
+        ag2.getTS().getSettings().setTabling(true);
+        ag2.initAg();
+        ag2.getBB().add(1, Literal.parseLiteral("edge(a,b)"));
+        ag2.getBB().add(1, Literal.parseLiteral("edge(b,a)"));
+        ag2.getBB().add(1, ASSyntax.parseRule("path(X,Y) :- edge(X,Y)."));
+        ag2.getBB().add(1, ASSyntax.parseRule("path(X,Y) :- edge(X,Z) & path(Z,Y)."));
+        Iterator<Unifier> iun = Literal.parseLiteral("path(a,Y)").logicalConsequence(ag2, new Unifier());
+        assertEquals(2, iteratorSize(iun));
+    }
+
     public void testHasVar() {
         Rule r = new Rule(Literal.parseLiteral("a(X,Y)"), LogExpr.parseExpr("b(X) & c(Y,W) & d(Y,W,R)"));
         
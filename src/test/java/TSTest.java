@@ -5,6 +5,7 @@ import jason.asSemantics.Circumstance;
 import jason.asSemantics.Intention;
 import jason.asSemantics.InternalAction;
 import jason.asSemantics.Option;
+import jason.asSemantics.PerceptDelta;
 import jason.asSemantics.TransitionSystem;
 import jason.asSyntax.ASSyntax;
 import jason.asSyntax.ArithFunctionTerm;
@@ -16,6 +17,7 @@ import jason.asSyntax.Trigger;
 import jason.asSyntax.parser.ParseException;
 import jason.runtime.Settings;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Queue;
@@ -76,6 +78,49 @@ public class TSTest extends TestCase {
         }
     }
     
+    public void testBuf() throws Exception {
+        Agent ag = new Agent();
+        new TransitionSystem(ag, null, null, new AgArch());
+        ag.initAg();
+        ag.getBB().add(Literal.parseLiteral("b(1)[source(self)]"));
+        ag.getPL().add(ASSyntax.parsePlan("+p(X) <- .print(X)."));
+        ag.getPL().add(ASSyntax.parsePlan("-p(X) <- .print(X)."));
+
+        ag.buf(percepts("p(1)", "p(2)", "~q", "b(1)"));
+        assertEquals(2, ag.getTS().getC().getEvents().size()); // only p has plans
+        assertEquals(4, ag.getBB().size());
+        ag.getTS().getC().clearEvents();
+
+        // p(2) and ~q removed, q added
+        ag.buf(percepts("q", "p(1)[a]", "b(1)"));
+        assertNotNull(ag.getBB().contains(Literal.parseLiteral("q")));
+        assertNull(ag.getBB().contains(Literal.parseLiteral("~q")));
+        assertNull(ag.getBB().contains(Literal.parseLiteral("p(2)")));
+        assertTrue(ag.getBB().contains(Literal.parseLiteral("p(1)")).hasAnnot(Literal.parseLiteral("a")));
+        assertEquals("[source(percept),source(self)]",
+                ag.getBB().contains(Literal.parseLiteral("b(1)")).getAnnots().toString());
+        // +p(1)[a] and -p(2)
+        assertEquals(2, ag.getTS().getC().getEvents().size());
+        ag.getTS().getC().clearEvents();
+
+        // delta: remove p(1) and b(1), add p(3)
+        ag.buf(new PerceptDelta().add(Literal.parseLiteral("p(3)")).remove(Literal.parseLiteral("p(1)"))
+                .remove(Literal.parseLiteral("b(1)")).remove(Literal.parseLiteral("r")));
+        assertNull(ag.getBB().contains(Literal.parseLiteral("p(1)")));
+        assertNotNull(ag.getBB().contains(Literal.parseLiteral("p(3)")));
+        assertEquals("[source(self)]", ag.getBB().contains(Literal.parseLiteral("b(1)")).getAnnots().toString());
+        assertEquals(3, ag.getBB().size()); // q, p(3), b(1)
+        assertEquals(2, ag.getTS().getC().getEvents().size()); // +p(3), -p(1)
+    }
+
+    private static List<Literal> percepts(String... ls) {
+        List<Literal> p = new ArrayList<Literal>();
+        for (String l : ls) {
+            p.add(Literal.parseLiteral(l));
+        }
+        return p;
+    }
+
     public void testIntentionOrder() {
         Intention i1 = new Intention();
         Intention i2 = new Intention(); 
@@ -26,6 +26,10 @@ import jason.asSyntax.parser.ParseException;
 import jason.bb.BeliefBase;
 import jason.bb.DefaultBeliefBase;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -129,6 +133,29 @@ public class TermTest extends TestCase {
         assertEquals("[back_pos(9,7), x]",c1.toString());
     }
 
+    public void testInternedFunctors() throws Exception {
+        Literal l1 = parseLiteral("temperature(sensor_1, 20)");
+        Literal l2 = ASSyntax.createLiteral(new String("temperature"), new Atom(new String("sensor_1")),
+                createNumber(20));
+        assertSame(l1.getFunctor(), l2.getFunctor());
+        assertSame(((Atom) l1.getTerm(0)).getFunctor(), ((Atom) l2.getTerm(0)).getFunctor());
+        assertTrue(l1.equals(l2));
+        assertFalse(l1.equals(parseLiteral("temperature(sensor_2, 20)")));
+        assertSame(parseLiteral("~p(1)").getPredicateIndicator().getFunctor(),
+                   parseLiteral("~p(2)").getPredicateIndicator().getFunctor());
+
+        // deserialized functors are not the interned instances
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(out);
+        oout.writeObject(l1);
+        oout.close();
+        Literal l3 = (Literal) new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())).readObject();
+        assertNotSame(l1.getFunctor(), l3.getFunctor());
+        assertTrue(l3.equals(l2));
+        assertTrue(l2.equals(l3));
+        assertTrue(new Unifier().unifies(l3, parseLiteral("temperature(S, T)")));
+    }
+
     public void testUnifies() throws ParseException {
         assertTrue(new Unifier().unifies(new Structure("a"), new Structure("a")));
         assertTrue(new Unifier().unifies(ASSyntax.parseTerm("a"), ASSyntax.parseTerm("a")));
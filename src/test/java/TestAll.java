@@ -4,18 +4,26 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({
+    AgentSnapshotTest.class,
+    AgentTransferReceiverTest.class,
     ASParserTest.class,
     BeliefBaseTest.class,
     ExprTermTest.class,
+    FilterTest.class,
     JadeAgTest.class, 
     ListTermTest.class,
     MAS2JParserTest.class,
+    MessageCodecTest.class,
+    PayloadCompressionTest.class,
     PlanTest.class,
+    RemoteMailboxTest.class,
     RuleTest.class,
     StdLibTest.class,
     StringTermTest.class,
     TermTest.class,
-    TSTest.class, 
+    TSTest.class,
+    TrailUnifierTest.class,
+    TransferCodecTest.class,
     VarTermTest.class
  })
 public class TestAll { }
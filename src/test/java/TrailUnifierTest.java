@@ -0,0 +1,106 @@
+import jason.asSemantics.Agent;
+import jason.asSemantics.Unifier;
+import jason.asSemantics.Unifier.UndoMode;
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Literal;
+import jason.asSyntax.Term;
+import jason.asSyntax.VarTerm;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/** tests unifiers that undo failed unifications by the trail */
+public class TrailUnifierTest extends TestCase {
+
+    private UndoMode previous;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        previous = Unifier.getUndoMode();
+        Unifier.setUndoMode(UndoMode.trail);
+    }
+
+    protected void tearDown() throws Exception {
+        Unifier.setUndoMode(previous);
+        super.tearDown();
+    }
+
+    public void testUndo() throws Exception {
+        Unifier u = new Unifier();
+        u.unifies(new VarTerm("A"), ASSyntax.createNumber(1));
+        Unifier before = u.clone();
+
+        assertFalse(u.unifies(Literal.parseLiteral("p(X,Y,X,10)"), Literal.parseLiteral("p(1,Z,2,A)")));
+        assertEquals(before, u);
+
+        // nested unification (negated var) undone with the outer one
+        assertFalse(u.unifies(Literal.parseLiteral("p(~B,B,20)"), Literal.parseLiteral("p(~q,r,A)")));
+        assertEquals(before, u);
+
+        assertTrue(u.unifies(Literal.parseLiteral("p(X,Y,X,1)"), Literal.parseLiteral("p(1,Z,W,A)")));
+        assertEquals("1", u.get("W").toString());
+        assertEquals(u.get("Y"), u.get("Z"));
+    }
+
+    public void testUndoVarChain() throws Exception {
+        // X -> Y -> Z: binding through the chain (and its compression) is undone
+        Unifier u = new Unifier();
+        assertTrue(u.unifies(new VarTerm("X"), new VarTerm("Y")));
+        assertTrue(u.unifies(new VarTerm("Y"), new VarTerm("Z")));
+        Unifier before = u.clone();
+
+        assertFalse(u.unifies(Literal.parseLiteral("p(X,1)"), Literal.parseLiteral("p(3,2)")));
+        assertEquals(before, u);
+        assertNull(u.get("Z"));
+
+        assertTrue(u.unifies(Literal.parseLiteral("p(X,1)"), Literal.parseLiteral("p(3,1)")));
+        assertEquals("3", u.get("Z").toString());
+    }
+
+    public void testSameAsCopy() throws Exception {
+        String[][] pairs = {
+            {"p(X,Y,X)", "p(1,2,1)"},
+            {"p(X,Y,X)", "p(1,2,3)"},
+            {"p(X,f(X,Y),[Y|T])", "p(a,f(A,b),[B,c])"},
+            {"p(X,f(X,Y),[Y|T])", "p(a,f(b,b),[B,c])"},
+            {"p(X)[a,b]", "p(1)[a,b,c]"},
+            {"p(X)[a,d]", "p(1)[a,b,c]"},
+            {"p(X,Y)", "p(Y,f(X))"},
+        };
+        for (String[] pair : pairs) {
+            Unifier.setUndoMode(UndoMode.copy);
+            Unifier copy = new Unifier();
+            copy.unifies(new VarTerm("K"), ASSyntax.createNumber(0));
+            boolean rCopy = copy.unifies(Literal.parseLiteral(pair[0]), Literal.parseLiteral(pair[1]));
+
+            Unifier.setUndoMode(UndoMode.trail);
+            Unifier trail = new Unifier();
+            trail.unifies(new VarTerm("K"), ASSyntax.createNumber(0));
+            boolean rTrail = trail.unifies(Literal.parseLiteral(pair[0]), Literal.parseLiteral(pair[1]));
+
+            assertEquals(pair[0] + " = " + pair[1], rCopy, rTrail);
+            assertEquals(pair[0] + " = " + pair[1], copy, trail);
+        }
+    }
+
+    public void testRules() throws Exception {
+        // the backtracking of rules undoes the failed attempts by the trail
+        Agent ag = new Agent();
+        ag.initAg();
+        ag.getBB().add(1, Literal.parseLiteral("edge(a,b)"));
+        ag.getBB().add(1, Literal.parseLiteral("edge(b,c)"));
+        ag.getBB().add(1, Literal.parseLiteral("edge(c,d)"));
+        ag.getBB().add(1, ASSyntax.parseRule("path(X,Y) :- edge(X,Y)."));
+        ag.getBB().add(1, ASSyntax.parseRule("path(X,Y) :- edge(X,Z) & path(Z,Y)."));
+
+        List<Term> answers = new ArrayList<Term>();
+        Iterator<Unifier> i = Literal.parseLiteral("path(a,Y)").logicalConsequence(ag, new Unifier());
+        while (i.hasNext()) {
+            answers.add(i.next().get("Y"));
+        }
+        assertEquals("[b, c, d]", answers.toString());
+    }
+}
@@ -0,0 +1,89 @@
+import jason.AgentChunk;
+import jason.AgentChunkAck;
+import jason.architecture.TransferCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/** JUnit test case for the binary format of the agent transfer messages */
+public class TransferCodecTest extends TestCase {
+
+    private static final byte[] CONTENT = "+!start <- .print(hello); !start.".getBytes(StandardCharsets.UTF_8);
+
+    public void testChunk() {
+        // a chunk with a slice of the content of the agent
+        AgentChunk chunk = new AgentChunk("t1", 300, "bob", "jason.architecture.AgArch", 2, 4, CONTENT, 10, 12);
+        byte[] encoded = TransferCodec.encode(chunk);
+        assertTrue(TransferCodec.accepts(encoded));
+
+        AgentChunk decoded = (AgentChunk) TransferCodec.decode(encoded);
+        assertEquals("t1", decoded.getTransferId());
+        assertEquals(300, decoded.getSequence());
+        assertEquals("bob", decoded.getName());
+        assertEquals("jason.architecture.AgArch", decoded.getAgentArchClass());
+        assertEquals(2, decoded.getIndex());
+        assertEquals(4, decoded.getCount());
+        assertEquals(chunk.getChecksum(), decoded.getChecksum());
+        assertTrue(Arrays.equals(Arrays.copyOfRange(CONTENT, 10, 22), decoded.getData()));
+        assertTrue(decoded.isValid());
+    }
+
+    public void testNullFields() {
+        AgentChunk chunk = new AgentChunk(null, 0, "bob", null, 0, 1, new byte[0]);
+        AgentChunk decoded = (AgentChunk) TransferCodec.decode(TransferCodec.encode(chunk));
+        assertNull(decoded.getTransferId());
+        assertNull(decoded.getAgentArchClass());
+        assertEquals(0, decoded.getLength());
+        assertTrue(decoded.isValid());
+    }
+
+    public void testAck() {
+        AgentChunkAck ack = (AgentChunkAck) TransferCodec.decode(TransferCodec.encode(new AgentChunkAck("t1", 70000)));
+        assertEquals("t1", ack.getTransferId());
+        assertEquals(70000, ack.getNextSequence());
+    }
+
+    public void testCorruptedContent() {
+        byte[] encoded = TransferCodec.encode(new AgentChunk("t1", 0, "bob", "", 0, 1, CONTENT));
+        encoded[encoded.length - 1]++;
+        AgentChunk decoded = (AgentChunk) TransferCodec.decode(encoded);
+        assertFalse(decoded.isValid());
+    }
+
+    public void testMalformed() {
+        byte[] chunk = TransferCodec.encode(new AgentChunk("t1", 5, "bob", "", 0, 1, CONTENT));
+        byte[] ack = TransferCodec.encode(new AgentChunkAck("t1", 5));
+
+        // other contents
+        assertFalse(TransferCodec.accepts("text"));
+        assertFalse(TransferCodec.accepts(CONTENT));
+        assertFalse(TransferCodec.accepts(Arrays.copyOf(chunk, 3)));
+        assertNull(TransferCodec.decode(CONTENT));
+
+        // truncated anywhere
+        for (int i = 0; i < chunk.length; i++) {
+            assertNull(TransferCodec.decode(Arrays.copyOf(chunk, i)));
+        }
+        for (int i = 0; i < ack.length; i++) {
+            assertNull(TransferCodec.decode(Arrays.copyOf(ack, i)));
+        }
+
+        // unknown version and type
+        byte[] version = chunk.clone();
+        version[2] = 9;
+        assertNull(TransferCodec.decode(version));
+        byte[] type = chunk.clone();
+        type[3] = 9;
+        assertNull(TransferCodec.decode(type));
+
+        // size of the transfer id larger than the message, and a varint that does not end
+        byte[] size = ack.clone();
+        size[4] = 100;
+        assertNull(TransferCodec.decode(size));
+        byte[] varint = {(byte) 0xff, (byte) 0xfd, 1, 2, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+            (byte) 0xff, (byte) 0xff, 1};
+        assertNull(TransferCodec.decode(varint));
+    }
+}
@@ -0,0 +1,97 @@
+package jason.benchmark;
+
+import jason.AslFileGenerator;
+import jason.architecture.AgArch;
+import jason.asSemantics.Agent;
+import jason.asSemantics.AgentSnapshot;
+import jason.asSemantics.TransitionSystem;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the regenerated .asl source with the binary agent snapshot used
+ * to move agents: time to encode the agent, time to create the agent in the
+ * target MAS and size of the content (printed at setup).
+ *
+ * Run with: java -cp target/test-classes:... org.openjdk.jmh.Main AgentSnapshotBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AgentSnapshotBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    private AgArch arch;
+    private byte[] aslContent;
+    private byte[] snapshotContent;
+
+    @Setup
+    public void setup() throws Exception {
+        StringBuilder src = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            src.append("temperature(sensor_" + i + ", " + (20 + i % 10) + ").\n");
+        }
+        src.append("!start.\n+!start <- .wait(1000).\n");
+        for (int i = 0; i < size; i++) {
+            src.append("+!check(sensor_" + i + ") : temperature(sensor_" + i + ", T) & T > 25 "
+                    + "<- .print(\"hot \", T); +alert(sensor_" + i + "); !check(sensor_" + i + ").\n");
+        }
+
+        Agent ag = createAgent();
+        ag.parseAS(new StringReader(src.toString()));
+        ag.addInitialBelsInBB();
+        ag.addInitialGoalsInTS();
+        ag.getTS().reasoningCycle(); // !start is now an intention waiting in .wait
+        arch = ag.getTS().getUserAgArch();
+
+        aslContent = new AslFileGenerator().generateAslContent(arch).getFileContent();
+        snapshotContent = AgentSnapshot.capture(ag).toByteArray();
+        System.out.println("\n" + size + " beliefs/plans: asl " + aslContent.length + " bytes, snapshot "
+                + snapshotContent.length + " bytes");
+    }
+
+    private static Agent createAgent() throws Exception {
+        Agent ag = new Agent();
+        new TransitionSystem(ag, null, null, new AgArch());
+        ag.initAg();
+        return ag;
+    }
+
+    @Benchmark
+    public byte[] encodeAsl() {
+        return new AslFileGenerator().generateAslContent(arch).getFileContent();
+    }
+
+    @Benchmark
+    public byte[] encodeSnapshot() throws IOException {
+        return AgentSnapshot.capture(arch.getTS().getAg()).toByteArray();
+    }
+
+    @Benchmark
+    public Agent loadAsl() throws Exception {
+        Agent ag = createAgent();
+        ag.load(new ByteArrayInputStream(aslContent), "bench.asl");
+        return ag;
+    }
+
+    @Benchmark
+    public Agent loadSnapshot() throws Exception {
+        Agent ag = createAgent();
+        ag.load(new ByteArrayInputStream(snapshotContent), "bench.asl");
+        return ag;
+    }
+}
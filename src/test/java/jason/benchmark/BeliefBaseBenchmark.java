@@ -0,0 +1,108 @@
+package jason.benchmark;
+
+import jason.asSemantics.Agent;
+import jason.asSemantics.Unifier;
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Literal;
+import jason.bb.DefaultBeliefBase;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Lookups in the default belief base with queries parsed apart from the
+ * beliefs (as the literals of plan contexts and perceptions are):
+ * {@link DefaultBeliefBase#contains(Literal)}, the unification of a
+ * query with the candidate beliefs of
+ * {@link DefaultBeliefBase#getCandidateBeliefs(Literal, Unifier)} and
+ * {@link Literal#logicalConsequence(Agent, Unifier)} of a query with a
+ * bound argument, that only considers the beliefs of the index of that
+ * argument.
+ *
+ * Run with: java -cp target/test-classes:... org.openjdk.jmh.Main BeliefBaseBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BeliefBaseBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int beliefs;
+
+    private DefaultBeliefBase bb;
+    private Agent ag;
+    private Literal[] queries;
+    private Literal[] patterns;
+    private Literal[] hotQueries;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        ag = new Agent();
+        ag.initAg();
+        bb = (DefaultBeliefBase) ag.getBB();
+        for (int i = 0; i < beliefs; i++) {
+            bb.add(ASSyntax.parseLiteral("temperature(sensor_" + i + ", " + (20 + i % 10) + ")[source(percept)]"));
+        }
+        queries = new Literal[64];
+        patterns = new Literal[64];
+        hotQueries = new Literal[64];
+        for (int i = 0; i < queries.length; i++) {
+            int s = i * 7919 % beliefs;
+            queries[i] = ASSyntax.parseLiteral("temperature(sensor_" + s + ", " + (20 + s % 10) + ")");
+            patterns[i] = ASSyntax.parseLiteral("temperature(sensor_" + s + ", T)");
+            hotQueries[i] = ASSyntax.parseLiteral("temperature(S, " + (20 + i % 10) + ")");
+        }
+    }
+
+    @Benchmark
+    public Literal contains() {
+        next = (next + 1) & 63;
+        return bb.contains(queries[next]);
+    }
+
+    /** the first belief that unifies with the pattern, as in a query with a bound first argument */
+    @Benchmark
+    public Unifier candidateBeliefs() {
+        next = (next + 1) & 63;
+        Literal p = patterns[next];
+        Iterator<Literal> i = bb.getCandidateBeliefs(p, null);
+        while (i.hasNext()) {
+            Unifier u = new Unifier();
+            if (u.unifiesNoUndo(p, i.next())) {
+                return u;
+            }
+        }
+        return null;
+    }
+
+    /** a query with a bound first argument, that only one belief answers */
+    @Benchmark
+    public Unifier logicalConsequence() {
+        next = (next + 1) & 63;
+        Iterator<Unifier> i = patterns[next].logicalConsequence(ag, new Unifier());
+        return i.hasNext() ? i.next() : null;
+    }
+
+    /** all answers of a query with a bound second argument (one tenth of the beliefs) */
+    @Benchmark
+    public int allAnswers() {
+        next = (next + 1) & 63;
+        Iterator<Unifier> i = hotQueries[next].logicalConsequence(ag, new Unifier());
+        int n = 0;
+        while (i.hasNext()) {
+            i.next();
+            n++;
+        }
+        return n;
+    }
+}
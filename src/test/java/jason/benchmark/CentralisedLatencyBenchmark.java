@@ -0,0 +1,103 @@
+package jason.benchmark;
+
+import jason.asSemantics.Message;
+import jason.asSyntax.ASSyntax;
+import jason.infra.centralised.CentralisedAgArch;
+import jason.infra.centralised.MsgListener;
+import jason.infra.centralised.RunCentralisedMAS;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * End-to-end latency of messages between sleeping agents in the execution
+ * modes of the Centralised infrastructure. Each operation gives a goal to
+ * the agent "ping", that sends a message to the agent "pong", that answers
+ * to "ping": both agents are sleeping when the operation starts, so the
+ * time measures how fast a sleeping agent is woken by a message.
+ *
+ * Run with: java -cp target/test-classes:... org.openjdk.jmh.Main CentralisedLatencyBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CentralisedLatencyBenchmark {
+
+    @Param({"threads", "pool", "workstealing", "virtual"})
+    public String mode;
+
+    /** number of answers of "pong" */
+    private final AtomicLong answers = new AtomicLong();
+    private MsgListener listener;
+    private BenchmarkRunner runner;
+    private CentralisedAgArch ping;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "pingpong-" + System.nanoTime());
+        dir.mkdirs();
+        write(new File(dir, "ping.asl"), "+!go <- .send(pong, achieve, pong).\n");
+        write(new File(dir, "pong.asl"), "+!pong[source(S)] <- .send(S, tell, pong).\n");
+        String infra = mode.equals("threads") ? "Centralised" : mode.equals("pool") ? "Centralised(pool, 2)"
+                : "Centralised(" + mode + ")";
+        File mas = new File(dir, "pingpong.mas2j");
+        write(mas, "MAS pingpong {\n infrastructure: " + infra + "\n agents: ping; pong;\n"
+                + " aslSourcePath: \"" + dir.getAbsolutePath() + "\";\n}\n");
+
+        runner = new BenchmarkRunner();
+        runner.init(new String[] {mas.getAbsolutePath(), "-console"});
+        runner.create();
+        ping = runner.getAg("ping");
+        listener = new MsgListener() {
+            public void msgSent(Message m) {
+                if (m.getSender().equals("pong")) {
+                    answers.incrementAndGet();
+                }
+            }
+        };
+        CentralisedAgArch.addMsgListener(listener);
+        runner.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CentralisedAgArch.removeMsgListener(listener);
+        runner.stop();
+    }
+
+    @Benchmark
+    public long roundTrip() {
+        long target = answers.get() + 1;
+        ping.receiveMsg(new Message("achieve", "bench", "ping", ASSyntax.createAtom("go")));
+        long a;
+        while ((a = answers.get()) < target) {
+            Thread.yield();
+        }
+        return a;
+    }
+
+    private static void write(File f, String content) throws Exception {
+        FileWriter out = new FileWriter(f);
+        out.write(content);
+        out.close();
+    }
+
+    private static class BenchmarkRunner extends RunCentralisedMAS {
+        void stop() {
+            stopAgs();
+        }
+    }
+}
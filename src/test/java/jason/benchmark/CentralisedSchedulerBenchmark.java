@@ -0,0 +1,113 @@
+package jason.benchmark;
+
+import jason.asSemantics.Message;
+import jason.asSyntax.ASSyntax;
+import jason.infra.centralised.CentralisedAgArch;
+import jason.infra.centralised.MsgListener;
+import jason.infra.centralised.RunCentralisedMAS;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Messages passed per second in a ring of agents run by the execution
+ * modes of the Centralised infrastructure: a thread per agent, the pool of
+ * threads ("pool"), the work-stealing scheduler ("workstealing") and a
+ * virtual thread per agent ("virtual", JDK 21 or later). One
+ * agent in ten starts with a token and each agent passes the tokens it
+ * receives to the next agent of the ring, so most agents are sleeping and
+ * are woken by messages.
+ *
+ * Run with: java -cp target/test-classes:... org.openjdk.jmh.Main CentralisedSchedulerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CentralisedSchedulerBenchmark {
+
+    /** messages passed in each operation of the benchmark */
+    public static final int HOPS = 1000;
+
+    @Param({"threads", "pool", "workstealing", "virtual"})
+    public String mode;
+
+    @Param({"100", "1000"})
+    public int agents;
+
+    private final AtomicLong hops = new AtomicLong();
+    private MsgListener listener;
+    private BenchmarkRunner runner;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "ring-" + System.nanoTime());
+        dir.mkdirs();
+        write(new File(dir, "ring.asl"), "+!pass : next(N) <- .send(N, achieve, pass).\n");
+        String infra = mode.equals("threads") ? "Centralised" : mode.equals("pool") ? "Centralised(pool, "
+                + Runtime.getRuntime().availableProcessors() + ")" : "Centralised(" + mode + ")";
+        File mas = new File(dir, "ring.mas2j");
+        write(mas, "MAS ring {\n infrastructure: " + infra + "\n agents: ring ring.asl #" + agents + ";\n"
+                + " aslSourcePath: \"" + dir.getAbsolutePath() + "\";\n}\n");
+
+        runner = new BenchmarkRunner();
+        runner.init(new String[] {mas.getAbsolutePath(), "-console"});
+        runner.create();
+        for (int i = 1; i <= agents; i++) {
+            CentralisedAgArch ag = runner.getAg("ring" + i);
+            ag.getTS().getAg().addBel(ASSyntax.parseLiteral("next(ring" + (i % agents + 1) + ")"));
+        }
+        listener = new MsgListener() {
+            public void msgSent(Message m) {
+                hops.incrementAndGet();
+            }
+        };
+        CentralisedAgArch.addMsgListener(listener);
+        runner.start();
+        for (int i = 1; i <= agents; i += 10) {
+            Message token = new Message("achieve", "bench", "ring" + i, ASSyntax.createAtom("pass"));
+            runner.getAg("ring" + i).receiveMsg(token);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CentralisedAgArch.removeMsgListener(listener);
+        runner.stop();
+    }
+
+    @Benchmark
+    public long ring() {
+        long target = hops.get() + HOPS;
+        long h;
+        while ((h = hops.get()) < target) {
+            LockSupport.parkNanos(50000);
+        }
+        return h;
+    }
+
+    private static void write(File f, String content) throws Exception {
+        FileWriter out = new FileWriter(f);
+        out.write(content);
+        out.close();
+    }
+
+    private static class BenchmarkRunner extends RunCentralisedMAS {
+        void stop() {
+            stopAgs();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package jason.benchmark;
+
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Literal;
+import jason.filter.Annotation;
+import jason.filter.Filter;
+import jason.filter.Objective;
+import jason.filter.Operator;
+import jason.filter.Parameter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Percepts tested per second by the compiled filters of an objective, as
+ * the number of filtered predicates grows: half of the percepts have a
+ * filter (two parameters and an annotation), the others do not.
+ *
+ * Run with: java -cp target/test-classes:... org.openjdk.jmh.Main FilterBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FilterBenchmark {
+
+    @Param({"10", "1000"})
+    public int predicates;
+
+    private Objective objective;
+    private Literal[] percepts;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        objective = new Objective("benchmark");
+        for (int i = 0; i < predicates; i++) {
+            Filter f = new Filter();
+            f.setPredicate("sensor" + i);
+            f.addParameter(new Parameter(0, "room_[0-9]+", Operator.E));
+            f.addParameter(new Parameter(1, "30", Operator.S));
+            f.addAnotation(new Annotation("quality", "0.5", Operator.SE));
+            objective.hashFilter.put(f.getPredicate(), f);
+        }
+        objective.compile();
+        percepts = new Literal[64];
+        for (int i = 0; i < percepts.length; i++) {
+            String functor = (i % 2 == 0 ? "sensor" : "other") + (i * 7919 % predicates);
+            percepts[i] = ASSyntax.parseLiteral(functor + "(room_" + i + ", " + (i % 40) + ", \"a long description "
+                    + "of the reading that makes the string of the percept longer\")[quality(0." + i % 10 + ")]");
+        }
+    }
+
+    @Benchmark
+    public boolean filters() {
+        next = (next + 1) & 63;
+        return objective.filters(percepts[next]);
+    }
+}
@@ -0,0 +1,78 @@
+package jason.benchmark;
+
+import jason.asSyntax.Literal;
+import jason.bb.JDBCPersistentBB;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * One reasoning cycle of a persistent belief base (in an in-memory HSQLDB):
+ * 50 beliefs are added, consulted and removed, then the changes are written.
+ * With maxPendingWrites = 1 each change is written (and committed) when it
+ * is done, otherwise the changes of the cycle are written in one batch.
+ *
+ * Run with: java -cp target/test-classes:... org.openjdk.jmh.Main JDBCBeliefBaseBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JDBCBeliefBaseBenchmark {
+
+    @Param({"1", "1000"})
+    public int maxPendingWrites;
+
+    private static final int BELIEFS = 50;
+
+    private JDBCPersistentBB bb;
+    private Literal[] beliefs;
+    private int cycle = 0;
+
+    @Setup
+    public void setup() {
+        bb = new JDBCPersistentBB();
+        bb.init(null, new String[] {
+                "org.hsqldb.jdbcDriver",
+                "jdbc:hsqldb:mem:benchmark" + System.nanoTime(),
+                "sa",
+                "",
+                "[temp(2,temp)]"
+                });
+        bb.setMaxPendingWrites(maxPendingWrites);
+        beliefs = new Literal[BELIEFS];
+    }
+
+    @TearDown
+    public void tearDown() {
+        bb.stop();
+    }
+
+    @Benchmark
+    public int cycle() {
+        cycle++;
+        for (int i = 0; i < BELIEFS; i++) {
+            beliefs[i] = Literal.parseLiteral("temp(s" + i + "," + (cycle % 7) + ")[source(percept)]");
+            bb.add(beliefs[i]);
+        }
+        int found = 0;
+        for (int i = 0; i < BELIEFS; i++) {
+            if (bb.contains(beliefs[i]) != null) {
+                found++;
+            }
+        }
+        for (int i = 0; i < BELIEFS; i++) {
+            bb.remove(beliefs[i]);
+        }
+        bb.flush();
+        return found;
+    }
+}
@@ -0,0 +1,58 @@
+package jason.benchmark;
+
+import jason.architecture.BinaryMessageCodec;
+import jason.architecture.LegacyHexMessageCodec;
+import jason.architecture.MessageCodec;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the legacy hex-string framing with the binary framing of the
+ * ContextNet messages sent by .sendOut.
+ *
+ * Run with: java -cp target/test-classes:... org.openjdk.jmh.Main MessageCodecBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MessageCodecBenchmark {
+
+    @Param({"legacy", "binary"})
+    public String codecName;
+
+    private MessageCodec codec;
+    private List<String> fields;
+    private Serializable encoded;
+
+    @Setup
+    public void setup() {
+        codec = codecName.equals("legacy") ? new LegacyHexMessageCodec() : new BinaryMessageCodec();
+        fields = Arrays.asList(
+                "788b2b22-baa6-4c61-b1bb-01cff1f5f878",
+                "tell",
+                "temperature(sensor_12, 27.5, \"2019-03-12T10:15:30\")[source(argo)]");
+        encoded = codec.encode(fields);
+    }
+
+    @Benchmark
+    public Serializable encode() {
+        return codec.encode(fields);
+    }
+
+    @Benchmark
+    public List<String> decode() {
+        return codec.decode(encoded);
+    }
+}
@@ -0,0 +1,69 @@
+package jason.benchmark;
+
+import jason.architecture.AgArch;
+import jason.asSemantics.Agent;
+import jason.asSemantics.TransitionSystem;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reasoning cycles per second of an agent whose plans for the same event
+ * are selected by their contexts. In the "compared" agent the contexts
+ * start with a numeric comparison (N mod P == i), checked by the compiled
+ * context of the plan; in the "unified" agent the same test is written with
+ * unification (N mod P = i), which is always evaluated by the interpreter.
+ *
+ * Run with: java -cp target/test-classes:... org.openjdk.jmh.Main PlanContextBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PlanContextBenchmark {
+
+    @Param({"10", "50"})
+    public int plans;
+
+    private TransitionSystem compared;
+    private TransitionSystem unified;
+
+    @Setup
+    public void setup() throws Exception {
+        compared = createAgent("==");
+        unified = createAgent("=");
+    }
+
+    private TransitionSystem createAgent(String op) throws Exception {
+        StringBuilder src = new StringBuilder("limit(1000000000).\n!step(0).\n");
+        for (int i = 0; i < plans; i++) {
+            src.append("+!step(N) : N mod " + plans + " " + op + " " + i + " & N >= 0 & limit(L) & N < L "
+                    + "<- !!step(N+1).\n");
+        }
+        Agent ag = new Agent();
+        new TransitionSystem(ag, null, null, new AgArch());
+        ag.initAg();
+        ag.parseAS(new StringReader(src.toString()));
+        ag.addInitialBelsInBB();
+        ag.addInitialGoalsInTS();
+        return ag.getTS();
+    }
+
+    @Benchmark
+    public boolean compared() {
+        return compared.reasoningCycle();
+    }
+
+    @Benchmark
+    public boolean unified() {
+        return unified.reasoningCycle();
+    }
+}
@@ -0,0 +1,78 @@
+package jason.benchmark;
+
+import jason.JasonException;
+import jason.asSemantics.Unifier;
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Plan;
+import jason.asSyntax.PlanLibrary;
+import jason.asSyntax.Trigger;
+import jason.asSyntax.parser.ParseException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Relevant plans selected per second as the number of plans for the same
+ * trigger grows: plans told apart by the first argument of the trigger
+ * (selected by the first-argument index of the plan library) and plans told
+ * apart only by the second argument (all of them are checked).
+ *
+ * Run with: java -cp target/test-classes:... org.openjdk.jmh.Main PlanLibraryBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PlanLibraryBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int plans;
+
+    private PlanLibrary pl;
+    private Trigger firstArgEvent;
+    private Trigger secondArgEvent;
+
+    @Setup
+    public void setup() throws JasonException, ParseException {
+        pl = new PlanLibrary();
+        for (int i = 0; i < plans; i++) {
+            pl.add(Plan.parse("+p(k" + i + ", X) <- .print(X)."));
+            pl.add(Plan.parse("+q(X, k" + i + ") <- .print(X)."));
+        }
+        pl.add(Plan.parse("+p(K, X) : default(K) <- .print(X)."));
+        pl.add(Plan.parse("+q(X, K) : default(K) <- .print(X)."));
+        firstArgEvent = ASSyntax.parseTrigger("+p(k" + plans / 2 + ", 1)[source(self)]");
+        secondArgEvent = ASSyntax.parseTrigger("+q(1, k" + plans / 2 + ")[source(self)]");
+    }
+
+    @Benchmark
+    public int firstArgument() {
+        return relevant(firstArgEvent);
+    }
+
+    @Benchmark
+    public int secondArgument() {
+        return relevant(secondArgEvent);
+    }
+
+    /** the same work as TransitionSystem.relevantPlans */
+    private int relevant(Trigger te) {
+        int n = 0;
+        List<Plan> candidates = pl.getCandidatePlans(te);
+        for (Plan p : candidates) {
+            Unifier u = p.isRelevant(te);
+            if (u != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,72 @@
+package jason.benchmark;
+
+import jason.asSemantics.Agent;
+import jason.asSemantics.AnswerTables;
+import jason.asSemantics.Unifier;
+import jason.asSyntax.ASSyntax;
+import jason.asSyntax.Literal;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * All answers of a recursive path rule on a graph where node i has edges to
+ * i+1 and i+2, so the number of paths (derivations without tabling) grows
+ * exponentially with the number of nodes, while the number of answers is
+ * the number of nodes. The tables are removed before each query, so that
+ * the benchmark measures their evaluation (see {@link AnswerTables}).
+ *
+ * Run with: java -cp target/test-classes:... org.openjdk.jmh.Main TablingBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TablingBenchmark {
+
+    @Param({"10", "20"})
+    public int nodes;
+
+    @Param({"false", "true"})
+    public boolean tabled;
+
+    private Agent ag;
+    private Literal query;
+
+    @Setup
+    public void setup() throws Exception {
+        ag = new Agent();
+        ag.initAg();
+        for (int i = 0; i < nodes; i++) {
+            ag.getBB().add(1, ASSyntax.parseLiteral("edge(n" + i + ",n" + (i + 1) + ")"));
+            ag.getBB().add(1, ASSyntax.parseLiteral("edge(n" + i + ",n" + (i + 2) + ")"));
+        }
+        String a = tabled ? "[tabled]" : "";
+        ag.getBB().add(1, ASSyntax.parseRule("path(X,Y)" + a + " :- edge(X,Y)."));
+        ag.getBB().add(1, ASSyntax.parseRule("path(X,Y)" + a + " :- edge(X,Z) & path(Z,Y)."));
+        query = ASSyntax.parseLiteral("path(n0,Y)");
+    }
+
+    @Benchmark
+    public int allAnswers() {
+        AnswerTables tables = ag.getAnswerTables();
+        if (tables != null) { // untabled: no rule is annotated with tabled
+            tables.reset();
+        }
+        Iterator<Unifier> i = query.logicalConsequence(ag, new Unifier());
+        int n = 0;
+        while (i.hasNext()) {
+            i.next();
+            n++;
+        }
+        return n;
+    }
+}
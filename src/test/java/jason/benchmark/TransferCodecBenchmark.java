@@ -0,0 +1,77 @@
+package jason.benchmark;
+
+import jason.AgentChunk;
+import jason.architecture.TransferCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the Java serialization of the agent chunks sent to move agents
+ * with the binary transfer codec: encode/decode throughput and size of the
+ * encoded chunk (printed at setup).
+ *
+ * Run with: java -cp target/test-classes:... org.openjdk.jmh.Main TransferCodecBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransferCodecBenchmark {
+
+    @Param({"1024", "8192"})
+    public int size;
+
+    private AgentChunk chunk;
+    private byte[] serialized;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] content = new byte[size * 4];
+        new Random(42).nextBytes(content);
+        chunk = new AgentChunk("1b4e28ba-2fa1-11d2-883f-0016d3cca427", 12, "sensor_agent",
+                "jason.architecture.AgArch", 1, 4, content, size, size);
+        serialized = javaSerialization();
+        encoded = TransferCodec.encode(chunk);
+        System.out.println("\n" + size + " bytes chunk: java serialization " + serialized.length + " bytes, codec "
+                + encoded.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] javaSerialization() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(out);
+        oout.writeObject(chunk);
+        oout.close();
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public Object javaDeserialization() throws Exception {
+        return new ObjectInputStream(new ByteArrayInputStream(serialized)).readObject();
+    }
+
+    @Benchmark
+    public byte[] codecEncode() {
+        return TransferCodec.encode(chunk);
+    }
+
+    @Benchmark
+    public Object codecDecode() {
+        return TransferCodec.decode(encoded);
+    }
+}